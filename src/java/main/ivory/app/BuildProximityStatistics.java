@@ -0,0 +1,82 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.app;
+
+import ivory.core.Constants;
+import ivory.core.preprocess.ComputeProximityStatistics;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.log4j.Logger;
+
+/**
+ * Computes df and cf of <code>#od</code> and <code>#uw</code> windows of frequent term pairs,
+ * which {@link ivory.core.RetrievalEnvironment} then uses in place of default statistics, e.g.,
+ * <code>[index-path] od1,uw8 100000 10</code> for the windows of the sequential dependence model,
+ * pairs of the 100000 most frequent terms, appearing together in at least 10 documents.
+ */
+public class BuildProximityStatistics extends Configured implements Tool {
+  private static final Logger LOG = Logger.getLogger(BuildProximityStatistics.class);
+
+  private static int printUsage() {
+    System.out.println("usage: [index-path] [windows] [max-termid] [min-df]");
+    ToolRunner.printGenericCommandUsage(System.out);
+    return -1;
+  }
+
+  /**
+   * Runs this tool.
+   */
+  public int run(String[] args) throws Exception {
+    if (args.length != 4) {
+      printUsage();
+      return -1;
+    }
+
+    Configuration conf = getConf();
+    FileSystem fs = FileSystem.get(conf);
+
+    String indexPath = args[0];
+
+    Path p = new Path(indexPath);
+    if (!fs.exists(p)) {
+      LOG.warn("Index path doesn't exist...");
+      return -1;
+    }
+
+    LOG.info("Tool name: " + BuildProximityStatistics.class.getCanonicalName());
+    LOG.info(" - Index path: " + indexPath);
+
+    conf.set(Constants.IndexPath, indexPath);
+    conf.set(Constants.ProximityWindows, args[1]);
+    conf.setInt(Constants.ProximityMaxTermId, Integer.parseInt(args[2]));
+    conf.setInt(Constants.MinDf, Integer.parseInt(args[3]));
+
+    return new ComputeProximityStatistics(conf).run();
+  }
+
+  /**
+   * Dispatches command-line arguments to the tool via the {@code ToolRunner}.
+   */
+  public static void main(String[] args) throws Exception {
+    ToolRunner.run(new Configuration(), new BuildProximityStatistics(), args);
+  }
+}
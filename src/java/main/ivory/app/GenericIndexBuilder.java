@@ -2,6 +2,7 @@ package ivory.app;
 
 import ivory.core.Constants;
 import ivory.core.RetrievalEnvironment;
+import ivory.core.data.index.PostingsList;
 import ivory.core.data.index.PostingsListDocSortedPositional;
 import ivory.core.index.BuildIPInvertedIndexDocSorted;
 import ivory.core.index.BuildIntPostingsForwardIndex;
@@ -47,6 +48,8 @@ public class GenericIndexBuilder extends Configured implements Tool {
   private static final String TOKENIZER_OPTION = "tokenizer";
   private static final String MAPPING_OPTION = "docnoMapping";
   private static final String INDEX_PARTITIONS_OPTION = "indexPartitions";
+  private static final String POSTINGS_TYPE_OPTION = "postingsType";
+  private static final String POSTINGS_BUFFER_OPTION = "postingsBuffer";
 
   @SuppressWarnings({"static-access"}) @Override
   public int run(String[] args) throws Exception {
@@ -69,6 +72,12 @@ public class GenericIndexBuilder extends Configured implements Tool {
     options.addOption(OptionBuilder.withArgName("num").hasArg()
         .withDescription("(optional) number of index partitions: 100 default")
         .create(INDEX_PARTITIONS_OPTION));
+    options.addOption(OptionBuilder.withArgName("class").hasArg()
+        .withDescription("(optional) fully-qualified PostingsList: PostingsListDocSortedPositional default")
+        .create(POSTINGS_TYPE_OPTION));
+    options.addOption(OptionBuilder.withArgName("mb").hasArg()
+        .withDescription("(optional) size of in-mapper postings buffer in MB: 0 (disabled) default")
+        .create(POSTINGS_BUFFER_OPTION));
 
     CommandLine cmdline;
     CommandLineParser parser = new GnuParser();
@@ -123,6 +132,19 @@ public class GenericIndexBuilder extends Configured implements Tool {
       }
     }
 
+    Class<? extends PostingsList> postingsClass = PostingsListDocSortedPositional.class;
+    if (cmdline.hasOption(POSTINGS_TYPE_OPTION)) {
+      try {
+        postingsClass = (Class<? extends PostingsList>)
+            Class.forName(cmdline.getOptionValue(POSTINGS_TYPE_OPTION));
+      } catch (ClassNotFoundException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    int postingsBufferSize = cmdline.hasOption(POSTINGS_BUFFER_OPTION) ?
+        Integer.parseInt(cmdline.getOptionValue(POSTINGS_BUFFER_OPTION)) : 0;
+
     int minDf = 2;
 
     LOG.info("Tool name: " + GenericIndexBuilder.class.getCanonicalName());
@@ -133,6 +155,8 @@ public class GenericIndexBuilder extends Configured implements Tool {
     LOG.info(String.format(" -%s: %s", FORMAT_OPTION, inputFormatClass.getCanonicalName()));
     LOG.info(String.format(" -%s: %s", TOKENIZER_OPTION, tokenizerClass.getCanonicalName()));
     LOG.info(String.format(" -%s: %d", INDEX_PARTITIONS_OPTION, indexPartitions));
+    LOG.info(String.format(" -%s: %s", POSTINGS_TYPE_OPTION, postingsClass.getCanonicalName()));
+    LOG.info(String.format(" -%s: %d", POSTINGS_BUFFER_OPTION, postingsBufferSize));
 
     if (docnoMappingClass.equals(TrecDocnoMapping.class)) {
       indexPartitions = 10;
@@ -193,7 +217,8 @@ public class GenericIndexBuilder extends Configured implements Tool {
     new BuildTermDocVectorsForwardIndex(conf).run();
 
     conf.setInt(Constants.NumReduceTasks, indexPartitions);
-    conf.set(Constants.PostingsListsType, PostingsListDocSortedPositional.class.getCanonicalName());
+    conf.set(Constants.PostingsListsType, postingsClass.getCanonicalName());
+    conf.setInt(Constants.PostingsBufferSize, postingsBufferSize);
 
     new BuildIPInvertedIndexDocSorted(conf).run();
     new BuildIntPostingsForwardIndex(conf).run();
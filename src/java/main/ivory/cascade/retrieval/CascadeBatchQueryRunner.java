@@ -178,7 +178,7 @@ public class CascadeBatchQueryRunner extends BatchQueryRunner{
 			RetrievalEnvironment.topK = kVal;
 
 			// Initialize retrieval environment variables.
-			CascadeQueryRunner runner = null;
+			CascadeThreadedQueryRunner runner = null;
 			MRFBuilder builder = null;
 			MRFExpander expander = null;
 
@@ -191,7 +191,7 @@ public class CascadeBatchQueryRunner extends BatchQueryRunner{
 				if (expanderNode != null) {
 					expander = MRFExpander.getExpander(env, expanderNode.cloneNode(true));
 				}
-				if (stopwords != null && stopwords.size() != 0) {
+				if (expander != null && stopwords != null && stopwords.size() != 0) {
 					expander.setStopwordList(stopwords);
 				}
 
@@ -201,9 +201,12 @@ public class CascadeBatchQueryRunner extends BatchQueryRunner{
 				}				
 				LOG.info("number of hits: " + numHits);
 
-				// Multi-threaded query evaluation still a bit unstable; setting
-				// thread=1 for now.
-				runner = new CascadeThreadedQueryRunner(builder, expander, 1, numHits, savedResults_prevStage, K_val);
+				// Queries of a model run concurrently, but models run one at a time,
+				// since cascade settings such as topK are static. Expansion builds
+				// MRFs while ranking, which changes static parameters of cascade
+				// scoring functions, so models with an expander run on one thread.
+				int numThreads = expander == null ? getNumThreads() : 1;
+				runner = new CascadeThreadedQueryRunner(builder, expander, numThreads, numHits, savedResults_prevStage, K_val);
 
 				queryRunners.put(modelID, (QueryRunner)runner);
 
@@ -211,14 +214,19 @@ public class CascadeBatchQueryRunner extends BatchQueryRunner{
 				e.printStackTrace();
 			}
 
+			Map<String, String[]> queryTokens = Maps.newLinkedHashMap();
 			for (String queryID : queries.keySet()) {
 				String rawQueryText = queries.get(queryID);
-				String[] queryTokens = env.tokenize(rawQueryText);
+				queryTokens.put(queryID, env.tokenize(rawQueryText));
 
 				LOG.info(String.format("query id: %s, query: \"%s\"", queryID, rawQueryText));
+			}
 
-				// Execute the query.
-				runner.runQuery(queryID, queryTokens);
+			// Execute the queries.
+			try {
+				runner.runQueries(queryTokens);
+			} catch (ConfigurationException e) {
+				throw new RuntimeException("Error: Unable to build MRFs for model " + modelID + "!", e);
 			}
 
 			// Where should we output these results?
@@ -251,6 +259,8 @@ public class CascadeBatchQueryRunner extends BatchQueryRunner{
 
 			cascadeCosts_lastStage.put(modelID, runner.getCascadeCostAllQueries_lastStage());
 
+			LOG.info("cascade stages of model " + modelID + ": " + runner.getStageStatistics());
+
 			modelCnt++;
 		}
 
@@ -270,6 +280,7 @@ public class CascadeBatchQueryRunner extends BatchQueryRunner{
 			System.exit(-1);
 		}
 		System.out.println("Evaluation results... NDCG Sum "+totalNDCG+" TotalCost "+totalCost+" # queries with results "+costKeys.size()+" dataCollection "+dataCollection+" kVal "+kVal);
+		LOG.info("postings cache: " + env.getPostingsCache());
 	}
 
 	//The cascade cost of the qid under model
@@ -28,9 +28,9 @@ import ivory.smrf.model.MarkovRandomField;
 import ivory.smrf.model.score.ScoringFunction;
 import ivory.smrf.retrieval.Accumulator;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.BitSet;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
@@ -103,8 +103,12 @@ public class CascadeEval {
   float cascadeCost = 0;
 
 
-  // docs that will be passed around
-  int[][][] keptDocs;
+  // Modeled cost, and CPU time in nanoseconds, of each cascade stage
+  float[] stageCosts = new float[0];
+  long[] stageCpuTimes = new long[0];
+
+  // positions of query terms in the docs that will be passed around, and the doc lengths
+  private final PositionArena keptPositions = new PositionArena();
   int[] keptDocLengths;
 
   // single terms in cliques used in first stage, which clique number they correspond to, keyed by
@@ -138,8 +142,6 @@ public class CascadeEval {
     // Lidan: get # query terms
     numQueryTerms = mMRF.getQueryTerms().length;
 
-    keptDocs = new int[INITIAL_STAGE_NUM_RESULTS + 1][numQueryTerms][];
-
     keptDocLengths = new int[INITIAL_STAGE_NUM_RESULTS + 1];
   }
 
@@ -267,6 +269,29 @@ public class CascadeEval {
     return normalizedCost;
   }
 
+  /**
+   * Returns the modeled cost of each cascade stage of the last ranking, before normalization.
+   */
+  public float[] getStageCosts() {
+    return stageCosts;
+  }
+
+  /**
+   * Returns the CPU time, in nanoseconds, spent in each cascade stage of the last ranking. Wall
+   * clock time is used if the JVM doesn't measure thread CPU time.
+   */
+  public long[] getStageCpuTimes() {
+    return stageCpuTimes;
+  }
+
+  private static long cpuTime() {
+    ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (bean.isCurrentThreadCpuTimeSupported() && bean.isThreadCpuTimeEnabled()) {
+      return bean.getCurrentThreadCpuTime();
+    }
+    return System.nanoTime();
+  }
+
   public Accumulator[] rank() {
     if (mSavedResults != null) {
       mDocSet = new int[mSavedResults.length];
@@ -277,7 +302,6 @@ public class CascadeEval {
         accumulated_scores[i] = mSavedResults[i][1];
       }
 
-      keptDocs = new int[mDocSet.length + 1][numQueryTerms][];
       keptDocLengths = new int[mDocSet.length + 1];
     }
 
@@ -308,12 +332,16 @@ public class CascadeEval {
 
     String pruningFunction = null;
     float pruningParameter = -1;
-    int termMatches = 0;
+
+    stageCosts = new float[cascadeStages.size()];
+    stageCpuTimes = new long[cascadeStages.size()];
 
     while (cnt != totalCnt) { // if not have gone thru all cascade stages
       float subTotal_cascadeCost = 0;
+      int stage = cascadeStage;
+      long stageStartTime = cpuTime();
 
-      if (cascadeStage < 1) { // only call once, then use keptDocs[][][]
+      if (cascadeStage < 1) { // only call once, then use keptPositions
         mMRF.removeAllCliques();
 
         for (CascadeClique c : cascadeStages.get(cascadeStage)) {
@@ -415,6 +443,21 @@ public class CascadeEval {
 
         float sumScore = 0;
 
+        // all concepts of a stage share the scoring function; proximity features score matches
+        // with default collection statistics
+        boolean isTermFeature = featureID.equals("termWt");
+        boolean isOrdered = featureID.equals("orderedWt");
+        if (!isTermFeature) {
+          if (!isOrdered && !featureID.equals("unorderedWt")) {
+            System.out.println("Invalid featureID " + featureID);
+            System.exit(-1);
+          }
+          GlobalTermEvidence termEvidence = scoringFunction.getGlobalTermEvidence();
+          termEvidence.cf = RetrievalEnvironment.defaultCf;
+          termEvidence.df = RetrievalEnvironment.defaultDf;
+          scoringFunction.initialize(termEvidence, scoringFunction.getGlobalEvidence());
+        }
+
         for (int j = 0; j < cntConcepts; j++) {
           String[] singleTerms = concepts_this_stage[j];
 
@@ -495,147 +538,14 @@ public class CascadeEval {
             float docScore_cascade = 0;
 
             for (int j = 0; j < cntConcepts; j++) {
-              if (featureID.equals("termWt")) {
-                int termIndex1 = termIndexes[j][0];
-                int[] positions1 = keptDocs[docIndex][termIndex1];
-
-                int tf = 0;
-                if (positions1 != null) {
-                  tf = positions1.length;
-                }
-
+              if (isTermFeature) {
+                int tf = keptPositions.getLength(docIndex, termIndexes[j][0]);
                 docScore_cascade += clique_wgts[j] * scoringFunction.getScore(tf, docLen);
-
-              } else { // term proximity
-
-                // merge into a single stream and compute matches. Assume there are only two
-                // terms!!!
-
-                int termIndex1 = termIndexes[j][0];
-                int termIndex2 = termIndexes[j][1];
-
-                int[] positions1 = keptDocs[docIndex][termIndex1];
-                int[] positions2 = keptDocs[docIndex][termIndex2];
-
-                int matches = 0;
-
-                if (positions1 != null && positions2 != null) { // both query terms are in the doc
-
-                  termMatches++;
-                  int[] ids = new int[positions1.length];
-                  Arrays.fill(ids, 0);
-                  int length = positions1.length;
-
-                  int length2 = positions2.length;
-
-                  int[] newPositions = new int[length + length2];
-                  int[] newIds = new int[length + length2];
-
-                  int posA = 0;
-                  int posB = 0;
-
-                  int ii = 0;
-                  while (ii < length + length2) {
-                    if (posB == length2 || posA < length && positions1[posA] <= positions2[posB]) {
-                      newPositions[ii] = positions1[posA];
-                      newIds[ii] = ids[posA];
-                      posA++;
-                    } else {
-                      newPositions[ii] = positions2[posB];
-                      newIds[ii] = 1;
-                      posB++;
-                    }
-                    ii++;
-                  }
-
-                  int[] positions = newPositions;
-                  ids = newIds;
-
-                  BitSet mMatchedIds = new BitSet(2); // Assume there are only two terms!!!
-
-                  if (featureID.equals("orderedWt")) {
-
-                    for (ii = 0; ii < positions.length; ii++) {
-                      mMatchedIds.clear();
-                      int maxGap = 0;
-                      boolean ordered = true;
-                      mMatchedIds.set(ids[ii]);
-                      int matchedIDCounts = 1;
-                      int lastMatchedID = ids[ii];
-                      int lastMatchedPos = positions[ii];
-
-                      for (int jj = ii + 1; jj < positions.length; jj++) {
-                        int curID = ids[jj];
-                        int curPos = positions[jj];
-                        if (!mMatchedIds.get(curID)) {
-                          mMatchedIds.set(curID);
-                          matchedIDCounts++;
-                          if (curID < lastMatchedID) {
-                            ordered = false;
-                          }
-                          if (curPos - lastMatchedPos > maxGap) {
-                            maxGap = curPos - lastMatchedPos;
-                          }
-                        }
-                        // stop looking if the maximum gap is too large
-                        // or the terms appear out of order
-                        if (maxGap > mSize || !ordered) {
-                          break;
-                        }
-                        // did we match all the terms, and in order?
-                        if (matchedIDCounts == 2 && ordered) {
-                          matches++;
-                          break;
-                        }
-                      }
-                    }
-                  } else if (featureID.equals("unorderedWt")) {
-
-                    for (ii = 0; ii < positions.length; ii++) {
-                      mMatchedIds.clear();
-
-                      mMatchedIds.set(ids[ii]);
-                      int matchedIDCounts = 1;
-                      int startPos = positions[ii];
-
-                      for (int jj = ii + 1; jj < positions.length; jj++) {
-                        int curID = ids[jj];
-                        int curPos = positions[jj];
-                        int windowSize = curPos - startPos + 1;
-
-                        if (!mMatchedIds.get(curID)) {
-                          mMatchedIds.set(curID);
-                          matchedIDCounts++;
-                        }
-                        // stop looking if we've exceeded the maximum window size
-                        if (windowSize > mSize) {
-                          break;
-                        }
-                        // did we match all the terms?
-                        if (matchedIDCounts == 2) {
-                          matches++;
-                          break;
-                        }
-                      }
-                    }
-                  } else {
-                    System.out.println("Invalid featureID " + featureID);
-                    System.exit(-1);
-                  }
-                } // end if this is a match, i.e., both query terms are in the doc
-
-//                float s = getScore(matches, docLen, RetrievalEnvironment.defaultCf,
-//                    (float) RetrievalEnvironment.defaultDf, scoringFunctionName);
-//                docScore_cascade += clique_wgts[j] * s;
-                
-                GlobalTermEvidence termEvidence = scoringFunction.getGlobalTermEvidence();
-                termEvidence.cf = RetrievalEnvironment.defaultCf;
-                termEvidence.df = RetrievalEnvironment.defaultDf;
-
-                scoringFunction.initialize(termEvidence, scoringFunction.getGlobalEvidence());
+              } else { // term proximity, assuming there are only two terms
+                int matches = keptPositions.countMatches(docIndex, termIndexes[j][0],
+                    termIndexes[j][1], mSize, isOrdered);
                 docScore_cascade += clique_wgts[j] * scoringFunction.getScore(matches, docLen);
-
-              } // end else it's proximity feature
+              }
             } // end for (each concept)
 
             // accumulate doc score in results[i] across cascade stages
@@ -680,6 +590,10 @@ public class CascadeEval {
       } // end if not first stage
 
       cascadeCost += subTotal_cascadeCost;
+      if (stage < stageCosts.length) {
+        stageCosts[stage] = subTotal_cascadeCost;
+        stageCpuTimes[stage] = cpuTime() - stageStartTime;
+      }
 
     } // end while
 
@@ -698,7 +612,7 @@ public class CascadeEval {
 
   public CascadeAccumulator[] executeInitialStage() {
 
-    // point to next position in keptDocs array that hasn't been filled
+    // point to next slot for positions that hasn't been filled
     int indexCntKeptDocs = 0;
 
     // Clear priority queue.
@@ -729,6 +643,8 @@ public class CascadeEval {
     // Sort cliques according to their max scores.
     Collections.sort(cliques, maxScoreComparator);
 
+    keptPositions.reset(keptDocLengths.length, cliques.size());
+
     // Score that must be achieved to enter result set.
     double scoreThreshold = Double.NEGATIVE_INFINITY;
 
@@ -760,8 +676,8 @@ public class CascadeEval {
 //        score = accumulated_scores[docsetOffset - 1];
 //      }
 
-      // for each query term, its position in a document
-      int[][] termPositions = new int[cliques.size()][];
+      // positions of each query term in the document are added to keptPositions as the terms are
+      // scored, and kept if the document makes it into the results
       int doclen = -1;
 
       for (int i = 0; i < cliques.size(); i++) {
@@ -800,7 +716,7 @@ public class CascadeEval {
         int[] p = c.getPositions();
 
         if (p != null) {
-          termPositions[i] = Arrays.copyOf(p, p.length);
+          keptPositions.addPositions(i, p, p.length);
           doclen = c.getDocLen();
         }
       }
@@ -817,22 +733,17 @@ public class CascadeEval {
         mSortedAccumulators.add(a);
 
         // save positional information for each query term in the document
-        for (int j = 0; j < termPositions.length; j++) {
-
-          if (termPositions[j] != null) {
-            keptDocs[indexCntKeptDocs][j] = Arrays.copyOf(termPositions[j], termPositions[j].length);
-          }
-        }
+        keptPositions.keepDocument(indexCntKeptDocs);
 
         if (mSortedAccumulators.size() == mNumResults + 1) {
           a = mSortedAccumulators.poll(); // Re-use the accumulator of the removed document
 
           // After maximum # docs been put into queue, each time a new document is added, an old
           // document will be ejected, use the spot freed by the ejected document to store the new
-          // document positional info in keptDocs
+          // document positional info in keptPositions
 
           indexCntKeptDocs = a.index_into_keptDocs;
-          keptDocs[indexCntKeptDocs] = new int[numQueryTerms][];
+          keptPositions.release(indexCntKeptDocs);
 
           scoreThreshold = mSortedAccumulators.peek().score;
 
@@ -842,6 +753,8 @@ public class CascadeEval {
           indexCntKeptDocs++;
         }
 
+      } else {
+        keptPositions.discardDocument();
       }
 
       if (mDocSet != null) {
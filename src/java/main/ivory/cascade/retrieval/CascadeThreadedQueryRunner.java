@@ -24,6 +24,7 @@ import ivory.smrf.model.expander.MRFExpander;
 import ivory.smrf.retrieval.Accumulator;
 import ivory.smrf.retrieval.MRFDocumentRanker;
 
+import java.util.Arrays;
 import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
@@ -55,6 +56,11 @@ public class CascadeThreadedQueryRunner implements CascadeQueryRunner {
 	private float [] cascadeCostAllQueries = new float[1000];
 	private float [] cascadeCostAllQueries_lastStage = new float[1000];
 
+	//modeled cost and CPU time (in ns) of each cascade stage, summed over all queries
+	private float [] stageCosts = new float[0];
+	private long [] stageCpuTimes = new long[0];
+	private int numCascadeQueries = 0;
+
 	public CascadeThreadedQueryRunner(MRFBuilder builder, MRFExpander expander, int numThreads,
 	    int numHits, Map<Integer, Float[][]> savedResults, int K) {
 		Preconditions.checkNotNull(builder);
@@ -79,18 +85,41 @@ public class CascadeThreadedQueryRunner implements CascadeQueryRunner {
 		Preconditions.checkNotNull(qid);
 		Preconditions.checkNotNull(query);
 
-		Future<Accumulator[]> future = mThreadPool.submit(new ThreadTask(query, mBuilder,
+		Future<Accumulator[]> future = mThreadPool.submit(new ThreadTask(query, null, mBuilder,
 				mExpander, qid, mNumHits));
 		mQueryResults.put(qid, future);
 	}
 
+	/**
+	 * Runs queries asynchronously. Results can be fetched using
+	 * {@link getResults}. The MRFs of all queries are built up front, before
+	 * any of them is ranked: cascade scoring functions keep their parameters in
+	 * static fields, which are set as MRFs are built, so building an MRF while
+	 * other queries are being ranked would change their scores.
+	 */
+	public void runQueries(Map<String, String[]> queries) throws ConfigurationException {
+		Preconditions.checkNotNull(queries);
+
+		Map<String, MarkovRandomField> mrfs = Maps.newLinkedHashMap();
+		for (Map.Entry<String, String[]> query : queries.entrySet()) {
+			mrfs.put(query.getKey(), mBuilder.buildMRF(query.getValue()));
+		}
+
+		for (Map.Entry<String, String[]> query : queries.entrySet()) {
+			String qid = query.getKey();
+			Future<Accumulator[]> future = mThreadPool.submit(new ThreadTask(query.getValue(),
+					mrfs.get(qid), mBuilder, mExpander, qid, mNumHits));
+			mQueryResults.put(qid, future);
+		}
+	}
+
 	/**
 	 * Runs a query synchronously, waiting until completion.
 	 */
 	public Accumulator[] runQuery(String[] query) {
 		Preconditions.checkNotNull(query);
 
-		Future<Accumulator[]> future = mThreadPool.submit(new ThreadTask(query, mBuilder,
+		Future<Accumulator[]> future = mThreadPool.submit(new ThreadTask(query, null, mBuilder,
 				mExpander, "query", mNumHits));
 		Accumulator[] results = null;
 		try {
@@ -157,16 +186,45 @@ public class CascadeThreadedQueryRunner implements CascadeQueryRunner {
 		return cascadeCostAllQueries_lastStage;
 	}
 
+	private synchronized void addStageStatistics(float[] costs, long[] cpuTimes) {
+		if (costs.length > stageCosts.length) {
+			stageCosts = Arrays.copyOf(stageCosts, costs.length);
+			stageCpuTimes = Arrays.copyOf(stageCpuTimes, costs.length);
+		}
+		for (int i = 0; i < costs.length; i++) {
+			stageCosts[i] += costs[i];
+			stageCpuTimes[i] += cpuTimes[i];
+		}
+		numCascadeQueries++;
+	}
+
+	/**
+	 * Returns the modeled cost and the measured CPU time of each cascade stage,
+	 * summed over all queries ranked with the cascade model.
+	 */
+	public synchronized String getStageStatistics() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(numCascadeQueries).append(" queries");
+		for (int i = 0; i < stageCosts.length; i++) {
+			sb.append(String.format("; stage %d: cost %.4g, cpu %.1f ms", i, stageCosts[i],
+					stageCpuTimes[i] / 1e6));
+		}
+		return sb.toString();
+	}
+
 	// Thread for running a query.  No need to expose implementation.
 	private class ThreadTask implements Callable<Accumulator[]> {
 		private String[] mQuery;
+		private MarkovRandomField mMRF; // Built up front, if not null.
 		private MRFBuilder mBuilder;
 		private MRFExpander mExpander;
 		private String mQid;
 		private int mNumHits;
 
-		public ThreadTask(String[] query, MRFBuilder builder, MRFExpander expander, String qid, int numHits) {
+		public ThreadTask(String[] query, MarkovRandomField mrf, MRFBuilder builder,
+				MRFExpander expander, String qid, int numHits) {
 			mQuery = query;
+			mMRF = mrf;
 			mBuilder = builder;
 			mExpander = expander;
 			mQid = qid;
@@ -186,7 +244,7 @@ public class CascadeThreadedQueryRunner implements CascadeQueryRunner {
 				if (r!=null){
 					savedResults = (float[][]) r;
 				}
-				MarkovRandomField mrf = mBuilder.buildMRF(mQuery); 
+				MarkovRandomField mrf = mMRF != null ? mMRF : mBuilder.buildMRF(mQuery);
 
 				// Run initial query, if necessary.
 				Accumulator[] results = null;
@@ -205,6 +263,7 @@ public class CascadeThreadedQueryRunner implements CascadeQueryRunner {
 						// Rank the documents using the cascade model. 
                         	                results = ranker.rank();
 						cascadeCost = ranker.getCascadeCost();
+						addStageStatistics(ranker.getStageCosts(), ranker.getStageCpuTimes());
 					}
 
 					else{	
@@ -0,0 +1,297 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.cascade.retrieval;
+
+import java.util.Arrays;
+
+/**
+ * Term positions of the documents kept by a cascade, decoded once by the first stage and read by
+ * all later stages. Positions of all documents are stored in a single array: each kept document
+ * occupies a slot, which records the offset and length of the positions of each query term.
+ * <p>
+ * Positions of a candidate document are added to the end of the array as its terms are scored,
+ * and are either kept in a slot or discarded once the document's score is known. Space of
+ * documents that are evicted from the results is reclaimed by compacting the array when it fills
+ * up. Proximity matches between two terms are counted over reusable buffers, so that later stages
+ * don't allocate per document. An arena isn't thread-safe.
+ */
+public class PositionArena {
+  private static final int INITIAL_CAPACITY = 1 << 16;
+
+  private int numSlots = 0;
+  private int numTerms = 0;
+  private int[] offsets = new int[0]; // offset of the positions of a term in a slot, or -1
+  private int[] lengths = new int[0]; // number of positions of a term in a slot
+
+  private int[] data = new int[INITIAL_CAPACITY];
+  private int size = 0; // number of ints used in data
+  private int live = 0; // number of ints referenced by slots
+
+  // Positions of the candidate document.
+  private int[] pendingOffsets = new int[0];
+  private int[] pendingLengths = new int[0];
+  private int pendingStart = 0;
+
+  // Buffers for merging positions of two terms.
+  private int[] mergedPositions = new int[0];
+  private int[] mergedIds = new int[0];
+
+  /**
+   * Empties the arena, and sets the number of slots and terms per slot.
+   */
+  public void reset(int numSlots, int numTerms) {
+    this.numSlots = numSlots;
+    this.numTerms = numTerms;
+    if (offsets.length < numSlots * numTerms) {
+      offsets = new int[numSlots * numTerms];
+      lengths = new int[numSlots * numTerms];
+    }
+    Arrays.fill(offsets, 0, numSlots * numTerms, -1);
+    Arrays.fill(lengths, 0, numSlots * numTerms, 0);
+
+    if (pendingOffsets.length < numTerms) {
+      pendingOffsets = new int[numTerms];
+      pendingLengths = new int[numTerms];
+    }
+    size = 0;
+    live = 0;
+    beginDocument();
+  }
+
+  /**
+   * Starts adding positions of a candidate document.
+   */
+  public void beginDocument() {
+    Arrays.fill(pendingOffsets, 0, numTerms, -1);
+    Arrays.fill(pendingLengths, 0, numTerms, 0);
+    pendingStart = size;
+  }
+
+  /**
+   * Adds the positions of a term in the candidate document.
+   */
+  public void addPositions(int term, int[] positions, int length) {
+    ensureCapacity(length);
+    System.arraycopy(positions, 0, data, size, length);
+    pendingOffsets[term] = size;
+    pendingLengths[term] = length;
+    size += length;
+  }
+
+  /**
+   * Keeps the positions of the candidate document in a slot, replacing its previous contents.
+   */
+  public void keepDocument(int slot) {
+    release(slot);
+    int base = slot * numTerms;
+    for (int t = 0; t < numTerms; t++) {
+      offsets[base + t] = pendingOffsets[t];
+      lengths[base + t] = pendingLengths[t];
+      live += pendingLengths[t];
+    }
+    beginDocument();
+  }
+
+  /**
+   * Discards the positions of the candidate document.
+   */
+  public void discardDocument() {
+    size = pendingStart;
+    beginDocument();
+  }
+
+  /**
+   * Empties a slot, whose document was evicted from the results.
+   */
+  public void release(int slot) {
+    int base = slot * numTerms;
+    for (int t = 0; t < numTerms; t++) {
+      live -= lengths[base + t];
+      offsets[base + t] = -1;
+      lengths[base + t] = 0;
+    }
+  }
+
+  /**
+   * Returns <code>true</code> if a term occurs in the document of a slot.
+   */
+  public boolean contains(int slot, int term) {
+    return offsets[slot * numTerms + term] != -1;
+  }
+
+  /**
+   * Returns the number of positions of a term in the document of a slot.
+   */
+  public int getLength(int slot, int term) {
+    return lengths[slot * numTerms + term];
+  }
+
+  /**
+   * Returns the number of ints the arena holds, including space not yet reclaimed.
+   */
+  public int getSize() {
+    return size;
+  }
+
+  /**
+   * Counts the matches of two terms in the document of a slot, in the same way as ordered or
+   * unordered window features: for each position of either term, a match is counted if the other
+   * term occurs at or after it, within the window, and in order if required.
+   */
+  public int countMatches(int slot, int term1, int term2, int window, boolean ordered) {
+    int base = slot * numTerms;
+    int offset1 = offsets[base + term1];
+    int offset2 = offsets[base + term2];
+    if (offset1 == -1 || offset2 == -1) {
+      return 0;
+    }
+    int length1 = lengths[base + term1];
+    int length2 = lengths[base + term2];
+    int n = length1 + length2;
+
+    if (mergedPositions.length < n) {
+      mergedPositions = new int[Math.max(n, 2 * mergedPositions.length)];
+      mergedIds = new int[mergedPositions.length];
+    }
+
+    // Merge into a single stream of positions, the first term before the second at equal positions.
+    int posA = 0;
+    int posB = 0;
+    for (int i = 0; i < n; i++) {
+      if (posB == length2 || posA < length1 && data[offset1 + posA] <= data[offset2 + posB]) {
+        mergedPositions[i] = data[offset1 + posA];
+        mergedIds[i] = 0;
+        posA++;
+      } else {
+        mergedPositions[i] = data[offset2 + posB];
+        mergedIds[i] = 1;
+        posB++;
+      }
+    }
+
+    return ordered ? countOrderedMatches(n, window) : countUnorderedMatches(n, window);
+  }
+
+  private int countOrderedMatches(int n, int window) {
+    int matches = 0;
+    for (int i = 0; i < n; i++) {
+      int matchedIds = 1 << mergedIds[i];
+      int matchedIdCount = 1;
+      int maxGap = 0;
+      boolean ordered = true;
+      int lastMatchedId = mergedIds[i];
+      int lastMatchedPos = mergedPositions[i];
+
+      for (int j = i + 1; j < n; j++) {
+        int curId = mergedIds[j];
+        int curPos = mergedPositions[j];
+        if ((matchedIds & (1 << curId)) == 0) {
+          matchedIds |= 1 << curId;
+          matchedIdCount++;
+          if (curId < lastMatchedId) {
+            ordered = false;
+          }
+          if (curPos - lastMatchedPos > maxGap) {
+            maxGap = curPos - lastMatchedPos;
+          }
+        }
+        // Stop looking if the maximum gap is too large or the terms appear out of order.
+        if (maxGap > window || !ordered) {
+          break;
+        }
+        // Did we match both terms, and in order?
+        if (matchedIdCount == 2) {
+          matches++;
+          break;
+        }
+      }
+    }
+    return matches;
+  }
+
+  private int countUnorderedMatches(int n, int window) {
+    int matches = 0;
+    for (int i = 0; i < n; i++) {
+      int matchedIds = 1 << mergedIds[i];
+      int matchedIdCount = 1;
+      int startPos = mergedPositions[i];
+
+      for (int j = i + 1; j < n; j++) {
+        int curId = mergedIds[j];
+        if ((matchedIds & (1 << curId)) == 0) {
+          matchedIds |= 1 << curId;
+          matchedIdCount++;
+        }
+        // Stop looking if we've exceeded the maximum window size.
+        if (mergedPositions[j] - startPos + 1 > window) {
+          break;
+        }
+        // Did we match both terms?
+        if (matchedIdCount == 2) {
+          matches++;
+          break;
+        }
+      }
+    }
+    return matches;
+  }
+
+  private void ensureCapacity(int length) {
+    if (size + length <= data.length) {
+      return;
+    }
+
+    int pending = size - pendingStart;
+    int needed = live + pending + length;
+    int[] target = data;
+    if (needed > data.length / 2) {
+      // Mostly live: grow, rather than compacting over and over.
+      target = new int[Math.max(2 * data.length, needed)];
+    }
+    compact(target);
+  }
+
+  // Moves the positions of all slots and of the candidate document to the start of target.
+  private void compact(int[] target) {
+    int[] source = data;
+    if (target == source) {
+      source = Arrays.copyOf(data, size);
+    }
+
+    int newSize = 0;
+    for (int i = 0; i < numSlots * numTerms; i++) {
+      if (offsets[i] != -1) {
+        System.arraycopy(source, offsets[i], target, newSize, lengths[i]);
+        offsets[i] = newSize;
+        newSize += lengths[i];
+      }
+    }
+
+    int newPendingStart = newSize;
+    for (int t = 0; t < numTerms; t++) {
+      if (pendingOffsets[t] != -1) {
+        System.arraycopy(source, pendingOffsets[t], target, newSize, pendingLengths[t]);
+        pendingOffsets[t] = newSize;
+        newSize += pendingLengths[t];
+      }
+    }
+
+    data = target;
+    size = newSize;
+    pendingStart = newPendingStart;
+  }
+}
@@ -0,0 +1,82 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.core;
+
+import ivory.core.data.dictionary.DefaultFrequencySortedDictionary;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+/**
+ * Benchmark of the time it takes to initialize a {@link RetrievalEnvironment}, i.e., the
+ * start-up cost of a retrieval server. The time to load the dictionary is reported separately for
+ * the serialized and the mapped dictionary files, if the index has both; per-component times of
+ * each initialization are logged by {@link RetrievalEnvironment#initialize(boolean)}.
+ */
+public class BenchmarkRetrievalEnvironment {
+  private BenchmarkRetrievalEnvironment() {}
+
+  private static long loadDictionary(RetrievalEnvironment env, FileSystem fs, String termsPath)
+      throws Exception {
+    long startTime = System.currentTimeMillis();
+    DefaultFrequencySortedDictionary dictionary = new DefaultFrequencySortedDictionary(
+        new Path(termsPath), new Path(env.getIndexTermIdsData()),
+        new Path(env.getIndexTermIdMappingData()), fs);
+    long duration = System.currentTimeMillis() - startTime;
+
+    // Look up a term so that the dictionary is actually used.
+    dictionary.getId(dictionary.getTerm(1));
+    return duration;
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 1) {
+      System.out.println("usage: [indexPath] [numRuns]");
+      System.exit(-1);
+    }
+
+    String indexPath = args[0];
+    int numRuns = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+    FileSystem fs = FileSystem.get(new Configuration());
+    RetrievalEnvironment env = new RetrievalEnvironment(indexPath, fs);
+    boolean hasSerialized = fs.exists(new Path(env.getIndexTermsData()));
+    boolean hasMapped = fs.exists(new Path(env.getIndexTermsMappedData()));
+
+    // The first run warms up the JVM and the OS page cache.
+    for (int run = 0; run <= numRuns; run++) {
+      String label = run == 0 ? "Warm-up" : "Run " + run;
+
+      long startTime = System.currentTimeMillis();
+      new RetrievalEnvironment(indexPath, fs).initialize(true);
+      long duration = System.currentTimeMillis() - startTime;
+
+      StringBuilder sb = new StringBuilder(String.format("%s: initialize in %d ms", label,
+          duration));
+      if (hasSerialized) {
+        sb.append(String.format(", serialized dictionary in %d ms",
+            loadDictionary(env, fs, env.getIndexTermsData())));
+      }
+      if (hasMapped) {
+        sb.append(String.format(", mapped dictionary in %d ms",
+            loadDictionary(env, fs, env.getIndexTermsMappedData())));
+      }
+      System.out.println(sb);
+    }
+  }
+}
@@ -3,6 +3,7 @@ package ivory.core;
 public class Constants {
   public static final String NumMapTasks = "Ivory.NumMapTasks";
   public static final String NumReduceTasks = "Ivory.NumReduceTasks";
+  public static final String NumThreads = "Ivory.NumThreads";
   public static final String CollectionName = "Ivory.CollectionName";
   public static final String CollectionPath = "Ivory.CollectionPath";
   public static final String CollectionDocumentCount = "Ivory.CollectionDocumentCount";
@@ -15,9 +16,12 @@ public class Constants {
   public static final String DocnoMappingFile = "Ivory.DocnoMappingFile";
   public static final String DocnoOffset = "Ivory.DocnoOffset";
   public static final String PostingsListsType = "Ivory.PostingsListsType";
+  public static final String PostingsBufferSize = "Ivory.PostingsBufferSize";
   public static final String MaxDf = "Ivory.MaxDf";
   public static final String MinDf = "Ivory.MinDf";
   public static final String TermIndexWindow = "Ivory.TermIndexWindow";
   public static final String MinSplitSize = "Ivory.MinSplitSize";
   public static final String TermDocVectorSegments = "Ivory.TermDocVectorSegments";
+  public static final String ProximityWindows = "Ivory.ProximityWindows";
+  public static final String ProximityMaxTermId = "Ivory.ProximityMaxTermId";
 }
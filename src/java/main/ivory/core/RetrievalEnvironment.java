@@ -23,13 +23,20 @@ import ivory.core.data.document.TermDocVector;
 import ivory.core.data.document.TermDocVectorsForwardIndex;
 import ivory.core.data.index.IntPostingsForwardIndex;
 import ivory.core.data.index.Posting;
+import ivory.core.data.index.PostingsCache;
 import ivory.core.data.index.PostingsList;
 import ivory.core.data.index.PostingsReader;
 import ivory.core.data.index.ProximityPostingsReaderOrderedWindow;
 import ivory.core.data.index.ProximityPostingsReaderUnorderedWindow;
+import ivory.core.data.stat.CfTable;
+import ivory.core.data.stat.CfTableArray;
+import ivory.core.data.stat.DfTable;
+import ivory.core.data.stat.DfTableArray;
+import ivory.core.data.stat.DocAttributeTable;
 import ivory.core.data.stat.DocLengthTable;
 import ivory.core.data.stat.DocLengthTable2B;
 import ivory.core.data.stat.DocScoreTable;
+import ivory.core.data.stat.ProximityStatisticsTable;
 import ivory.core.exception.ConfigurationException;
 import ivory.core.tokenize.Tokenizer;
 import ivory.smrf.model.builder.Expression;
@@ -64,8 +71,15 @@ import edu.umd.cloud9.io.FSProperty;
 public class RetrievalEnvironment {
 	private static final Logger LOG = Logger.getLogger(RetrievalEnvironment.class);
 
-	// Postings reader cache.
-	private final Map<String, PostingsReader> mPostingsReaderCache = new HashMap<String, PostingsReader>(); 	
+	// Postings reader cache. Postings readers hold per-query state, so each thread gets its own
+	// cache; everything else in the environment is shared read-only by concurrent queries.
+	private final ThreadLocal<Map<String, PostingsReader>> mPostingsReaderCache =
+			new ThreadLocal<Map<String, PostingsReader>>() {
+				@Override
+				protected Map<String, PostingsReader> initialValue() {
+					return new HashMap<String, PostingsReader>();
+				}
+			};
 
 	protected int numDocs;                   // Number of documents in collection.
 	protected int numDocsLocal = -1;
@@ -76,10 +90,16 @@ public class RetrievalEnvironment {
 
 	protected String postingsType;           // Type of postings in the index.
 	protected DocLengthTable doclengths;     // Document length lookup.
+	protected DocAttributeTable docAttributes; // Quantized doc lengths and priors, if available.
 	protected Tokenizer tokenizer;           // Tokenizer for parsing queries.
+	private ThreadLocal<Tokenizer> tokenizers; // Per-thread copies, since tokenizers keep state.
 	protected DefaultFrequencySortedDictionary termidMap;  // Mapping from terms to term ids.
+	protected DfTable dfTable;               // Term statistics by term id, if available.
+	protected CfTable cfTable;
+	protected ProximityStatisticsTable proximityStats; // Statistics of frequent term pairs, if available.
 
 	protected IntPostingsForwardIndex postingsIndex;     // Forward index into postings.
+	protected final PostingsCache postingsCache = new PostingsCache(); // Postings of frequent terms.
 	protected IntDocVectorsForwardIndex docvectorsIndex; // Forward index into int doc vectors.
 
 	protected final FileSystem fs;
@@ -147,41 +167,116 @@ public class RetrievalEnvironment {
       }
 
 			LOG.info("Tokenizer: " + tokenizerClassName);
-			tokenizer = (Tokenizer) Class.forName(tokenizerClassName).newInstance();
+			final Class<?> tokenizerClass = Class.forName(tokenizerClassName);
+			tokenizer = (Tokenizer) tokenizerClass.newInstance();
+			tokenizers = new ThreadLocal<Tokenizer>() {
+				@Override
+				protected Tokenizer initialValue() {
+					try {
+						return (Tokenizer) tokenizerClass.newInstance();
+					} catch (Exception e) {
+						throw new RuntimeException("Error initializing tokenizer!", e);
+					}
+				}
+			};
 		} catch (Exception e) {
 			throw new ConfigurationException("Error initializing tokenizer!");
 		}
 
+		// Each component is timed, since together they make up the cold-start cost of a server.
+		long initStartTime = System.currentTimeMillis();
+		long startTime = initStartTime;
+
 		LOG.info("Loading postings index...");
 		postingsIndex = new IntPostingsForwardIndex(indexPath, fs);
 		LOG.info(" - Number of terms: " + readCollectionTermCount());
-		LOG.info("Done!");
+		LOG.info("Done! (" + (System.currentTimeMillis() - startTime) + " ms)");
 
+		startTime = System.currentTimeMillis();
 		try {
-			termidMap = new DefaultFrequencySortedDictionary(new Path(getIndexTermsData()),
+			// Prefer the dictionary file that is used in place over the serialized one.
+			Path termsPath = new Path(getIndexTermsMappedData());
+			if (!fs.exists(termsPath)) {
+				termsPath = new Path(getIndexTermsData());
+			}
+			LOG.info("Loading dictionary from " + termsPath + "...");
+			termidMap = new DefaultFrequencySortedDictionary(termsPath,
 			    new Path(getIndexTermIdsData()), new Path(getIndexTermIdMappingData()), fs);
+			LOG.info("Done! (" + (System.currentTimeMillis() - startTime) + " ms)");
 		} catch (Exception e) {
 			throw new ConfigurationException("Error initializing dictionary!");
 		}
 
+		// Load term statistics, so that looking up df and cf doesn't require reading postings.
+		try {
+			if (fs.exists(new Path(getDfByIntData())) && fs.exists(new Path(getCfByIntData()))) {
+				LOG.info("Loading df/cf tables...");
+				startTime = System.currentTimeMillis();
+				dfTable = new DfTableArray(new Path(getDfByIntData()), fs);
+				cfTable = new CfTableArray(new Path(getCfByIntData()), fs);
+				LOG.info(" - Number of terms: " + dfTable.getVocabularySize());
+				LOG.info("Done! (" + (System.currentTimeMillis() - startTime) + " ms)");
+			} else {
+				LOG.warn("No df/cf tables found: term statistics will be read from postings.");
+			}
+		} catch (IOException e) {
+			LOG.warn("Unable to load df/cf tables: term statistics will be read from postings.");
+			dfTable = null;
+			cfTable = null;
+		}
+
+		// Load statistics of proximity expressions over frequent term pairs.
+		try {
+			if (fs.exists(new Path(getProximityDfCfData()))) {
+				LOG.info("Loading proximity statistics...");
+				startTime = System.currentTimeMillis();
+				proximityStats = new ProximityStatisticsTable(new Path(getProximityDfCfData()), fs);
+				LOG.info(" - Number of term pairs: " + proximityStats.size());
+				LOG.info("Done! (" + (System.currentTimeMillis() - startTime) + " ms)");
+			}
+		} catch (IOException e) {
+			LOG.warn("Unable to load proximity statistics: default df/cf will be used.");
+			proximityStats = null;
+		}
+
+		startTime = System.currentTimeMillis();
 		try {
 			docvectorsIndex = new IntDocVectorsForwardIndex(indexPath, fs);
+			LOG.info("Loaded doc vectors index in " + (System.currentTimeMillis() - startTime) + " ms");
 		} catch (Exception e) {
 			LOG.warn("Unable to load IntDocVectorsForwardIndex: relevance feedback will not be available.");
 		}
 
-		// Read the table of doc lengths.
-		if (loadDoclengths) {
+		// Read the table of doc lengths, preferring the compact table of doc attributes, which also
+		// holds priors that would otherwise be loaded by loadDocScore.
+		if (loadDoclengths && fs.exists(getDocAttributesData())) {
+			LOG.info("Loading doc attributes table...");
+			startTime = System.currentTimeMillis();
+			docAttributes = new DocAttributeTable(getDocAttributesData(), fs);
+			doclengths = docAttributes;
+			LOG.info(" - Number of docs: " + doclengths.getDocCount());
+			LOG.info(" - Avg. doc length: " + doclengths.getAvgDocLength());
+			LOG.info("Done! (" + (System.currentTimeMillis() - startTime) + " ms)");
+		} else if (loadDoclengths) {
 			LOG.info("Loading doclengths table...");
+			startTime = System.currentTimeMillis();
 			doclengths = new DocLengthTable2B(getDoclengthsData(), fs);
 			LOG.info(" - Number of docs: " + doclengths.getDocCount());
 			LOG.info(" - Avg. doc length: " + doclengths.getAvgDocLength());
-			LOG.info("Done!");
+			LOG.info("Done! (" + (System.currentTimeMillis() - startTime) + " ms)");
 		}
+
+		LOG.info("Index initialized in " + (System.currentTimeMillis() - initStartTime) + " ms");
 	}
 
 	@SuppressWarnings("unchecked")
 	public void loadDocScore(String type, String provider, String path) {
+		if (docAttributes != null && docAttributes.getDocScoreTable(type) != null) {
+			LOG.info("Using doc scores of type: " + type + " from the doc attributes table.");
+			docScores.put(type, docAttributes.getDocScoreTable(type));
+			return;
+		}
+
 		LOG.info("Loading doc scores of type: " + type + ", from: " + path + ", provider: " + provider);
 		try {
 			Class<? extends DocScoreTable> clz = (Class<? extends DocScoreTable>) Class.forName(provider);
@@ -202,6 +297,25 @@ public class RetrievalEnvironment {
 		return docScores.get(type).getScore(docno);
 	}
 
+	/**
+	 * Returns the table of doc scores of a type, so that scoring doesn't have to look it up for
+	 * every document.
+	 */
+	public DocScoreTable getDocScoreTable(String type) {
+		if (!docScores.containsKey(type)) {
+			throw new RuntimeException("Error: docscore type \"" + type + "\" not found!");
+		}
+		return docScores.get(type);
+	}
+
+	/**
+	 * Returns the table of quantized doc lengths and priors, or <code>null</code> if the index
+	 * doesn't have one.
+	 */
+	public DocAttributeTable getDocAttributeTable() {
+		return docAttributes;
+	}
+
 	public static void setIsNew(boolean isNewModel){
 	  mIsNewModel = isNewModel;
 	}
@@ -270,11 +384,8 @@ public class RetrievalEnvironment {
 
 	protected PostingsReader constructPostingsReader(String expression) throws Exception {
 		//LOG.info("**constructPostingsReader("+expression+")");
-		PostingsReader reader = null;
-
-		if (mPostingsReaderCache != null) {
-			reader = mPostingsReaderCache.get(expression);
-		}
+		Map<String, PostingsReader> cache = mPostingsReaderCache.get();
+		PostingsReader reader = cache.get(expression);
 
 		if (reader == null) {
 			PostingsList list = getPostingsList(expression);
@@ -283,19 +394,40 @@ public class RetrievalEnvironment {
 			}
 
 			reader = (PostingsReader) list.getPostingsReader();
-
-			if (mPostingsReaderCache != null) {
-				mPostingsReaderCache.put(expression, reader);
-			}
+			cache.put(expression, reader);
 		}
 
 		return reader;
 	}
 
+	/**
+	 * Clears the postings reader cache of the calling thread. This doesn't affect the postings
+	 * cache, which lives as long as the environment.
+	 */
 	public void clearPostingsReaderCache() {
-		mPostingsReaderCache.clear();
+		mPostingsReaderCache.get().clear();
+	}
+
+	/**
+	 * Returns the cache of postings lists shared by all queries against this environment, for
+	 * statistics.
+	 */
+	public PostingsCache getPostingsCache() {
+		return postingsCache;
+	}
+
+	/**
+	 * Sets the maximum number of bytes of postings to keep cached. A size of zero disables the
+	 * cache; by default, it holds up to {@link PostingsCache#DEFAULT_CAPACITY} bytes.
+	 */
+	public void setPostingsCacheSize(long bytes) {
+		postingsCache.setCapacity(bytes);
 	}
 
+	/**
+	 * Returns the postings list of a term. Lists of frequently-queried terms are cached, so the
+	 * returned list is shared and must not be modified.
+	 */
 	public PostingsList getPostingsList(String term) {
 		//LOG.info("**getPostingsList("+term+")");
 		int termid = termidMap.getId(term);
@@ -310,7 +442,11 @@ public class RetrievalEnvironment {
 		}
 		//LOG.info("termid: "+termid);
 
-		PostingsList value;
+		PostingsList value = postingsCache.get(termid);
+		if (value != null) {
+			return value;
+		}
+
 		try {
 			value = postingsIndex.getPostingsList(termid);
 
@@ -328,23 +464,27 @@ public class RetrievalEnvironment {
 		} else {
 			value.setCollectionDocumentCount(numDocs);
 		}
+		postingsCache.put(termid, value);
 
 		return value;
 	}
 
 	public IntDocVector[] documentVectors(int[] docSet) {
-		IntDocVector[] dvs = new IntDocVector[docSet.length];
-
 		try {
-			for (int i = 0; i < docSet.length; i++) {
-				dvs[i] = docvectorsIndex.getDocVector(docSet[i]);
-			}
+			return docvectorsIndex.getDocVectors(docSet);
 		} catch (IOException e) {
 			LOG.error("Unable to retrieve document vectors!");
 			return null;
 		}
+	}
 
-		return dvs;
+	/**
+	 * Returns whether or not term statistics are held in memory, in which case
+	 * {@link #documentFrequency(String)} and {@link #collectionFrequency(String)} don't read
+	 * any postings.
+	 */
+	public boolean hasTermStatistics() {
+		return dfTable != null && cfTable != null;
 	}
 
 	/**
@@ -358,6 +498,11 @@ public class RetrievalEnvironment {
 			return defaultCf;
 		}
 
+		if (cfTable != null) {
+			int termid = termidMap.getId(expression);
+			return termid > 0 && termid <= cfTable.getVocabularySize() ? cfTable.getCf(termid) : 0;
+		}
+
 		try {
 			return getPostingsList(expression).getCf();
 		} catch (Exception e) {
@@ -377,6 +522,11 @@ public class RetrievalEnvironment {
 			return defaultDf;
 		}
 
+		if (dfTable != null) {
+			int termid = termidMap.getId(expression);
+			return termid > 0 && termid <= dfTable.getVocabularySize() ? dfTable.getDf(termid) : 0;
+		}
+
 		try {
 			return getPostingsList(expression).getDf();
 		} catch (Exception e) {
@@ -385,6 +535,54 @@ public class RetrievalEnvironment {
 		}
 	}
 
+	/**
+	 * Returns the document frequency of an expression. Proximity expressions
+	 * over two terms are looked up among the precomputed statistics of
+	 * frequent term pairs, if available; pairs these cover but left out for
+	 * being rare get a df just below the statistics' minimum df. Other
+	 * proximity expressions get the default df.
+	 */
+	public int documentFrequency(Expression expression) {
+		if (expression.getType().equals(Expression.Type.TERM)) {
+			return documentFrequency(expression.getTerms()[0]);
+		}
+
+		int df = -1;
+		if (hasProximityStatistics(expression)) {
+			df = proximityStats.getDf(expression.getType().equals(Expression.Type.OD),
+			    expression.getWindow(), termidMap.getId(expression.getTerms()[0]),
+			    termidMap.getId(expression.getTerms()[1]));
+		}
+		return df < 0 ? defaultDf : df;
+	}
+
+	/**
+	 * Returns the collection frequency of an expression. Proximity expressions
+	 * over two terms are looked up among the precomputed statistics of
+	 * frequent term pairs, if available; pairs these cover but left out for
+	 * being rare get a cf matching their df. Other proximity expressions get
+	 * the default cf.
+	 */
+	public long collectionFrequency(Expression expression) {
+		if (expression.getType().equals(Expression.Type.TERM)) {
+			return collectionFrequency(expression.getTerms()[0]);
+		}
+
+		long cf = -1;
+		if (hasProximityStatistics(expression)) {
+			cf = proximityStats.getCf(expression.getType().equals(Expression.Type.OD),
+			    expression.getWindow(), termidMap.getId(expression.getTerms()[0]),
+			    termidMap.getId(expression.getTerms()[1]));
+		}
+		return cf < 0 ? defaultCf : cf;
+	}
+
+	private boolean hasProximityStatistics(Expression expression) {
+		return proximityStats != null && expression.getTerms().length == 2
+		    && (expression.getType().equals(Expression.Type.OD)
+		        || expression.getType().equals(Expression.Type.UW));
+	}
+
 	public String getTermFromId(int termid) {
 		return termidMap.getTerm(termid);
 	}
@@ -402,7 +600,8 @@ public class RetrievalEnvironment {
 	 * @return array of tokens
 	 */
 	public String[] tokenize(String text) {
-		return tokenizer.processContent(text);
+		return tokenizers == null ? tokenizer.processContent(text)
+				: tokenizers.get().processContent(text);
 	}
 
 	/**
@@ -456,6 +655,15 @@ public class RetrievalEnvironment {
 		return createPath(indexPath, "doclengths/");
 	}
 
+	/**
+	 * Returns file that contains quantized document lengths and priors, interleaved
+	 * by docno. This file serves as input to {@link DocAttributeTable}, which is
+	 * used instead of the document length data if the file exists.
+	 */
+	public Path getDocAttributesData() {
+		return createPath(indexPath, "doc-attributes.dat");
+	}
+
 	public String getPostingsDirectory() {
 		return appendPath(indexPath, "postings/");
 	}
@@ -533,6 +741,15 @@ public class RetrievalEnvironment {
 		return appendPath(indexPath, "index-terms.dat");
 	}
 
+	/**
+	 * Returns file that contains the same terms as {@link #getIndexTermsData()}
+	 * in the format of {@link ivory.core.data.dictionary.MappedFrontCodedDictionary},
+	 * which is used in place rather than deserialized.
+	 */
+	public String getIndexTermsMappedData() {
+		return appendPath(indexPath, "index-terms-mapped.dat");
+	}
+
 	/**
 	 * Returns file that contains term ids sorted by the alphabetical order of
 	 * terms. The file consists of a stream of ints, read into an array. The
@@ -598,6 +815,15 @@ public class RetrievalEnvironment {
 		return appendPath(indexPath, "cf-by-int.dat");
 	}
 
+	/**
+	 * Returns file that contains the df and cf of ordered and unordered
+	 * windows of frequent term pairs. This file serves as input to
+	 * {@link ProximityStatisticsTable}.
+	 */
+	public String getProximityDfCfData() {
+		return appendPath(indexPath, "proximity-df-cf.dat");
+	}
+
 	/**
 	 * Returns file that contains an index into the postings. This file serves
 	 * as input to {@link IntPostingsForwardIndex}, which provides random access
@@ -0,0 +1,215 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.core.compression;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>
+ * Patched frame-of-reference (PForDelta) coding of blocks of up to {@link #BLOCK_SIZE}
+ * non-negative integers, typically d-gaps. Each block is packed into 32-bit words with a fixed
+ * bit width <i>b</i>, chosen to minimize the size of the block; values that do not fit into
+ * <i>b</i> bits are stored as exceptions and patched in after unpacking. Unlike
+ * {@link BitInputStream}, decoding works on whole blocks with simple loops over {@code int}
+ * arrays.
+ * </p>
+ *
+ * <p>
+ * A compressed block is laid out as follows:
+ * </p>
+ *
+ * <ul>
+ * <li>a header word holding the number of values (bits 0-7), the bit width (bits 8-15) and the
+ * number of exceptions (bits 16-23);</li>
+ * <li>the low <i>b</i> bits of every value, packed into &lceil;<i>n</i> &times; <i>b</i> /
+ * 32&rceil; words;</li>
+ * <li>the positions of the exceptions, four to a word;</li>
+ * <li>the high bits (i.e., value &gt;&gt;&gt; <i>b</i>) of every exception, one word each.</li>
+ * </ul>
+ */
+public final class PForDelta {
+  /**
+   * Maximum number of values in a block.
+   */
+  public static final int BLOCK_SIZE = 128;
+
+  private PForDelta() {}
+
+  /**
+   * Returns an upper bound on the number of words needed to compress a block of {@code n}
+   * values.
+   */
+  public static int maxCompressedLength(int n) {
+    return 1 + n + (n + 3) / 4 + n;
+  }
+
+  /**
+   * Compresses a block of values.
+   *
+   * @param in source array
+   * @param inOffset offset of the first value in {@code in}
+   * @param n number of values, at most {@link #BLOCK_SIZE}
+   * @param out destination array, with room for at least {@link #maxCompressedLength(int)} words
+   * @param outOffset offset in {@code out} at which to start writing
+   * @return offset in {@code out} right after the compressed block
+   */
+  public static int compress(int[] in, int inOffset, int n, int[] out, int outOffset) {
+    Preconditions.checkArgument(n > 0 && n <= BLOCK_SIZE);
+
+    // Histogram of the number of bits needed by each value.
+    int[] counts = new int[33];
+    for (int i = 0; i < n; i++) {
+      int v = in[inOffset + i];
+      Preconditions.checkArgument(v >= 0, "Negative value: " + v);
+      counts[32 - Integer.numberOfLeadingZeros(v)]++;
+    }
+
+    // Pick the bit width that minimizes the compressed size.
+    int bits = 32;
+    int exceptions = 0;
+    int bestSize = n;
+    int larger = 0;
+    for (int b = 31; b >= 0; b--) {
+      larger += counts[b + 1];
+      int size = (n * b + 31) / 32 + (larger + 3) / 4 + larger;
+      if (size <= bestSize) {
+        bestSize = size;
+        bits = b;
+        exceptions = larger;
+      }
+    }
+
+    out[outOffset] = (n & 0xff) | (bits << 8) | (exceptions << 16);
+    int pos = outOffset + 1;
+
+    // Pack the low bits of every value.
+    int words = (n * bits + 31) / 32;
+    for (int i = 0; i < words; i++) {
+      out[pos + i] = 0;
+    }
+    if (bits == 32) {
+      System.arraycopy(in, inOffset, out, pos, n);
+    } else if (bits > 0) {
+      int mask = (1 << bits) - 1;
+      for (int i = 0, bitPos = 0; i < n; i++, bitPos += bits) {
+        int v = in[inOffset + i] & mask;
+        int w = pos + (bitPos >>> 5);
+        int shift = bitPos & 31;
+        out[w] |= v << shift;
+        if (shift + bits > 32) {
+          out[w + 1] |= v >>> (32 - shift);
+        }
+      }
+    }
+    pos += words;
+
+    if (exceptions > 0) {
+      // Exception positions, four to a word, followed by their high bits.
+      int excWords = (exceptions + 3) / 4;
+      for (int i = 0; i < excWords; i++) {
+        out[pos + i] = 0;
+      }
+      int highPos = pos + excWords;
+      int e = 0;
+      for (int i = 0; i < n; i++) {
+        int v = in[inOffset + i];
+        if ((v >>> bits) != 0) {
+          out[pos + (e >>> 2)] |= i << ((e & 3) << 3);
+          out[highPos + e] = v >>> bits;
+          e++;
+        }
+      }
+      pos = highPos + exceptions;
+    }
+
+    return pos;
+  }
+
+  /**
+   * Returns the number of values in the compressed block starting at {@code offset}.
+   */
+  public static int getBlockLength(int[] in, int offset) {
+    return in[offset] & 0xff;
+  }
+
+  /**
+   * Decompresses a block of values.
+   *
+   * @param in source array
+   * @param inOffset offset of the compressed block in {@code in}
+   * @param out destination array, with room for {@link #getBlockLength(int[], int)} values
+   * @param outOffset offset in {@code out} at which to start writing
+   * @return offset in {@code in} right after the compressed block
+   */
+  public static int decompress(int[] in, int inOffset, int[] out, int outOffset) {
+    int header = in[inOffset];
+    int n = getBlockLength(in, inOffset);
+    int bits = (header >>> 8) & 0xff;
+    int exceptions = (header >>> 16) & 0xff;
+    int pos = inOffset + 1;
+
+    if (bits == 32) {
+      System.arraycopy(in, pos, out, outOffset, n);
+    } else if (bits == 0) {
+      for (int i = 0; i < n; i++) {
+        out[outOffset + i] = 0;
+      }
+    } else {
+      unpack(in, pos, out, outOffset, n, bits);
+    }
+    pos += (n * bits + 31) / 32;
+
+    if (exceptions > 0) {
+      int highPos = pos + (exceptions + 3) / 4;
+      for (int e = 0; e < exceptions; e++) {
+        int i = (in[pos + (e >>> 2)] >>> ((e & 3) << 3)) & 0xff;
+        out[outOffset + i] |= in[highPos + e] << bits;
+      }
+      pos = highPos + exceptions;
+    }
+
+    return pos;
+  }
+
+  /**
+   * Returns the offset right after the compressed block starting at {@code offset}, without
+   * decompressing it.
+   */
+  public static int skip(int[] in, int offset) {
+    int header = in[offset];
+    int n = getBlockLength(in, offset);
+    int bits = (header >>> 8) & 0xff;
+    int exceptions = (header >>> 16) & 0xff;
+
+    return offset + 1 + (n * bits + 31) / 32 + (exceptions + 3) / 4 + exceptions;
+  }
+
+  private static void unpack(int[] in, int inOffset, int[] out, int outOffset, int n, int bits) {
+    int mask = (1 << bits) - 1;
+
+    // Values that straddle two words are the only branch in the inner loop.
+    for (int i = 0, bitPos = 0; i < n; i++, bitPos += bits) {
+      int w = inOffset + (bitPos >>> 5);
+      int shift = bitPos & 31;
+      int v = in[w] >>> shift;
+      if (shift + bits > 32) {
+        v |= in[w + 1] << (32 - shift);
+      }
+      out[outOffset + i] = v & mask;
+    }
+  }
+}
@@ -17,10 +17,12 @@
 package ivory.core.data.dictionary;
 
 import ivory.core.RetrievalEnvironment;
+import ivory.core.util.FileBuffers;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
 import java.util.Iterator;
 
 import org.apache.hadoop.conf.Configuration;
@@ -35,38 +37,36 @@ import org.apache.hadoop.fs.Path;
  * @author Jimmy Lin
  */
 public class DefaultFrequencySortedDictionary implements FrequencySortedDictionary {
-  private FrontCodedDictionary dictionary = new FrontCodedDictionary();
+  private LexicographicallySortedDictionary dictionary;
   private int[] ids;
   private int[] idsToTerm;
 
   /**
-   * Constructs an instance of this dictionary from serialized data files.
+   * Constructs an instance of this dictionary from serialized data files. The terms are read from
+   * either a {@link MappedFrontCodedDictionary} file or a serialized {@link FrontCodedDictionary},
+   * depending on the format of {@code prefixPath}.
    */
   public DefaultFrequencySortedDictionary(Path prefixPath, Path idsPath, Path idToTermPath,
       FileSystem fs) throws IOException {
-    FSDataInputStream in;
-
-    in = fs.open(prefixPath);
-    dictionary.readFields(in);
-    in.close();
-
-    int l = 0;
-
-    in = fs.open(idsPath);
-    l = in.readInt();
-    ids = new int[l];
-    for (int i = 0; i < l; i++) {
-      ids[i] = in.readInt();
+    if (MappedFrontCodedDictionary.isDictionaryFile(prefixPath, fs)) {
+      dictionary = new MappedFrontCodedDictionary(prefixPath, fs);
+    } else {
+      FrontCodedDictionary frontCodedDictionary = new FrontCodedDictionary();
+      FSDataInputStream in = fs.open(prefixPath);
+      frontCodedDictionary.readFields(in);
+      in.close();
+      dictionary = frontCodedDictionary;
     }
-    in.close();
 
-    in = fs.open(idToTermPath);
-    l = in.readInt();
-    idsToTerm = new int[l];
-    for (int i = 0; i < l; i++) {
-      idsToTerm[i] = in.readInt();
-    }
-    in.close();
+    ids = readInts(idsPath, fs);
+    idsToTerm = readInts(idToTermPath, fs);
+  }
+
+  private static int[] readInts(Path path, FileSystem fs) throws IOException {
+    ByteBuffer buffer = FileBuffers.map(fs, path);
+    int[] values = new int[buffer.getInt()];
+    FileBuffers.readInts(buffer, values);
+    return values;
   }
 
   @Override
@@ -0,0 +1,331 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.core.data.dictionary;
+
+import ivory.core.RetrievalEnvironment;
+import ivory.core.util.FileBuffers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import com.google.common.collect.Lists;
+
+/**
+ * A front-coded {@link LexicographicallySortedDictionary} stored in a flat file that is used in
+ * place, memory-mapped if possible, rather than deserialized into objects. Terms are sorted by
+ * {@link String#compareTo(String)}, which is the same order as
+ * {@link DictionaryTransformationStrategy.Comparator}, so term ids are the same as those of
+ * {@link FrontCodedDictionary} built over the same terms.
+ * <p>
+ * Terms are grouped into blocks. The first term of a block is stored in full, and every other term
+ * as the length of the prefix it shares with the previous term followed by the remaining
+ * characters. All numbers within blocks, characters included, are variable-length encoded, seven
+ * bits per byte. The file consists of:
+ * </p>
+ *
+ * <ul>
+ * <li>a magic number, the number of terms, the number of terms per block, the length of the
+ * longest term, and the number of blocks <i>b</i>, as ints;</li>
+ * <li><i>b</i> ints, the offset of each block from the start of the block data;</li>
+ * <li>the block data.</li>
+ * </ul>
+ *
+ * <p>
+ * A term is looked up by binary search over the first terms of blocks, followed by a scan of one
+ * block. Lookups only use absolute reads of the underlying buffer and are thread-safe.
+ * </p>
+ */
+public class MappedFrontCodedDictionary implements LexicographicallySortedDictionary {
+  public static final int MAGIC = 0x46434431; // "FCD1"
+  public static final int DEFAULT_BLOCK_SIZE = 16;
+
+  private static final int HEADER_INTS = 5;
+
+  private final ByteBuffer buffer;
+  private final int numTerms;
+  private final int blockSize;
+  private final int maxLength;
+  private final int numBlocks;
+  private final int dataStart;
+
+  /**
+   * Opens a dictionary file.
+   *
+   * @param path dictionary file
+   * @param fs FileSystem to read from
+   * @throws IOException
+   */
+  public MappedFrontCodedDictionary(Path path, FileSystem fs) throws IOException {
+    buffer = FileBuffers.map(fs, path);
+    if (buffer.getInt(0) != MAGIC) {
+      throw new IOException(path + " is not a front-coded dictionary file.");
+    }
+    numTerms = buffer.getInt(4);
+    blockSize = buffer.getInt(8);
+    maxLength = buffer.getInt(12);
+    numBlocks = buffer.getInt(16);
+    dataStart = 4 * (HEADER_INTS + numBlocks);
+  }
+
+  /**
+   * Returns <code>true</code> if a file is a dictionary file, as opposed to, for example, a
+   * serialized {@link FrontCodedDictionary}.
+   */
+  public static boolean isDictionaryFile(Path path, FileSystem fs) throws IOException {
+    if (!fs.exists(path) || fs.getFileStatus(path).getLen() < 4 * HEADER_INTS) {
+      return false;
+    }
+    FSDataInputStream in = fs.open(path);
+    try {
+      return in.readInt() == MAGIC;
+    } finally {
+      in.close();
+    }
+  }
+
+  @Override
+  public int size() {
+    return numTerms;
+  }
+
+  @Override
+  public int getId(String term) {
+    if (numTerms == 0) {
+      return -1;
+    }
+
+    // Find the last block whose first term isn't greater than the term.
+    int low = 0;
+    int high = numBlocks - 1;
+    while (low < high) {
+      int mid = (low + high + 1) >>> 1;
+      if (compareFirstTerm(mid, term) <= 0) {
+        low = mid;
+      } else {
+        high = mid - 1;
+      }
+    }
+
+    char[] chars = new char[maxLength];
+    int[] cursor = new int[] { blockOffset(low) };
+    int end = Math.min(blockSize, numTerms - low * blockSize);
+    for (int i = 0; i < end; i++) {
+      int length = decodeTerm(cursor, chars, i == 0);
+      int cmp = compare(chars, length, term);
+      if (cmp == 0) {
+        return low * blockSize + i;
+      }
+      if (cmp > 0) {
+        break;
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  public String getTerm(int id) {
+    if (id < 0 || id >= numTerms) {
+      return null;
+    }
+
+    char[] chars = new char[maxLength];
+    int[] cursor = new int[] { blockOffset(id / blockSize) };
+    int length = 0;
+    for (int i = 0; i <= id % blockSize; i++) {
+      length = decodeTerm(cursor, chars, i == 0);
+    }
+    return new String(chars, 0, length);
+  }
+
+  /**
+   * Returns an iterator over the terms, in order of term id.
+   */
+  @Override
+  public Iterator<String> iterator() {
+    return new Iterator<String>() {
+      private final char[] chars = new char[maxLength];
+      private final int[] cursor = new int[] { dataStart };
+      private int cur = 0;
+
+      @Override
+      public boolean hasNext() {
+        return cur < numTerms;
+      }
+
+      @Override
+      public String next() {
+        int length = decodeTerm(cursor, chars, cur % blockSize == 0);
+        cur++;
+        return new String(chars, 0, length);
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+
+  private int blockOffset(int block) {
+    return dataStart + buffer.getInt(4 * (HEADER_INTS + block));
+  }
+
+  // Decodes the term at the cursor over the previous term in chars, advances the cursor to the
+  // next term, and returns the length of the term.
+  private int decodeTerm(int[] cursor, char[] chars, boolean first) {
+    int prefix = first ? 0 : readVInt(cursor);
+    int suffix = readVInt(cursor);
+    for (int i = 0; i < suffix; i++) {
+      chars[prefix + i] = (char) readVInt(cursor);
+    }
+    return prefix + suffix;
+  }
+
+  // Compares the first term of a block with a term, without decoding it into an array.
+  private int compareFirstTerm(int block, String term) {
+    int[] cursor = new int[] { blockOffset(block) };
+    int length = readVInt(cursor);
+    int n = Math.min(length, term.length());
+    for (int i = 0; i < n; i++) {
+      int c = readVInt(cursor);
+      if (c != term.charAt(i)) {
+        return c - term.charAt(i);
+      }
+    }
+    return length - term.length();
+  }
+
+  private static int compare(char[] chars, int length, String term) {
+    int n = Math.min(length, term.length());
+    for (int i = 0; i < n; i++) {
+      if (chars[i] != term.charAt(i)) {
+        return chars[i] - term.charAt(i);
+      }
+    }
+    return length - term.length();
+  }
+
+  private int readVInt(int[] cursor) {
+    int value = 0;
+    int shift = 0;
+    byte b;
+    do {
+      b = buffer.get(cursor[0]++);
+      value |= (b & 0x7F) << shift;
+      shift += 7;
+    } while (b < 0);
+    return value;
+  }
+
+  /**
+   * Writes a dictionary file.
+   *
+   * @param terms terms, sorted by {@link String#compareTo(String)}
+   * @param blockSize number of terms per block
+   * @param out stream to write to
+   * @throws IOException
+   */
+  public static void write(List<String> terms, int blockSize, DataOutput out) throws IOException {
+    int numBlocks = (terms.size() + blockSize - 1) / blockSize;
+    int[] offsets = new int[numBlocks];
+    int maxLength = 0;
+    ByteArrayOutputStream data = new ByteArrayOutputStream();
+
+    String previous = null;
+    for (int i = 0; i < terms.size(); i++) {
+      String term = terms.get(i);
+      if (previous != null && previous.compareTo(term) >= 0) {
+        throw new IllegalArgumentException("Terms out of order: \"" + previous + "\", \"" + term
+            + "\"");
+      }
+      maxLength = Math.max(maxLength, term.length());
+
+      int prefix = 0;
+      if (i % blockSize == 0) {
+        offsets[i / blockSize] = data.size();
+      } else {
+        int n = Math.min(previous.length(), term.length());
+        while (prefix < n && previous.charAt(prefix) == term.charAt(prefix)) {
+          prefix++;
+        }
+        writeVInt(data, prefix);
+      }
+      writeVInt(data, term.length() - prefix);
+      for (int j = prefix; j < term.length(); j++) {
+        writeVInt(data, term.charAt(j));
+      }
+      previous = term;
+    }
+
+    out.writeInt(MAGIC);
+    out.writeInt(terms.size());
+    out.writeInt(blockSize);
+    out.writeInt(maxLength);
+    out.writeInt(numBlocks);
+    for (int offset : offsets) {
+      out.writeInt(offset);
+    }
+    out.write(data.toByteArray());
+  }
+
+  private static void writeVInt(ByteArrayOutputStream out, int value) {
+    while ((value & ~0x7F) != 0) {
+      out.write((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.write(value);
+  }
+
+  /**
+   * Converts the serialized {@link FrontCodedDictionary} of an index into a dictionary file, for
+   * indexes built before dictionary files were written along with it.
+   */
+  public static void main(String[] args) throws Exception {
+    if (args.length != 1) {
+      System.out.println("usage: [index-path]");
+      System.exit(-1);
+    }
+
+    FileSystem fs = FileSystem.get(new Configuration());
+    RetrievalEnvironment env = new RetrievalEnvironment(args[0], fs);
+
+    FrontCodedDictionary dictionary = new FrontCodedDictionary();
+    FSDataInputStream in = fs.open(new Path(env.getIndexTermsData()));
+    dictionary.readFields(in);
+    in.close();
+
+    List<String> terms = Lists.newArrayListWithCapacity(dictionary.size());
+    for (int i = 0; i < dictionary.size(); i++) {
+      terms.add(dictionary.getTerm(i));
+    }
+
+    FSDataOutputStream out = fs.create(new Path(env.getIndexTermsMappedData()), true);
+    write(terms, DEFAULT_BLOCK_SIZE, out);
+    out.close();
+    System.out.println("Wrote " + terms.size() + " terms to " + env.getIndexTermsMappedData());
+  }
+}
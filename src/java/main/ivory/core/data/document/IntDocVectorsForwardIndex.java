@@ -22,8 +22,11 @@ import ivory.core.preprocess.BuildIntDocVectorsForwardIndex;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.text.DecimalFormat;
-import java.text.NumberFormat;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FSDataInputStream;
@@ -40,7 +43,9 @@ import edu.umd.cloud9.debug.MemoryUsageUtils;
 /**
  * Object providing an index into one or more {@code SequenceFile}s
  * containing {@link IntDocVector}s, providing random access to the document
- * vectors.
+ * vectors. Recently fetched document vectors are kept in a bounded LRU cache,
+ * since the same documents tend to come up again and again in pseudo-relevance
+ * feedback.
  *
  * @see BuildIntDocVectorsForwardIndex
  *
@@ -48,7 +53,11 @@ import edu.umd.cloud9.debug.MemoryUsageUtils;
  */
 public class IntDocVectorsForwardIndex {
   private static final Logger LOG = Logger.getLogger(IntDocVectorsForwardIndex.class);
-  private static final NumberFormat FORMAT = new DecimalFormat("00000");
+
+  /**
+   * Default maximum number of document vectors to cache.
+   */
+  public static final int DEFAULT_CACHE_CAPACITY = 10000;
 
   // This is 10^15 (i.e., an exabyte). We're assuming that each individual file is smaller than
   // this value, which seems safe, at least for a while... :)
@@ -61,6 +70,18 @@ public class IntDocVectorsForwardIndex {
   private final int docnoOffset;
   private final int collectionDocumentCount;
 
+  // Guarded by itself; access-ordered, so iteration order is least recently used first.
+  private final LinkedHashMap<Integer, IntDocVector> cache =
+      new LinkedHashMap<Integer, IntDocVector>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, IntDocVector> eldest) {
+          return size() > cacheCapacity;
+        }
+      };
+  private volatile int cacheCapacity = DEFAULT_CACHE_CAPACITY;
+
   /**
    * Creates an {@code IntDocVectorsIndex} object.
    *
@@ -101,49 +122,138 @@ public class IntDocVectorsForwardIndex {
     }
   }
 
+  /**
+   * Sets the maximum number of document vectors to cache. A capacity of zero disables caching.
+   */
+  public void setCacheCapacity(int capacity) {
+    Preconditions.checkArgument(capacity >= 0);
+    synchronized (cache) {
+      cacheCapacity = capacity;
+      Iterator<Integer> it = cache.keySet().iterator();
+      while (cache.size() > capacity) {
+        it.next();
+        it.remove();
+      }
+    }
+  }
+
   /**
    * Returns the document vector given a docno.
    *
    * @return {@code IntDocVector} for the appropriate docno
    */
   public IntDocVector getDocVector(int docno) throws IOException {
-    Preconditions.checkArgument(!(docno > collectionDocumentCount || docno < 1));
+    return getDocVectors(new int[] { docno })[0];
+  }
 
-    long pos = positions[docno - docnoOffset - 1];
+  /**
+   * Returns the document vectors of a set of docnos. Vectors not already in the cache are read
+   * with a single sequential pass over each of the files they are in, in order of position within
+   * the file, rather than by opening a reader and seeking for every docno.
+   *
+   * @return {@code IntDocVector}s for the docnos, in the same order; an entry is {@code null} if
+   *     the document vector could not be found
+   */
+  public IntDocVector[] getDocVectors(int[] docnos) throws IOException {
+    final long[] pos = new long[docnos.length];
+    IntDocVector[] dvs = new IntDocVector[docnos.length];
+    Integer[] misses = new Integer[docnos.length];
+    int numMisses = 0;
 
-    int fileNo = (int) (pos / BigNumber);
-    pos = pos % BigNumber;
+    synchronized (cache) {
+      for (int i = 0; i < docnos.length; i++) {
+        int docno = docnos[i];
+        Preconditions.checkArgument(!(docno > collectionDocumentCount || docno < 1));
 
-    SequenceFile.Reader reader = null;
-    try {
-      reader = new SequenceFile.Reader(fs,
-          new Path(path + "/part-m-" + FORMAT.format(fileNo)), conf);
-    } catch (IOException e) {
-      // Try alternative naming scheme for the old API.
-      reader = new SequenceFile.Reader(fs,
-          new Path(path + "/part-" + FORMAT.format(fileNo)), conf);
+        dvs[i] = cache.get(docno);
+        if (dvs[i] == null) {
+          pos[i] = positions[docno - docnoOffset - 1];
+          misses[numMisses++] = i;
+        }
+      }
     }
 
-    IntWritable key = new IntWritable();
-    IntDocVector value;
+    if (numMisses == 0) {
+      return dvs;
+    }
 
+    // Since the position encodes the file number in its high digits, sorting by position
+    // groups requests by file, and orders them by offset within each file.
+    Arrays.sort(misses, 0, numMisses, new Comparator<Integer>() {
+      public int compare(Integer a, Integer b) {
+        return pos[a] < pos[b] ? -1 : (pos[a] == pos[b] ? 0 : 1);
+      }
+    });
+
+    SequenceFile.Reader reader = null;
+    int curFileNo = -1;
+    IntWritable key = new IntWritable();
     try {
-      value = (IntDocVector) reader.getValueClass().newInstance();
-    } catch (Exception e) {
-      throw new RuntimeException("Unable to instantiate key/value pair!");
-    }
+      for (int m = 0; m < numMisses; m++) {
+        int i = misses[m];
+        if (m > 0 && pos[i] == pos[misses[m - 1]]) {
+          // Same docno requested more than once.
+          dvs[i] = dvs[misses[m - 1]];
+          continue;
+        }
+
+        int fileNo = (int) (pos[i] / BigNumber);
+        long offset = pos[i] % BigNumber;
+        if (fileNo != curFileNo) {
+          if (reader != null) {
+            reader.close();
+          }
+          reader = openReader(fileNo);
+          curFileNo = fileNo;
+        }
+
+        IntDocVector value;
+        try {
+          value = (IntDocVector) reader.getValueClass().newInstance();
+        } catch (Exception e) {
+          throw new RuntimeException("Unable to instantiate key/value pair!");
+        }
 
-    reader.seek(pos);
-    reader.next(key, value);
+        // Consecutive records are read without seeking.
+        if (reader.getPosition() != offset) {
+          reader.seek(offset);
+        }
+        reader.next(key, value);
 
-    if (key.get() != docno) {
-      LOG.error("unable to doc vector for docno " + docno + ": found docno " + key
-          + " instead");
-      return null;
+        if (key.get() != docnos[i]) {
+          LOG.error("unable to doc vector for docno " + docnos[i] + ": found docno " + key
+              + " instead");
+          continue;
+        }
+        dvs[i] = value;
+      }
+    } finally {
+      if (reader != null) {
+        reader.close();
+      }
     }
 
-    reader.close();
-    return value;
+    synchronized (cache) {
+      for (int m = 0; m < numMisses; m++) {
+        int i = misses[m];
+        if (dvs[i] != null && cacheCapacity > 0) {
+          cache.put(docnos[i], dvs[i]);
+        }
+      }
+    }
+
+    return dvs;
+  }
+
+  private SequenceFile.Reader openReader(int fileNo) throws IOException {
+    try {
+      return new SequenceFile.Reader(fs,
+          new Path(path + "/part-m-" + String.format("%05d", fileNo)), conf);
+    } catch (IOException e) {
+      // Try alternative naming scheme for the old API.
+      return new SequenceFile.Reader(fs,
+          new Path(path + "/part-" + String.format("%05d", fileNo)), conf);
+    }
   }
 
   /**
@@ -0,0 +1,106 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.core.data.index;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+
+/**
+ * Benchmark comparing postings lookups per second through {@link IntPostingsForwardIndex} with
+ * and without long-lived postings segments. Both configurations fetch the same random sample of
+ * terms.
+ */
+public class BenchmarkIntPostingsForwardIndex {
+  private BenchmarkIntPostingsForwardIndex() {}
+
+  private static double run(final IntPostingsForwardIndex index, final int[] termids,
+      int numThreads) throws Exception {
+    ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+    List<Future<Long>> futures = new ArrayList<Future<Long>>();
+
+    long startTime = System.currentTimeMillis();
+    for (int t = 0; t < numThreads; t++) {
+      final int offset = t;
+      final int stride = numThreads;
+      futures.add(pool.submit(new Callable<Long>() {
+        public Long call() throws Exception {
+          long postings = 0;
+          for (int i = offset; i < termids.length; i += stride) {
+            postings += index.getPostingsList(termids[i]).getNumberOfPostings();
+          }
+          return postings;
+        }
+      }));
+    }
+
+    long postings = 0;
+    for (Future<Long> f : futures) {
+      postings += f.get();
+    }
+    long duration = System.currentTimeMillis() - startTime;
+    pool.shutdown();
+
+    System.out.println(String.format("  %d lookups (%d postings) in %d ms: %.1f lookups/s",
+        termids.length, postings, duration, termids.length * 1000.0 / Math.max(duration, 1)));
+    return termids.length * 1000.0 / Math.max(duration, 1);
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 2) {
+      System.out.println("usage: [indexPath] [numLookups] [numThreads]");
+      System.exit(-1);
+    }
+
+    String indexPath = args[0];
+    int numLookups = Integer.parseInt(args[1]);
+    int numThreads = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+
+    FileSystem fs = FileSystem.getLocal(new Configuration());
+    IntPostingsForwardIndex uncached = new IntPostingsForwardIndex(indexPath, fs, false);
+    IntPostingsForwardIndex cached = new IntPostingsForwardIndex(indexPath, fs, true);
+
+    Random r = new Random(0);
+    int[] termids = new int[numLookups];
+    for (int i = 0; i < numLookups; i++) {
+      int termid;
+      do {
+        termid = r.nextInt(cached.getTermCount()) + 1;
+      } while (!cached.hasPostings(termid));
+      termids[i] = termid;
+    }
+
+    // Warm up both code paths (and the OS page cache) before measuring.
+    run(uncached, termids, numThreads);
+    run(cached, termids, numThreads);
+
+    System.out.println("Re-opening part file on every lookup:");
+    double before = run(uncached, termids, numThreads);
+    System.out.println("Long-lived postings segments:");
+    double after = run(cached, termids, numThreads);
+
+    System.out.println(String.format("Speedup: %.2fx", after / before));
+    cached.close();
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.core.data.index;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Benchmark comparing the size and decoding speed of the Golomb/gamma postings formats against
+ * the block-based {@link ivory.core.compression.PForDelta} formats. Postings lists are generated
+ * synthetically, with document frequencies following a power law, and decoded repeatedly both
+ * with and without positions.
+ */
+public class BenchmarkPostingsCodecs {
+  private BenchmarkPostingsCodecs() {}
+
+  private static List<PostingsList> generate(Class<? extends PostingsList> clazz, int numLists,
+      int numDocs, long seed) throws Exception {
+    Random r = new Random(seed);
+    List<PostingsList> lists = new ArrayList<PostingsList>();
+
+    for (int l = 0; l < numLists; l++) {
+      // Power-law distributed df, at least one posting.
+      int df = Math.max(1, (int) (numDocs / Math.pow(l + 2, 1.2)));
+
+      PostingsList postings = clazz.newInstance();
+      postings.setCollectionDocumentCount(numDocs);
+      postings.setNumberOfPostings(df);
+
+      int docno = 0;
+      int avgGap = numDocs / df;
+      for (int i = 0; i < df; i++) {
+        docno += r.nextInt(2 * avgGap - 1) + 1;
+        int tf = 1 + (r.nextInt(4) == 0 ? r.nextInt(8) : 0);
+        int[] pos = new int[tf];
+        int p = 0;
+        for (int j = 0; j < tf; j++) {
+          p += r.nextInt(200) + 1;
+          pos[j] = p;
+        }
+        postings.add(docno, (short) tf, new TermPositions(pos, (short) tf));
+      }
+
+      // Round-trip through serialization, which is how postings are read at query time.
+      PostingsList decoded = clazz.newInstance();
+      decoded.readFields(new DataInputStream(new ByteArrayInputStream(postings.serialize())));
+      decoded.setCollectionDocumentCount(numDocs);
+      lists.add(decoded);
+    }
+
+    return lists;
+  }
+
+  private static void run(String name, Class<? extends PostingsList> clazz, int numLists,
+      int numDocs, int numTrials, boolean positions) throws Exception {
+    List<PostingsList> lists = generate(clazz, numLists, numDocs, 0);
+
+    long bytes = 0;
+    long numPostings = 0;
+    for (PostingsList list : lists) {
+      bytes += list.serialize().length;
+      numPostings += list.getNumberOfPostings();
+    }
+
+    Posting posting = new Posting();
+    long checksum = 0;
+    long startTime = 0;
+    // The first trial is for warm-up only.
+    for (int t = 0; t <= numTrials; t++) {
+      if (t == 1) {
+        startTime = System.nanoTime();
+      }
+      for (PostingsList list : lists) {
+        PostingsReader reader = list.getPostingsReader();
+        while (reader.nextPosting(posting)) {
+          checksum += posting.getDocno();
+          if (positions) {
+            checksum += reader.getPositions()[0];
+          }
+        }
+      }
+    }
+    double duration = (System.nanoTime() - startTime) / 1e6;
+
+    System.out.println(String.format("%-50s %10d bytes (%.2f bits/posting), %8.1f ms, "
+        + "%.1f M postings/s (checksum %d)", name, bytes, bytes * 8.0 / numPostings,
+        duration / numTrials, numPostings * numTrials / duration / 1000.0, checksum));
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 2) {
+      System.out.println("usage: [numLists] [numDocs] [numTrials]");
+      System.exit(-1);
+    }
+
+    int numLists = Integer.parseInt(args[0]);
+    int numDocs = Integer.parseInt(args[1]);
+    int numTrials = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+    System.out.println("Docnos and tfs:");
+    run("  " + PostingsListDocSortedNonPositional.class.getSimpleName(),
+        PostingsListDocSortedNonPositional.class, numLists, numDocs, numTrials, false);
+    run("  " + PostingsListDocSortedNonPositionalPForDelta.class.getSimpleName(),
+        PostingsListDocSortedNonPositionalPForDelta.class, numLists, numDocs, numTrials, false);
+
+    System.out.println("Docnos and tfs, positional formats:");
+    run("  " + PostingsListDocSortedPositional.class.getSimpleName(),
+        PostingsListDocSortedPositional.class, numLists, numDocs, numTrials, false);
+    run("  " + PostingsListDocSortedPositionalPForDelta.class.getSimpleName(),
+        PostingsListDocSortedPositionalPForDelta.class, numLists, numDocs, numTrials, false);
+
+    System.out.println("Docnos, tfs and positions:");
+    run("  " + PostingsListDocSortedPositional.class.getSimpleName(),
+        PostingsListDocSortedPositional.class, numLists, numDocs, numTrials, true);
+    run("  " + PostingsListDocSortedPositionalPForDelta.class.getSimpleName(),
+        PostingsListDocSortedPositionalPForDelta.class, numLists, numDocs, numTrials, true);
+  }
+}
@@ -0,0 +1,32 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.core.data.index;
+
+import ivory.core.data.stat.DocLengthTable;
+
+/**
+ * A {@link PostingsList} that stores per-block upper bounds alongside its postings, read back
+ * through a {@link BlockMaxPostingsReader}. The minimum document length of each block can only be
+ * recorded if document lengths are provided while the list is being built; otherwise it is
+ * conservatively set to zero.
+ */
+public interface BlockMaxPostingsList extends PostingsList {
+  /**
+   * Sets the document lengths used to compute the minimum document length of each block.
+   */
+  void setDocLengthTable(DocLengthTable doclengths);
+}
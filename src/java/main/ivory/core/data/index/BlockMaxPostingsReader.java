@@ -0,0 +1,58 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.core.data.index;
+
+/**
+ * <p>
+ * A {@link PostingsReader} over a postings list divided into blocks, each of which carries upper
+ * bounds on the postings it contains: the maximum term frequency and the minimum document length.
+ * Block <i>i</i> covers all docnos greater than the last docno of block <i>i</i> - 1 and at most
+ * the last docno of block <i>i</i>.
+ * </p>
+ *
+ * <p>
+ * The block pointer moved by {@link #shallowAdvance(int)} is independent of the posting returned
+ * by {@link #nextPosting(Posting)} and {@link #advance(int)}: moving it does not decode any
+ * postings.
+ * </p>
+ */
+public interface BlockMaxPostingsReader extends PostingsReader {
+  /**
+   * Moves the block pointer to the block that covers {@code docno}. Moving forward is cheap;
+   * moving backwards is supported, but requires scanning from the first block.
+   *
+   * @param docno docno to move to
+   * @return {@code true} if such a block exists, {@code false} if {@code docno} is greater than
+   *     the last docno in the postings list
+   */
+  boolean shallowAdvance(int docno);
+
+  /**
+   * Returns the last docno of the block under the block pointer.
+   */
+  int getBlockLastDocno();
+
+  /**
+   * Returns the maximum term frequency of the postings in the block under the block pointer.
+   */
+  short getBlockMaxTf();
+
+  /**
+   * Returns a lower bound on the length of the documents in the block under the block pointer.
+   */
+  int getBlockMinDocLength();
+}
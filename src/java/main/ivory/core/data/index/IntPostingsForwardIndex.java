@@ -17,15 +17,18 @@
 package ivory.core.data.index;
 
 import ivory.core.RetrievalEnvironment;
+import ivory.core.util.FileBuffers;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.IntWritable;
@@ -34,6 +37,14 @@ import org.apache.log4j.Logger;
 
 import edu.umd.cloud9.debug.MemoryUsageUtils;
 
+/**
+ * Object providing an index into one or more {@code SequenceFile}s containing
+ * {@link PostingsList}s, providing random access to the postings lists. By default, each
+ * postings part file is opened once and kept open (memory-mapped if it resides on the local file
+ * system) so that lookups do not pay the cost of opening files; see {@link PostingsSegment}.
+ *
+ * @see ivory.core.index.BuildIntPostingsForwardIndex
+ */
 public class IntPostingsForwardIndex {
   private static final Logger LOG = Logger.getLogger(IntPostingsForwardIndex.class);
   private static final NumberFormat FORMAT = new DecimalFormat("00000");
@@ -46,31 +57,139 @@ public class IntPostingsForwardIndex {
   private final String postingsPath;
   private final FileSystem fs;
   private final Configuration conf;
-
+  private final boolean cacheSegments;
+
+  // Open segments, keyed by part file number.
+  private final ConcurrentMap<Integer, PostingsSegment> segments =
+      new ConcurrentHashMap<Integer, PostingsSegment>();
+
+  /**
+   * Creates an {@code IntPostingsForwardIndex} that keeps postings part files open (and
+   * memory-mapped, if possible) across lookups.
+   *
+   * @param indexPath location of the index
+   * @param fs handle to the FileSystem
+   * @throws IOException
+   */
   public IntPostingsForwardIndex(String indexPath, FileSystem fs) throws IOException {
+    this(indexPath, fs, true);
+  }
+
+  /**
+   * Creates an {@code IntPostingsForwardIndex}.
+   *
+   * @param indexPath location of the index
+   * @param fs handle to the FileSystem
+   * @param cacheSegments {@code true} to keep postings part files open across lookups,
+   *     {@code false} to re-open the part file on every lookup
+   * @throws IOException
+   */
+  public IntPostingsForwardIndex(String indexPath, FileSystem fs, boolean cacheSegments)
+      throws IOException {
     this.fs = fs;
     this.conf = fs.getConf();
+    this.cacheSegments = cacheSegments;
     RetrievalEnvironment env = new RetrievalEnvironment(indexPath, fs);
     postingsPath = env.getPostingsDirectory();
 
-    FSDataInputStream posInput = fs.open(new Path(env.getPostingsIndexData()));
-
-    int l = posInput.readInt();
-    positions = new long[l];
-    for (int i = 0; i < l; i++) {
-      positions[i] = posInput.readLong();
-    }
+    ByteBuffer posInput = FileBuffers.map(fs, new Path(env.getPostingsIndexData()));
+    positions = new long[posInput.getInt()];
+    FileBuffers.readLongs(posInput, positions);
   }
 
+  /**
+   * Returns the postings list for a term. This method is thread-safe.
+   *
+   * @param termid term id
+   * @return postings list of the term, or {@code null} if it cannot be fetched
+   * @throws IOException
+   */
   public PostingsList getPostingsList(int termid) throws IOException {
-    // TODO: This method re-opens the SequenceFile on every access. Would be more efficient to cache
-    // the file handles.
-
     long pos = positions[termid - 1];
 
     int fileNo = (int) (pos / BigNumber);
     pos = pos % BigNumber;
 
+    if (!cacheSegments) {
+      return readPostingsList(termid, fileNo, pos);
+    }
+
+    PostingsSegment segment = getSegment(fileNo);
+
+    IntWritable key = new IntWritable();
+    PostingsList value = null;
+    try {
+      value = (PostingsList) Class.forName(segment.getValueClassName()).newInstance();
+    } catch (Exception e) {
+      e.printStackTrace();
+      return null;
+    }
+
+    segment.read(pos, key, value);
+
+    if (key.get() != termid) {
+      LOG.error("unable to fetch postings for term \"" + termid + "\": found key \""
+          + key + "\" instead");
+      return null;
+    }
+
+    return value;
+  }
+
+  /**
+   * Returns the number of terms covered by this index, including terms without postings.
+   */
+  public int getTermCount() {
+    return positions.length;
+  }
+
+  /**
+   * Checks whether postings exist for a term.
+   *
+   * @param termid term id
+   * @return {@code true} if there are postings for this term
+   */
+  public boolean hasPostings(int termid) {
+    return termid > 0 && termid <= positions.length && positions[termid - 1] != -1;
+  }
+
+  /**
+   * Closes all open postings segments.
+   */
+  public void close() throws IOException {
+    for (PostingsSegment segment : segments.values()) {
+      segment.close();
+    }
+    segments.clear();
+  }
+
+  private PostingsSegment getSegment(int fileNo) throws IOException {
+    PostingsSegment segment = segments.get(fileNo);
+    if (segment != null) {
+      return segment;
+    }
+
+    synchronized (segments) {
+      segment = segments.get(fileNo);
+      if (segment == null) {
+        segment = PostingsSegment.open(getPartFile(fileNo), fs, conf);
+        segments.put(fileNo, segment);
+      }
+    }
+    return segment;
+  }
+
+  private Path getPartFile(int fileNo) throws IOException {
+    Path path = new Path(postingsPath + "/part-" + FORMAT.format(fileNo));
+    if (!fs.exists(path)) {
+      // Try alternative naming scheme for output of new API.
+      path = new Path(postingsPath + "/part-r-" + FORMAT.format(fileNo));
+    }
+    return path;
+  }
+
+  // Reads postings by opening up the part file anew, without any caching.
+  private PostingsList readPostingsList(int termid, int fileNo, long pos) throws IOException {
     // Open up the SequenceFile.
     SequenceFile.Reader reader = null;
     try {
@@ -0,0 +1,326 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.core.data.index;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+/**
+ * <p>
+ * Cache of postings lists keyed by term id, bounded by the number of bytes of compressed postings
+ * it holds. Cached lists are shared by all callers: they must not be modified once added, and
+ * readers must be obtained with {@link PostingsList#getPostingsReader()}, which decodes from the
+ * shared bytes with its own state.
+ * </p>
+ *
+ * <p>
+ * Lists are evicted in least-recently-used order, but a list is only admitted if doing so doesn't
+ * evict lists that are accessed at least as often (the TinyLFU admission policy). Access
+ * frequencies of all term ids, whether cached or not, are estimated with a count-min sketch of
+ * small counters, which are halved periodically so that the estimates follow changes in the query
+ * stream. This keeps a stream of rare terms from flushing out the postings of frequent terms.
+ * </p>
+ *
+ * <p>
+ * All methods are thread-safe.
+ * </p>
+ */
+public class PostingsCache {
+  /**
+   * Default capacity, in bytes.
+   */
+  public static final long DEFAULT_CAPACITY = 64L * 1024 * 1024;
+
+  // Estimated memory used by a cached list, besides its compressed postings.
+  private static final int ENTRY_OVERHEAD = 96;
+
+  // Capacity is translated into a number of entries, for sizing the sketch, assuming this many
+  // bytes per entry.
+  private static final int SKETCH_BYTES_PER_ENTRY = 4096;
+
+  private final LinkedHashMap<Integer, Entry> lists =
+      new LinkedHashMap<Integer, Entry>(1024, 0.75f, true);
+  private FrequencySketch sketch;
+  private long capacity;
+  private long size = 0;
+
+  private long hits = 0;
+  private long misses = 0;
+  private long evictions = 0;
+  private long rejections = 0;
+
+  /**
+   * Creates a cache of default capacity.
+   */
+  public PostingsCache() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Creates a cache.
+   *
+   * @param capacity capacity in bytes, or zero to disable caching
+   */
+  public PostingsCache(long capacity) {
+    setCapacity(capacity);
+  }
+
+  /**
+   * Sets the capacity of the cache, evicting lists if necessary. A capacity of zero disables
+   * caching.
+   *
+   * @param capacity capacity in bytes
+   */
+  public synchronized void setCapacity(long capacity) {
+    Preconditions.checkArgument(capacity >= 0);
+    this.capacity = capacity;
+    this.sketch = new FrequencySketch((int) Math.min(1 << 22,
+        Math.max(256, capacity / SKETCH_BYTES_PER_ENTRY)));
+
+    Iterator<Entry> it = lists.values().iterator();
+    while (size > capacity && it.hasNext()) {
+      size -= it.next().weight;
+      it.remove();
+      evictions++;
+    }
+  }
+
+  /**
+   * Returns the cached postings list of a term, or {@code null} if the list isn't cached. Each
+   * call counts as an access for the purpose of admission.
+   */
+  public synchronized PostingsList get(int termid) {
+    if (capacity == 0) {
+      return null;
+    }
+
+    sketch.increment(termid);
+    Entry entry = lists.get(termid);
+    if (entry == null) {
+      misses++;
+      return null;
+    }
+    hits++;
+    return entry.list;
+  }
+
+  /**
+   * Offers the postings list of a term to the cache, after a call to {@link #get(int)} missed. The
+   * list is admitted if there's room for it, or if the lists evicted to make room for it are all
+   * accessed less often.
+   *
+   * @return {@code true} if the list is in the cache
+   */
+  public synchronized boolean put(int termid, PostingsList list) {
+    Preconditions.checkNotNull(list);
+    if (lists.containsKey(termid)) {
+      return true;
+    }
+
+    long weight = weight(list);
+    if (weight > capacity) {
+      rejections++;
+      return false;
+    }
+
+    if (size + weight > capacity) {
+      // Walk from the least-recently-used end to find victims, giving up as soon as one of them
+      // is at least as popular as the candidate.
+      int frequency = sketch.frequency(termid);
+      List<Integer> victims = Lists.newArrayList();
+      long freed = 0;
+      for (Map.Entry<Integer, Entry> entry : lists.entrySet()) {
+        if (size - freed + weight <= capacity) {
+          break;
+        }
+        if (sketch.frequency(entry.getKey()) >= frequency) {
+          rejections++;
+          return false;
+        }
+        victims.add(entry.getKey());
+        freed += entry.getValue().weight;
+      }
+
+      for (Integer victim : victims) {
+        lists.remove(victim);
+      }
+      size -= freed;
+      evictions += victims.size();
+    }
+
+    lists.put(termid, new Entry(list, weight));
+    size += weight;
+    return true;
+  }
+
+  /**
+   * Removes all lists from the cache. Statistics are kept.
+   */
+  public synchronized void clear() {
+    lists.clear();
+    size = 0;
+  }
+
+  /**
+   * Returns the capacity of the cache, in bytes.
+   */
+  public synchronized long getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * Returns the number of bytes the cached lists take up.
+   */
+  public synchronized long getSize() {
+    return size;
+  }
+
+  /**
+   * Returns the number of cached lists.
+   */
+  public synchronized int getCount() {
+    return lists.size();
+  }
+
+  /**
+   * Returns the number of lookups that found a cached list.
+   */
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  /**
+   * Returns the number of lookups that didn't find a cached list.
+   */
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  /**
+   * Returns the number of lists evicted to make room for others.
+   */
+  public synchronized long getEvictions() {
+    return evictions;
+  }
+
+  /**
+   * Returns the number of lists that weren't admitted.
+   */
+  public synchronized long getRejections() {
+    return rejections;
+  }
+
+  /**
+   * Returns the fraction of lookups that found a cached list.
+   */
+  public synchronized double getHitRate() {
+    return hits + misses == 0 ? 0.0 : (double) hits / (hits + misses);
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format("%d lists, %d/%d bytes; hits: %d, misses: %d (hit rate %.3f); "
+        + "evictions: %d, rejections: %d", lists.size(), size, capacity, hits, misses,
+        getHitRate(), evictions, rejections);
+  }
+
+  // Some lists copy their postings in getRawBytes, so this is only called once per list offered.
+  private static long weight(PostingsList list) {
+    byte[] bytes = list.getRawBytes();
+    return ENTRY_OVERHEAD + (bytes == null ? 0 : bytes.length);
+  }
+
+  /**
+   * Cached list, along with its weight.
+   */
+  private static final class Entry {
+    final PostingsList list;
+    final long weight;
+
+    Entry(PostingsList list, long weight) {
+      this.list = list;
+      this.weight = weight;
+    }
+  }
+
+  /**
+   * Count-min sketch of 4-bit counters. Once the number of increments reaches ten times the
+   * number of entries tracked, all counters are halved.
+   */
+  static final class FrequencySketch {
+    private static final int DEPTH = 4;
+    private static final int MAX_COUNT = 15;
+    private static final int[] SEEDS = { 0x9e3779b9, 0x7f4a7c15, 0x85ebca6b, 0xc2b2ae35 };
+
+    private final byte[][] counters;
+    private final int mask;
+    private final int sampleSize;
+    private int additions = 0;
+
+    FrequencySketch(int entries) {
+      int width = Integer.highestOneBit(Math.max(entries, 2) - 1) << 1;
+      counters = new byte[DEPTH][width];
+      mask = width - 1;
+      sampleSize = 10 * width;
+    }
+
+    void increment(int key) {
+      boolean added = false;
+      for (int i = 0; i < DEPTH; i++) {
+        int index = index(key, i);
+        if (counters[i][index] < MAX_COUNT) {
+          counters[i][index]++;
+          added = true;
+        }
+      }
+
+      if (added && ++additions >= sampleSize) {
+        reset();
+      }
+    }
+
+    int frequency(int key) {
+      int frequency = MAX_COUNT;
+      for (int i = 0; i < DEPTH; i++) {
+        frequency = Math.min(frequency, counters[i][index(key, i)]);
+      }
+      return frequency;
+    }
+
+    private void reset() {
+      for (byte[] row : counters) {
+        for (int j = 0; j < row.length; j++) {
+          row[j] >>= 1;
+        }
+      }
+      additions /= 2;
+    }
+
+    private int index(int key, int row) {
+      int h = key * SEEDS[row];
+      h ^= h >>> 15;
+      h *= 0x2c1b3c6d;
+      h ^= h >>> 12;
+      return h & mask;
+    }
+  }
+}
@@ -277,6 +277,7 @@ public class PostingsListDocSortedNonPositional implements PostingsList {
     private int innerGolombParam;
     private int innerCollectionSize;
     private PostingsList postingsList;
+    private final Posting posting = new Posting();
 
     public PostingsReader(byte[] bytes, int numPostings, int collectionSize,
         PostingsListDocSortedNonPositional list) throws IOException {
@@ -336,6 +337,21 @@ public class PostingsListDocSortedNonPositional implements PostingsList {
       return true;
     }
 
+    @Override
+    public boolean advance(int targetDocno) {
+      if (cnt > 0 && innerPrevDocno >= targetDocno) {
+        return true;
+      }
+
+      // No skip information in this format, so just decode forward.
+      while (nextPosting(posting)) {
+        if (posting.getDocno() >= targetDocno) {
+          return true;
+        }
+      }
+      return false;
+    }
+
     @Override
     public int[] getPositions() {
       throw new UnsupportedOperationException();
@@ -339,6 +339,7 @@ public class PostingsListDocSortedPositional implements PostingsList {
     private int innerCollectionSize;
     private boolean needToReadPositions = false;
     private PostingsList postingsList;
+    private final Posting posting = new Posting();
 
     protected PostingsReader(byte[] bytes, int numPostings, int collectionSize,
         PostingsListDocSortedPositional list) throws IOException {
@@ -408,6 +409,21 @@ public class PostingsListDocSortedPositional implements PostingsList {
       return true;
     }
 
+    @Override
+    public boolean advance(int targetDocno) {
+      if (cnt > 0 && innerPrevDocno >= targetDocno) {
+        return true;
+      }
+
+      // No skip information in this format, so just decode forward.
+      while (nextPosting(posting)) {
+        if (posting.getDocno() >= targetDocno) {
+          return true;
+        }
+      }
+      return false;
+    }
+
     @Override
     public int[] getPositions() {
       if (curPositions != null) {
@@ -0,0 +1,553 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.core.data.index;
+
+import ivory.core.compression.PForDelta;
+import ivory.core.data.stat.DocLengthTable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.apache.hadoop.io.WritableUtils;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>
+ * Object representing a document-sorted postings list with positional information, compressed
+ * in blocks of {@link PForDelta#BLOCK_SIZE} postings with {@link PForDelta}. Each block starts
+ * with a header holding the last docno in the block, the length of the block, and the maximum
+ * tf and minimum document length of its postings. The header is followed by the compressed
+ * d-gaps, the compressed term frequencies, and the compressed position gaps of all postings in
+ * the block. Readers decode a whole block at a time into {@code int} arrays, decode positions
+ * only when asked for them, and {@link ivory.core.data.index.PostingsReader#advance(int)} skips
+ * blocks by looking at their headers only.
+ * </p>
+ *
+ * <p>
+ * Unlike {@link PostingsListDocSortedPositional}, this encoding does not depend on the
+ * collection size or the number of postings, but these values should still be set for
+ * consistency with the other formats.
+ * </p>
+ */
+public class PostingsListDocSortedPositionalPForDelta implements BlockMaxPostingsList {
+  private static final int BLOCK_SIZE = PForDelta.BLOCK_SIZE;
+  private static final int HEADER_SIZE = 3;
+
+  private int collectionDocumentCount = -1;
+  private int numPostings = -1;
+  private int prevDocno;
+  private int postingsAdded;
+  private long sumOfPostingsScore;
+
+  private int df;
+  private long cf;
+
+  // Compressed blocks.
+  private int[] words;
+  private int numWords;
+
+  // Postings of the block currently being built.
+  transient private int[] blockDocGaps = new int[BLOCK_SIZE];
+  transient private int[] blockTfs = new int[BLOCK_SIZE];
+  transient private int[] blockPositions = new int[BLOCK_SIZE];
+  transient private int blockPostings;
+  transient private short blockMaxTf;
+  transient private int blockMinDocLength;
+  transient private DocLengthTable doclengths;
+  transient private int blockNumPositions;
+
+  public PostingsListDocSortedPositionalPForDelta() {
+    clear();
+  }
+
+  @Override
+  public void clear() {
+    sumOfPostingsScore = 0;
+    postingsAdded = 0;
+    df = 0;
+    cf = 0;
+    prevDocno = 0;
+    numPostings = -1;
+    words = new int[64];
+    numWords = 0;
+    blockPostings = 0;
+    blockMaxTf = 0;
+    blockMinDocLength = Integer.MAX_VALUE;
+    blockNumPositions = 0;
+  }
+
+  @Override
+  public void add(int docno, short tf, TermPositions pos) {
+    Preconditions.checkArgument(tf > 0, "Invalid tf: " + tf);
+    Preconditions.checkArgument(pos.getTf() == tf);
+
+    if (postingsAdded > 0 && docno <= prevDocno) {
+      throw new RuntimeException("Error: encountered invalid d-gap. docno=" + docno);
+    }
+
+    blockDocGaps[blockPostings] = docno - prevDocno;
+    blockTfs[blockPostings] = tf - 1;
+
+    if (blockNumPositions + tf > blockPositions.length) {
+      blockPositions = Arrays.copyOf(blockPositions,
+          Math.max(blockPositions.length * 2, blockNumPositions + tf));
+    }
+    int[] positions = pos.getPositions();
+    blockPositions[blockNumPositions++] = positions[0];
+    for (int i = 1; i < tf; i++) {
+      blockPositions[blockNumPositions++] = positions[i] - positions[i - 1];
+    }
+
+    if (tf > blockMaxTf) {
+      blockMaxTf = tf;
+    }
+    int docLength = doclengths == null ? 0 : doclengths.getDocLength(docno);
+    if (docLength < blockMinDocLength) {
+      blockMinDocLength = docLength;
+    }
+
+    blockPostings++;
+    postingsAdded++;
+    sumOfPostingsScore += tf;
+    prevDocno = docno;
+
+    if (blockPostings == BLOCK_SIZE) {
+      flushBlock();
+    }
+  }
+
+  // Compresses the postings of the current block and appends them to the compressed blocks.
+  private void flushBlock() {
+    if (blockPostings == 0) {
+      return;
+    }
+
+    int bound = HEADER_SIZE + PForDelta.maxCompressedLength(blockPostings) * 2
+        + ((blockNumPositions + BLOCK_SIZE - 1) / BLOCK_SIZE)
+            * PForDelta.maxCompressedLength(BLOCK_SIZE);
+    if (numWords + bound > words.length) {
+      words = Arrays.copyOf(words, Math.max(words.length * 2, numWords + bound));
+    }
+
+    int header = numWords;
+    int off = numWords + HEADER_SIZE;
+    off = PForDelta.compress(blockDocGaps, 0, blockPostings, words, off);
+    off = PForDelta.compress(blockTfs, 0, blockPostings, words, off);
+    for (int i = 0; i < blockNumPositions; i += BLOCK_SIZE) {
+      off = PForDelta.compress(blockPositions, i, Math.min(BLOCK_SIZE, blockNumPositions - i),
+          words, off);
+    }
+
+    words[header] = prevDocno;
+    words[header + 1] = off - header - HEADER_SIZE;
+    words[header + 2] = (blockMaxTf & 0xffff) | (Math.min(blockMinDocLength, 0xffff) << 16);
+    numWords = off;
+
+    blockPostings = 0;
+    blockMaxTf = 0;
+    blockMinDocLength = Integer.MAX_VALUE;
+    blockNumPositions = 0;
+  }
+
+  @Override
+  public void setDocLengthTable(DocLengthTable doclengths) {
+    this.doclengths = doclengths;
+  }
+
+  @Override
+  public int size() {
+    return postingsAdded;
+  }
+
+  @Override
+  public PostingsReader getPostingsReader() {
+    Preconditions.checkArgument(collectionDocumentCount > 0);
+    Preconditions.checkArgument(postingsAdded > 0);
+
+    flushBlock();
+    return new PostingsReader(words, numWords, postingsAdded, this);
+  }
+
+  @Override
+  public byte[] getRawBytes() {
+    flushBlock();
+
+    ByteBuffer buf = ByteBuffer.allocate(numWords * 4);
+    buf.asIntBuffer().put(words, 0, numWords);
+    return buf.array();
+  }
+
+  @Override
+  public void setCollectionDocumentCount(int docs) {
+    Preconditions.checkArgument(docs > 0);
+    collectionDocumentCount = docs;
+  }
+
+  @Override
+  public int getCollectionDocumentCount() {
+    return collectionDocumentCount;
+  }
+
+  @Override
+  public void setNumberOfPostings(int n) {
+    numPostings = n;
+  }
+
+  @Override
+  public int getNumberOfPostings() {
+    return numPostings;
+  }
+
+  @Override
+  public int getDf() {
+    return df;
+  }
+
+  @Override
+  public void setDf(int df) {
+    this.df = df;
+  }
+
+  @Override
+  public long getCf() {
+    return cf;
+  }
+
+  @Override
+  public void setCf(long cf) {
+    this.cf = cf;
+  }
+
+  @Override
+  public void readFields(DataInput in) throws IOException {
+    postingsAdded = WritableUtils.readVInt(in);
+    numPostings = postingsAdded;
+
+    df = WritableUtils.readVInt(in);
+    cf = WritableUtils.readVLong(in);
+    sumOfPostingsScore = cf;
+
+    numWords = WritableUtils.readVInt(in);
+    byte[] bytes = new byte[numWords * 4];
+    in.readFully(bytes);
+    words = new int[numWords];
+    ByteBuffer.wrap(bytes).asIntBuffer().get(words);
+
+    blockPostings = 0;
+    blockNumPositions = 0;
+  }
+
+  @Override
+  public void write(DataOutput out) throws IOException {
+    flushBlock();
+
+    if (numPostings != postingsAdded) {
+      throw new RuntimeException(
+          "Error: number of postings added doesn't match number of expected postings. Expected "
+              + numPostings + ", got " + postingsAdded);
+    }
+
+    WritableUtils.writeVInt(out, postingsAdded);
+    WritableUtils.writeVInt(out, df == 0 ? postingsAdded : df);
+    WritableUtils.writeVLong(out, cf == 0 ? sumOfPostingsScore : cf);
+    WritableUtils.writeVInt(out, numWords);
+    out.write(getRawBytes());
+  }
+
+  public byte[] serialize() throws IOException {
+    Preconditions.checkArgument(postingsAdded > 0);
+
+    ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
+    DataOutputStream dataOut = new DataOutputStream(bytesOut);
+    write(dataOut);
+
+    return bytesOut.toByteArray();
+  }
+
+  public static PostingsListDocSortedPositionalPForDelta create(DataInput in) throws IOException {
+    PostingsListDocSortedPositionalPForDelta p = new PostingsListDocSortedPositionalPForDelta();
+    p.readFields(in);
+
+    return p;
+  }
+
+  public static PostingsListDocSortedPositionalPForDelta create(byte[] bytes) throws IOException {
+    return PostingsListDocSortedPositionalPForDelta.create(
+        new DataInputStream(new ByteArrayInputStream(bytes)));
+  }
+
+  /**
+   * {@code PostingsReader} for {@code PostingsListDocSortedPositionalPForDelta}.
+   */
+  public static class PostingsReader implements BlockMaxPostingsReader {
+    private final int[] words;
+    private final int numWords;
+    private final int numPostings;
+    private final PostingsList postingsList;
+
+    // Decoded postings of the current block.
+    private final int[] docnos = new int[BLOCK_SIZE];
+    private final int[] tfs = new int[BLOCK_SIZE];
+    private final int[] positionOffsets = new int[BLOCK_SIZE + 1];
+    private int[] positions = new int[BLOCK_SIZE];
+    private boolean positionsDecoded;
+    private int positionsStart;
+
+    private int nextBlock;           // Offset of the header of the next block.
+    private int nextBlockPosting;    // Index of the first posting of the next block.
+    private int blockPosting;        // Index of the first posting of the current block.
+    private int blockSize;           // Number of postings in the current block.
+    private int blockIdx;            // Index of the current posting within the current block.
+    private int prevBlockDocno;      // Last docno of the previous block.
+    private int curDocno;
+    private short curTf;
+    private int shallowBlock;        // Offset of the header of the block under the block pointer.
+    private int shallowPrevDocno;    // Last docno of the block before the block pointer.
+
+    protected PostingsReader(int[] words, int numWords, int numPostings,
+        PostingsListDocSortedPositionalPForDelta list) {
+      Preconditions.checkNotNull(words);
+      Preconditions.checkArgument(numPostings > 0);
+
+      this.words = words;
+      this.numWords = numWords;
+      this.numPostings = numPostings;
+      this.postingsList = list;
+      reset();
+    }
+
+    @Override
+    public int getNumberOfPostings() {
+      return numPostings;
+    }
+
+    @Override
+    public void reset() {
+      nextBlock = 0;
+      nextBlockPosting = 0;
+      blockPosting = 0;
+      blockSize = 0;
+      blockIdx = -1;
+      prevBlockDocno = 0;
+      curDocno = 0;
+      curTf = 0;
+      shallowBlock = 0;
+      shallowPrevDocno = 0;
+      positionsDecoded = false;
+    }
+
+    // Decodes the docnos and tfs of the next block; positions are decoded lazily.
+    private void decodeBlock() {
+      int lastDocno = words[nextBlock];
+      int next = nextBlock + HEADER_SIZE + words[nextBlock + 1];
+
+      blockSize = PForDelta.getBlockLength(words, nextBlock + HEADER_SIZE);
+      int off = PForDelta.decompress(words, nextBlock + HEADER_SIZE, docnos, 0);
+      positionsStart = PForDelta.decompress(words, off, tfs, 0);
+
+      int docno = prevBlockDocno;
+      for (int i = 0; i < blockSize; i++) {
+        docno += docnos[i];
+        docnos[i] = docno;
+        tfs[i]++;
+      }
+
+      blockPosting = nextBlockPosting;
+      nextBlockPosting += blockSize;
+      prevBlockDocno = lastDocno;
+      nextBlock = next;
+      blockIdx = -1;
+      positionsDecoded = false;
+    }
+
+    private void decodePositions() {
+      int total = 0;
+      for (int i = 0; i < blockSize; i++) {
+        positionOffsets[i] = total;
+        total += tfs[i];
+      }
+      positionOffsets[blockSize] = total;
+
+      if (positions.length < total) {
+        positions = new int[Math.max(positions.length * 2, total)];
+      }
+
+      int off = positionsStart;
+      for (int n = 0; n < total; ) {
+        int len = PForDelta.getBlockLength(words, off);
+        off = PForDelta.decompress(words, off, positions, n);
+        n += len;
+      }
+
+      // Position gaps restart at every posting.
+      for (int i = 0; i < blockSize; i++) {
+        for (int j = positionOffsets[i] + 1; j < positionOffsets[i + 1]; j++) {
+          positions[j] += positions[j - 1];
+        }
+      }
+
+      positionsDecoded = true;
+    }
+
+    @Override
+    public boolean nextPosting(Posting p) {
+      if (!hasMorePostings()) {
+        return false;
+      }
+
+      if (blockIdx + 1 >= blockSize) {
+        decodeBlock();
+      }
+      blockIdx++;
+
+      curDocno = docnos[blockIdx];
+      curTf = (short) tfs[blockIdx];
+      p.setDocno(curDocno);
+      p.setTf(curTf);
+
+      return true;
+    }
+
+    @Override
+    public boolean advance(int targetDocno) {
+      if (blockIdx >= 0 && curDocno >= targetDocno) {
+        return true;
+      }
+
+      if (blockIdx < 0 || docnos[blockSize - 1] < targetDocno) {
+        // Skip over blocks whose last docno is smaller than the target.
+        while (nextBlockPosting < numPostings && words[nextBlock] < targetDocno) {
+          prevBlockDocno = words[nextBlock];
+          nextBlockPosting += PForDelta.getBlockLength(words, nextBlock + HEADER_SIZE);
+          nextBlock += HEADER_SIZE + words[nextBlock + 1];
+        }
+
+        if (nextBlockPosting >= numPostings) {
+          curDocno = prevBlockDocno;
+          blockPosting = numPostings;
+          blockSize = 0;
+          blockIdx = -1;
+          return false;
+        }
+        decodeBlock();
+      }
+
+      do {
+        blockIdx++;
+      } while (docnos[blockIdx] < targetDocno);
+
+      curDocno = docnos[blockIdx];
+      curTf = (short) tfs[blockIdx];
+      return true;
+    }
+
+    @Override
+    public boolean shallowAdvance(int docno) {
+      if (docno <= shallowPrevDocno) {
+        // Readers may be shared, so someone else may have moved the block pointer past us.
+        shallowBlock = 0;
+        shallowPrevDocno = 0;
+      }
+
+      while (words[shallowBlock] < docno) {
+        int next = shallowBlock + HEADER_SIZE + words[shallowBlock + 1];
+        if (next >= numWords) {
+          return false;
+        }
+        shallowPrevDocno = words[shallowBlock];
+        shallowBlock = next;
+      }
+      return true;
+    }
+
+    @Override
+    public int getBlockLastDocno() {
+      return words[shallowBlock];
+    }
+
+    @Override
+    public short getBlockMaxTf() {
+      return (short) (words[shallowBlock + 2] & 0xffff);
+    }
+
+    @Override
+    public int getBlockMinDocLength() {
+      return words[shallowBlock + 2] >>> 16;
+    }
+
+    @Override
+    public int[] getPositions() {
+      if (!positionsDecoded) {
+        decodePositions();
+      }
+
+      return Arrays.copyOfRange(positions, positionOffsets[blockIdx],
+          positionOffsets[blockIdx + 1]);
+    }
+
+    @Override
+    public boolean getPositions(TermPositions tp) {
+      int[] pos = getPositions();
+
+      if (pos == null) {
+        return false;
+      }
+
+      tp.set(pos, (short) pos.length);
+
+      return true;
+    }
+
+    @Override
+    public boolean hasMorePostings() {
+      return blockPosting + blockIdx + 1 < numPostings;
+    }
+
+    @Override
+    public short peekNextTf() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int peekNextDocno() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public PostingsList getPostingsList() {
+      return postingsList;
+    }
+
+    @Override
+    public int getDocno() {
+      return curDocno;
+    }
+
+    @Override
+    public short getTf() {
+      return curTf;
+    }
+  }
+}
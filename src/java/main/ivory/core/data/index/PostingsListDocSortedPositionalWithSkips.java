@@ -0,0 +1,534 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.core.data.index;
+
+import ivory.core.compression.BitInputStream;
+import ivory.core.compression.BitOutputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.apache.hadoop.io.WritableUtils;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Object representing a document-sorted postings list that holds positional information for
+ * terms, with embedded {@link SkipPointers}. The postings themselves are encoded exactly as in
+ * {@link PostingsListDocSortedPositional}; the skip pointers allow
+ * {@link ivory.core.data.index.PostingsReader#advance(int)} to jump over whole blocks of postings.
+ */
+public class PostingsListDocSortedPositionalWithSkips implements PostingsList {
+  private static final int MAX_DOCNO_BITS = 32;
+
+  private int collectionDocumentCount = -1;
+  private int numPostings = -1;
+  private int golombParam;
+  private int prevDocno;
+  private byte[] rawBytes;
+  private int postingsAdded;
+  private long sumOfPostingsScore;
+
+  private int df;
+  private long cf;
+
+  private final SkipPointers skips = new SkipPointers();
+
+  transient private ByteArrayOutputStream bytesOut;
+  transient private BitOutputStream bitsOut;
+
+  public PostingsListDocSortedPositionalWithSkips() {
+    this.sumOfPostingsScore = 0;
+    this.postingsAdded = 0;
+    this.df = 0;
+    this.cf = 0;
+    this.prevDocno = -1;
+
+    try {
+      bytesOut = new ByteArrayOutputStream();
+      bitsOut = new BitOutputStream(bytesOut);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  public void clear() {
+    sumOfPostingsScore = 0;
+    postingsAdded = 0;
+    df = 0;
+    cf = 0;
+    prevDocno = -1;
+    numPostings = -1;
+    rawBytes = null;
+    skips.clear();
+    try {
+      bytesOut = new ByteArrayOutputStream();
+      bitsOut = new BitOutputStream(bytesOut);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  public void add(int docno, short tf, TermPositions pos) {
+    Preconditions.checkArgument(pos.getPositions().length != 0);
+    Preconditions.checkArgument(tf == pos.getTf());
+
+    try {
+      if (postingsAdded == 0) {
+        // Write out the first docno.
+        bitsOut.writeBinary(MAX_DOCNO_BITS, docno);
+        bitsOut.writeGamma(tf);
+        writePositions(bitsOut, pos, docno, tf);
+
+        prevDocno = docno;
+      } else {
+        // Use d-gaps for subsequent docnos.
+        int dgap = docno - prevDocno;
+
+        if (dgap <= 0) {
+          throw new RuntimeException("Error: encountered invalid d-gap. docno=" + docno);
+        }
+
+        // Record a skip pointer at the start of every block.
+        if (postingsAdded % skips.getInterval() == 0) {
+          skips.add(prevDocno, bitsOut.getByteOffset() * 8 + bitsOut.getBitOffset());
+        }
+
+        bitsOut.writeGolomb(dgap, golombParam);
+        bitsOut.writeGamma(tf);
+        writePositions(bitsOut, pos, docno, tf);
+
+        prevDocno = docno;
+      }
+    } catch (IOException e) {
+      throw new RuntimeException("Error adding postings.");
+    } catch (ArithmeticException e) {
+      throw new RuntimeException("ArithmeticException caught \"" + e.getMessage()
+          + "\": check to see if collection size or df is set properly. docno=" + docno
+          + ", tf=" + tf + ", previous docno=" + prevDocno + ", df=" + numPostings
+          + ", collection size=" + collectionDocumentCount + ", Golomb param=" + golombParam);
+    }
+
+    postingsAdded++;
+    sumOfPostingsScore += tf;
+  }
+
+  // passing in docno and tf basically for error checking purposes
+  private static void writePositions(BitOutputStream t, TermPositions p, int docno, short tf)
+      throws IOException {
+    int[] pos = p.getPositions();
+
+    if (tf != p.getTf()) {
+      throw new RuntimeException(String.format(
+          "Error: tf and number of positions don't match. docno=%d, tf=%d, positions=%s",
+          docno, tf, pos.toString()));
+    }
+
+    if (p.getTf() == 1) {
+      // If tf=1, just write out the single term position.
+      t.writeGamma(pos[0]);
+    } else {
+      // If tf > 1, write out skip information if we want to bypass the positional information
+      // during decoding.
+      t.writeGamma(p.getEncodedSize());
+
+      if (pos[0] <= 0) {
+        throw new RuntimeException(String.format(
+            "Error: invalid term positions. docno=%d, tf=%d, positions=%s",
+            docno, tf, pos.toString()));
+      }
+      // Write out first position.
+      t.writeGamma(pos[0]);
+      // Write out rest of positions using p-gaps (first order positional differences).
+      for (int c = 1; c < p.getTf(); c++) {
+        int pgap = pos[c] - pos[c - 1];
+        if (pos[c] <= 0 || pgap == 0) {
+          throw new RuntimeException(String.format(
+              "Error: invalid term positions. docno=%d, tf=%d, positions=%s",
+              docno, tf, pos.toString()));
+        }
+        t.writeGamma(pgap);
+      }
+    }
+  }
+
+  @Override
+  public int size() {
+    return postingsAdded;
+  }
+
+  @Override
+  public PostingsReader getPostingsReader() {
+    Preconditions.checkNotNull(rawBytes);
+    Preconditions.checkArgument(collectionDocumentCount > 0);
+    Preconditions.checkArgument(postingsAdded > 0);
+
+    try {
+      return new PostingsReader(rawBytes, postingsAdded, collectionDocumentCount, skips, this);
+    } catch (IOException e) {
+      e.printStackTrace();
+      return null;
+    }
+  }
+
+  @Override
+  public byte[] getRawBytes() {
+    return rawBytes;
+  }
+
+  /**
+   * Returns the skip pointers of this postings list.
+   */
+  public SkipPointers getSkipPointers() {
+    return skips;
+  }
+
+  @Override
+  public void setCollectionDocumentCount(int docs) {
+    Preconditions.checkArgument(docs > 0);
+
+    collectionDocumentCount = docs;
+    recomputeGolombParameter();
+  }
+
+  @Override
+  public int getCollectionDocumentCount() {
+    return collectionDocumentCount;
+  }
+
+  @Override
+  public void setNumberOfPostings(int n) {
+    numPostings = n;
+    recomputeGolombParameter();
+  }
+
+  @Override
+  public int getNumberOfPostings() {
+    return numPostings;
+  }
+
+  private void recomputeGolombParameter() {
+    golombParam = (int) Math.ceil(
+        0.69 * ((float) collectionDocumentCount) / (float) numPostings);
+  }
+
+  @Override
+  public int getDf() {
+    return df;
+  }
+
+  @Override
+  public void setDf(int df) {
+    this.df = df;
+  }
+
+  @Override
+  public long getCf() {
+    return cf;
+  }
+
+  @Override
+  public void setCf(long cf) {
+    this.cf = cf;
+  }
+
+  @Override
+  public void readFields(DataInput in) throws IOException {
+    postingsAdded = WritableUtils.readVInt(in);
+    numPostings = postingsAdded;
+
+    df = WritableUtils.readVInt(in);
+    cf = WritableUtils.readVLong(in);
+    sumOfPostingsScore = cf;
+
+    skips.readFields(in);
+
+    rawBytes = new byte[WritableUtils.readVInt(in)];
+    in.readFully(rawBytes);
+  }
+
+  @Override
+  public void write(DataOutput out) throws IOException {
+    if (rawBytes != null) {
+      // This would happen if we're reading in an already-encoded postings; if that's the case,
+      // simply write out the byte array.
+      WritableUtils.writeVInt(out, postingsAdded);
+      WritableUtils.writeVInt(out, df == 0 ? postingsAdded : df);
+      WritableUtils.writeVLong(out, cf == 0 ? sumOfPostingsScore : cf);
+      skips.write(out);
+      WritableUtils.writeVInt(out, rawBytes.length);
+      out.write(rawBytes);
+    } else {
+      try {
+        bitsOut.padAndFlush();
+        bitsOut.close();
+
+        if (numPostings != postingsAdded) {
+          throw new RuntimeException(
+              "Error: number of postings added doesn't match number of expected postings. Expected "
+                  + numPostings + ", got " + postingsAdded);
+        }
+
+        WritableUtils.writeVInt(out, postingsAdded);
+        WritableUtils.writeVInt(out, df == 0 ? postingsAdded : df);
+        WritableUtils.writeVLong(out, cf == 0 ? sumOfPostingsScore : cf);
+        skips.write(out);
+        byte[] bytes = bytesOut.toByteArray();
+        WritableUtils.writeVInt(out, bytes.length);
+        out.write(bytes);
+      } catch (ArithmeticException e) {
+        throw new RuntimeException("ArithmeticException caught \"" + e.getMessage()
+            + "\": check to see if collection size or df is set properly.");
+      }
+    }
+  }
+
+  public byte[] serialize() throws IOException {
+    Preconditions.checkArgument(postingsAdded > 0);
+
+    ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
+    DataOutputStream dataOut = new DataOutputStream(bytesOut);
+    write(dataOut);
+
+    return bytesOut.toByteArray();
+  }
+
+  public static PostingsListDocSortedPositionalWithSkips create(DataInput in) throws IOException {
+    PostingsListDocSortedPositionalWithSkips p = new PostingsListDocSortedPositionalWithSkips();
+    p.readFields(in);
+
+    return p;
+  }
+
+  public static PostingsListDocSortedPositionalWithSkips create(byte[] bytes) throws IOException {
+    return PostingsListDocSortedPositionalWithSkips.create(
+        new DataInputStream(new ByteArrayInputStream(bytes)));
+  }
+
+  /**
+   * {@code PostingsReader} for {@code PostingsListDocSortedPositionalWithSkips}.
+   */
+  public static class PostingsReader implements ivory.core.data.index.PostingsReader {
+    private final byte[] bytes;
+    private final SkipPointers skips;
+    private BitInputStream bitsIn;
+    private int cnt = 0;
+    private int[] curPositions;
+    private short innerPrevTf;
+    private int innerPrevDocno;
+    private int innerNumPostings;
+    private int innerGolombParam;
+    private int innerCollectionSize;
+    private boolean needToReadPositions = false;
+    private PostingsList postingsList;
+    private final Posting posting = new Posting();
+
+    protected PostingsReader(byte[] bytes, int numPostings, int collectionSize,
+        SkipPointers skips, PostingsListDocSortedPositionalWithSkips list) throws IOException {
+      Preconditions.checkNotNull(bytes);
+      Preconditions.checkArgument(numPostings > 0);
+      Preconditions.checkArgument(collectionSize > 0);
+
+      this.bytes = bytes;
+      this.skips = Preconditions.checkNotNull(skips);
+      bitsIn = new BitInputStream(new ByteArrayInputStream(bytes));
+
+      innerNumPostings = numPostings;
+      innerCollectionSize = collectionSize;
+      innerGolombParam = (int) Math.ceil(0.69 * ((float) innerCollectionSize)
+          / (float) innerNumPostings);
+      postingsList = list;
+      needToReadPositions = false;
+    }
+
+    @Override
+    public int getNumberOfPostings() {
+      return innerNumPostings;
+    }
+
+    @Override
+    public void reset() {
+      try {
+        bitsIn = new BitInputStream(new ByteArrayInputStream(bytes));
+        cnt = 0;
+        needToReadPositions = false;
+      } catch (IOException e) {
+        e.printStackTrace();
+        throw new RuntimeException("Error resetting postings.");
+      }
+    }
+
+    @Override
+    public boolean nextPosting(Posting p) {
+      if (!hasMorePostings()) {
+        return false;
+      }
+
+      try {
+        if (needToReadPositions) {
+          skipPositions(innerPrevTf);
+          needToReadPositions = false;
+        }
+
+        if (cnt == 0) {
+          p.setDocno(bitsIn.readBinary(MAX_DOCNO_BITS));
+          p.setTf((short) bitsIn.readGamma());
+        } else {
+          p.setDocno(innerPrevDocno + bitsIn.readGolomb(innerGolombParam));
+          p.setTf((short) bitsIn.readGamma());
+        }
+      } catch (IOException e) {
+        throw new RuntimeException("Error in reading posting: cnt=" + cnt
+            + ", innerNumPostings=" + innerNumPostings + ", " + e);
+      }
+
+      cnt++;
+      innerPrevDocno = p.getDocno();
+      innerPrevTf = p.getTf();
+      curPositions = null;
+      needToReadPositions = true;
+
+      return true;
+    }
+
+    @Override
+    public boolean advance(int targetDocno) {
+      if (cnt > 0 && innerPrevDocno >= targetDocno) {
+        return true;
+      }
+
+      // Jump to the furthest block that may contain the target, if it lies ahead of us.
+      int skip = skips.find(targetDocno);
+      if (skip != -1 && skips.getPostingIndex(skip) > cnt) {
+        seek(skip);
+      }
+
+      while (nextPosting(posting)) {
+        if (posting.getDocno() >= targetDocno) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    // Positions the reader right before the first posting of the block of skip pointer i.
+    private void seek(int i) {
+      long offset = skips.getBitOffset(i);
+      int byteOffset = (int) (offset >>> 3);
+
+      try {
+        bitsIn = new BitInputStream(
+            new ByteArrayInputStream(bytes, byteOffset, bytes.length - byteOffset));
+        bitsIn.skipBits((int) (offset & 7));
+      } catch (IOException e) {
+        throw new RuntimeException("Error seeking in postings: offset=" + offset, e);
+      }
+
+      cnt = skips.getPostingIndex(i);
+      innerPrevDocno = skips.getDocno(i);
+      curPositions = null;
+      needToReadPositions = false;
+    }
+
+    @Override
+    public int[] getPositions() {
+      if (curPositions != null) {
+        return curPositions;
+      }
+
+      int[] pos = null;
+      try {
+        if (innerPrevTf == 1) {
+          pos = new int[1];
+          pos[0] = bitsIn.readGamma();
+        } else {
+          bitsIn.readGamma();
+          pos = new int[innerPrevTf];
+          pos[0] = bitsIn.readGamma();
+          for (int i = 1; i < innerPrevTf; i++) {
+            pos[i] = (pos[i - 1] + bitsIn.readGamma());
+          }
+        }
+      } catch (IOException e) {
+        throw new RuntimeException("A problem in reading bits!", e);
+      }
+
+      needToReadPositions = false;
+      curPositions = pos;
+
+      return pos;
+    }
+
+    @Override
+    public boolean getPositions(TermPositions tp) {
+      int[] pos = getPositions();
+
+      if (pos == null) {
+        return false;
+      }
+
+      tp.set(pos, (short) pos.length);
+
+      return true;
+    }
+
+    @Override
+    public boolean hasMorePostings() {
+      return !(cnt >= innerNumPostings);
+    }
+
+    @Override
+    public short peekNextTf() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int peekNextDocno() {
+      throw new UnsupportedOperationException();
+    }
+
+    private void skipPositions(int tf) throws IOException {
+      if (tf == 1) {
+        bitsIn.readGamma();
+      } else {
+        bitsIn.skipBits(bitsIn.readGamma());
+      }
+    }
+
+    @Override
+    public PostingsList getPostingsList() {
+      return postingsList;
+    }
+
+    @Override
+    public int getDocno() {
+      return innerPrevDocno;
+    }
+
+    @Override
+    public short getTf() {
+      return innerPrevTf;
+    }
+  }
+}
@@ -30,6 +30,17 @@ public interface PostingsReader {
    */
   boolean nextPosting(Posting posting);
 
+  /**
+   * Advances this reader to the first posting whose docno is greater than or equal to
+   * {@code targetDocno}. If the current posting already satisfies this condition, the reader is
+   * left where it is. Implementations may jump over postings without decoding them.
+   *
+   * @param targetDocno docno to advance to
+   * @return {@code true} if such a posting exists, {@code false} if the end of the postings was
+   *     reached
+   */
+  boolean advance(int targetDocno);
+
   /**
    * Checks to see if there are any more postings to be read.
    *
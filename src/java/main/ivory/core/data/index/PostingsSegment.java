@@ -0,0 +1,274 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.core.data.index;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocalFileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.log4j.Logger;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>
+ * Long-lived handle onto a single part file of postings, i.e., a {@code SequenceFile} of
+ * ({@code IntWritable}, {@link PostingsList}) pairs. Segments are opened once and shared by all
+ * threads, which may call {@link #read(long, IntWritable, PostingsList)} concurrently.
+ * </p>
+ *
+ * <p>
+ * If the part file lives on the local file system and is not compressed, it is memory-mapped and
+ * postings are decoded straight from the mapped region. Otherwise, a single {@code
+ * SequenceFile.Reader} is kept open and accesses to it are serialized.
+ * </p>
+ */
+public abstract class PostingsSegment {
+  private static final Logger LOG = Logger.getLogger(PostingsSegment.class);
+
+  /**
+   * Reads the postings record that starts at byte offset {@code pos} of this segment.
+   *
+   * @param pos offset of the record, as recorded by {@code BuildIntPostingsForwardIndex}
+   * @param key object for holding the termid
+   * @param value object for holding the postings list
+   * @throws IOException
+   */
+  public abstract void read(long pos, IntWritable key, PostingsList value) throws IOException;
+
+  /**
+   * Returns the name of the {@link PostingsList} class stored in this segment.
+   */
+  public abstract String getValueClassName();
+
+  /**
+   * Releases resources held by this segment.
+   */
+  public abstract void close() throws IOException;
+
+  /**
+   * Opens a segment over a postings part file, memory-mapping it if possible.
+   *
+   * @param path part file
+   * @param fs FileSystem to read from
+   * @param conf configuration
+   * @return segment over the part file
+   * @throws IOException
+   */
+  public static PostingsSegment open(Path path, FileSystem fs, Configuration conf)
+      throws IOException {
+    SequenceFile.Reader reader = new SequenceFile.Reader(fs, path, conf);
+
+    if (fs instanceof LocalFileSystem && !reader.isCompressed()) {
+      String valueClassName = reader.getValueClassName();
+      reader.close();
+
+      LOG.info("Memory-mapping postings segment " + path);
+      return new MappedPostingsSegment(((LocalFileSystem) fs).pathToFile(path), valueClassName);
+    }
+
+    LOG.info("Opening postings segment " + path);
+    return new SequenceFilePostingsSegment(reader);
+  }
+
+  /**
+   * Segment backed by a single open {@code SequenceFile.Reader}.
+   */
+  private static class SequenceFilePostingsSegment extends PostingsSegment {
+    private final SequenceFile.Reader reader;
+
+    private SequenceFilePostingsSegment(SequenceFile.Reader reader) {
+      this.reader = reader;
+    }
+
+    @Override
+    public void read(long pos, IntWritable key, PostingsList value) throws IOException {
+      synchronized (reader) {
+        reader.seek(pos);
+        reader.next(key, value);
+      }
+    }
+
+    @Override
+    public String getValueClassName() {
+      return reader.getValueClassName();
+    }
+
+    @Override
+    public void close() throws IOException {
+      synchronized (reader) {
+        reader.close();
+      }
+    }
+  }
+
+  /**
+   * Segment backed by a memory-mapped local file. Since a single mapping cannot exceed 2 GB, the
+   * file is mapped as a sequence of fixed-size chunks.
+   */
+  private static class MappedPostingsSegment extends PostingsSegment {
+    // Marker preceding a sync point in an uncompressed SequenceFile; see SequenceFile.SYNC_ESCAPE.
+    private static final int SYNC_ESCAPE = -1;
+    private static final int SYNC_HASH_SIZE = 16;
+
+    private static final int CHUNK_BITS = 30;
+    private static final long CHUNK_SIZE = 1L << CHUNK_BITS;
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer[] chunks;
+    private final long length;
+    private final String valueClassName;
+
+    private MappedPostingsSegment(File f, String valueClassName) throws IOException {
+      this.valueClassName = valueClassName;
+      this.file = new RandomAccessFile(f, "r");
+
+      FileChannel channel = file.getChannel();
+      length = channel.size();
+
+      chunks = new MappedByteBuffer[(int) ((length + CHUNK_SIZE - 1) >>> CHUNK_BITS)];
+      for (int i = 0; i < chunks.length; i++) {
+        long offset = (long) i << CHUNK_BITS;
+        chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset,
+            Math.min(CHUNK_SIZE, length - offset));
+      }
+    }
+
+    @Override
+    public void read(long pos, IntWritable key, PostingsList value) throws IOException {
+      Preconditions.checkArgument(pos >= 0 && pos < length);
+
+      int recordLength = readInt(pos);
+      pos += 4;
+      if (recordLength == SYNC_ESCAPE) {
+        // The stored offset points at a sync marker, so skip over it to the record proper.
+        pos += SYNC_HASH_SIZE;
+        recordLength = readInt(pos);
+        pos += 4;
+      }
+
+      int keyLength = readInt(pos);
+      pos += 4;
+
+      key.readFields(openStream(pos, keyLength));
+      value.readFields(openStream(pos + keyLength, recordLength - keyLength));
+    }
+
+    @Override
+    public String getValueClassName() {
+      return valueClassName;
+    }
+
+    @Override
+    public void close() throws IOException {
+      file.close();
+    }
+
+    private int readInt(long pos) {
+      ByteBuffer chunk = chunks[(int) (pos >>> CHUNK_BITS)];
+      int offset = (int) (pos & (CHUNK_SIZE - 1));
+
+      if (offset + 4 <= chunk.limit()) {
+        // Absolute gets do not touch the buffer's position, so they are safe to share.
+        return chunk.getInt(offset);
+      }
+
+      byte[] b = new byte[4];
+      copy(pos, b);
+      return ((b[0] & 0xff) << 24) | ((b[1] & 0xff) << 16) | ((b[2] & 0xff) << 8) | (b[3] & 0xff);
+    }
+
+    private DataInputStream openStream(long pos, int len) {
+      int first = (int) (pos >>> CHUNK_BITS);
+      int offset = (int) (pos & (CHUNK_SIZE - 1));
+
+      if (offset + len <= chunks[first].limit()) {
+        // Common case: the region lies entirely within one chunk, so decode directly from a
+        // private view of the mapping.
+        ByteBuffer view = chunks[first].duplicate();
+        view.position(offset);
+        view.limit(offset + len);
+        return new DataInputStream(new ByteBufferInputStream(view));
+      }
+
+      // The region straddles a chunk boundary, so fall back to a copy.
+      byte[] b = new byte[len];
+      copy(pos, b);
+      return new DataInputStream(new ByteArrayInputStream(b));
+    }
+
+    private void copy(long pos, byte[] dest) {
+      int copied = 0;
+      while (copied < dest.length) {
+        ByteBuffer view = chunks[(int) (pos >>> CHUNK_BITS)].duplicate();
+        view.position((int) (pos & (CHUNK_SIZE - 1)));
+
+        int n = Math.min(view.remaining(), dest.length - copied);
+        view.get(dest, copied, n);
+        copied += n;
+        pos += n;
+      }
+    }
+  }
+
+  /**
+   * {@code InputStream} over the remaining bytes of a {@code ByteBuffer}.
+   */
+  private static class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer buf;
+
+    private ByteBufferInputStream(ByteBuffer buf) {
+      this.buf = buf;
+    }
+
+    @Override
+    public int read() {
+      return buf.hasRemaining() ? (buf.get() & 0xff) : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (len == 0) {
+        return 0;
+      }
+      if (!buf.hasRemaining()) {
+        return -1;
+      }
+
+      len = Math.min(len, buf.remaining());
+      buf.get(b, off, len);
+      return len;
+    }
+
+    @Override
+    public int available() {
+      return buf.remaining();
+    }
+  }
+}
@@ -16,6 +16,8 @@
 
 package ivory.core.data.index;
 
+import java.util.Arrays;
+
 import com.google.common.base.Preconditions;
 
 /**
@@ -25,10 +27,22 @@ public abstract class ProximityPostingsReader implements PostingsReader {
   protected final PostingsReader[] readers;   // Readers for terms that make up ordered window.
   protected final int size;                   // Size of ordered window.
 
+  private static final int BUFFER_SIZE = 4096;
+
+  // Position lists of the terms, merged into a single stream, along with the term each position
+  // belongs to. Merging alternates between two sets of buffers, which are grown as needed and
+  // reused across documents.
+  private int[] positions = new int[BUFFER_SIZE];
+  private int[] ids = new int[BUFFER_SIZE];
+  private int[] mergedPositions = new int[BUFFER_SIZE];
+  private int[] mergedIds = new int[BUFFER_SIZE];
+  private final int[][] termPositions;
+
   public ProximityPostingsReader(PostingsReader[] readers, int size) {
     Preconditions.checkArgument(size > 0);
     this.readers = Preconditions.checkNotNull(readers);
     this.size = size;
+    this.termPositions = new int[readers.length][];
   }
 
   public int getWindowSize() {
@@ -106,6 +120,18 @@ public abstract class ProximityPostingsReader implements PostingsReader {
     return true;
   }
 
+  @Override
+  public boolean advance(int targetDocno) {
+    // Move every underlying reader up to the target, so that a match at the target docno is
+    // detected; each reader is free to skip over whole blocks of postings.
+    for (PostingsReader reader : readers) {
+      if (!reader.advance(targetDocno)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   @Override
   public int peekNextDocno() {
     throw new UnsupportedOperationException();
@@ -154,7 +180,86 @@ public abstract class ProximityPostingsReader implements PostingsReader {
     throw new UnsupportedOperationException();
   }
 
-  abstract protected short countMatches();
+  /**
+   * Returns the number of matching windows in the current document, truncated to
+   * {@code Short.MAX_VALUE}.
+   */
+  protected short countMatches() {
+    for (int i = 0; i < readers.length; i++) {
+      termPositions[i] = readers[i].getPositions();
+    }
+
+    int matches = countMatches(termPositions);
+
+    // Truncate tf to Short.MAX_VALUE.
+    if (matches > Short.MAX_VALUE) {
+      matches = Short.MAX_VALUE;
+    }
+
+    return (short) matches;
+  }
+
+  /**
+   * Returns the number of matching windows, given the positions of each term, in the same order
+   * as the readers of this window.
+   *
+   * @param termPositions sorted positions of each term
+   * @return number of matches
+   */
+  public int countMatches(int[][] termPositions) {
+    Preconditions.checkArgument(termPositions.length == readers.length);
 
-  abstract protected int countMatches(int[] positions, int[] ids);
+    // Merge all position lists into single stream.
+    int length = 0;
+    for (int id = 0; id < termPositions.length; id++) {
+      int[] p = termPositions[id];
+      ensureCapacity(length + p.length);
+
+      int posA = 0;
+      int posB = 0;
+      int i = 0;
+      while (i < length + p.length) {
+        if (posB == p.length || (posA < length && positions[posA] <= p[posB])) {
+          mergedPositions[i] = positions[posA];
+          mergedIds[i] = ids[posA];
+          posA++;
+        } else {
+          mergedPositions[i] = p[posB];
+          mergedIds[i] = id;
+          posB++;
+        }
+        i++;
+      }
+      length += p.length;
+
+      int[] tmp = positions;
+      positions = mergedPositions;
+      mergedPositions = tmp;
+      tmp = ids;
+      ids = mergedIds;
+      mergedIds = tmp;
+    }
+
+    return countMatches(positions, ids, length);
+  }
+
+  private void ensureCapacity(int length) {
+    if (length > positions.length) {
+      int capacity = Math.max(length, 2 * positions.length);
+      positions = Arrays.copyOf(positions, capacity);
+      ids = Arrays.copyOf(ids, capacity);
+      mergedPositions = new int[capacity];
+      mergedIds = new int[capacity];
+    }
+  }
+
+  /**
+   * Returns the number of matching windows in a stream of positions.
+   *
+   * @param positions positions of all terms, merged in increasing order
+   * @param ids term each position belongs to
+   * @param length number of positions in the stream
+   * @return number of matches
+   */
+  abstract protected int countMatches(int[] positions, int[] ids, int length);
 }
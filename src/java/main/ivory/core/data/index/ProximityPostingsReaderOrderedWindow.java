@@ -16,19 +16,14 @@
 
 package ivory.core.data.index;
 
-import java.util.Arrays;
 import java.util.BitSet;
 
 /**
  * @author Don Metzler
  */
 public class ProximityPostingsReaderOrderedWindow extends ProximityPostingsReader {
-  private static final int BUFFER_SIZE = 4096;
-
   protected int numReaders;
   protected BitSet matchedIds = null;
-  protected int[] newPositions = new int[BUFFER_SIZE];
-  protected int[] newIds = new int[BUFFER_SIZE];
 
   public ProximityPostingsReaderOrderedWindow(PostingsReader[] readers, int size) {
     super(readers, size);
@@ -37,61 +32,19 @@ public class ProximityPostingsReaderOrderedWindow extends ProximityPostingsReade
     matchedIds = new BitSet(numReaders);
   }
 
-  @Override
-  protected short countMatches() {
-    int matches = 0;
-
-    // Merge all position lists into single stream.
-    int[] positions = readers[0].getPositions();
-    int[] ids = new int[positions.length];
-    Arrays.fill(ids, 0);
-    int length = positions.length;
-
-    for (int id = 1; id < readers.length; id++) {
-      int[] p = readers[id].getPositions();
-
-      if (length + p.length > newPositions.length) {
-        newPositions = new int[length + p.length];
-        newIds = new int[length + p.length];
-      }
-
-      int posA = 0;
-      int posB = 0;
-      int i = 0;
-      while (i < length + p.length) {
-        if (posB == p.length || (posA < length && positions[posA] <= p[posB])) {
-          newPositions[i] = positions[posA];
-          newIds[i] = ids[posA];
-          posA++;
-        } else {
-          newPositions[i] = p[posB];
-          newIds[i] = id;
-          posB++;
-        }
-        i++;
-      }
-
-      length += p.length;
-      positions = Arrays.copyOf(newPositions, length);
-      ids = Arrays.copyOf(newIds, length);
-    }
-
-    // Count matches.
-    matches = countMatches(positions, ids);
-
-    // Truncate tf to Short.MAX_VALUE.
-    if (matches > Short.MAX_VALUE) {
-      matches = Short.MAX_VALUE;
-    }
-
-    return (short) matches;
+  /**
+   * Creates a reader that isn't backed by postings, for counting matches in position lists with
+   * {@link #countMatches(int[][])}.
+   */
+  public ProximityPostingsReaderOrderedWindow(int numTerms, int size) {
+    this(new PostingsReader[numTerms], size);
   }
 
   @Override
-  protected int countMatches(int[] positions, int[] ids) {
+  protected int countMatches(int[] positions, int[] ids, int length) {
     int matches = 0;
 
-    for (int i = 0; i < positions.length; i++) {
+    for (int i = 0; i < length; i++) {
       int maxGap = 0;
       boolean ordered = true;
 
@@ -102,7 +55,7 @@ public class ProximityPostingsReaderOrderedWindow extends ProximityPostingsReade
       int lastMatchedID = ids[i];
       int lastMatchedPos = positions[i];
 
-      for (int j = i + 1; j < positions.length; j++) {
+      for (int j = i + 1; j < length; j++) {
         int curID = ids[j];
         int curPos = positions[j];
         if (!matchedIds.get(curID)) {
@@ -0,0 +1,187 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.core.data.index;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>
+ * Skip pointers for a document-sorted postings list. The postings are divided into blocks of
+ * {@link #getInterval()} postings; for every block after the first, a skip pointer records the
+ * docno of the last posting of the previous block and the bit offset at which the block starts in
+ * the compressed postings. A reader looking for a particular docno can thus jump over whole blocks
+ * without decoding them.
+ * </p>
+ *
+ * <p>
+ * Skip pointer <i>i</i> (zero-based) points at the posting with index (<i>i</i> + 1) &times;
+ * <i>interval</i>.
+ * </p>
+ */
+public class SkipPointers implements Writable {
+  public static final int DEFAULT_INTERVAL = 128;
+
+  private int interval;
+  private int size;
+  private int[] docnos;
+  private long[] offsets;
+
+  /**
+   * Creates an empty set of skip pointers with the default interval.
+   */
+  public SkipPointers() {
+    this(DEFAULT_INTERVAL);
+  }
+
+  /**
+   * Creates an empty set of skip pointers.
+   *
+   * @param interval number of postings in each block
+   */
+  public SkipPointers(int interval) {
+    Preconditions.checkArgument(interval > 0);
+    this.interval = interval;
+    this.size = 0;
+    this.docnos = new int[8];
+    this.offsets = new long[8];
+  }
+
+  /**
+   * Returns the number of postings in each block.
+   */
+  public int getInterval() {
+    return interval;
+  }
+
+  /**
+   * Returns the number of skip pointers.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns the docno of the posting immediately preceding the block of skip pointer {@code i}.
+   */
+  public int getDocno(int i) {
+    return docnos[i];
+  }
+
+  /**
+   * Returns the bit offset of the block of skip pointer {@code i}.
+   */
+  public long getBitOffset(int i) {
+    return offsets[i];
+  }
+
+  /**
+   * Returns the index of the posting that skip pointer {@code i} points at.
+   */
+  public int getPostingIndex(int i) {
+    return (i + 1) * interval;
+  }
+
+  /**
+   * Appends a skip pointer.
+   *
+   * @param prevDocno docno of the last posting of the previous block
+   * @param bitOffset bit offset of the start of the block
+   */
+  public void add(int prevDocno, long bitOffset) {
+    Preconditions.checkArgument(size == 0 || prevDocno > docnos[size - 1]);
+    Preconditions.checkArgument(size == 0 || bitOffset > offsets[size - 1]);
+
+    if (size == docnos.length) {
+      docnos = Arrays.copyOf(docnos, size * 2);
+      offsets = Arrays.copyOf(offsets, size * 2);
+    }
+    docnos[size] = prevDocno;
+    offsets[size] = bitOffset;
+    size++;
+  }
+
+  /**
+   * Removes all skip pointers.
+   */
+  public void clear() {
+    size = 0;
+  }
+
+  /**
+   * Returns the index of the last skip pointer whose preceding docno is smaller than
+   * {@code target}, i.e., the furthest block that may still contain {@code target}.
+   *
+   * @param target docno being searched for
+   * @return index of the skip pointer, or -1 if {@code target} can only be in the first block
+   */
+  public int find(int target) {
+    int lo = 0;
+    int hi = size - 1;
+    int found = -1;
+    while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      if (docnos[mid] < target) {
+        found = mid;
+        lo = mid + 1;
+      } else {
+        hi = mid - 1;
+      }
+    }
+    return found;
+  }
+
+  @Override
+  public void readFields(DataInput in) throws IOException {
+    interval = WritableUtils.readVInt(in);
+    size = WritableUtils.readVInt(in);
+    docnos = new int[Math.max(size, 1)];
+    offsets = new long[Math.max(size, 1)];
+
+    int prevDocno = 0;
+    long prevOffset = 0;
+    for (int i = 0; i < size; i++) {
+      docnos[i] = prevDocno + WritableUtils.readVInt(in);
+      offsets[i] = prevOffset + WritableUtils.readVLong(in);
+      prevDocno = docnos[i];
+      prevOffset = offsets[i];
+    }
+  }
+
+  @Override
+  public void write(DataOutput out) throws IOException {
+    WritableUtils.writeVInt(out, interval);
+    WritableUtils.writeVInt(out, size);
+
+    // Both docnos and offsets are increasing, so write out gaps.
+    int prevDocno = 0;
+    long prevOffset = 0;
+    for (int i = 0; i < size; i++) {
+      WritableUtils.writeVInt(out, docnos[i] - prevDocno);
+      WritableUtils.writeVLong(out, offsets[i] - prevOffset);
+      prevDocno = docnos[i];
+      prevOffset = offsets[i];
+    }
+  }
+}
@@ -16,13 +16,14 @@
 
 package ivory.core.data.stat;
 
+import ivory.core.util.FileBuffers;
+
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
-import org.apache.hadoop.io.WritableUtils;
 
 import com.google.common.base.Preconditions;
 
@@ -62,14 +63,14 @@ public class CfTableArray implements CfTable {
     Preconditions.checkNotNull(file);
     Preconditions.checkNotNull(fs);
 
-    FSDataInputStream in = fs.open(file);
+    ByteBuffer in = FileBuffers.map(fs, file);
 
-    this.numTerms = in.readInt();
+    this.numTerms = in.getInt();
 
     cfs = new long[numTerms];
 
     for (int i = 0; i < numTerms; i++) {
-      long cf = WritableUtils.readVLong(in);
+      long cf = FileBuffers.readVLong(in);
 
       cfs[i] = cf;
       collectionSize += cf;
@@ -83,8 +84,6 @@ public class CfTableArray implements CfTable {
         numSingletonTerms++;
       }
     }
-
-    in.close();
   }
 
   @Override
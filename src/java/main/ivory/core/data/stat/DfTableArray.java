@@ -17,16 +17,16 @@
 package ivory.core.data.stat;
 
 import ivory.core.RetrievalEnvironment;
+import ivory.core.util.FileBuffers;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
 
 import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
-import org.apache.hadoop.io.WritableUtils;
 
 import com.google.common.base.Preconditions;
 
@@ -64,14 +64,14 @@ public class DfTableArray implements DfTable {
     Preconditions.checkNotNull(file);
     Preconditions.checkNotNull(fs);
 
-    FSDataInputStream in = fs.open(file);
+    ByteBuffer in = FileBuffers.map(fs, file);
 
-    this.numTerms = in.readInt();
+    this.numTerms = in.getInt();
 
     dfs = new int[numTerms];
 
     for (int i = 0; i < numTerms; i++) {
-      int df = WritableUtils.readVInt(in);
+      int df = FileBuffers.readVInt(in);
 
       dfs[i] = df;
       if (df > maxDf) {
@@ -83,8 +83,6 @@ public class DfTableArray implements DfTable {
         numSingletonTerms++;
       }
     }
-
-    in.close();
   }
 
   @Override
@@ -0,0 +1,435 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.core.data.stat;
+
+import ivory.core.RetrievalEnvironment;
+import ivory.core.util.FileBuffers;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.TreeSet;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.log4j.Logger;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>
+ * Compact table of per-document attributes used during scoring: the length of each document and
+ * any number of static priors (e.g., spam score, PageRank). All attributes of a document are
+ * stored next to each other, one byte each, so that scoring a document touches a single cache line
+ * rather than one line in each of several arrays.
+ * </p>
+ *
+ * <p>
+ * Lengths below {@value #EXACT_LENGTHS} are stored exactly. Longer lengths up to
+ * {@value #MAX_QUANTIZED_LENGTH} are quantized to one of 127 geometrically growing buckets, and
+ * decoded to the geometric mean of the bucket, within 3% of the actual length. Lengths beyond
+ * that are kept exactly in a separate table of exceptions. The average document length is computed
+ * from the actual lengths. Each prior is quantized to one of 256 values: the distinct values of the
+ * prior if there are no more than that, and evenly spaced values between its minimum and maximum
+ * otherwise.
+ * </p>
+ *
+ * <p>
+ * The table is stored in a data file, in the following format:
+ * </p>
+ *
+ * <ul>
+ * <li>A magic number, the docno offset <i>d</i>, the number of documents <i>n</i>, the average
+ * document length and the number of priors <i>p</i>.</li>
+ * <li>For each prior, its type (written with {@link DataOutput#writeUTF(String)}) and the 256
+ * floats it is quantized to.</li>
+ * <li>The number of exceptions <i>e</i>, followed by <i>e</i> docnos in increasing order and then
+ * the <i>e</i> lengths of those documents.</li>
+ * <li><i>n</i> rows of 1 + <i>p</i> bytes: the length code and the code of each prior of documents
+ * <i>d</i> + 1, <i>d</i> + 2, etc.</li>
+ * </ul>
+ *
+ * <p>
+ * The table implements {@link DocLengthTable}, and provides a {@link DocScoreTable} view of each
+ * prior, so it can stand in for both.
+ * </p>
+ */
+public class DocAttributeTable implements DocLengthTable {
+  static final Logger LOG = Logger.getLogger(DocAttributeTable.class);
+
+  public static final int MAGIC = 0x44415431; // "DAT1"
+
+  // Lengths below this value are stored exactly.
+  public static final int EXACT_LENGTHS = 128;
+  // Lengths from this value on are stored as exceptions.
+  public static final int MAX_QUANTIZED_LENGTH = 65536;
+
+  private static final int EXCEPTION_CODE = 255;
+  private static final int NUM_CODES = 256;
+
+  // Smallest length of each code; lengths of the last code are exceptions.
+  private static final int[] CODE_BOUNDS = new int[NUM_CODES];
+  // Length each code decodes to.
+  private static final int[] CODE_LENGTHS = new int[NUM_CODES];
+
+  static {
+    int numBuckets = EXCEPTION_CODE - EXACT_LENGTHS;
+    double ratio = Math.pow((double) MAX_QUANTIZED_LENGTH / EXACT_LENGTHS, 1.0 / numBuckets);
+    for (int code = 0; code < EXACT_LENGTHS; code++) {
+      CODE_BOUNDS[code] = code;
+    }
+    for (int k = 0; k < numBuckets; k++) {
+      CODE_BOUNDS[EXACT_LENGTHS + k] = (int) Math.round(EXACT_LENGTHS * Math.pow(ratio, k));
+    }
+    CODE_BOUNDS[EXCEPTION_CODE] = MAX_QUANTIZED_LENGTH;
+
+    for (int code = 0; code < EXCEPTION_CODE; code++) {
+      int last = CODE_BOUNDS[code + 1] - 1;
+      CODE_LENGTHS[code] = (int) Math.round(Math.sqrt((double) CODE_BOUNDS[code] * last));
+    }
+    CODE_LENGTHS[EXCEPTION_CODE] = -1;
+  }
+
+  private final int docnoOffset;
+  private final int docCount;
+  private final float avgDocLength;
+  private final String[] types;
+  private final float[][] priorValues;  // value of each code, for each prior
+  private final int[] exceptionDocnos;
+  private final int[] exceptionLengths;
+  private final int stride;
+  private final byte[] rows;
+
+  /**
+   * Creates a new {@code DocAttributeTable}.
+   *
+   * @param file document attribute data file
+   * @param fs FileSystem to read from
+   * @throws IOException
+   */
+  public DocAttributeTable(Path file, FileSystem fs) throws IOException {
+    ByteBuffer in = FileBuffers.map(fs, file);
+    if (in.getInt() != MAGIC) {
+      throw new IOException(file + " is not a document attribute file.");
+    }
+
+    docnoOffset = in.getInt();
+    docCount = in.getInt();
+    avgDocLength = in.getFloat();
+
+    int numPriors = in.getInt();
+    types = new String[numPriors];
+    priorValues = new float[numPriors][NUM_CODES];
+    for (int i = 0; i < numPriors; i++) {
+      byte[] bytes = new byte[in.getShort() & 0xFFFF];
+      in.get(bytes);
+      types[i] = new String(bytes, Charsets.UTF_8);
+      in.asFloatBuffer().get(priorValues[i]);
+      in.position(in.position() + 4 * NUM_CODES);
+    }
+
+    int numExceptions = in.getInt();
+    exceptionDocnos = new int[numExceptions];
+    exceptionLengths = new int[numExceptions];
+    FileBuffers.readInts(in, exceptionDocnos);
+    FileBuffers.readInts(in, exceptionLengths);
+
+    stride = 1 + numPriors;
+    long size = (long) docCount * stride;
+    if (size > Integer.MAX_VALUE) {
+      throw new IOException("Too many document attributes to load: " + size + " bytes.");
+    }
+    rows = new byte[(int) size];
+    in.get(rows);
+
+    LOG.info("Docno offset: " + docnoOffset);
+    LOG.info("Number of docs: " + docCount);
+    LOG.info("Priors: " + Arrays.toString(types));
+    LOG.info("Lengths stored exactly as exceptions: " + numExceptions);
+  }
+
+  @Override
+  public int getDocLength(int docno) {
+    int code = rows[(docno - docnoOffset - 1) * stride] & 0xFF;
+    if (code != EXCEPTION_CODE) {
+      return CODE_LENGTHS[code];
+    }
+    return exceptionLengths[Arrays.binarySearch(exceptionDocnos, docno)];
+  }
+
+  @Override
+  public int getDocnoOffset() {
+    return docnoOffset;
+  }
+
+  @Override
+  public float getAvgDocLength() {
+    return avgDocLength;
+  }
+
+  @Override
+  public int getDocCount() {
+    return docCount;
+  }
+
+  /**
+   * Returns the index of a prior, or -1 if the table doesn't hold the prior.
+   */
+  public int getPriorIndex(String type) {
+    for (int i = 0; i < types.length; i++) {
+      if (types[i].equals(type)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the (quantized) value of a prior of a document.
+   *
+   * @param prior index of the prior, see {@link #getPriorIndex(String)}
+   * @param docno docno
+   */
+  public float getPrior(int prior, int docno) {
+    return priorValues[prior][rows[(docno - docnoOffset - 1) * stride + 1 + prior] & 0xFF];
+  }
+
+  /**
+   * Returns a view of a prior as a {@link DocScoreTable}, or <code>null</code> if the table doesn't
+   * hold the prior.
+   */
+  public DocScoreTable getDocScoreTable(String type) {
+    final int prior = getPriorIndex(type);
+    if (prior == -1) {
+      return null;
+    }
+
+    return new DocScoreTable() {
+      @Override
+      public void initialize(String file, FileSystem fs) {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public float getScore(int docno) {
+        return getPrior(prior, docno);
+      }
+
+      @Override
+      public int getDocnoOffset() {
+        return docnoOffset;
+      }
+
+      @Override
+      public int getDocCount() {
+        return docCount;
+      }
+    };
+  }
+
+  /**
+   * Returns the code a length is stored as, {@code 255} for lengths stored as exceptions.
+   */
+  static int encodeLength(int length) {
+    Preconditions.checkArgument(length >= 0);
+    if (length >= MAX_QUANTIZED_LENGTH) {
+      return EXCEPTION_CODE;
+    }
+    int code = Arrays.binarySearch(CODE_BOUNDS, 0, EXCEPTION_CODE, length);
+    return code >= 0 ? code : -code - 2;
+  }
+
+  /**
+   * Returns the length a code decodes to.
+   */
+  static int decodeLength(int code) {
+    return CODE_LENGTHS[code];
+  }
+
+  /**
+   * Returns the length the table reads back for a document of {@code length} tokens. Since
+   * quantization preserves order, this is also a lower bound on the length read back for any
+   * longer document, even though it may be below {@code length} itself.
+   */
+  public static int quantizeLength(int length) {
+    int code = encodeLength(length);
+    return code == EXCEPTION_CODE ? length : decodeLength(code);
+  }
+
+  /**
+   * Returns the 256 values a prior is quantized to.
+   */
+  static float[] quantizePrior(float[] values) {
+    TreeSet<Float> distinct = new TreeSet<Float>();
+    for (float value : values) {
+      distinct.add(value);
+      if (distinct.size() > NUM_CODES) {
+        break;
+      }
+    }
+
+    float[] codebook = new float[NUM_CODES];
+    if (distinct.size() <= NUM_CODES) {
+      int code = 0;
+      for (float value : distinct) {
+        codebook[code++] = value;
+      }
+      // Unused codes repeat the largest value, which keeps the codebook sorted.
+      Arrays.fill(codebook, code, NUM_CODES, code == 0 ? 0.0f : codebook[code - 1]);
+      return codebook;
+    }
+
+    float min = Float.POSITIVE_INFINITY;
+    float max = Float.NEGATIVE_INFINITY;
+    for (float value : values) {
+      min = Math.min(min, value);
+      max = Math.max(max, value);
+    }
+    for (int code = 0; code < NUM_CODES; code++) {
+      codebook[code] = min + (max - min) * code / (NUM_CODES - 1);
+    }
+    return codebook;
+  }
+
+  /**
+   * Returns the code of the value in a sorted codebook closest to a value.
+   */
+  static int encodePrior(float[] codebook, float value) {
+    int i = Arrays.binarySearch(codebook, value);
+    if (i >= 0) {
+      return i;
+    }
+    int next = -i - 1;
+    if (next == 0) {
+      return 0;
+    }
+    if (next == codebook.length) {
+      return codebook.length - 1;
+    }
+    return value - codebook[next - 1] <= codebook[next] - value ? next - 1 : next;
+  }
+
+  /**
+   * Writes a document attribute file.
+   *
+   * @param out stream to write to
+   * @param docnoOffset docno offset
+   * @param lengths length of each document, starting with docno <i>docnoOffset</i> + 1
+   * @param types type of each prior
+   * @param priors values of each prior, for the same documents as the lengths
+   * @throws IOException
+   */
+  public static void write(DataOutput out, int docnoOffset, int[] lengths, String[] types,
+      float[][] priors) throws IOException {
+    Preconditions.checkArgument(types.length == priors.length);
+    int numDocs = lengths.length;
+
+    long lengthSum = 0;
+    int numExceptions = 0;
+    for (int length : lengths) {
+      lengthSum += length;
+      if (encodeLength(length) == EXCEPTION_CODE) {
+        numExceptions++;
+      }
+    }
+
+    out.writeInt(MAGIC);
+    out.writeInt(docnoOffset);
+    out.writeInt(numDocs);
+    out.writeFloat(lengthSum * 1.0f / numDocs);
+
+    float[][] codebooks = new float[priors.length][];
+    out.writeInt(priors.length);
+    for (int i = 0; i < priors.length; i++) {
+      Preconditions.checkArgument(priors[i].length == numDocs);
+      codebooks[i] = quantizePrior(priors[i]);
+      out.writeUTF(types[i]);
+      for (float value : codebooks[i]) {
+        out.writeFloat(value);
+      }
+    }
+
+    out.writeInt(numExceptions);
+    for (int i = 0; i < numDocs; i++) {
+      if (encodeLength(lengths[i]) == EXCEPTION_CODE) {
+        out.writeInt(docnoOffset + i + 1);
+      }
+    }
+    for (int i = 0; i < numDocs; i++) {
+      if (encodeLength(lengths[i]) == EXCEPTION_CODE) {
+        out.writeInt(lengths[i]);
+      }
+    }
+
+    byte[] row = new byte[1 + priors.length];
+    for (int i = 0; i < numDocs; i++) {
+      row[0] = (byte) encodeLength(lengths[i]);
+      for (int p = 0; p < priors.length; p++) {
+        row[1 + p] = (byte) encodePrior(codebooks[p], priors[p][i]);
+      }
+      out.write(row);
+    }
+  }
+
+  /**
+   * Builds the document attribute file of an index from its doclengths table and, optionally,
+   * doc score tables in the format of {@link DocScoreTable4BF}.
+   */
+  public static void main(String[] args) throws Exception {
+    if (args.length < 1) {
+      System.out.println("usage: [index-path] [type=docscore-path]...");
+      System.exit(-1);
+    }
+
+    FileSystem fs = FileSystem.get(new Configuration());
+    RetrievalEnvironment env = new RetrievalEnvironment(args[0], fs);
+
+    DocLengthTable doclengths = new DocLengthTable4B(env.getDoclengthsData(), fs);
+    int docnoOffset = doclengths.getDocnoOffset();
+    int[] lengths = new int[doclengths.getDocCount()];
+    for (int i = 0; i < lengths.length; i++) {
+      lengths[i] = doclengths.getDocLength(docnoOffset + i + 1);
+    }
+
+    String[] types = new String[args.length - 1];
+    float[][] priors = new float[args.length - 1][];
+    for (int p = 0; p < types.length; p++) {
+      String[] arg = args[p + 1].split("=", 2);
+      types[p] = arg[0];
+
+      DocScoreTable scores = new DocScoreTable4BF();
+      scores.initialize(arg[1], fs);
+      if (scores.getDocnoOffset() != docnoOffset || scores.getDocCount() != lengths.length) {
+        throw new IllegalArgumentException("Docscores " + arg[1] + " don't match the doclengths!");
+      }
+      priors[p] = new float[lengths.length];
+      for (int i = 0; i < lengths.length; i++) {
+        priors[p][i] = scores.getScore(docnoOffset + i + 1);
+      }
+    }
+
+    FSDataOutputStream out = fs.create(env.getDocAttributesData(), true);
+    write(out, docnoOffset, lengths, types, priors);
+    out.close();
+    System.out.println("Wrote attributes of " + lengths.length + " docs to "
+        + env.getDocAttributesData());
+  }
+}
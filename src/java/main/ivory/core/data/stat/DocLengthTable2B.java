@@ -16,12 +16,15 @@
 
 package ivory.core.data.stat;
 
+import ivory.core.util.FileBuffers;
+
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
 
 import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.log4j.Logger;
@@ -82,13 +85,13 @@ public class DocLengthTable2B implements DocLengthTable {
     long docLengthSum = 0;
     docCount = 0;
 
-    FSDataInputStream in = fs.open(file);
+    ByteBuffer in = FileBuffers.map(fs, file);
 
     // The docno offset.
-    docnoOffset = in.readInt();
+    docnoOffset = in.getInt();
 
     // The size of the document collection.
-    int sz = in.readInt() + 1;
+    int sz = in.getInt() + 1;
 
     LOG.info("Docno offset: " + docnoOffset);
     LOG.info("Number of docs: " + (sz - 1));
@@ -96,9 +99,10 @@ public class DocLengthTable2B implements DocLengthTable {
     // Initialize an array to hold all the doc lengths.
     lengths = new short[sz];
 
-    // Read each doc length.
+    // Read each doc length straight from the buffer.
+    IntBuffer values = in.asIntBuffer();
     for (int i = 1; i < sz; i++) {
-      int l = in.readInt();
+      int l = values.get(i - 1);
       docLengthSum += l;
 
       lengths[i] = l > (Short.MAX_VALUE - Short.MIN_VALUE) ? Short.MAX_VALUE
@@ -110,8 +114,6 @@ public class DocLengthTable2B implements DocLengthTable {
       }
     }
 
-    in.close();
-
     LOG.info("Total of " + docCount + " doclengths read");
 
     // Compute average doc length.
@@ -16,10 +16,12 @@
 
 package ivory.core.data.stat;
 
+import ivory.core.util.FileBuffers;
+
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.log4j.Logger;
@@ -78,13 +80,13 @@ public class DocLengthTable4B implements DocLengthTable {
     long docLengthSum = 0;
     docCount = 0;
 
-    FSDataInputStream in = fs.open(file);
+    ByteBuffer in = FileBuffers.map(fs, file);
 
     // The docno offset.
-    docnoOffset = in.readInt();
+    docnoOffset = in.getInt();
 
     // The size of the document collection.
-    int sz = in.readInt() + 1;
+    int sz = in.getInt() + 1;
 
     LOG.info("Docno offset: " + docnoOffset);
     LOG.info("Number of docs: " + (sz - 1));
@@ -92,10 +94,10 @@ public class DocLengthTable4B implements DocLengthTable {
     // Initialize an array to hold all the doc lengths.
     lengths = new int[sz];
 
-    // Read each doc length.
+    // Read all doc lengths at once.
+    in.asIntBuffer().get(lengths, 1, sz - 1);
     for (int i = 1; i < sz; i++) {
-      int l = in.readInt();
-      lengths[i] = l;
+      int l = lengths[i];
       docLengthSum += l;
       docCount++;
 
@@ -104,8 +106,6 @@ public class DocLengthTable4B implements DocLengthTable {
       }
     }
 
-    in.close();
-
     LOG.info("Total of " + docCount + " doclengths read");
 
     // Compute average doc length.
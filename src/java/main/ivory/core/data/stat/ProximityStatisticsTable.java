@@ -0,0 +1,276 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.core.data.stat;
+
+import ivory.core.RetrievalEnvironment;
+
+import java.io.BufferedReader;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Arrays;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.WritableUtils;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>
+ * Document and collection frequencies of ordered (<code>#od</code>) and unordered
+ * (<code>#uw</code>) windows of two terms, for frequent term pairs. Binary search is used for
+ * lookup. The table covers a fixed set of window types and sizes, and only pairs of distinct
+ * terms with term ids up to a cutoff; since term ids are assigned in decreasing order of df,
+ * these are the most frequent terms. Pairs with a df below a minimum are left out of the table,
+ * so a pair that the table covers but doesn't hold has a df below that minimum.
+ * </p>
+ *
+ * <p>
+ * Entries are keyed by the index of the window in the list of windows the table covers, and the
+ * term ids of the two terms, in query order for ordered windows and in increasing order for
+ * unordered windows, since those match regardless of order. The file consists of: the largest
+ * term id covered and the minimum df, as ints; the number of windows, as an int; for each window,
+ * whether it is ordered, as a boolean, and its size, as an int; the number of entries, as an int;
+ * and for each entry, in increasing order of key, the key as a long, and the df and cf as vints
+ * and vlongs.
+ * </p>
+ *
+ * @see ivory.core.preprocess.ComputeProximityStatistics
+ */
+public class ProximityStatisticsTable {
+  /**
+   * Largest term id that fits in a key.
+   */
+  public static final int MAX_TERMID = (1 << 24) - 1;
+
+  /**
+   * Largest number of windows a table can cover.
+   */
+  public static final int MAX_WINDOWS = 1 << 8;
+
+  private static final int MISSING = -1;
+  private static final int NOT_COVERED = -2;
+
+  private final int maxTermId;
+  private final int minDf;
+  private final boolean[] ordered;
+  private final int[] windows;
+  private final long[] keys;
+  private final int[] dfs;
+  private final long[] cfs;
+
+  /**
+   * Creates a {@code ProximityStatisticsTable} object.
+   *
+   * @param file proximity statistics data file
+   * @param fs FileSystem to read from
+   * @throws IOException
+   */
+  public ProximityStatisticsTable(Path file, FileSystem fs) throws IOException {
+    Preconditions.checkNotNull(file);
+    Preconditions.checkNotNull(fs);
+
+    FSDataInputStream in = fs.open(file);
+
+    maxTermId = in.readInt();
+    minDf = in.readInt();
+    int numWindows = in.readInt();
+    ordered = new boolean[numWindows];
+    windows = new int[numWindows];
+    for (int i = 0; i < numWindows; i++) {
+      ordered[i] = in.readBoolean();
+      windows[i] = in.readInt();
+    }
+
+    int numEntries = in.readInt();
+    keys = new long[numEntries];
+    dfs = new int[numEntries];
+    cfs = new long[numEntries];
+    for (int i = 0; i < numEntries; i++) {
+      keys[i] = in.readLong();
+      dfs[i] = WritableUtils.readVInt(in);
+      cfs[i] = WritableUtils.readVLong(in);
+    }
+
+    in.close();
+  }
+
+  /**
+   * Writes the header of a table, which is followed by the given number of entries.
+   *
+   * @param out output to write to
+   * @param ordered whether or not each window is ordered
+   * @param windows size of each window
+   * @param maxTermId largest term id covered
+   * @param minDf smallest df of the pairs in the table
+   * @param numEntries number of entries that follow
+   * @throws IOException
+   */
+  public static void writeHeader(DataOutput out, boolean[] ordered, int[] windows, int maxTermId,
+      int minDf, int numEntries) throws IOException {
+    Preconditions.checkArgument(ordered.length == windows.length);
+    Preconditions.checkArgument(windows.length <= MAX_WINDOWS);
+    Preconditions.checkArgument(maxTermId <= MAX_TERMID);
+
+    out.writeInt(maxTermId);
+    out.writeInt(minDf);
+    out.writeInt(windows.length);
+    for (int i = 0; i < windows.length; i++) {
+      out.writeBoolean(ordered[i]);
+      out.writeInt(windows[i]);
+    }
+    out.writeInt(numEntries);
+  }
+
+  /**
+   * Writes an entry of a table. Entries must be written in increasing order of key.
+   *
+   * @param out output to write to
+   * @param key key of the window, as returned by {@link #getKey(int, boolean, int, int)}
+   * @param df df of the window
+   * @param cf cf of the window
+   * @throws IOException
+   */
+  public static void writeEntry(DataOutput out, long key, int df, long cf) throws IOException {
+    out.writeLong(key);
+    WritableUtils.writeVInt(out, df);
+    WritableUtils.writeVLong(out, cf);
+  }
+
+  /**
+   * Returns the key of a window of two terms.
+   *
+   * @param windowIndex index of the window in the list of windows covered
+   * @param ordered whether or not the window is ordered
+   * @param termid1 term id of the first term
+   * @param termid2 term id of the second term
+   */
+  public static long getKey(int windowIndex, boolean ordered, int termid1, int termid2) {
+    if (!ordered && termid2 < termid1) {
+      int tmp = termid1;
+      termid1 = termid2;
+      termid2 = tmp;
+    }
+    return ((long) windowIndex << 48) | ((long) termid1 << 24) | termid2;
+  }
+
+  /**
+   * Returns the df of a window of two terms, or -1 if the table doesn't cover the window or the
+   * pair. A pair that is covered but was left out of the table gets the largest df it could have,
+   * one less than the minimum df.
+   */
+  public int getDf(boolean ordered, int window, int termid1, int termid2) {
+    int i = find(ordered, window, termid1, termid2);
+    if (i == NOT_COVERED) {
+      return -1;
+    }
+    return i < 0 ? getMissingDf() : dfs[i];
+  }
+
+  /**
+   * Returns the cf of a window of two terms, or -1 if the table doesn't cover the window or the
+   * pair. A pair that is covered but was left out of the table gets a cf matching the df returned
+   * by {@link #getDf(boolean, int, int, int)}, of one match per document.
+   */
+  public long getCf(boolean ordered, int window, int termid1, int termid2) {
+    int i = find(ordered, window, termid1, termid2);
+    if (i == NOT_COVERED) {
+      return -1;
+    }
+    return i < 0 ? getMissingDf() : cfs[i];
+  }
+
+  /**
+   * Returns the largest term id covered.
+   */
+  public int getMaxTermId() {
+    return maxTermId;
+  }
+
+  /**
+   * Returns the smallest df of the pairs in the table.
+   */
+  public int getMinDf() {
+    return minDf;
+  }
+
+  /**
+   * Returns the number of term pairs in the table.
+   */
+  public int size() {
+    return keys.length;
+  }
+
+  private int getMissingDf() {
+    return Math.max(minDf - 1, 0);
+  }
+
+  // Returns the index of the entry of a window, MISSING if the table covers it but doesn't hold
+  // it, or NOT_COVERED.
+  private int find(boolean ordered, int window, int termid1, int termid2) {
+    if (termid1 <= 0 || termid1 > maxTermId || termid2 <= 0 || termid2 > maxTermId
+        || termid1 == termid2) {
+      return NOT_COVERED;
+    }
+    for (int w = 0; w < windows.length; w++) {
+      if (this.ordered[w] == ordered && windows[w] == window) {
+        int i = Arrays.binarySearch(keys, getKey(w, ordered, termid1, termid2));
+        return i < 0 ? MISSING : i;
+      }
+    }
+    return NOT_COVERED;
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length != 1) {
+      System.out.println("usage: [index-path]");
+      System.exit(-1);
+    }
+
+    String indexPath = args[0];
+
+    Configuration conf = new Configuration();
+    FileSystem fs = FileSystem.get(conf);
+
+    RetrievalEnvironment env = new RetrievalEnvironment(indexPath, fs);
+
+    ProximityStatisticsTable table =
+        new ProximityStatisticsTable(new Path(env.getProximityDfCfData()), fs);
+    System.out.println("Number of term pairs: " + table.size());
+    System.out.println("Max term id: " + table.getMaxTermId() + ", min df: " + table.getMinDf());
+
+    String input = null;
+    BufferedReader stdin = new BufferedReader(new InputStreamReader(System.in));
+    System.out.print("lookup [od|uw] [window] [termid] [termid] > ");
+    while ((input = stdin.readLine()) != null) {
+      String[] fields = input.trim().split("\\s+");
+      if (fields.length == 4) {
+        boolean ordered = fields[0].equals("od");
+        int window = Integer.parseInt(fields[1]);
+        int termid1 = Integer.parseInt(fields[2]);
+        int termid2 = Integer.parseInt(fields[3]);
+        System.out.println("df=" + table.getDf(ordered, window, termid1, termid2) + ", cf="
+            + table.getCf(ordered, window, termid1, termid2));
+      }
+
+      System.out.print("lookup [od|uw] [window] [termid] [termid] > ");
+    }
+  }
+}
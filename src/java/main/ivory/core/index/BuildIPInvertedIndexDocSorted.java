@@ -20,16 +20,22 @@ import ivory.core.Constants;
 import ivory.core.RetrievalEnvironment;
 import ivory.core.data.document.IntDocVector;
 import ivory.core.data.document.IntDocVector.Reader;
+import ivory.core.data.index.BlockMaxPostingsList;
 import ivory.core.data.index.PostingsList;
+import ivory.core.data.index.PostingsListDocSortedPositional;
 import ivory.core.data.index.TermPositions;
+import ivory.core.data.stat.DocLengthTable2B;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.WritableUtils;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.Partitioner;
@@ -41,13 +47,29 @@ import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
 
+import com.google.common.collect.Lists;
+
 import edu.umd.cloud9.io.pair.PairOfInts;
 import edu.umd.cloud9.util.PowerTool;
+import edu.umd.cloud9.util.array.ArrayListOfInts;
 import edu.umd.cloud9.util.map.HMapII;
+import edu.umd.cloud9.util.map.HMapIV;
 import edu.umd.cloud9.util.map.MapII;
 
 /**
+ * <p>
  * Indexer for building document-sorted inverted indexes.
+ * </p>
+ *
+ * <p>
+ * By default, mappers emit a (term, docno) key and the term positions for every term of every
+ * document, and reducers encode each postings list as the postings arrive in docno order. If
+ * {@link Constants#PostingsBufferSize} is set to a positive number of megabytes, mappers instead
+ * buffer postings per term in memory and, whenever the buffer grows past that size, emit a
+ * compressed {@link PostingsListDocSortedPositional} chunk for each term buffered. Reducers merge
+ * the chunks of each term into the final postings list. This shuffles a few records per term and
+ * mapper instead of one per posting, and the positions are shuffled compressed.
+ * </p>
  *
  * @author Jimmy Lin
  * @author Tamer Elsayed
@@ -118,6 +140,125 @@ public class BuildIPInvertedIndexDocSorted extends PowerTool {
     }
   }
 
+  private static class MyChunkMapper
+      extends Mapper<IntWritable, IntDocVector, IntWritable, PostingsListDocSortedPositional> {
+    // Rough per-term memory overhead of the buffer, in bytes.
+    private static final int TERM_OVERHEAD = 64;
+
+    private static final TermPositions termPositions = new TermPositions();
+    private static final IntWritable term = new IntWritable();
+    private static final PostingsListDocSortedPositional chunk =
+        new PostingsListDocSortedPositional();
+
+    // Holds, for each term, the docno, tf and positions of each posting.
+    private final HMapIV<ArrayListOfInts> buffers = new HMapIV<ArrayListOfInts>();
+    private int[] positions = new int[16];
+    private long bufferSize;
+    private long maxBufferSize;
+    private int collectionDocumentCount;
+
+    @Override
+    public void setup(Context context) {
+      collectionDocumentCount =
+          context.getConfiguration().getInt(Constants.CollectionDocumentCount, 0);
+      if (collectionDocumentCount == 0) {
+        throw new RuntimeException("Error: size of collection cannot be zero!");
+      }
+      maxBufferSize =
+          context.getConfiguration().getInt(Constants.PostingsBufferSize, 0) * 1024L * 1024L;
+      buffers.clear();
+      bufferSize = 0;
+    }
+
+    @Override
+    public void map(IntWritable key, IntDocVector doc, Context context)
+        throws IOException, InterruptedException {
+      int docno = key.get();
+
+      long startTime = System.currentTimeMillis();
+      Reader r = doc.getReader();
+
+      int dl = 0;
+      while (r.hasMoreTerms()) {
+        int t = r.nextTerm();
+        r.getPositions(termPositions);
+
+        ArrayListOfInts buffer = buffers.get(t);
+        if (buffer == null) {
+          buffer = new ArrayListOfInts();
+          buffers.put(t, buffer);
+          bufferSize += TERM_OVERHEAD;
+        }
+
+        short tf = termPositions.getTf();
+        int[] pos = termPositions.getPositions();
+        buffer.add(docno);
+        buffer.add(tf);
+        for (int i = 0; i < tf; i++) {
+          buffer.add(pos[i]);
+        }
+        bufferSize += 4 * (tf + 2);
+
+        // Document length of the current doc.
+        dl += tf;
+      }
+
+      if (bufferSize >= maxBufferSize) {
+        flush(context);
+      }
+
+      context.getCounter(IndexedTerms.Total).increment(dl); // Update number of indexed terms.
+      context.getCounter(Docs.Total).increment(1);          // Update number of docs.
+      context.getCounter(MapTime.Total).increment(System.currentTimeMillis() - startTime);
+    }
+
+    @Override
+    public void cleanup(Context context) throws IOException, InterruptedException {
+      long startTime = System.currentTimeMillis();
+      flush(context);
+      context.getCounter(MapTime.Total).increment(System.currentTimeMillis() - startTime);
+    }
+
+    private void flush(Context context) throws IOException, InterruptedException {
+      for (int t : buffers.keySet()) {
+        ArrayListOfInts buffer = buffers.get(t);
+
+        // Documents come in collection order, which isn't necessarily docno order (docnos follow
+        // the sorted docids), so sort the postings by docno. The Golomb parameter depends on the
+        // number of postings, which this also counts.
+        int numPostings = 0;
+        long[] keys = new long[buffer.size()];
+        for (int i = 0; i < buffer.size(); i += buffer.get(i + 1) + 2) {
+          keys[numPostings++] = ((long) buffer.get(i) << 32) | i;
+        }
+        Arrays.sort(keys, 0, numPostings);
+
+        chunk.clear();
+        chunk.setCollectionDocumentCount(collectionDocumentCount);
+        chunk.setNumberOfPostings(numPostings);
+
+        for (int n = 0; n < numPostings; n++) {
+          int i = (int) keys[n];
+          short tf = (short) buffer.get(i + 1);
+          if (positions.length < tf) {
+            positions = new int[Math.max(tf, 2 * positions.length)];
+          }
+          for (int j = 0; j < tf; j++) {
+            positions[j] = buffer.get(i + 2 + j);
+          }
+          termPositions.set(positions, tf);
+          chunk.add(buffer.get(i), tf, termPositions);
+        }
+
+        term.set(t);
+        context.write(term, chunk);
+      }
+
+      buffers.clear();
+      bufferSize = 0;
+    }
+  }
+
   private static class MyReducer
       extends Reducer<PairOfInts, TermPositions, IntWritable, PostingsList> {
     private static final IntWritable term = new IntWritable();
@@ -129,19 +270,7 @@ public class BuildIPInvertedIndexDocSorted extends PowerTool {
     @Override
     public void setup(Context context) {
       LOG.setLevel(Level.WARN);
-      int cnt = context.getConfiguration().getInt(Constants.CollectionDocumentCount, 0);
-      if (cnt == 0) {
-        throw new RuntimeException("Error: size of collection cannot be zero!");
-      }
-
-      String postingsType = context.getConfiguration().get(Constants.PostingsListsType,
-          ivory.core.data.index.PostingsListDocSortedPositional.class.getCanonicalName());
-      try {
-        postings = (PostingsList) Class.forName(postingsType).newInstance();
-      } catch (Exception e) {
-        throw new RuntimeException(e);
-      }
-      postings.setCollectionDocumentCount(cnt);
+      postings = createPostingsList(context.getConfiguration());
     }
 
     @Override
@@ -216,6 +345,49 @@ public class BuildIPInvertedIndexDocSorted extends PowerTool {
     }
   }
 
+  private static class MyChunkReducer
+      extends Reducer<IntWritable, PostingsListDocSortedPositional, IntWritable, PostingsList> {
+    private static final List<PostingsList> chunks = Lists.newArrayList();
+    private static PostingsList postings;
+
+    private int collectionDocumentCount;
+
+    @Override
+    public void setup(Context context) {
+      LOG.setLevel(Level.WARN);
+      postings = createPostingsList(context.getConfiguration());
+      collectionDocumentCount = postings.getCollectionDocumentCount();
+    }
+
+    @Override
+    public void reduce(IntWritable term, Iterable<PostingsListDocSortedPositional> values,
+        Context context) throws IOException, InterruptedException {
+      long start = System.currentTimeMillis();
+
+      // Hadoop reuses the value object, so each chunk has to be copied.
+      chunks.clear();
+      for (PostingsListDocSortedPositional chunk : values) {
+        chunks.add(WritableUtils.clone(chunk, context.getConfiguration()));
+      }
+
+      if (chunks.size() == 1 && postings.getClass() == PostingsListDocSortedPositional.class) {
+        // A single chunk is already encoded exactly as the full postings list would be.
+        context.write(term, chunks.get(0));
+      } else {
+        postings.clear();
+        PostingsListDocSortedPositional.mergeList(postings, chunks, collectionDocumentCount);
+        context.write(term, postings);
+      }
+      context.getCounter(IndexedTerms.Unique).increment(1);
+
+      LOG.info(String.format("Finished processing postings for term %d (num chunks=%d)",
+          term.get(), chunks.size()));
+      chunks.clear();
+
+      context.getCounter(ReduceTime.Total).increment(System.currentTimeMillis() - start);
+    }
+  }
+
   private static class MyPartitioner extends Partitioner<PairOfInts, TermPositions> {
     // Keys with the same terms should go to the same reducer.
     @Override
@@ -224,6 +396,38 @@ public class BuildIPInvertedIndexDocSorted extends PowerTool {
     }
   }
 
+  // Creates an empty postings list of the type set in the configuration.
+  static PostingsList createPostingsList(Configuration conf) {
+    int cnt = conf.getInt(Constants.CollectionDocumentCount, 0);
+    if (cnt == 0) {
+      throw new RuntimeException("Error: size of collection cannot be zero!");
+    }
+
+    String postingsType = conf.get(Constants.PostingsListsType,
+        ivory.core.data.index.PostingsListDocSortedPositional.class.getCanonicalName());
+    PostingsList postings;
+    try {
+      postings = (PostingsList) Class.forName(postingsType).newInstance();
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+    postings.setCollectionDocumentCount(cnt);
+
+    // Block-max postings need doclengths to bound the scores of each block.
+    if (postings instanceof BlockMaxPostingsList) {
+      try {
+        FileSystem fs = FileSystem.get(conf);
+        RetrievalEnvironment env = new RetrievalEnvironment(conf.get(Constants.IndexPath), fs);
+        ((BlockMaxPostingsList) postings).setDocLengthTable(
+            new DocLengthTable2B(env.getDoclengthsData(), fs));
+      } catch (IOException e) {
+        throw new RuntimeException("Unable to load doclengths!", e);
+      }
+    }
+
+    return postings;
+  }
+
   public static final String[] RequiredParameters = {
           Constants.NumReduceTasks, Constants.IndexPath };
 
@@ -246,6 +450,7 @@ public class BuildIPInvertedIndexDocSorted extends PowerTool {
 
     int reduceTasks = conf.getInt(Constants.NumReduceTasks, 0);
     int minSplitSize = conf.getInt(Constants.MinSplitSize, 0);
+    int postingsBufferSize = conf.getInt(Constants.PostingsBufferSize, 0);
     int collectionDocCnt = env.readCollectionDocumentCount();
 
     String postingsType = conf.get(Constants.PostingsListsType,
@@ -261,6 +466,7 @@ public class BuildIPInvertedIndexDocSorted extends PowerTool {
     LOG.info(String.format(" - %s: %s", Constants.PostingsListsType, postingsClass.getCanonicalName()));
     LOG.info(String.format(" - %s: %s", Constants.NumReduceTasks, reduceTasks));
     LOG.info(String.format(" - %s: %s", Constants.MinSplitSize, minSplitSize));
+    LOG.info(String.format(" - %s: %s", Constants.PostingsBufferSize, postingsBufferSize));
 
     if (!fs.exists(new Path(indexPath))) {
       fs.mkdirs(new Path(indexPath));
@@ -291,14 +497,22 @@ public class BuildIPInvertedIndexDocSorted extends PowerTool {
     job.setInputFormatClass(SequenceFileInputFormat.class);
     job.setOutputFormatClass(SequenceFileOutputFormat.class);
 
-    job.setMapOutputKeyClass(PairOfInts.class);
-    job.setMapOutputValueClass(TermPositions.class);
     job.setOutputKeyClass(IntWritable.class);
     job.setOutputValueClass(postingsClass);
 
-    job.setMapperClass(MyMapper.class);
-    job.setReducerClass(MyReducer.class);
-    job.setPartitionerClass(MyPartitioner.class);
+    if (postingsBufferSize > 0) {
+      // Terms are partitioned by the default partitioner, as IntWritable hashes to its value.
+      job.setMapOutputKeyClass(IntWritable.class);
+      job.setMapOutputValueClass(PostingsListDocSortedPositional.class);
+      job.setMapperClass(MyChunkMapper.class);
+      job.setReducerClass(MyChunkReducer.class);
+    } else {
+      job.setMapOutputKeyClass(PairOfInts.class);
+      job.setMapOutputValueClass(TermPositions.class);
+      job.setMapperClass(MyMapper.class);
+      job.setReducerClass(MyReducer.class);
+      job.setPartitionerClass(MyPartitioner.class);
+    }
 
     long startTime = System.currentTimeMillis();
     job.waitForCompletion(true);
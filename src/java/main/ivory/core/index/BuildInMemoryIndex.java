@@ -0,0 +1,787 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.core.index;
+
+import ivory.core.Constants;
+import ivory.core.RetrievalEnvironment;
+import ivory.core.data.dictionary.DefaultFrequencySortedDictionary;
+import ivory.core.data.dictionary.DictionaryTransformationStrategy;
+import ivory.core.data.document.IntDocVectorsForwardIndex;
+import ivory.core.data.document.LazyIntDocVector;
+import ivory.core.data.document.LazyTermDocVector;
+import ivory.core.data.document.TermDocVectorsForwardIndex;
+import ivory.core.data.index.IntPostingsForwardIndex;
+import ivory.core.data.index.PostingsList;
+import ivory.core.data.index.PostingsListDocSortedPositional;
+import ivory.core.data.index.TermPositions;
+import ivory.core.preprocess.BuildDictionary;
+import ivory.core.tokenize.DocumentProcessingUtils;
+import ivory.core.tokenize.Tokenizer;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.SortedMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.mapreduce.InputFormat;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.apache.log4j.Logger;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import edu.umd.cloud9.collection.DocnoMapping;
+import edu.umd.cloud9.collection.Indexable;
+import edu.umd.cloud9.util.PowerTool;
+import edu.umd.cloud9.util.array.ArrayListOfInts;
+import edu.umd.cloud9.util.map.HMapIV;
+
+/**
+ * <p>
+ * Indexer that builds a positional inverted index of a collection that fits on a single machine,
+ * in a single process, without MapReduce. It does the work of {@code BuildTermDocVectors},
+ * {@code ComputeGlobalTermStatistics}, {@code BuildDictionary}, {@code BuildIntDocVectors}, the
+ * two doc vector forward index builders, {@link BuildIPInvertedIndexDocSorted} and
+ * {@link BuildIntPostingsForwardIndex}, and writes the same index layout.
+ * </p>
+ *
+ * <p>
+ * Work is spread over a pool of {@link Constants#NumThreads} threads, all processors by default:
+ * </p>
+ *
+ * <ol>
+ * <li>Each input split is tokenized into a file of term doc vectors, while term statistics and
+ * doclengths are gathered in memory.</li>
+ * <li>The dictionary, doclengths and term doc vector forward index are written out.</li>
+ * <li>Each file of term doc vectors is turned into a file of int doc vectors. Postings are
+ * buffered in memory and, when the buffer of a thread grows past its share of
+ * {@link Constants#PostingsBufferSize} megabytes, compressed into partial postings lists, which
+ * are spilled to a temporary directory as runs sorted by term id, one run per output partition.
+ * </li>
+ * <li>The runs of each partition are merged, and the postings are written out in
+ * {@link Constants#NumReduceTasks} files, partitioned as {@link BuildIPInvertedIndexDocSorted}
+ * would. Only the partial postings lists of the term being merged are held in memory.</li>
+ * </ol>
+ *
+ * <p>
+ * Only the intermediate term df/cf and doclength text files aren't written, since nothing reads
+ * them once the index is built.
+ * </p>
+ */
+public class BuildInMemoryIndex extends PowerTool {
+  private static final Logger LOG = Logger.getLogger(BuildInMemoryIndex.class);
+
+  // Rough per-term memory overhead of the postings buffers, in bytes.
+  private static final int TERM_OVERHEAD = 64;
+  private static final int DEFAULT_POSTINGS_BUFFER_SIZE = 512;
+
+  public static final String[] RequiredParameters = {
+          Constants.CollectionName,
+          Constants.CollectionPath,
+          Constants.IndexPath,
+          Constants.InputFormat,
+          Constants.Tokenizer,
+          Constants.DocnoMappingClass,
+          Constants.DocnoOffset };
+
+  public String[] getRequiredParameters() {
+    return RequiredParameters;
+  }
+
+  public BuildInMemoryIndex(Configuration conf) {
+    super(conf);
+  }
+
+  private Configuration conf;
+  private FileSystem fs;
+  private RetrievalEnvironment env;
+  private ExecutorService threadPool;
+  private int numThreads;
+  private int docnoOffset;
+
+  public int runTool() throws Exception {
+    conf = getConf();
+    fs = FileSystem.get(conf);
+
+    String indexPath = conf.get(Constants.IndexPath);
+    String collectionName = conf.get(Constants.CollectionName);
+    String collectionPath = conf.get(Constants.CollectionPath);
+    String inputFormat = conf.get(Constants.InputFormat);
+    String tokenizer = conf.get(Constants.Tokenizer);
+    String mappingClass = conf.get(Constants.DocnoMappingClass);
+    String postingsType = conf.get(Constants.PostingsListsType,
+        PostingsListDocSortedPositional.class.getCanonicalName());
+    docnoOffset = conf.getInt(Constants.DocnoOffset, 0);
+    numThreads = conf.getInt(Constants.NumThreads, Runtime.getRuntime().availableProcessors());
+    int numPartitions = conf.getInt(Constants.NumReduceTasks, numThreads);
+    int postingsBufferSize =
+        conf.getInt(Constants.PostingsBufferSize, DEFAULT_POSTINGS_BUFFER_SIZE);
+    int minDf = conf.getInt(Constants.MinDf, 2);
+    int maxDf = conf.getInt(Constants.MaxDf, Integer.MAX_VALUE);
+
+    LOG.info("PowerTool: " + BuildInMemoryIndex.class.getCanonicalName());
+    LOG.info(String.format(" - %s: %s", Constants.IndexPath, indexPath));
+    LOG.info(String.format(" - %s: %s", Constants.CollectionName, collectionName));
+    LOG.info(String.format(" - %s: %s", Constants.CollectionPath, collectionPath));
+    LOG.info(String.format(" - %s: %s", Constants.InputFormat, inputFormat));
+    LOG.info(String.format(" - %s: %s", Constants.Tokenizer, tokenizer));
+    LOG.info(String.format(" - %s: %s", Constants.DocnoMappingClass, mappingClass));
+    LOG.info(String.format(" - %s: %s", Constants.DocnoOffset, docnoOffset));
+    LOG.info(String.format(" - %s: %s", Constants.PostingsListsType, postingsType));
+    LOG.info(String.format(" - %s: %s", Constants.NumThreads, numThreads));
+    LOG.info(String.format(" - %s: %s", Constants.NumReduceTasks, numPartitions));
+    LOG.info(String.format(" - %s: %s", Constants.PostingsBufferSize, postingsBufferSize));
+    LOG.info(String.format(" - %s: %s", Constants.MinDf, minDf));
+    LOG.info(String.format(" - %s: %s", Constants.MaxDf, maxDf));
+
+    env = new RetrievalEnvironment(indexPath, fs);
+    Path mappingFile = env.getDocnoMappingData();
+
+    if (!fs.exists(mappingFile)) {
+      LOG.error("Error, docno mapping data file " + mappingFile + " doesn't exist!");
+      return 0;
+    }
+
+    if (fs.exists(new Path(env.getTermDocVectorsDirectory()))
+        || fs.exists(new Path(env.getPostingsDirectory()))) {
+      LOG.info("Index data already exist: no indexing will be performed.");
+      return 0;
+    }
+
+    env.writeCollectionName(collectionName);
+    env.writeCollectionPath(collectionPath);
+    env.writeInputFormat(inputFormat);
+    env.writeDocnoMappingClass(mappingClass);
+    env.writeTokenizerClass(tokenizer);
+    env.writeDocnoOffset(docnoOffset);
+
+    DocnoMapping docMapping = (DocnoMapping) Class.forName(mappingClass).newInstance();
+    docMapping.loadMapping(mappingFile, fs);
+
+    Path tmpPath = new Path(env.getTempDirectory());
+    threadPool = Executors.newFixedThreadPool(numThreads);
+    try {
+      long startTime = System.currentTimeMillis();
+      List<ParsedSplit> splits = buildTermDocVectors(docMapping);
+      LOG.info("Built term doc vectors in " +
+          (System.currentTimeMillis() - startTime) / 1000.0 + " seconds");
+
+      startTime = System.currentTimeMillis();
+      int collectionDocCount = writeDocumentData(splits);
+      int numTerms = writeDictionary(splits, minDf, maxDf);
+      splits = null;
+      LOG.info("Wrote dictionary and document data in " +
+          (System.currentTimeMillis() - startTime) / 1000.0 + " seconds");
+
+      conf.setInt(Constants.CollectionDocumentCount, collectionDocCount);
+
+      startTime = System.currentTimeMillis();
+      buildIntDocVectors(tmpPath, numPartitions,
+          postingsBufferSize * 1024L * 1024L / numThreads);
+      LOG.info("Built int doc vectors in " +
+          (System.currentTimeMillis() - startTime) / 1000.0 + " seconds");
+
+      startTime = System.currentTimeMillis();
+      buildPostings(tmpPath, numTerms, numPartitions);
+      env.writePostingsType(postingsType);
+      LOG.info("Built postings in " +
+          (System.currentTimeMillis() - startTime) / 1000.0 + " seconds");
+    } finally {
+      threadPool.shutdown();
+      fs.delete(tmpPath, true);
+    }
+
+    return 0;
+  }
+
+  // Everything the first pass learns about the documents of a split.
+  private static class ParsedSplit {
+    final int fileNo;
+    final Map<String, long[]> termStats = Maps.newHashMap(); // Holds {df, cf} of each term.
+    final ArrayListOfInts docnos = new ArrayListOfInts();
+    final ArrayListOfInts doclengths = new ArrayListOfInts();
+    long[] offsets = new long[1024];
+
+    ParsedSplit(int fileNo) {
+      this.fileNo = fileNo;
+    }
+
+    void addDocument(int docno, int doclength, long offset) {
+      if (docnos.size() == offsets.length) {
+        offsets = Arrays.copyOf(offsets, 2 * offsets.length);
+      }
+      offsets[docnos.size()] = offset;
+      docnos.add(docno);
+      doclengths.add(doclength);
+    }
+  }
+
+  private List<ParsedSplit> buildTermDocVectors(final DocnoMapping docMapping)
+      throws Exception {
+    final Job job = new Job(conf);
+    FileInputFormat.addInputPaths(job, conf.get(Constants.CollectionPath));
+
+    @SuppressWarnings("unchecked")
+    final InputFormat<?, ? extends Indexable> inputFormat =
+        (InputFormat<?, ? extends Indexable>) ReflectionUtils.newInstance(
+            Class.forName(conf.get(Constants.InputFormat)), job.getConfiguration());
+    List<InputSplit> inputSplits = inputFormat.getSplits(job);
+    LOG.info(inputSplits.size() + " input splits");
+
+    // Tokenizers needn't be thread-safe, so each thread gets its own.
+    final ThreadLocal<Tokenizer> tokenizers = new ThreadLocal<Tokenizer>() {
+      @Override
+      protected Tokenizer initialValue() {
+        try {
+          Tokenizer tokenizer = (Tokenizer) Class.forName(conf.get(Constants.Tokenizer))
+              .newInstance();
+          tokenizer.configure(conf);
+          return tokenizer;
+        } catch (Exception e) {
+          throw new RuntimeException("Error initializing tokenizer!", e);
+        }
+      }
+    };
+
+    final String outputPath = env.getTermDocVectorsDirectory();
+    fs.mkdirs(new Path(outputPath));
+
+    List<Future<ParsedSplit>> futures = Lists.newArrayList();
+    for (int i = 0; i < inputSplits.size(); i++) {
+      final int fileNo = i;
+      final InputSplit split = inputSplits.get(i);
+      futures.add(threadPool.submit(new Callable<ParsedSplit>() {
+        public ParsedSplit call() throws Exception {
+          ParsedSplit parsed = new ParsedSplit(fileNo);
+          Tokenizer tokenizer = tokenizers.get();
+
+          TaskAttemptContext context =
+              new TaskAttemptContext(job.getConfiguration(), new TaskAttemptID());
+          RecordReader<?, ? extends Indexable> reader =
+              inputFormat.createRecordReader(split, context);
+          reader.initialize(split, context);
+
+          SequenceFile.Writer out = SequenceFile.createWriter(fs, conf,
+              new Path(outputPath + "/part-m-" + String.format("%05d", fileNo)),
+              IntWritable.class, LazyTermDocVector.class, SequenceFile.CompressionType.RECORD);
+
+          IntWritable key = new IntWritable();
+          LazyTermDocVector docVector = new LazyTermDocVector();
+          while (reader.nextKeyValue()) {
+            Indexable doc = reader.getCurrentValue();
+            int docno = docMapping.getDocno(doc.getDocid());
+
+            // Skip invalid docnos.
+            if (docno <= 0) {
+              continue;
+            }
+
+            Map<String, ArrayListOfInts> termPositionsMap =
+                DocumentProcessingUtils.parseDocument(doc, tokenizer);
+
+            int doclength = 0;
+            if (termPositionsMap.size() != 0) {
+              doclength = termPositionsMap.get("").get(0);
+              termPositionsMap.remove("");
+            }
+
+            for (Map.Entry<String, ArrayListOfInts> e : termPositionsMap.entrySet()) {
+              long[] stats = parsed.termStats.get(e.getKey());
+              if (stats == null) {
+                stats = new long[2];
+                parsed.termStats.put(e.getKey(), stats);
+              }
+              stats[0]++;
+              stats[1] += e.getValue().size();
+            }
+
+            parsed.addDocument(docno, doclength, out.getLength());
+            key.set(docno);
+            docVector.setTermPositionsMap(termPositionsMap);
+            out.append(key, docVector);
+          }
+
+          out.close();
+          reader.close();
+
+          return parsed;
+        }
+      }));
+    }
+
+    List<ParsedSplit> splits = Lists.newArrayList();
+    for (Future<ParsedSplit> future : futures) {
+      splits.add(get(future));
+    }
+
+    return splits;
+  }
+
+  // Writes out the doclengths and the term doc vectors forward index, and returns the number of
+  // documents in the collection.
+  private int writeDocumentData(List<ParsedSplit> splits) throws IOException {
+    int collectionDocCount = 0;
+    int maxDocno = 0;
+    long sumOfDocLengths = 0;
+    for (ParsedSplit split : splits) {
+      collectionDocCount += split.docnos.size();
+      for (int i = 0; i < split.docnos.size(); i++) {
+        maxDocno = Math.max(maxDocno, split.docnos.get(i));
+        sumOfDocLengths += split.doclengths.get(i);
+      }
+    }
+
+    env.writeCollectionDocumentCount(collectionDocCount);
+    env.writeCollectionAverageDocumentLength((float) sumOfDocLengths / collectionDocCount);
+    env.writeCollectionLength(sumOfDocLengths);
+
+    // Sort the documents by docno, keeping track of where each one came from.
+    long[] keys = new long[collectionDocCount];
+    long[] positions = new long[collectionDocCount];
+    int[] doclengths = new int[maxDocno - docnoOffset + 1];
+    int n = 0;
+    for (ParsedSplit split : splits) {
+      for (int i = 0; i < split.docnos.size(); i++) {
+        int docno = split.docnos.get(i);
+        if (docno < docnoOffset) {
+          throw new RuntimeException(
+              "Error: docno " + docno + " < docnoOffset " + docnoOffset + "!");
+        }
+        doclengths[docno - docnoOffset] = split.doclengths.get(i);
+
+        positions[n] = TermDocVectorsForwardIndex.BigNumber * split.fileNo + split.offsets[i];
+        keys[n] = ((long) docno << 32) | n;
+        n++;
+      }
+    }
+    Arrays.sort(keys);
+
+    FSDataOutputStream out = fs.create(env.getDoclengthsData(), true);
+    out.writeInt(docnoOffset);
+    out.writeInt(maxDocno - docnoOffset);
+    for (int i = 1; i <= maxDocno - docnoOffset; i++) {
+      out.writeInt(doclengths[i]);
+    }
+    out.close();
+
+    out = fs.create(new Path(env.getTermDocVectorsForwardIndex()), true);
+    out.writeInt(docnoOffset);
+    out.writeInt(collectionDocCount);
+    for (int i = 0; i < collectionDocCount; i++) {
+      if (i > 0 && (keys[i] >>> 32) == (keys[i - 1] >>> 32)) {
+        throw new RuntimeException("There shouldn't be more than one document with docno "
+            + (keys[i] >>> 32));
+      }
+      out.writeLong(positions[(int) keys[i]]);
+    }
+    out.close();
+
+    return collectionDocCount;
+  }
+
+  // Writes out the dictionary, and returns the number of terms in it.
+  private int writeDictionary(List<ParsedSplit> splits, int minDf, int maxDf)
+      throws IOException {
+    Map<String, long[]> termStats = Maps.newHashMap();
+    for (ParsedSplit split : splits) {
+      for (Map.Entry<String, long[]> e : split.termStats.entrySet()) {
+        long[] stats = termStats.get(e.getKey());
+        if (stats == null) {
+          termStats.put(e.getKey(), e.getValue());
+        } else {
+          stats[0] += e.getValue()[0];
+          stats[1] += e.getValue()[1];
+        }
+      }
+      split.termStats.clear();
+    }
+
+    List<String> termList = Lists.newArrayList();
+    for (Map.Entry<String, long[]> e : termStats.entrySet()) {
+      if (e.getValue()[0] >= minDf && e.getValue()[0] <= maxDf) {
+        termList.add(e.getKey());
+      }
+    }
+
+    String[] terms = termList.toArray(new String[termList.size()]);
+    Arrays.sort(terms, new DictionaryTransformationStrategy.Comparator());
+
+    int[] dfs = new int[terms.length];
+    long[] cfs = new long[terms.length];
+    for (int i = 0; i < terms.length; i++) {
+      long[] stats = termStats.get(terms[i]);
+      dfs[i] = (int) stats[0];
+      cfs[i] = stats[1];
+    }
+
+    env.writeCollectionTermCount(terms.length);
+    BuildDictionary.writeDictionary(env, fs, terms, dfs, cfs);
+
+    return terms.length;
+  }
+
+  // Writes out the int doc vectors and their forward index, and spills partial postings lists
+  // into runs under the temporary directory.
+  private void buildIntDocVectors(final Path tmpPath, final int numPartitions,
+      final long maxBufferSize) throws Exception {
+    final DefaultFrequencySortedDictionary dictionary = new DefaultFrequencySortedDictionary(
+        new Path(env.getIndexTermsData()), new Path(env.getIndexTermIdsData()),
+        new Path(env.getIndexTermIdMappingData()), fs);
+
+    final String inputPath = env.getTermDocVectorsDirectory();
+    final String outputPath = env.getIntDocVectorsDirectory();
+    fs.mkdirs(new Path(outputPath));
+
+    final int collectionDocCount = conf.getInt(Constants.CollectionDocumentCount, 0);
+    final long[] forwardIndex = new long[collectionDocCount];
+    final int[] forwardIndexDocnos = new int[collectionDocCount];
+    final int[] numDocs = new int[1];
+
+    List<Future<?>> futures = Lists.newArrayList();
+    int fileNo = 0;
+    while (fs.exists(new Path(inputPath + "/part-m-" + String.format("%05d", fileNo)))) {
+      final int curFileNo = fileNo++;
+      futures.add(threadPool.submit(new Callable<Void>() {
+        public Void call() throws Exception {
+          String file = "/part-m-" + String.format("%05d", curFileNo);
+          SequenceFile.Reader in = new SequenceFile.Reader(fs, new Path(inputPath + file), conf);
+          SequenceFile.Writer out = SequenceFile.createWriter(fs, conf,
+              new Path(outputPath + file), IntWritable.class, LazyIntDocVector.class,
+              SequenceFile.CompressionType.RECORD);
+
+          PostingsBuffer buffer = new PostingsBuffer(fs, conf, tmpPath, curFileNo, numPartitions,
+              collectionDocCount);
+          IntWritable key = new IntWritable();
+          LazyTermDocVector termDocVector = new LazyTermDocVector();
+          LazyIntDocVector intDocVector = new LazyIntDocVector();
+          ArrayListOfInts docnos = new ArrayListOfInts();
+          List<Long> offsets = Lists.newArrayList();
+          while (in.next(key, termDocVector)) {
+            SortedMap<Integer, int[]> positions =
+                DocumentProcessingUtils.integerizeTermDocVector(termDocVector, dictionary);
+
+            docnos.add(key.get());
+            offsets.add(IntDocVectorsForwardIndex.BigNumber * curFileNo + out.getLength());
+            intDocVector.setTermPositionsMap(positions);
+            out.append(key, intDocVector);
+
+            buffer.add(key.get(), positions);
+            if (buffer.size() >= maxBufferSize) {
+              buffer.flush();
+            }
+          }
+          buffer.flush();
+
+          in.close();
+          out.close();
+
+          synchronized (numDocs) {
+            for (int i = 0; i < docnos.size(); i++) {
+              forwardIndexDocnos[numDocs[0]] = docnos.get(i);
+              forwardIndex[numDocs[0]] = offsets.get(i);
+              numDocs[0]++;
+            }
+          }
+
+          return null;
+        }
+      }));
+    }
+
+    for (Future<?> future : futures) {
+      get(future);
+    }
+
+    if (numDocs[0] != collectionDocCount) {
+      throw new IOException("Expected " + collectionDocCount + " docs, actually got "
+          + numDocs[0] + " docs!");
+    }
+
+    // Sort on docnos to get the right writing order.
+    long[] keys = new long[collectionDocCount];
+    for (int i = 0; i < collectionDocCount; i++) {
+      keys[i] = ((long) forwardIndexDocnos[i] << 32) | i;
+    }
+    Arrays.sort(keys);
+
+    FSDataOutputStream out = fs.create(new Path(env.getIntDocVectorsForwardIndex()), true);
+    out.writeInt(docnoOffset);
+    out.writeInt(collectionDocCount);
+    for (int i = 0; i < collectionDocCount; i++) {
+      out.writeLong(forwardIndex[(int) keys[i]]);
+    }
+    out.close();
+  }
+
+  // Returns the directory of the runs of a partition.
+  private static Path getRunsPath(Path tmpPath, int partition) {
+    return new Path(tmpPath, "part-" + String.format("%05d", partition));
+  }
+
+  /**
+   * Buffers postings, and compresses them into partial postings lists of each term when flushed.
+   * Each flush writes one run per partition, holding the partial postings lists of the terms of
+   * the partition in increasing order of term id.
+   */
+  private static class PostingsBuffer {
+    private final TermPositions termPositions = new TermPositions();
+    private final PostingsListDocSortedPositional chunk = new PostingsListDocSortedPositional();
+    private final IntWritable key = new IntWritable();
+
+    // Holds, for each term, the docno, tf and positions of each posting.
+    private final HMapIV<ArrayListOfInts> buffers = new HMapIV<ArrayListOfInts>();
+    private final FileSystem fs;
+    private final Configuration conf;
+    private final Path tmpPath;
+    private final int fileNo;
+    private final int numPartitions;
+    private final int collectionDocCount;
+    private int[] positions = new int[16];
+    private long size = 0;
+    private int numRuns = 0;
+
+    PostingsBuffer(FileSystem fs, Configuration conf, Path tmpPath, int fileNo,
+        int numPartitions, int collectionDocCount) {
+      this.fs = fs;
+      this.conf = conf;
+      this.tmpPath = tmpPath;
+      this.fileNo = fileNo;
+      this.numPartitions = numPartitions;
+      this.collectionDocCount = collectionDocCount;
+    }
+
+    long size() {
+      return size;
+    }
+
+    void add(int docno, SortedMap<Integer, int[]> termPositionsMap) {
+      for (Map.Entry<Integer, int[]> e : termPositionsMap.entrySet()) {
+        ArrayListOfInts buffer = buffers.get(e.getKey());
+        if (buffer == null) {
+          buffer = new ArrayListOfInts();
+          buffers.put(e.getKey(), buffer);
+          size += TERM_OVERHEAD;
+        }
+
+        int[] pos = e.getValue();
+        buffer.add(docno);
+        buffer.add(pos.length);
+        for (int p : pos) {
+          buffer.add(p);
+        }
+        size += 4 * (pos.length + 2);
+      }
+    }
+
+    void flush() throws IOException {
+      if (buffers.size() == 0) {
+        return;
+      }
+
+      int[] terms = new int[buffers.size()];
+      int numTerms = 0;
+      for (int term : buffers.keySet()) {
+        terms[numTerms++] = term;
+      }
+      Arrays.sort(terms);
+
+      String run = "run-" + String.format("%05d-%05d", fileNo, numRuns++);
+      SequenceFile.Writer[] out = new SequenceFile.Writer[numPartitions];
+      for (int term : terms) {
+        ArrayListOfInts buffer = buffers.get(term);
+
+        // Documents don't necessarily come in docno order, so sort the postings by docno.
+        int numPostings = 0;
+        long[] keys = new long[buffer.size()];
+        for (int i = 0; i < buffer.size(); i += buffer.get(i + 1) + 2) {
+          keys[numPostings++] = ((long) buffer.get(i) << 32) | i;
+        }
+        Arrays.sort(keys, 0, numPostings);
+
+        chunk.clear();
+        chunk.setCollectionDocumentCount(collectionDocCount);
+        chunk.setNumberOfPostings(numPostings);
+        for (int n = 0; n < numPostings; n++) {
+          int i = (int) keys[n];
+          short tf = (short) buffer.get(i + 1);
+          if (positions.length < tf) {
+            positions = new int[Math.max(tf, 2 * positions.length)];
+          }
+          for (int j = 0; j < tf; j++) {
+            positions[j] = buffer.get(i + 2 + j);
+          }
+          termPositions.set(positions, tf);
+          chunk.add(buffer.get(i), tf, termPositions);
+        }
+
+        int partition = term % numPartitions;
+        if (out[partition] == null) {
+          out[partition] = SequenceFile.createWriter(fs, conf,
+              new Path(getRunsPath(tmpPath, partition), run), IntWritable.class,
+              PostingsListDocSortedPositional.class, SequenceFile.CompressionType.NONE);
+        }
+        key.set(term);
+        out[partition].append(key, chunk);
+      }
+
+      for (SequenceFile.Writer writer : out) {
+        if (writer != null) {
+          writer.close();
+        }
+      }
+
+      buffers.clear();
+      size = 0;
+    }
+  }
+
+  // A run being merged, positioned on its next partial postings list.
+  private static class Run {
+    final SequenceFile.Reader reader;
+    final IntWritable term = new IntWritable();
+    PostingsListDocSortedPositional chunk;
+
+    Run(SequenceFile.Reader reader) {
+      this.reader = reader;
+    }
+
+    // Reads the next partial postings list, and returns false at the end of the run.
+    boolean next() throws IOException {
+      // Chunks are handed over to the merge, so each one gets a new object.
+      chunk = new PostingsListDocSortedPositional();
+      return reader.next(term, chunk);
+    }
+  }
+
+  private void buildPostings(final Path tmpPath, final int numTerms, final int numPartitions)
+      throws Exception {
+    final String outputPath = env.getPostingsDirectory();
+    fs.mkdirs(new Path(outputPath));
+
+    final int collectionDocCount = conf.getInt(Constants.CollectionDocumentCount, 0);
+    final long[] postingsIndex = new long[numTerms + 1];
+    Arrays.fill(postingsIndex, -1);
+
+    List<Future<?>> futures = Lists.newArrayList();
+    for (int i = 0; i < numPartitions; i++) {
+      final int partition = i;
+      futures.add(threadPool.submit(new Callable<Void>() {
+        public Void call() throws Exception {
+          PostingsList postings = BuildIPInvertedIndexDocSorted.createPostingsList(conf);
+          SequenceFile.Writer out = SequenceFile.createWriter(fs, conf,
+              new Path(outputPath + "/part-r-" + String.format("%05d", partition)),
+              IntWritable.class, postings.getClass(), SequenceFile.CompressionType.NONE);
+
+          // Runs hold the terms of this partition in increasing order of term id, as
+          // BuildIPInvertedIndexDocSorted writes them.
+          PriorityQueue<Run> runs = new PriorityQueue<Run>(16, new Comparator<Run>() {
+            public int compare(Run r1, Run r2) {
+              return r1.term.get() < r2.term.get() ? -1 : (r1.term.get() == r2.term.get() ? 0 : 1);
+            }
+          });
+          Path runsPath = getRunsPath(tmpPath, partition);
+          if (fs.exists(runsPath)) {
+            for (FileStatus status : fs.listStatus(runsPath)) {
+              Run run = new Run(new SequenceFile.Reader(fs, status.getPath(), conf));
+              if (run.next()) {
+                runs.add(run);
+              } else {
+                run.reader.close();
+              }
+            }
+          }
+
+          IntWritable key = new IntWritable();
+          List<PostingsList> chunks = Lists.newArrayList();
+          while (!runs.isEmpty()) {
+            int term = runs.peek().term.get();
+            chunks.clear();
+            while (!runs.isEmpty() && runs.peek().term.get() == term) {
+              Run run = runs.poll();
+              chunks.add(run.chunk);
+              if (run.next()) {
+                runs.add(run);
+              } else {
+                run.reader.close();
+              }
+            }
+
+            key.set(term);
+            postingsIndex[term] =
+                IntPostingsForwardIndex.BigNumber * partition + out.getLength();
+            if (chunks.size() == 1
+                && postings.getClass() == PostingsListDocSortedPositional.class) {
+              // A single chunk is already encoded exactly as the full postings list would be.
+              out.append(key, chunks.get(0));
+            } else {
+              postings.clear();
+              PostingsListDocSortedPositional.mergeList(postings, chunks, collectionDocCount);
+              out.append(key, postings);
+            }
+          }
+          out.close();
+
+          return null;
+        }
+      }));
+    }
+
+    for (Future<?> future : futures) {
+      get(future);
+    }
+
+    FSDataOutputStream out = fs.create(new Path(env.getPostingsIndexData()), true);
+    out.writeInt(numTerms);
+    for (int term = 1; term <= numTerms; term++) {
+      out.writeLong(postingsIndex[term]);
+    }
+    out.close();
+  }
+
+  // Waits for a task to finish, passing on whatever it threw.
+  private static <T> T get(Future<T> future) throws Exception {
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof Exception) {
+        throw (Exception) e.getCause();
+      }
+      throw new RuntimeException(e.getCause());
+    }
+  }
+}
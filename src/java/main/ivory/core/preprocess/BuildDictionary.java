@@ -22,6 +22,7 @@ import it.unimi.dsi.util.ShiftAddXorSignedStringMap;
 import ivory.core.Constants;
 import ivory.core.RetrievalEnvironment;
 import ivory.core.data.dictionary.DictionaryTransformationStrategy;
+import ivory.core.data.dictionary.MappedFrontCodedDictionary;
 import ivory.core.util.QuickSort;
 
 import java.io.ByteArrayOutputStream;
@@ -58,10 +59,9 @@ public class BuildDictionary extends PowerTool {
 
   private static class MyReducer
       extends Reducer<Text, PairOfIntLong, NullWritable, NullWritable> {
-    private FSDataOutputStream termsOut, idsOut, idsToTermOut,
-        dfByTermOut, cfByTermOut, dfByIntOut, cfByIntOut;
+    private FileSystem fs;
+    private RetrievalEnvironment env;
     private int numTerms;
-    private int[] seqNums = null;
     private int[] dfs = null;
     private long[] cfs = null;
     private int curKeyIndex = 0;
@@ -73,36 +73,14 @@ public class BuildDictionary extends PowerTool {
         throws IOException {
       LOG.info("Starting setup.");
       Configuration conf = context.getConfiguration();
-      FileSystem fs = FileSystem.get(conf);
-      RetrievalEnvironment env = new RetrievalEnvironment(conf.get(Constants.IndexPath), fs);
+      fs = FileSystem.get(conf);
+      env = new RetrievalEnvironment(conf.get(Constants.IndexPath), fs);
 
       numTerms = conf.getInt(Constants.CollectionTermCount, 0);
 
       terms = new String[numTerms];
-      seqNums = new int[numTerms];
       dfs = new int[numTerms];
       cfs = new long[numTerms];
-
-      termsOut = fs.create(new Path(env.getIndexTermsData()), true);
-      //termsOut.writeInt(numTerms);
-
-      idsOut = fs.create(new Path(env.getIndexTermIdsData()), true);
-      idsOut.writeInt(numTerms);
-
-      idsToTermOut = fs.create(new Path(env.getIndexTermIdMappingData()), true);
-      idsToTermOut.writeInt(numTerms);
-
-      dfByTermOut = fs.create(new Path(env.getDfByTermData()), true);
-      dfByTermOut.writeInt(numTerms);
-
-      cfByTermOut = fs.create(new Path(env.getCfByTermData()), true);
-      cfByTermOut.writeInt(numTerms);
-
-      dfByIntOut = fs.create(new Path(env.getDfByIntData()), true);
-      dfByIntOut.writeInt(numTerms);
-
-      cfByIntOut = fs.create(new Path(env.getCfByIntData()), true);
-      cfByIntOut.writeInt(numTerms);
       LOG.info("Finished setup.");
     }
 
@@ -114,18 +92,13 @@ public class BuildDictionary extends PowerTool {
       PairOfIntLong p = iter.next();
       int df = p.getLeftElement();
       long cf = p.getRightElement();
-      WritableUtils.writeVInt(dfByTermOut, df);
-      WritableUtils.writeVLong(cfByTermOut, cf);
 
       if (iter.hasNext()) {
         throw new RuntimeException("More than one record for term: " + term);
       }
 
-      //termsOut.writeUTF(term);
-
       terms[curKeyIndex] = term;
-      seqNums[curKeyIndex] = curKeyIndex;
-      dfs[curKeyIndex] = -df;
+      dfs[curKeyIndex] = df;
       cfs[curKeyIndex] = cf;
       curKeyIndex++;
 
@@ -141,70 +114,126 @@ public class BuildDictionary extends PowerTool {
         throw new RuntimeException("Total expected Terms: " + numTerms +
             ", Total observed terms: " + curKeyIndex + "!");
       }
-      // Sort based on df and change seqNums accordingly.
-      QuickSort.quicksortWithSecondary(seqNums, dfs, cfs, 0, numTerms - 1);
+      writeDictionary(env, fs, terms, dfs, cfs);
+      LOG.info("Finished cleanup.");
+    }
+  }
 
-      // Write sorted dfs and cfs by int here.
-      for (int i = 0; i < numTerms; i++) {
-        WritableUtils.writeVInt(dfByIntOut, -dfs[i]);
-        WritableUtils.writeVLong(cfByIntOut, cfs[i]);
-      }
-      cfs = null;
+  /**
+   * Writes out the dictionary and the term statistics tables of an index. Term ids are assigned in
+   * decreasing order of df.
+   *
+   * @param env retrieval environment of the index
+   * @param fs FileSystem to write to
+   * @param terms terms, sorted by {@link DictionaryTransformationStrategy.Comparator}
+   * @param dfs df of each term
+   * @param cfs cf of each term
+   * @throws IOException
+   */
+  public static void writeDictionary(RetrievalEnvironment env, FileSystem fs, String[] terms,
+      int[] dfs, long[] cfs) throws IOException {
+    int numTerms = terms.length;
+
+    FSDataOutputStream termsOut = fs.create(new Path(env.getIndexTermsData()), true);
+    FSDataOutputStream mappedTermsOut = fs.create(new Path(env.getIndexTermsMappedData()), true);
+    //termsOut.writeInt(numTerms);
+
+    FSDataOutputStream idsOut = fs.create(new Path(env.getIndexTermIdsData()), true);
+    idsOut.writeInt(numTerms);
+
+    FSDataOutputStream idsToTermOut = fs.create(new Path(env.getIndexTermIdMappingData()), true);
+    idsToTermOut.writeInt(numTerms);
+
+    FSDataOutputStream dfByTermOut = fs.create(new Path(env.getDfByTermData()), true);
+    dfByTermOut.writeInt(numTerms);
+
+    FSDataOutputStream cfByTermOut = fs.create(new Path(env.getCfByTermData()), true);
+    cfByTermOut.writeInt(numTerms);
+
+    FSDataOutputStream dfByIntOut = fs.create(new Path(env.getDfByIntData()), true);
+    dfByIntOut.writeInt(numTerms);
+
+    FSDataOutputStream cfByIntOut = fs.create(new Path(env.getCfByIntData()), true);
+    cfByIntOut.writeInt(numTerms);
+
+    int[] seqNums = new int[numTerms];
+    int[] sortedDfs = new int[numTerms];
+    long[] sortedCfs = new long[numTerms];
+    for (int i = 0; i < numTerms; i++) {
+      WritableUtils.writeVInt(dfByTermOut, dfs[i]);
+      WritableUtils.writeVLong(cfByTermOut, cfs[i]);
+
+      seqNums[i] = i;
+      sortedDfs[i] = -dfs[i];
+      sortedCfs[i] = cfs[i];
+    }
 
-      // Encode the sorted dfs into ids ==> df values erased and become ids instead. Note that first
-      // term id is 1.
-      for (int i = 0; i < numTerms; i++) {
-        dfs[i] = i + 1;
-      }
+    // Sort based on df and change seqNums accordingly.
+    QuickSort.quicksortWithSecondary(seqNums, sortedDfs, sortedCfs, 0, numTerms - 1);
+
+    // Write sorted dfs and cfs by int here.
+    for (int i = 0; i < numTerms; i++) {
+      WritableUtils.writeVInt(dfByIntOut, -sortedDfs[i]);
+      WritableUtils.writeVLong(cfByIntOut, sortedCfs[i]);
+    }
+    sortedCfs = null;
 
-      // Write current seq nums to be index into the term array.
-      for (int i = 0; i < numTerms; i++)
-        idsToTermOut.writeInt(seqNums[i]);
+    // Encode the sorted dfs into ids ==> df values erased and become ids instead. Note that first
+    // term id is 1.
+    for (int i = 0; i < numTerms; i++) {
+      sortedDfs[i] = i + 1;
+    }
 
-      // Sort on seqNums to get the right writing order.
-      QuickSort.quicksort(dfs, seqNums, 0, numTerms - 1);
-      for (int i = 0; i < numTerms; i++) {
-        idsOut.writeInt(dfs[i]);
-      }
+    // Write current seq nums to be index into the term array.
+    for (int i = 0; i < numTerms; i++)
+      idsToTermOut.writeInt(seqNums[i]);
 
-      ByteArrayOutputStream bytesOut;
-      ObjectOutputStream objOut;
-      byte[] bytes;
-
-      List<String> termList = Lists.newArrayList(terms);
-      FrontCodedStringList frontcodedList = new FrontCodedStringList(termList, 8, true);
-
-      bytesOut = new ByteArrayOutputStream();
-      objOut = new ObjectOutputStream(bytesOut);
-      objOut.writeObject(frontcodedList);
-      objOut.close();
-
-      bytes = bytesOut.toByteArray();
-      termsOut.writeInt(bytes.length);
-      termsOut.write(bytes);
-
-      ShiftAddXorSignedStringMap dict = new ShiftAddXorSignedStringMap(termList.iterator(),
-          new TwoStepsLcpMonotoneMinimalPerfectHashFunction<CharSequence>(termList,
-              new DictionaryTransformationStrategy(true)));
-
-      bytesOut = new ByteArrayOutputStream();
-      objOut = new ObjectOutputStream(bytesOut);
-      objOut.writeObject(dict);
-      objOut.close();
-
-      bytes = bytesOut.toByteArray();
-      termsOut.writeInt(bytes.length);
-      termsOut.write(bytes);
-
-      termsOut.close();
-      idsOut.close();
-      idsToTermOut.close();
-      dfByTermOut.close();
-      cfByTermOut.close();
-      dfByIntOut.close();
-      cfByIntOut.close();
-      LOG.info("Finished cleanup.");
+    // Sort on seqNums to get the right writing order.
+    QuickSort.quicksort(sortedDfs, seqNums, 0, numTerms - 1);
+    for (int i = 0; i < numTerms; i++) {
+      idsOut.writeInt(sortedDfs[i]);
     }
+
+    ByteArrayOutputStream bytesOut;
+    ObjectOutputStream objOut;
+    byte[] bytes;
+
+    List<String> termList = Lists.newArrayList(terms);
+    MappedFrontCodedDictionary.write(termList, MappedFrontCodedDictionary.DEFAULT_BLOCK_SIZE,
+        mappedTermsOut);
+    mappedTermsOut.close();
+
+    FrontCodedStringList frontcodedList = new FrontCodedStringList(termList, 8, true);
+
+    bytesOut = new ByteArrayOutputStream();
+    objOut = new ObjectOutputStream(bytesOut);
+    objOut.writeObject(frontcodedList);
+    objOut.close();
+
+    bytes = bytesOut.toByteArray();
+    termsOut.writeInt(bytes.length);
+    termsOut.write(bytes);
+
+    ShiftAddXorSignedStringMap dict = new ShiftAddXorSignedStringMap(termList.iterator(),
+        new TwoStepsLcpMonotoneMinimalPerfectHashFunction<CharSequence>(termList,
+            new DictionaryTransformationStrategy(true)));
+
+    bytesOut = new ByteArrayOutputStream();
+    objOut = new ObjectOutputStream(bytesOut);
+    objOut.writeObject(dict);
+    objOut.close();
+
+    bytes = bytesOut.toByteArray();
+    termsOut.writeInt(bytes.length);
+    termsOut.write(bytes);
+
+    termsOut.close();
+    idsOut.close();
+    idsToTermOut.close();
+    dfByTermOut.close();
+    cfByTermOut.close();
+    dfByIntOut.close();
+    cfByIntOut.close();
   }
 
   public static final String[] RequiredParameters = {
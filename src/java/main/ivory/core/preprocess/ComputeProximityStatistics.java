@@ -0,0 +1,392 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.core.preprocess;
+
+import ivory.core.Constants;
+import ivory.core.RetrievalEnvironment;
+import ivory.core.data.document.IntDocVector;
+import ivory.core.data.index.ProximityPostingsReader;
+import ivory.core.data.index.ProximityPostingsReaderOrderedWindow;
+import ivory.core.data.index.ProximityPostingsReaderUnorderedWindow;
+import ivory.core.data.stat.ProximityStatisticsTable;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+import org.apache.log4j.Logger;
+
+import com.google.common.base.Preconditions;
+
+import edu.umd.cloud9.io.pair.PairOfIntLong;
+import edu.umd.cloud9.util.PowerTool;
+
+/**
+ * Computes df and cf of ordered and unordered windows of pairs of frequent terms from the
+ * {@link IntDocVector}s, and writes them out as a {@link ProximityStatisticsTable}. Windows are
+ * specified as a comma-separated list such as <code>od1,uw8</code>, the windows of the
+ * sequential dependence model. Matches are counted in exactly the same way as by
+ * {@link ProximityPostingsReader}s at query time.
+ */
+public class ComputeProximityStatistics extends PowerTool {
+  private static final Logger LOG = Logger.getLogger(ComputeProximityStatistics.class);
+
+  public static final String DEFAULT_WINDOWS = "od1,uw8";
+  public static final int DEFAULT_MAX_TERMID = 100000;
+  public static final int DEFAULT_MIN_DF = 10;
+
+  protected static enum Statistics {
+    Docs, Pairs
+  }
+
+  /**
+   * Counts the matches of windows of pairs of frequent terms in a document. After
+   * {@link #count(IntDocVector)}, there is one entry for each window that matches at least once,
+   * with its key in the {@link ProximityStatisticsTable} and its number of matches.
+   */
+  static class WindowCounter {
+    private final Map<Integer, int[]> termPositions = new HashMap<Integer, int[]>();
+    private final Set<Long> pairs = new HashSet<Long>();
+    private final int[][] pairPositions = new int[2][];
+    private final ProximityPostingsReader[] windows;
+    private final int maxTermId;
+    private int maxDistance = 0;
+    private int[] terms = new int[4096];
+
+    private long[] keys = new long[256];
+    private int[] tfs = new int[256];
+    private int size = 0;
+
+    WindowCounter(ProximityPostingsReader[] windows, int maxTermId) {
+      this.windows = windows;
+      this.maxTermId = maxTermId;
+
+      for (ProximityPostingsReader window : windows) {
+        // An ordered window of size n allows a gap of n between terms, while an unordered
+        // window of size n must span at most n positions.
+        int distance = window instanceof ProximityPostingsReaderOrderedWindow
+            ? window.getWindowSize() : window.getWindowSize() - 1;
+        maxDistance = Math.max(maxDistance, distance);
+      }
+    }
+
+    void count(IntDocVector doc) throws IOException {
+      termPositions.clear();
+      pairs.clear();
+      size = 0;
+
+      IntDocVector.Reader r = doc.getReader();
+      int length = 0;
+      while (r.hasMoreTerms()) {
+        int termid = r.nextTerm();
+        int[] positions = r.getPositions();
+        if (termid > maxTermId) {
+          continue;
+        }
+        termPositions.put(termid, positions);
+        length = Math.max(length, positions[positions.length - 1]);
+      }
+
+      // Lay out the frequent terms of the document by position.
+      if (terms.length <= length) {
+        terms = new int[length + 1];
+      } else {
+        Arrays.fill(terms, 0, length + 1, 0);
+      }
+      for (Map.Entry<Integer, int[]> entry : termPositions.entrySet()) {
+        for (int p : entry.getValue()) {
+          terms[p] = entry.getKey();
+        }
+      }
+
+      // Only pairs of terms that occur close enough to each other can match any window.
+      for (int i = 0; i <= length; i++) {
+        if (terms[i] == 0) {
+          continue;
+        }
+        for (int j = i + 1; j <= Math.min(i + maxDistance, length); j++) {
+          if (terms[j] != 0 && terms[j] != terms[i]) {
+            pairs.add(((long) terms[i] << 32) | terms[j]);
+          }
+        }
+      }
+
+      for (long p : pairs) {
+        int termid1 = (int) (p >>> 32);
+        int termid2 = (int) p;
+        pairPositions[0] = termPositions.get(termid1);
+        pairPositions[1] = termPositions.get(termid2);
+
+        for (int w = 0; w < windows.length; w++) {
+          boolean ordered = windows[w] instanceof ProximityPostingsReaderOrderedWindow;
+          // Unordered windows match regardless of order, so only count each pair once.
+          if (!ordered && termid1 > termid2 && pairs.contains(((long) termid2 << 32) | termid1)) {
+            continue;
+          }
+
+          int tf = windows[w].countMatches(pairPositions);
+          if (tf > 0) {
+            if (size == keys.length) {
+              keys = Arrays.copyOf(keys, 2 * size);
+              tfs = Arrays.copyOf(tfs, 2 * size);
+            }
+            keys[size] = ProximityStatisticsTable.getKey(w, ordered, termid1, termid2);
+            tfs[size] = tf;
+            size++;
+          }
+        }
+      }
+    }
+
+    int size() {
+      return size;
+    }
+
+    long getKey(int i) {
+      return keys[i];
+    }
+
+    int getTf(int i) {
+      return tfs[i];
+    }
+  }
+
+  private static class MyMapper
+      extends Mapper<IntWritable, IntDocVector, LongWritable, PairOfIntLong> {
+    private static final LongWritable key = new LongWritable();
+    private static final PairOfIntLong pair = new PairOfIntLong();
+
+    private WindowCounter counter;
+
+    @Override
+    public void setup(Mapper<IntWritable, IntDocVector, LongWritable, PairOfIntLong>.Context context) {
+      Configuration conf = context.getConfiguration();
+      ProximityPostingsReader[] windows =
+          parseWindows(conf.get(Constants.ProximityWindows, DEFAULT_WINDOWS));
+      counter = new WindowCounter(windows,
+          conf.getInt(Constants.ProximityMaxTermId, DEFAULT_MAX_TERMID));
+    }
+
+    @Override
+    public void map(IntWritable docno, IntDocVector doc, Context context)
+        throws IOException, InterruptedException {
+      context.getCounter(Statistics.Docs).increment(1);
+
+      counter.count(doc);
+      for (int i = 0; i < counter.size(); i++) {
+        key.set(counter.getKey(i));
+        pair.set(1, counter.getTf(i));
+        context.write(key, pair);
+      }
+    }
+  }
+
+  private static class MyCombiner
+      extends Reducer<LongWritable, PairOfIntLong, LongWritable, PairOfIntLong> {
+    private static final PairOfIntLong output = new PairOfIntLong();
+
+    @Override
+    public void reduce(LongWritable key, Iterable<PairOfIntLong> values, Context context)
+        throws IOException, InterruptedException {
+      int df = 0;
+      long cf = 0;
+      for (PairOfIntLong pair : values) {
+        df += pair.getLeftElement();
+        cf += pair.getRightElement();
+      }
+
+      output.set(df, cf);
+      context.write(key, output);
+    }
+  }
+
+  private static class MyReducer
+      extends Reducer<LongWritable, PairOfIntLong, LongWritable, PairOfIntLong> {
+    private static final PairOfIntLong output = new PairOfIntLong();
+    private int minDf;
+
+    @Override
+    public void setup(Reducer<LongWritable, PairOfIntLong, LongWritable, PairOfIntLong>.Context context) {
+      minDf = context.getConfiguration().getInt(Constants.MinDf, DEFAULT_MIN_DF);
+    }
+
+    @Override
+    public void reduce(LongWritable key, Iterable<PairOfIntLong> values, Context context)
+        throws IOException, InterruptedException {
+      int df = 0;
+      long cf = 0;
+      for (PairOfIntLong pair : values) {
+        df += pair.getLeftElement();
+        cf += pair.getRightElement();
+      }
+      if (df < minDf) {
+        return;
+      }
+      context.getCounter(Statistics.Pairs).increment(1);
+      output.set(df, cf);
+      context.write(key, output);
+    }
+  }
+
+  /**
+   * Parses a comma-separated list of windows, such as <code>od1,uw8</code>, into readers that
+   * count matches of windows of two terms.
+   */
+  static ProximityPostingsReader[] parseWindows(String windows) {
+    String[] specs = windows.split(",");
+    Preconditions.checkArgument(specs.length <= ProximityStatisticsTable.MAX_WINDOWS,
+        "Too many windows: " + windows);
+
+    ProximityPostingsReader[] readers = new ProximityPostingsReader[specs.length];
+    for (int i = 0; i < specs.length; i++) {
+      String spec = specs[i].trim();
+      int size = Integer.parseInt(spec.substring(2));
+      if (spec.startsWith("od")) {
+        readers[i] = new ProximityPostingsReaderOrderedWindow(2, size);
+      } else if (spec.startsWith("uw")) {
+        readers[i] = new ProximityPostingsReaderUnorderedWindow(2, size);
+      } else {
+        throw new IllegalArgumentException("Unrecognized window: " + spec);
+      }
+    }
+    return readers;
+  }
+
+  public static final String[] RequiredParameters = { Constants.IndexPath };
+
+  public String[] getRequiredParameters() {
+    return RequiredParameters;
+  }
+
+  public ComputeProximityStatistics(Configuration conf) {
+    super(conf);
+  }
+
+  public int runTool() throws Exception {
+    Configuration conf = getConf();
+
+    FileSystem fs = FileSystem.get(conf);
+
+    String indexPath = conf.get(Constants.IndexPath);
+    RetrievalEnvironment env = new RetrievalEnvironment(indexPath, fs);
+
+    String collectionName = env.readCollectionName();
+    String intDocVectorsPath = env.getIntDocVectorsDirectory();
+    Path outputFile = new Path(env.getProximityDfCfData());
+
+    String windowSpecs = conf.get(Constants.ProximityWindows, DEFAULT_WINDOWS);
+    ProximityPostingsReader[] windows = parseWindows(windowSpecs);
+    int maxTermId = conf.getInt(Constants.ProximityMaxTermId, DEFAULT_MAX_TERMID);
+    int minDf = conf.getInt(Constants.MinDf, DEFAULT_MIN_DF);
+    Preconditions.checkArgument(maxTermId <= ProximityStatisticsTable.MAX_TERMID,
+        "Max term id cannot exceed " + ProximityStatisticsTable.MAX_TERMID);
+
+    if (!fs.exists(new Path(intDocVectorsPath))) {
+      LOG.info("int doc vectors path doesn't exist: skipping!");
+      return 0;
+    }
+
+    LOG.info("PowerTool: " + ComputeProximityStatistics.class.getCanonicalName());
+    LOG.info(String.format(" - %s: %s", Constants.CollectionName, collectionName));
+    LOG.info(String.format(" - %s: %s", Constants.IndexPath, indexPath));
+    LOG.info(String.format(" - %s: %s", Constants.ProximityWindows, windowSpecs));
+    LOG.info(String.format(" - %s: %s", Constants.ProximityMaxTermId, maxTermId));
+    LOG.info(String.format(" - %s: %s", Constants.MinDf, minDf));
+
+    if (fs.exists(outputFile)) {
+      LOG.info("Proximity statistics already exist: skipping!");
+      return 0;
+    }
+
+    Path tmpPath = new Path(env.getTempDirectory());
+    fs.delete(tmpPath, true);
+
+    Job job = new Job(conf, ComputeProximityStatistics.class.getSimpleName() + ":"
+        + collectionName);
+    job.setJarByClass(ComputeProximityStatistics.class);
+
+    // A single reducer, so that the output is sorted by key.
+    job.setNumReduceTasks(1);
+
+    FileInputFormat.setInputPaths(job, new Path(intDocVectorsPath));
+    FileOutputFormat.setOutputPath(job, tmpPath);
+
+    job.setInputFormatClass(SequenceFileInputFormat.class);
+    job.setOutputFormatClass(SequenceFileOutputFormat.class);
+
+    job.setMapOutputKeyClass(LongWritable.class);
+    job.setMapOutputValueClass(PairOfIntLong.class);
+    job.setOutputKeyClass(LongWritable.class);
+    job.setOutputValueClass(PairOfIntLong.class);
+
+    job.setMapperClass(MyMapper.class);
+    job.setCombinerClass(MyCombiner.class);
+    job.setReducerClass(MyReducer.class);
+
+    long startTime = System.currentTimeMillis();
+    if (!job.waitForCompletion(true)) {
+      LOG.error("Job failed!");
+      return -1;
+    }
+    LOG.info("Job Finished in " + (System.currentTimeMillis() - startTime) / 1000.0 + " seconds");
+
+    int numPairs = (int) job.getCounters().findCounter(Statistics.Pairs).getValue();
+    LOG.info("Writing " + numPairs + " term pairs to " + outputFile);
+
+    boolean[] ordered = new boolean[windows.length];
+    int[] windowSizes = new int[windows.length];
+    for (int i = 0; i < windows.length; i++) {
+      ordered[i] = windows[i] instanceof ProximityPostingsReaderOrderedWindow;
+      windowSizes[i] = windows[i].getWindowSize();
+    }
+
+    FSDataOutputStream out = fs.create(outputFile, true);
+    ProximityStatisticsTable.writeHeader(out, ordered, windowSizes, maxTermId, minDf, numPairs);
+
+    SequenceFile.Reader reader =
+        new SequenceFile.Reader(fs, new Path(tmpPath, "part-r-00000"), conf);
+    LongWritable key = new LongWritable();
+    PairOfIntLong value = new PairOfIntLong();
+    while (reader.next(key, value)) {
+      ProximityStatisticsTable.writeEntry(out, key.get(), value.getLeftElement(),
+          value.getRightElement());
+    }
+    reader.close();
+    out.close();
+
+    fs.delete(tmpPath, true);
+
+    return 0;
+  }
+}
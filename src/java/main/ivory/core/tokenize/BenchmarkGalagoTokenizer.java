@@ -0,0 +1,192 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.core.tokenize;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+import org.galagosearch.core.parse.Document;
+import org.galagosearch.core.parse.TagTokenizer;
+import org.tartarus.snowball.ext.englishStemmer;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Benchmark of {@link GalagoTokenizer} throughput, in documents per second, over the documents
+ * of a TREC-formatted file (optionally gzipped). Compares tokenizing into an array and into a
+ * {@link Tokenizer.TokenSink} against the previous implementation, which created a tokenizer
+ * per document, copied tokens into intermediate lists and kept a per-instance stem cache that
+ * was cleared when full. With more than one thread, each thread has its own tokenizer, and all
+ * share the stem cache.
+ */
+public class BenchmarkGalagoTokenizer {
+  private static final int NUM_TRIALS = 3;
+
+  private BenchmarkGalagoTokenizer() {}
+
+  private static interface Pipeline {
+    long run(String text);
+  }
+
+  private static class LegacyPipeline implements Pipeline {
+    private final englishStemmer stemmer = new englishStemmer();
+    private final Map<String, String> cache = Maps.newHashMap();
+    private final GalagoTokenizer stopwords = new GalagoTokenizer();
+
+    public long run(String text) {
+      Document doc;
+      try {
+        doc = new TagTokenizer().tokenize(text);
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+
+      List<String> words = Lists.newArrayList();
+      for (String tok : doc.terms) {
+        if (!stopwords.isStopWord(tok)) {
+          words.add(tok);
+        }
+      }
+
+      for (int i = 0; i < words.size(); i++) {
+        String word = words.get(i);
+        if (cache.containsKey(word)) {
+          words.set(i, cache.get(word));
+        } else {
+          stemmer.setCurrent(word);
+          String stem = stemmer.stem() ? stemmer.getCurrent() : word;
+          words.set(i, stem);
+          cache.put(word, stem);
+        }
+        if (cache.size() > 50000) {
+          cache.clear();
+        }
+      }
+
+      return words.toArray(new String[words.size()]).length;
+    }
+  }
+
+  private static class ArrayPipeline implements Pipeline {
+    private final GalagoTokenizer tokenizer = new GalagoTokenizer();
+
+    public long run(String text) {
+      return tokenizer.processContent(text).length;
+    }
+  }
+
+  private static class SinkPipeline implements Pipeline, Tokenizer.TokenSink {
+    private final GalagoTokenizer tokenizer = new GalagoTokenizer();
+    private long length;
+
+    public void token(String token) {
+      length += token.length();
+    }
+
+    public long run(String text) {
+      length = 0;
+      tokenizer.processContent(text, this);
+      return length;
+    }
+  }
+
+  private static List<String> readDocuments(String file) throws IOException {
+    BufferedReader in = new BufferedReader(new InputStreamReader(file.endsWith(".gz")
+        ? new GZIPInputStream(new FileInputStream(file)) : new FileInputStream(file), "UTF-8"));
+
+    List<String> docs = Lists.newArrayList();
+    StringBuilder doc = null;
+    String line;
+    while ((line = in.readLine()) != null) {
+      if (line.startsWith("<DOC>")) {
+        doc = new StringBuilder();
+      } else if (line.startsWith("</DOC>")) {
+        if (doc != null) {
+          docs.add(doc.toString());
+        }
+        doc = null;
+      } else if (doc != null) {
+        doc.append(line).append('\n');
+      }
+    }
+    in.close();
+
+    return docs;
+  }
+
+  private static void run(String name, final String type, final List<String> docs,
+      int numThreads) throws InterruptedException {
+    final AtomicLong checksum = new AtomicLong();
+    long best = Long.MAX_VALUE;
+
+    // The first trial is for warm-up only.
+    for (int t = 0; t <= NUM_TRIALS; t++) {
+      Thread[] threads = new Thread[numThreads];
+      for (int i = 0; i < numThreads; i++) {
+        threads[i] = new Thread() {
+          @Override
+          public void run() {
+            Pipeline p = type.equals("legacy") ? new LegacyPipeline()
+                : type.equals("array") ? new ArrayPipeline() : new SinkPipeline();
+            long sum = 0;
+            for (String doc : docs) {
+              sum += p.run(doc);
+            }
+            checksum.addAndGet(sum);
+          }
+        };
+      }
+
+      long start = System.nanoTime();
+      for (Thread thread : threads) {
+        thread.start();
+      }
+      for (Thread thread : threads) {
+        thread.join();
+      }
+      long duration = System.nanoTime() - start;
+      if (t > 0) {
+        best = Math.min(best, duration);
+      }
+    }
+
+    System.out.println(String.format("%-30s %10.0f docs/s (checksum %d)", name,
+        (double) docs.size() * numThreads / (best / 1e9), checksum.get()));
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 1) {
+      System.out.println("usage: [trec-file] [num-threads]");
+      System.exit(-1);
+    }
+
+    List<String> docs = readDocuments(args[0]);
+    int numThreads = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+
+    System.out.println(docs.size() + " documents, " + numThreads + " thread(s):");
+    run("  previous implementation", "legacy", docs, numThreads);
+    run("  processContent, array", "array", docs, numThreads);
+    run("  processContent, sink", "sink", docs, numThreads);
+  }
+}
@@ -63,32 +63,35 @@ public class DocumentProcessingUtils {
     return positions;
   }
 
-  public static Map<String, ArrayListOfInts> parseDocument(Indexable doc, Tokenizer tokenizer) {
-    Map<String, ArrayListOfInts> positions = Maps.newHashMap();
-
-    String text = doc.getContent();
-    String[] terms = tokenizer.processContent(text);
+  // Collects the positions of each term, as tokens come out of the tokenizer.
+  private static class PositionsSink implements Tokenizer.TokenSink {
+    private final Map<String, ArrayListOfInts> positions = Maps.newHashMap();
+    private int position = 0;
 
-    // The tokenizer may return terms with zero length (empty terms), and the tf may exceed the
-    // capacity of a short (in which case we need to handle separately).
-
-    for (int i = 0; i < terms.length; i++) {
-      String term = terms[i];
+    public void token(String term) {
+      // Remember, token position is numbered started from one...
+      position++;
 
       // Guard against bad tokenization
       if (term.length() == 0 || term.length() >= Byte.MAX_VALUE) {
-        continue;
+        return;
       }
 
-      // Remember, token position is numbered started from one...
-      if (positions.containsKey(term)) {
-        positions.get(term).add(i + 1);
-      } else {
-        ArrayListOfInts l = new ArrayListOfInts();
-        l.add(i + 1);
+      ArrayListOfInts l = positions.get(term);
+      if (l == null) {
+        l = new ArrayListOfInts();
         positions.put(term, l);
       }
+      l.add(position);
     }
+  }
+
+  public static Map<String, ArrayListOfInts> parseDocument(Indexable doc, Tokenizer tokenizer) {
+    // The tokenizer may return terms with zero length (empty terms), and the tf may exceed the
+    // capacity of a short (in which case we need to handle separately).
+    PositionsSink sink = new PositionsSink();
+    tokenizer.processContent(doc.getContent(), sink);
+    Map<String, ArrayListOfInts> positions = sink.positions;
 
     int doclength = 0;
     Iterator<Map.Entry<String, ArrayListOfInts>> it = positions.entrySet().iterator();
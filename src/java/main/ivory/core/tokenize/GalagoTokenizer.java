@@ -18,20 +18,34 @@ package ivory.core.tokenize;
 
 import java.io.IOException;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
+import org.apache.log4j.Logger;
 import org.galagosearch.core.parse.Document;
 import org.galagosearch.core.parse.TagTokenizer;
 import org.tartarus.snowball.ext.englishStemmer;
 
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 
+/**
+ * Tokenizer using Galago's {@code TagTokenizer}, which removes stopwords and stems with the
+ * Snowball English stemmer. Instances aren't thread-safe, and keep their tokenizer and stemmer
+ * across documents; stems are cached in a {@link StemCache} shared by all instances in the JVM,
+ * e.g., by all mappers running in it.
+ */
 public class GalagoTokenizer extends Tokenizer {
+  private static final Logger LOG = Logger.getLogger(GalagoTokenizer.class);
+
+  /**
+   * Number of words whose stems are cached.
+   */
+  public static final int STEM_CACHE_SIZE = 1 << 17;
+
+  private static final StemCache STEM_CACHE = new StemCache(STEM_CACHE_SIZE);
+
   private static final String[] TERRIER_STOP_WORDS = {
     "a",
     "abaft",
@@ -768,59 +782,83 @@ public class GalagoTokenizer extends Tokenizer {
     "zillion",
  };
 
+  private static final Set<String> STOPWORDS = Sets.newHashSet(TERRIER_STOP_WORDS);
+
+  private final TagTokenizer tokenizer = new TagTokenizer();
   private final englishStemmer stemmer = new englishStemmer();
-  private final Map<String, String> cache = Maps.newHashMap();
-  private final Set<String> stopwords = Sets.newHashSet(TERRIER_STOP_WORDS);
+
+  // Reused across calls to processContent(String).
+  private final List<String> words = Lists.newArrayList();
+  private final TokenSink collector = new TokenSink() {
+    public void token(String token) {
+      words.add(token);
+    }
+  };
+  private int numTokens;
+  private final TokenSink counter = new TokenSink() {
+    public void token(String token) {
+      numTokens++;
+    }
+  };
 
   public boolean isStopWord(String word) {
-    return stopwords.contains(word);
+    return STOPWORDS.contains(word);
   }
 
   public String[] processContent(String text) {
-    TagTokenizer tokenizer = new TagTokenizer();
+    words.clear();
+    if (!tokenize(text, collector)) {
+      return null;
+    }
+
+    String[] arr = new String[words.size()];
+    words.toArray(arr);
+    words.clear();
+    return arr;
+  }
+
+  @Override
+  public void processContent(String text, TokenSink sink) {
+    tokenize(text, sink);
+  }
+
+  @Override
+  public int getNumberTokens(String text) {
+    numTokens = 0;
+    tokenize(text, counter);
+    return numTokens;
+  }
+
+  private boolean tokenize(String text, TokenSink sink) {
     Document doc = null;
 
     try {
       doc = tokenizer.tokenize(text);
     } catch (IOException e) {
-      e.printStackTrace();
-      return null;
+      LOG.error("Error tokenizing text: " + e.getMessage());
+      return false;
     }
 
-    List<String> toks = doc.terms;
-    List<String> words = Lists.newArrayList();
-
-    for (String tok : toks) {
-      if (!stopwords.contains(tok)) {
-        words.add(tok);
+    // Stopwords are dropped and the remaining words stemmed in a single pass.
+    for (String word : doc.terms) {
+      if (word == null) {
+        sink.token(word);
+        continue;
+      }
+      if (STOPWORDS.contains(word)) {
+        continue;
       }
-    }
-
-    for (int i = 0; i < words.size(); i++) {
-      String word = words.get(i);
-
-      if (word != null) {
-        if (cache.containsKey(word)) {
-          words.set(i, cache.get(word));
-        } else {
-          stemmer.setCurrent(word);
-          if (stemmer.stem()) {
-            String stem = stemmer.getCurrent();
-            words.set(i, stem);
-            cache.put(word, stem);
-          } else {
-            cache.put(word, word);
-          }
-        }
 
-        if (cache.size() > 50000) {
-          cache.clear();
-        }
+      String stem = STEM_CACHE.get(word);
+      if (stem == null) {
+        stemmer.setCurrent(word);
+        stem = stemmer.stem() ? stemmer.getCurrent() : word;
+        STEM_CACHE.put(word, stem);
       }
+      sink.token(stem);
     }
 
-    String[] arr = new String[words.size()];
-    return (String[]) words.toArray(arr);
+    return true;
   }
 
   @Override
@@ -0,0 +1,135 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.core.tokenize;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>
+ * Bounded cache of word stems, which can be shared by any number of threads without locking.
+ * </p>
+ *
+ * <p>
+ * The cache is set-associative: a word can only be held in one of a small, fixed set of slots,
+ * determined by its hash. Each entry has a reference bit, which is set whenever the entry is
+ * read. When a word is added to a full set, the CLOCK policy picks the entry to evict: the first
+ * entry without its reference bit set, clearing reference bits along the way. Entries are
+ * immutable apart from the reference bit, so concurrent readers and writers at worst lose an
+ * update, which only costs an extra stemming later on.
+ * </p>
+ */
+public final class StemCache {
+  private static final int WAYS = 4;
+
+  private final AtomicReferenceArray<Entry> entries;
+  private final int mask;
+
+  /**
+   * Creates a cache that holds up to about the given number of words.
+   *
+   * @param capacity number of words, rounded up to a power of two
+   */
+  public StemCache(int capacity) {
+    Preconditions.checkArgument(capacity >= WAYS && capacity <= 1 << 30);
+
+    int numSets = Integer.highestOneBit(capacity - 1) * 2 / WAYS;
+    entries = new AtomicReferenceArray<Entry>(numSets * WAYS);
+    mask = numSets - 1;
+  }
+
+  /**
+   * Returns the stem of a word, or {@code null} if the word isn't in the cache.
+   */
+  public String get(String word) {
+    int base = (hash(word) & mask) * WAYS;
+    for (int i = 0; i < WAYS; i++) {
+      Entry e = entries.get(base + i);
+      if (e != null && e.word.equals(word)) {
+        if (!e.referenced) {
+          e.referenced = true;
+        }
+        return e.stem;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Adds the stem of a word to the cache, evicting another word if necessary.
+   */
+  public void put(String word, String stem) {
+    Preconditions.checkNotNull(word);
+    Preconditions.checkNotNull(stem);
+
+    int h = hash(word);
+    int base = (h & mask) * WAYS;
+    Entry entry = new Entry(word, stem);
+
+    for (int i = 0; i < WAYS; i++) {
+      Entry e = entries.get(base + i);
+      if (e == null) {
+        if (entries.compareAndSet(base + i, null, entry)) {
+          return;
+        }
+      } else if (e.word.equals(word)) {
+        return;
+      }
+    }
+
+    // The set is full. Sweep from a starting point that varies from word to word, since there's
+    // no shared clock hand to keep.
+    int start = (h >>> 28) & (WAYS - 1);
+    int victim = start;
+    for (int i = 0; i < 2 * WAYS; i++) {
+      int slot = (start + i) & (WAYS - 1);
+      Entry e = entries.get(base + slot);
+      if (e == null || !e.referenced) {
+        victim = slot;
+        break;
+      }
+      e.referenced = false;
+    }
+    entries.set(base + victim, entry);
+  }
+
+  /**
+   * Returns the number of words the cache can hold.
+   */
+  public int capacity() {
+    return entries.length();
+  }
+
+  // Words that differ in only a few characters shouldn't all land in the same set.
+  private static int hash(String word) {
+    int h = word.hashCode();
+    h ^= (h >>> 20) ^ (h >>> 12);
+    return h ^ (h >>> 7) ^ (h >>> 4);
+  }
+
+  private static final class Entry {
+    final String word;
+    final String stem;
+    volatile boolean referenced = false;
+
+    Entry(String word, String stem) {
+      this.word = word;
+      this.stem = stem;
+    }
+  }
+}
@@ -20,9 +20,34 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 
 public abstract class Tokenizer {
+  /**
+   * Receives the tokens of a text, one at a time and in order.
+   */
+  public static interface TokenSink {
+    void token(String token);
+  }
+
   public abstract void configure(Configuration conf);
   public abstract String[] processContent(String text);
 
+  /**
+   * Method to pass the tokens of text to a sink, rather than collect them into an array. Subclasses may override for more efficient implementations.
+   * 
+   * @param text
+   * 		text to be processed.
+   * @param sink
+   * 		receiver of the tokens.
+   */
+  public void processContent(String text, TokenSink sink) {
+    String[] tokens = processContent(text);
+    if (tokens == null) {
+      return;
+    }
+    for (String token : tokens) {
+      sink.token(token);
+    }
+  }
+
   /**
    * Method to return number of tokens in text. Subclasses may override for more efficient implementations.
    * 
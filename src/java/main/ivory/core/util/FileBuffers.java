@@ -0,0 +1,114 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.core.util;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocalFileSystem;
+import org.apache.hadoop.fs.Path;
+
+/**
+ * Utilities for loading index data files in bulk, rather than one value at a time through a
+ * {@code DataInput}. A file is memory-mapped if it resides on the local file system and read
+ * fully into memory otherwise; either way, arrays of ints and longs can then be copied out of the
+ * buffer with a single bulk get.
+ */
+public class FileBuffers {
+  private FileBuffers() {}
+
+  /**
+   * Returns the contents of a file as a big-endian buffer positioned at the start of the file.
+   *
+   * @param fs FileSystem to read from
+   * @param path file to load
+   * @return contents of the file
+   * @throws IOException
+   */
+  public static ByteBuffer map(FileSystem fs, Path path) throws IOException {
+    long length = fs.getFileStatus(path).getLen();
+    if (length > Integer.MAX_VALUE) {
+      throw new IOException("Unable to load " + path + " into a buffer: " + length + " bytes.");
+    }
+
+    if (fs instanceof LocalFileSystem) {
+      RandomAccessFile file = new RandomAccessFile(((LocalFileSystem) fs).pathToFile(path), "r");
+      try {
+        // The mapping stays valid after the file is closed.
+        return file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+      } finally {
+        file.close();
+      }
+    }
+
+    byte[] bytes = new byte[(int) length];
+    FSDataInputStream in = fs.open(path);
+    try {
+      in.readFully(bytes);
+    } finally {
+      in.close();
+    }
+    return ByteBuffer.wrap(bytes);
+  }
+
+  /**
+   * Reads ints from the current position of a buffer, and advances the position past them.
+   */
+  public static void readInts(ByteBuffer buffer, int[] values) {
+    buffer.asIntBuffer().get(values);
+    buffer.position(buffer.position() + 4 * values.length);
+  }
+
+  /**
+   * Reads longs from the current position of a buffer, and advances the position past them.
+   */
+  public static void readLongs(ByteBuffer buffer, long[] values) {
+    buffer.asLongBuffer().get(values);
+    buffer.position(buffer.position() + 8 * values.length);
+  }
+
+  /**
+   * Reads a zero-compressed int, as written by
+   * {@link org.apache.hadoop.io.WritableUtils#writeVInt(java.io.DataOutput, int)}.
+   */
+  public static int readVInt(ByteBuffer buffer) {
+    return (int) readVLong(buffer);
+  }
+
+  /**
+   * Reads a zero-compressed long, as written by
+   * {@link org.apache.hadoop.io.WritableUtils#writeVLong(java.io.DataOutput, long)}.
+   */
+  public static long readVLong(ByteBuffer buffer) {
+    byte first = buffer.get();
+    if (first >= -112) {
+      return first;
+    }
+
+    boolean negative = first < -120;
+    int length = negative ? -(first + 120) : -(first + 112);
+    long value = 0;
+    for (int i = 0; i < length; i++) {
+      value = (value << 8) | (buffer.get() & 0xFF);
+    }
+    return negative ? ~value : value;
+  }
+}
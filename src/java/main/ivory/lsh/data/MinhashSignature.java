@@ -17,6 +17,9 @@ import edu.umd.cloud9.io.array.ArrayListOfIntsWritable;
 public class MinhashSignature extends Signature{//implements WritableComparable<BitsSignature64> {
   private ArrayListOfIntsWritable terms;
 
+  // Number of bits per minhash value if values are truncated (b-bit minhash), 0 otherwise.
+  private int numBits = 0;
+
   /**
    * Create a BitsSignature object with the specified number of bits, all initially set to 0.
    * 
@@ -34,6 +37,7 @@ public class MinhashSignature extends Signature{//implements WritableComparable<
 
   public MinhashSignature(MinhashSignature other){
     this(other.terms);
+    numBits = other.numBits;
   }
 
   public MinhashSignature(int numTerms){			//need this constructor for general purposes.
@@ -46,6 +50,25 @@ public class MinhashSignature extends Signature{//implements WritableComparable<
     this.terms = terms;
   }
 
+  /**
+   * Declares that minhash values fit in the lowest <code>numBits</code> bits, as with b-bit
+   * minhash. Signatures are then written in <code>numBits</code> bits per value, rather than in
+   * full ints, which shrinks signature files and permuted tables accordingly.
+   * 
+   * @param numBits
+   * 		number of bits per value, or 0 if values are full ints
+   */
+  public void setNumBits(int numBits) {
+    if(numBits<0 || numBits>32){
+      throw new IllegalArgumentException("Invalid number of bits: "+numBits);
+    }
+    this.numBits = (numBits==32 ? 0 : numBits);
+  }
+
+  public int getNumBits() {
+    return numBits;
+  }
+
   /**
    * @param start
    * 	first index to be included in sub-signature
@@ -57,22 +80,77 @@ public class MinhashSignature extends Signature{//implements WritableComparable<
   public MinhashSignature getSubSignature(int b, int e){
     MinhashSignature sub = new MinhashSignature();
     sub.setTerms(sub(terms, b, e));
+    sub.numBits = numBits;
     return sub;
   }
 
   public MinhashSignature getSubSignature(int b, int e, Signature subSign){
     MinhashSignature sub = (MinhashSignature) subSign;
     sub.setTerms(sub(terms, b, e));
+    sub.numBits = numBits;
     return sub;
   }
 
+  /**
+   * Reads a signature in either format written by {@link #write(DataOutput)}.
+   */
   public void readFields(DataInput in) throws IOException {
     //		bits = new byte[NUM_BYTES];
-    terms.readFields(in);
+    int n = in.readInt();
+    terms.clear();
+    if(n>=0){
+      // full ints, as written by ArrayListOfIntsWritable
+      numBits = 0;
+      for(int i=0;i<n;i++){
+        terms.add(in.readInt());
+      }
+      return;
+    }
+
+    numBits = -n;
+    n = in.readInt();
+    long mask = (1L << numBits) - 1;
+    long buffer = 0;
+    int available = 0;
+    for(int i=0;i<n;i++){
+      while(available<numBits){
+        buffer |= (long) (in.readByte() & 0xFF) << available;
+        available += 8;
+      }
+      terms.add((int) (buffer & mask));
+      buffer >>>= numBits;
+      available -= numBits;
+    }
   }
 
+  /**
+   * Writes the size of the signature followed by each value as an int. If values are truncated to
+   * <code>numBits</code> bits, writes <code>-numBits</code> and the size instead, followed by the
+   * values packed into <code>numBits</code> bits each, lowest bits first.
+   */
   public void write(DataOutput out) throws IOException {
-    terms.write(out);
+    if(numBits==0){
+      terms.write(out);
+      return;
+    }
+
+    out.writeInt(-numBits);
+    out.writeInt(terms.size());
+    long mask = (1L << numBits) - 1;
+    long buffer = 0;
+    int available = 0;
+    for(int i=0;i<terms.size();i++){
+      buffer |= (terms.get(i) & mask) << available;
+      available += numBits;
+      while(available>=8){
+        out.writeByte((int) buffer);
+        buffer >>>= 8;
+        available -= 8;
+      }
+    }
+    if(available>0){
+      out.writeByte((int) buffer);
+    }
   }
 
   public int get(int i) {
@@ -197,6 +275,7 @@ public class MinhashSignature extends Signature{//implements WritableComparable<
   @Override
   public MinhashSignature perm(ArrayListOfIntsWritable permutation) {
     MinhashSignature permuted = new MinhashSignature(this.size());
+    permuted.numBits = numBits;
     int[] perms = permutation.getArray();
     int[] t = terms.getArray();
     for(int i=0;i<size();i++){
@@ -213,6 +292,7 @@ public class MinhashSignature extends Signature{//implements WritableComparable<
     int[] perms = permutation.getArray();
     int[] t = terms.getArray();
     permuted.clear();
+    permuted.numBits = numBits;
     for(int i=0;i<size();i++){
       permuted.add(t[perms[i]]);
     }
@@ -0,0 +1,124 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.lsh.data;
+
+/**
+ * Signatures of a {@link BitsSignatureTable}, packed into one array of 64-bit words for fast
+ * comparison. Signature <code>i</code> takes up words <code>i * w</code> to
+ * <code>(i + 1) * w - 1</code>, where <code>w</code> is the number of words per signature, so
+ * neighboring signatures are next to each other in memory. Bit <code>p</code> of a signature is
+ * bit <code>63 - p % 64</code> of word <code>p / 64</code>, so the longest common prefix of two
+ * signatures can be read off the leading zeros of their XOR.
+ * <p>
+ * Only tables of {@link NBitSignature}s can be packed. The arrays are reused from one table to the
+ * next.
+ */
+public class PackedSignatureTable {
+  private long[] words = new long[0];
+  private int numWords;
+  private int numBits;
+  private int numSignatures;
+
+  /**
+   * Returns <code>true</code> if signatures like the given one can be packed.
+   */
+  public static boolean isPackable(Signature signature) {
+    return signature instanceof NBitSignature;
+  }
+
+  /**
+   * Packs the signatures of a table, replacing the current contents.
+   */
+  public void set(BitsSignatureTable table) {
+    Signature[] signatures = table.getSignatures();
+    numSignatures = table.getNumOfSignatures();
+    numBits = numSignatures == 0 ? 0 : signatures[0].size();
+    numWords = (numBits + 63) / 64;
+
+    if (words.length < numSignatures * numWords) {
+      words = new long[numSignatures * numWords];
+    }
+
+    for (int i = 0; i < numSignatures; i++) {
+      if (!isPackable(signatures[i])) {
+        throw new IllegalArgumentException("Unable to pack " + signatures[i].getClass());
+      }
+      Bits bits = ((NBitSignature) signatures[i]).bits;
+      if (bits.length != numBits) {
+        throw new IllegalArgumentException("Signatures of different sizes: " + numBits + ", "
+            + bits.length);
+      }
+
+      int offset = i * numWords;
+      for (int k = 0; k < numWords; k++) {
+        words[offset + k] = 0;
+      }
+      byte[] bytes = bits.bits;
+      for (int k = 0; k < bytes.length; k++) {
+        words[offset + k / 8] |= (bytes[k] & 0xffL) << (56 - 8 * (k % 8));
+      }
+    }
+  }
+
+  /**
+   * Returns the number of signatures in the table.
+   */
+  public int getNumOfSignatures() {
+    return numSignatures;
+  }
+
+  /**
+   * Returns the number of bits in each signature.
+   */
+  public int getNumOfBits() {
+    return numBits;
+  }
+
+  /**
+   * Returns the Hamming distance between two signatures, same as
+   * {@link NBitSignature#hammingDistance(Signature, int)}: once the distance exceeds the threshold,
+   * the remaining words aren't compared, and a distance above the threshold is returned.
+   */
+  public int hammingDistance(int i, int j, int threshold) {
+    int a = i * numWords;
+    int b = j * numWords;
+    int count = 0;
+    for (int k = 0; k < numWords; k++) {
+      count += Long.bitCount(words[a + k] ^ words[b + k]);
+      if (count > threshold) {
+        return count;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Returns the number of leading bits two signatures have in common, same as
+   * {@link NBitSignature#getLongestPrefix(Signature)}.
+   */
+  public int getLongestPrefix(int i, int j) {
+    int a = i * numWords;
+    int b = j * numWords;
+    for (int k = 0; k < numWords; k++) {
+      long x = words[a + k] ^ words[b + k];
+      if (x != 0) {
+        return Math.min(numBits, k * 64 + Long.numberOfLeadingZeros(x));
+      }
+    }
+    return numBits;
+  }
+}
@@ -20,7 +20,7 @@ public abstract class PwsimEnvironment extends Configured {
 
   //Signatures
   public static String permutationType; // how to permute signatures: by bits ("bit") or by blocks ("block")
-  public static String signatureType; // the type of signature: "simhash", "minhash", or "random"
+  public static String signatureType; // the type of signature: "simhash", "minhash", "oph", or "random" (or "hashed", "sparse")
   public static int numOfPermutations; // number of permutation tables (i.e., Q : number of permutations to use in randomized pwsim algorithm)
   public static int numOfBits;	// number of bits on the signature
 
@@ -49,15 +49,16 @@ public abstract class PwsimEnvironment extends Configured {
   public static float scoreThreshold = 0.5f;
 
   public static void setClassTypes(Configuration config){
-    if(signatureType.toLowerCase().equals("random")){
+    String type = signatureType.toLowerCase();
+    if(type.equals("random") || type.equals("hashed") || type.equals("sparse")){
       config.set("Ivory.SignatureClass", "ivory.lsh.data.NBitSignature");		
       config.set("Ivory.PairClass", "ivory.lsh.data.PairOfIntNBitSignature");
       config.set("Type", "Random");
-    }else if(signatureType.toLowerCase().equals("simhash")){
+    }else if(type.equals("simhash")){
       config.set("Ivory.SignatureClass", "ivory.lsh.data.SixtyFourBitSignature");		
       config.set("Ivory.PairClass", "ivory.lsh.data.PairOfInt64BitSignature");
       config.set("Type", "Simhash");
-    }else if(signatureType.toLowerCase().equals("minhash")){
+    }else if(type.equals("minhash") || type.startsWith("oph")){
       config.set("Ivory.SignatureClass", "ivory.lsh.data.MinhashSignature");		
       config.set("Ivory.PairClass", "ivory.lsh.data.PairOfIntMinhashSignature");
       config.set("Type", "Minhash");
@@ -66,6 +67,24 @@ public abstract class PwsimEnvironment extends Configured {
     }
   }
 
+  // Signatures from hashed or sparse projections don't match those from random vectors, so they're
+  // kept apart, under the name of their type.
+  private static String getRandomSignatureName(){
+    if(signatureType != null && (signatureType.equalsIgnoreCase("hashed") || signatureType.equalsIgnoreCase("sparse"))){
+      return signatureType.toLowerCase();
+    }
+    return "random";
+  }
+
+  // Likewise for one-permutation minhash signatures, whose type also holds the number of bits per
+  // value (e.g., "oph4").
+  private static String getMinhashSignatureName(){
+    if(signatureType != null && signatureType.toLowerCase().startsWith("oph")){
+      return signatureType.toLowerCase();
+    }
+    return "minhash";
+  }
+
   public static String getFileNameWithPars(String dir, String fileName) throws Exception{
     return getFileNameWithPars(dir, fileName, FileSystem.get(new Configuration()));
   }
@@ -91,15 +110,15 @@ public abstract class PwsimEnvironment extends Configured {
       }
     }else if(fileName.equals("SignaturesMinhash")){
       if(numBatchFiles>0){
-        return dir + "/signatures-minhash_D="+numOfBits+"_batch="+numBatchFiles;
+        return dir + "/signatures-"+getMinhashSignatureName()+"_D="+numOfBits+"_batch="+numBatchFiles;
       }else{
-        return dir + "/signatures-minhash_D="+numOfBits;
+        return dir + "/signatures-"+getMinhashSignatureName()+"_D="+numOfBits;
       }
     }else if(fileName.equals("SignaturesRandom")){
       if(numBatchFiles>0){
-        return dir + "/signatures-random_D="+numOfBits+"_batch="+numBatchFiles;
+        return dir + "/signatures-"+getRandomSignatureName()+"_D="+numOfBits+"_batch="+numBatchFiles;
       }else{
-        return dir + "/signatures-random_D="+numOfBits;
+        return dir + "/signatures-"+getRandomSignatureName()+"_D="+numOfBits;
       }
     }else if(fileName.equals("Signatures")){
       if(numBatchFiles>0){
@@ -117,15 +136,15 @@ public abstract class PwsimEnvironment extends Configured {
       }
     }else if(fileName.equals("P-SignaturesMinhash")){
       if(numBatchFiles>0){
-        return dir + (withBoundaries? "/p-b":"/p")+"-signatures-minhash_D="+numOfBits+"_batch="+numBatchFiles;
+        return dir + (withBoundaries? "/p-b":"/p")+"-signatures-"+getMinhashSignatureName()+"_D="+numOfBits+"_batch="+numBatchFiles;
       }else{
-        return dir + (withBoundaries? "/p-b":"/p")+"-signatures-minhash_D="+numOfBits;
+        return dir + (withBoundaries? "/p-b":"/p")+"-signatures-"+getMinhashSignatureName()+"_D="+numOfBits;
       }
     }else if(fileName.equals("P-SignaturesRandom")){
       if(numBatchFiles>0){
-        return dir + (withBoundaries? "/p-b":"/p")+"-signatures-random_D="+numOfBits+"_batch="+numBatchFiles;
+        return dir + (withBoundaries? "/p-b":"/p")+"-signatures-"+getRandomSignatureName()+"_D="+numOfBits+"_batch="+numBatchFiles;
       }else{
-        return dir + (withBoundaries? "/p-b":"/p")+"-signatures-random_D="+numOfBits;
+        return dir + (withBoundaries? "/p-b":"/p")+"-signatures-"+getRandomSignatureName()+"_D="+numOfBits;
       }
     }else if(fileName.equals("BatchSignaturesMap")){
       if(numBatchFiles>0){
@@ -4,6 +4,7 @@ import ivory.core.RetrievalEnvironment;
 import ivory.lsh.projection.ComputeSignaturesMinhash;
 import ivory.lsh.projection.ComputeSignaturesRandom;
 import ivory.lsh.projection.ComputeSignaturesSimhash;
+import ivory.lsh.projection.HashedRandomProjections;
 import ivory.lsh.projection.WriteRandomVectors;
 
 import org.apache.hadoop.conf.Configuration;
@@ -26,7 +27,7 @@ public class RunComputeSignatures extends PwsimEnvironment implements Tool {
   private static final Logger sLogger = Logger.getLogger(RunComputeSignatures.class);
 
   private static int printUsage() {
-    System.out.println("usage: [index-path] [num-of-bits] [type-of-signature] ([batch-size]) ([dot-prod-thresholds])\nIgnore last two arguments if you don't know what they are. If you want non-batch mode but want to include 'dot product thresholds' file, enter X for [batch-size]");
+    System.out.println("usage: [index-path] [num-of-bits] [type-of-signature] ([batch-size]) ([dot-prod-thresholds])\n[type-of-signature] is one of random, hashed, sparse, simhash, minhash or oph (one-permutation minhash), optionally followed by the number of bits per value (e.g., oph4).\nIgnore last two arguments if you don't know what they are. If you want non-batch mode but want to include 'dot product thresholds' file, enter X for [batch-size]");
     return -1;
   }
 
@@ -77,6 +78,13 @@ public class RunComputeSignatures extends PwsimEnvironment implements Tool {
       }
       ComputeSignaturesRandom computeSignaturesTask = new ComputeSignaturesRandom(config);
       computeSignaturesTask.run();
+    }else if(type.equals("Hashed") || type.equals("Sparse")){
+      // Random projections derived from hashes, without writing random vectors.
+      config.setBoolean("Ivory.HashedProjections", true);
+      config.setInt("Ivory.ProjectionSparsity",
+          type.equals("Sparse") ? HashedRandomProjections.DEFAULT_SPARSITY : 1);
+      ComputeSignaturesRandom computeSignaturesTask = new ComputeSignaturesRandom(config);
+      computeSignaturesTask.run();
     }else if(type.equals("Simhash")){
       if(numOfBits!=64){
         sLogger.info("Simhash signatures need to be 64 bits! Quitting...");
@@ -84,6 +92,13 @@ public class RunComputeSignatures extends PwsimEnvironment implements Tool {
       }
       ComputeSignaturesSimhash computeSignaturesTask = new ComputeSignaturesSimhash(config);
       computeSignaturesTask.run();
+    }else if(type.startsWith("Oph")){
+      // One-permutation minhash, keeping all bits of each value unless a number of bits is given.
+      config.setBoolean("Ivory.HashedMinhash", true);
+      config.setInt("Ivory.MinhashBits",
+          type.length() > 3 ? Integer.parseInt(type.substring(3)) : 0);
+      ComputeSignaturesMinhash computeSignaturesTask = new ComputeSignaturesMinhash(config);
+      computeSignaturesTask.run();
     }else{	//minhash
       ComputeSignaturesMinhash computeSignaturesTask = new ComputeSignaturesMinhash(config);
       computeSignaturesTask.run();
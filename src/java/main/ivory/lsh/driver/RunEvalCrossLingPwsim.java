@@ -5,6 +5,7 @@ import ivory.lsh.eval.BruteForcePwsim;
 import ivory.lsh.eval.FilterResults;
 import ivory.lsh.eval.SampleIntDocVectors;
 import ivory.lsh.pwsim.GenerateChunkedPermutedTables;
+import ivory.lsh.pwsim.cl.CLMultiIndexPwsim;
 import ivory.lsh.pwsim.cl.CLSlidingWindowPwsim;
 
 import java.util.SortedMap;
@@ -35,13 +36,13 @@ public class RunEvalCrossLingPwsim extends PwsimEnvironment implements Tool {
   private static final Logger sLogger = Logger.getLogger(RunEvalCrossLingPwsim.class);
 
   private static int printUsage() {
-    System.out.println("usage: [targetlang-dir] [srclang-dir] [num-bits] [type-of-signature] [num-perms] [overlap-size] [window-size] [max-dist] [sample-size] [mode]\nIf you want to run full pwsim on all document pairs, mode=all, otherwise mode=sample\n");
+    System.out.println("usage: [targetlang-dir] [srclang-dir] [num-bits] [type-of-signature] [num-perms] [overlap-size] [window-size] [max-dist] [sample-size] [mode] ([num-tables])\nIf you want to run full pwsim on all document pairs, mode=all, otherwise mode=sample\nIf [num-tables] is given, pairs are found by multi-index hashing with that many tables instead of sliding windows over [num-perms] permutations, and [num-perms], [overlap-size] and [window-size] are ignored.\n");
     return -1;
   }
 
   @SuppressWarnings("unchecked")
   public int run(String[] args) throws Exception {
-    if (args.length != 10) {
+    if (args.length != 10 && args.length != 11) {
       printUsage();
       return -1;
     }
@@ -81,19 +82,25 @@ public class RunEvalCrossLingPwsim extends PwsimEnvironment implements Tool {
     chunkOverlapSize = Integer.parseInt(args[5]);
     slidingWindowSize = Integer.parseInt(args[6]);
     maxHammingDistance = Integer.parseInt(args[7]);
-    if(chunkOverlapSize<slidingWindowSize){
+    int numTables = (args.length == 11) ? Integer.parseInt(args[10]) : 0;
+    if(numTables == 0 && chunkOverlapSize<slidingWindowSize){
       System.out.println("Error: [overlap-size] cannot be less than [window-size] for algorithm's correctness!");
       return -1;
     }
     sampleSize = Integer.parseInt(args[8]);
     mode = args[9];
+    if(numTables > 0){
+      // Output paths are named after Q and B: Q is the number of tables and B is 0.
+      numOfPermutations = numTables;
+      slidingWindowSize = 0;
+    }
 
     PwsimEnvironment.setClassTypes(config);
     config.setInt("Ivory.NumOfBits", numOfBits);
     config.setInt("Ivory.NumOfPermutations", numOfPermutations);
     config.setInt("Ivory.SlidingWindowSize", slidingWindowSize);
     config.setInt("Ivory.MaxHammingDistance", maxHammingDistance);
-    int numReducers = numOfPermutations;
+    int numReducers = (numTables > 0) ? 100 : numOfPermutations;	// multi-index buckets aren't tied to tables
     config.setInt("Ivory.NumReduceTasks", numReducers);
     config.setInt("Ivory.OverlapSize", chunkOverlapSize);
     config.set("SrcLangDir", srcLangDir);
@@ -144,19 +151,29 @@ public class RunEvalCrossLingPwsim extends PwsimEnvironment implements Tool {
     }
 
     /**************************************************************************************
-     * B. SLIDING WINDOW ALGORITHM FOR PAIRWISE SIMILARITY
+     * B. SLIDING WINDOW (OR MULTI-INDEX) ALGORITHM FOR PAIRWISE SIMILARITY
      *************************************************************************************/
-    //create tables
-    GenerateChunkedPermutedTables createTableTool = new GenerateChunkedPermutedTables(config);
-    createTableTool.run();
-
-    // pwsim on entire collection
-    if(mode.equals("all")){
-      String[] clSlidingArgs = {getFileNameWithPars(targetLangDir, "Tables"), getFileNameWithPars(targetLangDir, "PWSimCollection"), slidingWindowSize+"", maxHammingDistance+""};
-      CLSlidingWindowPwsim.main(clSlidingArgs);
-    }else{	// pwsim on sample documents only
-      String[] clSlidingArgs = {getFileNameWithPars(targetLangDir, "Tables"), getFileNameWithPars(targetLangDir, "PWSimCollectionFiltered"), slidingWindowSize+"", maxHammingDistance+"",sampleDocnosPath.toString()};
-      CLSlidingWindowPwsim.main(clSlidingArgs);
+    if(numTables > 0){
+      // multi-index hashing over the signatures of both collections, without permuted tables
+      String signaturesPaths = getFileNameWithPars(targetLangDir, "Signatures"+config.get("Type"))+","+getFileNameWithPars(srcLangDir, "Signatures");
+      String outputPath = getFileNameWithPars(targetLangDir, mode.equals("all") ? "PWSimCollection" : "PWSimCollectionFiltered");
+      String[] clMultiIndexArgs = mode.equals("all") ?
+          new String[] {signaturesPaths, outputPath, numTables+"", maxHammingDistance+""} :
+          new String[] {signaturesPaths, outputPath, numTables+"", maxHammingDistance+"", sampleDocnosPath.toString()};
+      ToolRunner.run(config, new CLMultiIndexPwsim(), clMultiIndexArgs);
+    }else{
+      //create tables
+      GenerateChunkedPermutedTables createTableTool = new GenerateChunkedPermutedTables(config);
+      createTableTool.run();
+
+      // pwsim on entire collection
+      if(mode.equals("all")){
+        String[] clSlidingArgs = {getFileNameWithPars(targetLangDir, "Tables"), getFileNameWithPars(targetLangDir, "PWSimCollection"), slidingWindowSize+"", maxHammingDistance+""};
+        CLSlidingWindowPwsim.main(clSlidingArgs);
+      }else{	// pwsim on sample documents only
+        String[] clSlidingArgs = {getFileNameWithPars(targetLangDir, "Tables"), getFileNameWithPars(targetLangDir, "PWSimCollectionFiltered"), slidingWindowSize+"", maxHammingDistance+"",sampleDocnosPath.toString()};
+        CLSlidingWindowPwsim.main(clSlidingArgs);
+      }
     }
 
 
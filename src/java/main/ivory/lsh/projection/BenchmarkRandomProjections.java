@@ -0,0 +1,129 @@
+package ivory.lsh.projection;
+
+import ivory.lsh.data.FloatAsBytesWritable;
+import ivory.lsh.data.NBitSignature;
+
+import java.util.Random;
+
+import edu.umd.cloud9.debug.MemoryUsageUtils;
+import edu.umd.cloud9.io.map.HMapIFW;
+import edu.umd.cloud9.util.map.MapIF;
+
+/**
+ * Benchmark comparing signatures computed from random vectors materialized by
+ * {@link WriteRandomVectors}, as in {@link ComputeSignaturesRandom}, with signatures computed from
+ * {@link HashedRandomProjections}, dense and sparse. For each method, it reports the heap used by
+ * the projections, documents per second, and the mean error of cosine similarities estimated from
+ * signatures, over pairs of synthetic documents that share some of their terms.
+ */
+public class BenchmarkRandomProjections {
+  private BenchmarkRandomProjections() {}
+
+  private static interface Method {
+    void computeSignature(HMapIFW docvector, NBitSignature signature);
+  }
+
+  private static HMapIFW randomDocument(Random r, int vocabularySize, int numTerms,
+      HMapIFW shared, float overlap) {
+    HMapIFW doc = new HMapIFW();
+    if (shared != null) {
+      for (MapIF.Entry e : shared.entrySet()) {
+        if (r.nextFloat() < overlap) {
+          doc.put(e.getKey(), e.getValue());
+        }
+      }
+    }
+    while (doc.size() < numTerms) {
+      // Skewed towards frequent terms, which have small term ids.
+      int termid = 1 + (int) (vocabularySize * Math.pow(r.nextDouble(), 3));
+      doc.put(termid, 1.0f + r.nextFloat());
+    }
+    return doc;
+  }
+
+  private static float cosine(HMapIFW a, HMapIFW b) {
+    double dot = 0, normA = 0, normB = 0;
+    for (MapIF.Entry e : a.entrySet()) {
+      normA += e.getValue() * e.getValue();
+      if (b.containsKey(e.getKey())) {
+        dot += e.getValue() * b.get(e.getKey());
+      }
+    }
+    for (MapIF.Entry e : b.entrySet()) {
+      normB += e.getValue() * e.getValue();
+    }
+    return (float) (dot / Math.sqrt(normA * normB));
+  }
+
+  private static void run(String name, long heap, Method method, HMapIFW[] docs, int numBits) {
+    NBitSignature signature = new NBitSignature(numBits);
+
+    // Warm up.
+    for (int i = 0; i < Math.min(100, docs.length); i++) {
+      method.computeSignature(docs[i], signature);
+    }
+
+    long startTime = System.currentTimeMillis();
+    for (HMapIFW doc : docs) {
+      method.computeSignature(doc, signature);
+    }
+    long duration = System.currentTimeMillis() - startTime;
+
+    // Documents come in pairs, the second sharing terms with the first.
+    double error = 0;
+    NBitSignature other = new NBitSignature(numBits);
+    for (int i = 0; i + 1 < docs.length; i += 2) {
+      method.computeSignature(docs[i], signature);
+      method.computeSignature(docs[i + 1], other);
+      error += Math.abs(signature.cosine(other) - cosine(docs[i], docs[i + 1]));
+    }
+
+    System.out.println(String.format("%s: %d bytes of heap, %.1f docs/s, mean cosine error %.4f",
+        name, heap, docs.length * 1000.0 / Math.max(duration, 1), error / (docs.length / 2)));
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 3) {
+      System.out.println("usage: [vocabulary-size] [num-of-bits] [num-docs] ([terms-per-doc])");
+      System.exit(-1);
+    }
+
+    int vocabularySize = Integer.parseInt(args[0]);
+    final int numBits = Integer.parseInt(args[1]);
+    int numDocs = Integer.parseInt(args[2]);
+    int termsPerDoc = args.length > 3 ? Integer.parseInt(args[3]) : 200;
+
+    Random r = new Random(0);
+    HMapIFW[] docs = new HMapIFW[numDocs];
+    for (int i = 0; i < numDocs; i++) {
+      docs[i] = randomDocument(r, vocabularySize, termsPerDoc, i % 2 == 1 ? docs[i - 1] : null,
+          r.nextFloat());
+    }
+
+    long startingMemoryUse = MemoryUsageUtils.getUsedMemory();
+    final FloatAsBytesWritable[] vectors = new FloatAsBytesWritable[numBits];
+    for (int i = 0; i < numBits; i++) {
+      vectors[i] = WriteRandomVectors.generateUnitRandomVectorAsBytes(vocabularySize);
+    }
+    long heap = MemoryUsageUtils.getUsedMemory() - startingMemoryUse;
+    run("Materialized random vectors", heap, new Method() {
+      public void computeSignature(HMapIFW docvector, NBitSignature signature) {
+        for (int i = 0; i < numBits; i++) {
+          signature.set(i, ComputeSignaturesRandom.MyMapper.dotProduct(docvector, vectors[i]) >= 0);
+        }
+      }
+    }, docs, numBits);
+
+    for (int sparsity : new int[] { 1, HashedRandomProjections.DEFAULT_SPARSITY }) {
+      startingMemoryUse = MemoryUsageUtils.getUsedMemory();
+      final HashedRandomProjections projections =
+          new HashedRandomProjections(numBits, HashedRandomProjections.DEFAULT_SEED, sparsity);
+      heap = MemoryUsageUtils.getUsedMemory() - startingMemoryUse;
+      run("Hashed projections, sparsity " + sparsity, heap, new Method() {
+        public void computeSignature(HMapIFW docvector, NBitSignature signature) {
+          projections.computeSignature(docvector, null, signature);
+        }
+      }, docs, numBits);
+    }
+  }
+}
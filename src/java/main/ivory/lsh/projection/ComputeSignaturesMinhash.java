@@ -37,7 +37,11 @@ import edu.umd.cloud9.io.map.HMapIFW;
 import edu.umd.cloud9.util.PowerTool;
 
 /**
- * A Hadoop task to compute signatures from document vectors.
+ * A Hadoop task to compute signatures from document vectors. By default, each minhash value is the
+ * first term of the document in one of D random orderings of the vocabulary. If
+ * Ivory.HashedMinhash is set, signatures are computed by {@link OnePermutationMinhash} instead,
+ * with the seed in Ivory.MinhashSeed and the number of bits kept per value in Ivory.MinhashBits (0
+ * for full values), and no random orderings need to be written or loaded.
  * 
  * @author ferhanture
  * 
@@ -85,6 +89,7 @@ public class ComputeSignaturesMinhash extends PowerTool {
     static int D;
     static MinhashSignature signature;
     static List<Writable> randomOrderings;
+    static OnePermutationMinhash minhash;
 
     public void configure(JobConf job) {
       // sLogger.setLevel(Level.DEBUG);
@@ -92,6 +97,16 @@ public class ComputeSignaturesMinhash extends PowerTool {
       if (D == -1) {
         throw new RuntimeException("Could not read parameters!");
       }
+      signature = new MinhashSignature(D);
+
+      if (job.getBoolean("Ivory.HashedMinhash", false)) {
+        minhash = new OnePermutationMinhash(D,
+            job.getLong("Ivory.MinhashSeed", OnePermutationMinhash.DEFAULT_SEED),
+            job.getInt("Ivory.MinhashBits", 0));
+        randomOrderings = null;
+        return;
+      }
+      minhash = null;
 
       if (PwsimEnvironment.cluster) {
         try {
@@ -102,8 +117,8 @@ public class ComputeSignaturesMinhash extends PowerTool {
         }
       } else {
         try {
-          randomOrderings = SequenceFileUtils.readValues(new Path(job.get("Ivory.IndexPath")
-              + "/random-perms-bit_D=39869_Q=2"), FileSystem.getLocal(job));
+          randomOrderings = SequenceFileUtils.readValues(new Path(job.get("Ivory.RandomPermFile")),
+              FileSystem.getLocal(job));
         } catch (Exception e) {
           // TODO Auto-generated catch block
           e.printStackTrace();
@@ -117,14 +132,17 @@ public class ComputeSignaturesMinhash extends PowerTool {
                                                                                                // COME
                                                                                                // HERE
       }
-      signature = new MinhashSignature(D);
-
     }
 
     public void map(IntWritable docno, WeightedIntDocVector docvectorIn,
         OutputCollector<IntWritable, MinhashSignature> output, Reporter reporter)
         throws IOException {
       HMapIFW docvector = docvectorIn.getWeightedTerms();
+      if (minhash != null) {
+        minhash.computeSignature(docvector, signature);
+        output.collect(docno, signature);
+        return;
+      }
       signature.clear();
 
       for (int i = 0; i < randomOrderings.size(); i++) {
@@ -185,18 +203,27 @@ public class ComputeSignaturesMinhash extends PowerTool {
     PwsimEnvironment.numOfBits = numInts;
     PwsimEnvironment.numOfPermutations = 0; // doesn't matter. not used to compute signatures
 
-    if (fs.exists(new Path(randomPermFile))) {
-      sLogger.info("Random permutations output path already exists!");
-    } else {
-      Permutation p = new PermutationByBit(vocabSize);
-      Permutation.writeToFile(p, numInts, fs, job, randomPermFile);
+    boolean hashed = job.getBoolean("Ivory.HashedMinhash", false);
+    if (!hashed) {
+      if (fs.exists(new Path(randomPermFile))) {
+        sLogger.info("Random permutations output path already exists!");
+      } else {
+        Permutation p = new PermutationByBit(vocabSize);
+        Permutation.writeToFile(p, numInts, fs, job, randomPermFile);
+      }
+      DistributedCache.addCacheFile(new URI(randomPermFile), job);
+      job.set("Ivory.RandomPermFile", randomPermFile);
     }
-    DistributedCache.addCacheFile(new URI(randomPermFile), job);
 
     sLogger.info("Computing signatures...");
     sLogger.info("Type of computation: Minhash");
     sLogger.info("Total number of ints: " + numInts);
-    sLogger.info("random perms file: " + randomPermFile);
+    sLogger.info("Hashed minhash?: " + hashed);
+    if (hashed) {
+      sLogger.info("Bits per value: " + job.getInt("Ivory.MinhashBits", 0));
+    } else {
+      sLogger.info("random perms file: " + randomPermFile);
+    }
     sLogger.info("InputPath: " + inputPath);
     sLogger.info("outputPath: " + outputPath);
     sLogger.info("Batch?: " + isBatch);
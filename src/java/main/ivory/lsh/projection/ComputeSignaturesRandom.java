@@ -39,7 +39,10 @@ import edu.umd.cloud9.util.PowerTool;
 import edu.umd.cloud9.util.map.MapIF;
 
 /**
- * A Hadoop task to compute signatures from document vectors.
+ * A Hadoop task to compute signatures from document vectors. By default, documents are projected
+ * onto the random vectors written by {@link WriteRandomVectors}. If Ivory.HashedProjections is
+ * set, {@link HashedRandomProjections} are used instead, with the seed in Ivory.ProjectionSeed and
+ * the sparsity in Ivory.ProjectionSparsity, and no random vectors need to be written or loaded.
  * 
  * usage: [index-path] [num-of-bits] [type-of-computation] ([batch-size])
  * 
@@ -79,6 +82,7 @@ public class ComputeSignaturesRandom extends PowerTool {
     static int D;
     static NBitSignature signature;
     static float[] dotProductThresholds;
+    static HashedRandomProjections projections;
 
     public void configure(JobConf job) {
       // sLogger.setLevel(Level.DEBUG);
@@ -87,6 +91,15 @@ public class ComputeSignaturesRandom extends PowerTool {
         throw new RuntimeException("Could not read parameters!");
       }
 
+      if (job.getBoolean("Ivory.HashedProjections", false)) {
+        projections = new HashedRandomProjections(D,
+            job.getLong("Ivory.ProjectionSeed", HashedRandomProjections.DEFAULT_SEED),
+            job.getInt("Ivory.ProjectionSparsity", 1));
+        signature = new NBitSignature(D);
+        sLogger.info("Hashed projections, sparsity " + projections.getSparsity());
+        return;
+      }
+
       if (PwsimEnvironment.cluster) {
         try {
           localFiles = DistributedCache.getLocalCacheFiles(job);
@@ -150,6 +163,12 @@ public class ComputeSignaturesRandom extends PowerTool {
       HMapIFW docvector = docvectorIn.getWeightedTerms();
       FloatAsBytesWritable value;
 
+      if (projections != null) {
+        projections.computeSignature(docvector, null, signature);
+        output.collect(docno, signature);
+        return;
+      }
+
       for (int i = 0; i < randomUnitVectors.size(); i++) {
         value = (FloatAsBytesWritable) randomUnitVectors.get(i);
         double dprod = dotProduct(docvector, value);
@@ -182,9 +201,15 @@ public class ComputeSignaturesRandom extends PowerTool {
     String outputPath = PwsimEnvironment.getFileNameWithPars(dir, "SignaturesRandom");
     String randomVectorFile = PwsimEnvironment.getFileNameWithPars(dir, "RandomVectors")
         + "/part-00000";
-    DistributedCache.addCacheFile(new URI(randomVectorFile), job);
+    boolean hashed = job.getBoolean("Ivory.HashedProjections", false);
+    if (!hashed) {
+      DistributedCache.addCacheFile(new URI(randomVectorFile), job);
+    }
     String dotProdThreshFile = job.get("Ivory.DotProdThreshFile");
-    if (dotProdThreshFile != null) { // if provided by user, use these threshold values instead of
+    if (hashed && dotProdThreshFile != null) {
+      // Thresholds are tuned to particular random vectors.
+      sLogger.warn("Dot product thresholds are ignored with hashed projections.");
+    } else if (dotProdThreshFile != null) { // if provided by user, use these threshold values instead of
                                      // [0,0,...,0]
       DistributedCache.addCacheFile(new URI(dotProdThreshFile), job);
     }
@@ -198,7 +223,10 @@ public class ComputeSignaturesRandom extends PowerTool {
     sLogger.info("Computing signatures...");
     sLogger.info("Type of computation: Random");
     sLogger.info("Total number of bits: " + D);
-    sLogger.info("randomVectorFile: " + randomVectorFile);
+    sLogger.info("Hashed projections?: " + hashed);
+    if (!hashed) {
+      sLogger.info("randomVectorFile: " + randomVectorFile);
+    }
     sLogger.info("InputPath: " + inputPath);
     sLogger.info("outputPath: " + outputPath);
     sLogger.info("Batch?: " + isBatch);
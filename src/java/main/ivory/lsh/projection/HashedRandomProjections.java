@@ -0,0 +1,179 @@
+package ivory.lsh.projection;
+
+import ivory.lsh.data.NBitSignature;
+
+import java.util.Random;
+
+import edu.umd.cloud9.io.map.HMapIFW;
+import edu.umd.cloud9.util.map.MapIF;
+
+/**
+ * Random projections whose components are derived on the fly from a seeded hash of the term id,
+ * rather than read from random vectors materialized over the whole vocabulary (see
+ * {@link WriteRandomVectors}). Memory use is independent of the vocabulary size, and nothing needs
+ * to be distributed to mappers but the seed.
+ * <p>
+ * The components of all projections for a term come from a SplitMix64 stream seeded with the term
+ * id. In the dense setting, each component is drawn from a table of Gaussian samples, 12 bits of
+ * the stream per component. In the sparse setting, each term contributes +1 or -1 to
+ * <code>numBits / sparsity</code> projections chosen by the stream, in the spirit of very sparse
+ * random projections; this makes projecting cheaper by the same factor. Either way, the dot
+ * products of a document with all projections are computed in a single pass over its terms, and
+ * signature bits are set by their signs as in {@link ComputeSignaturesRandom}.
+ * <p>
+ * Instances are not thread-safe, since they reuse buffers across documents.
+ */
+public class HashedRandomProjections {
+  public static final long DEFAULT_SEED = 0x5DEECE66DL;
+  public static final int DEFAULT_SPARSITY = 4;
+
+  private static final int TABLE_BITS = 12;
+  private static final int TABLE_MASK = (1 << TABLE_BITS) - 1;
+  private static final int COMPONENTS_PER_HASH = 64 / TABLE_BITS;
+  private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+  private final int numBits;
+  private final int sparsity;
+  private final int nonZeros;
+  private final long seed;
+  private final float[] gaussians = new float[1 << TABLE_BITS];
+
+  // Reusable buffers.
+  private float[] products;
+  private int[] terms = new int[256];
+  private float[] weights = new float[256];
+
+  /**
+   * Creates dense Gaussian projections.
+   *
+   * @param numBits number of projections, i.e., bits per signature
+   * @param seed seed shared by all tasks that compute comparable signatures
+   */
+  public HashedRandomProjections(int numBits, long seed) {
+    this(numBits, seed, 1);
+  }
+
+  /**
+   * Creates projections.
+   *
+   * @param numBits number of projections, i.e., bits per signature
+   * @param seed seed shared by all tasks that compute comparable signatures
+   * @param sparsity 1 for dense Gaussian projections; otherwise, each term contributes to one in
+   *     about <code>sparsity</code> projections
+   */
+  public HashedRandomProjections(int numBits, long seed, int sparsity) {
+    if (numBits <= 0 || sparsity <= 0) {
+      throw new IllegalArgumentException("Invalid parameters: numBits=" + numBits + ", sparsity="
+          + sparsity);
+    }
+    this.numBits = numBits;
+    this.sparsity = sparsity;
+    this.nonZeros = Math.max(1, numBits / sparsity);
+    this.seed = seed;
+    this.products = new float[numBits];
+
+    // Centered Gaussian samples, so that projections have zero mean.
+    Random r = new Random(seed);
+    double mean = 0;
+    for (int i = 0; i < gaussians.length; i++) {
+      gaussians[i] = (float) r.nextGaussian();
+      mean += gaussians[i];
+    }
+    mean /= gaussians.length;
+    for (int i = 0; i < gaussians.length; i++) {
+      gaussians[i] -= mean;
+    }
+  }
+
+  public int getNumBits() {
+    return numBits;
+  }
+
+  public int getSparsity() {
+    return sparsity;
+  }
+
+  /**
+   * Computes the dot products of a document with all projections.
+   *
+   * @param terms term ids of the document
+   * @param weights weight of each term
+   * @param length number of terms
+   * @param products receives the dot product with each projection
+   */
+  public void project(int[] terms, float[] weights, int length, float[] products) {
+    for (int i = 0; i < numBits; i++) {
+      products[i] = 0.0f;
+    }
+
+    for (int t = 0; t < length; t++) {
+      float w = weights[t];
+      long state = mix(seed ^ (terms[t] * GOLDEN_GAMMA));
+
+      if (sparsity == 1) {
+        int i = 0;
+        while (i < numBits) {
+          state += GOLDEN_GAMMA;
+          long h = mix(state);
+          int n = Math.min(COMPONENTS_PER_HASH, numBits - i);
+          for (int j = 0; j < n; j++) {
+            products[i++] += w * gaussians[(int) h & TABLE_MASK];
+            h >>>= TABLE_BITS;
+          }
+        }
+      } else {
+        for (int k = 0; k < nonZeros; k++) {
+          state += GOLDEN_GAMMA;
+          long h = mix(state);
+          int i = (int) (((h >>> 32) * numBits) >>> 32);
+          products[i] += (h & 1) == 0 ? w : -w;
+        }
+      }
+    }
+  }
+
+  /**
+   * Sets each bit of a signature to whether the dot product of a document with the corresponding
+   * projection is at least its threshold.
+   *
+   * @param terms term ids of the document
+   * @param weights weight of each term
+   * @param length number of terms
+   * @param thresholds threshold of each projection, or <code>null</code> for all zeros
+   * @param signature receives the signature
+   */
+  public void computeSignature(int[] terms, float[] weights, int length, float[] thresholds,
+      NBitSignature signature) {
+    project(terms, weights, length, products);
+    for (int i = 0; i < numBits; i++) {
+      signature.set(i, products[i] >= (thresholds == null ? 0 : thresholds[i]));
+    }
+  }
+
+  /**
+   * Computes the signature of a document vector.
+   *
+   * @see #computeSignature(int[], float[], int, float[], NBitSignature)
+   */
+  public void computeSignature(HMapIFW docvector, float[] thresholds, NBitSignature signature) {
+    int length = docvector.size();
+    if (terms.length < length) {
+      terms = new int[Math.max(length, 2 * terms.length)];
+      weights = new float[terms.length];
+    }
+
+    int t = 0;
+    for (MapIF.Entry e : docvector.entrySet()) {
+      terms[t] = e.getKey();
+      weights[t] = e.getValue();
+      t++;
+    }
+    computeSignature(terms, weights, length, thresholds, signature);
+  }
+
+  private static long mix(long z) {
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+}
@@ -0,0 +1,141 @@
+package ivory.lsh.projection;
+
+import ivory.lsh.data.MinhashSignature;
+
+import edu.umd.cloud9.io.map.HMapIFW;
+import edu.umd.cloud9.util.map.MapIF;
+
+/**
+ * Minhash signatures computed by one-permutation hashing with densification, rather than by
+ * walking random orderings of the vocabulary, as in {@link ComputeSignaturesMinhash}. A seeded hash
+ * of each term id stands in for a random permutation of the vocabulary: the hash picks one of
+ * <code>numBins</code> bins and a value, and each bin keeps the minimum value over the terms of a
+ * document. Bins that no term falls into are filled by copying the value of a non-empty bin chosen
+ * by hashing the bin index, which keeps the probability that two signatures agree at a position
+ * equal to the Jaccard similarity of the two documents. A signature is thus computed in a single
+ * pass over the terms of a document, and nothing needs to be distributed to mappers but the seed.
+ * <p>
+ * If <code>numBits</code> is positive, only the lowest <code>numBits</code> bits of each value are
+ * kept (b-bit minhash), and signatures are written in as many bits per position; see
+ * {@link MinhashSignature#setNumBits(int)}. Two positions then also agree by chance with
+ * probability <code>2^-numBits</code>.
+ * <p>
+ * Instances are not thread-safe, since they reuse buffers across documents.
+ */
+public class OnePermutationMinhash {
+  public static final long DEFAULT_SEED = 0x5DEECE66DL;
+
+  private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+  private static final long EMPTY = Long.MAX_VALUE;
+
+  private final int numBins;
+  private final int numBits;
+  private final long seed;
+
+  // Reusable buffers.
+  private final long[] mins;
+  private int[] terms = new int[256];
+
+  /**
+   * Creates a minhash function that keeps values in full.
+   *
+   * @param numBins number of minhash values per signature
+   * @param seed seed shared by all tasks that compute comparable signatures
+   */
+  public OnePermutationMinhash(int numBins, long seed) {
+    this(numBins, seed, 0);
+  }
+
+  /**
+   * Creates a minhash function.
+   *
+   * @param numBins number of minhash values per signature
+   * @param seed seed shared by all tasks that compute comparable signatures
+   * @param numBits number of bits kept per value, or 0 to keep values in full
+   */
+  public OnePermutationMinhash(int numBins, long seed, int numBits) {
+    if (numBins <= 0 || numBits < 0 || numBits > 32) {
+      throw new IllegalArgumentException("Invalid parameters: numBins=" + numBins + ", numBits="
+          + numBits);
+    }
+    this.numBins = numBins;
+    this.numBits = numBits == 32 ? 0 : numBits;
+    this.seed = seed;
+    this.mins = new long[numBins];
+  }
+
+  public int getNumBins() {
+    return numBins;
+  }
+
+  public int getNumBits() {
+    return numBits;
+  }
+
+  /**
+   * Computes the signature of a document.
+   *
+   * @param terms distinct term ids of the document
+   * @param length number of terms
+   * @param signature receives the signature
+   */
+  public void computeSignature(int[] terms, int length, MinhashSignature signature) {
+    if (length == 0) {
+      throw new IllegalArgumentException("No terms in doc vector.");
+    }
+
+    for (int i = 0; i < numBins; i++) {
+      mins[i] = EMPTY;
+    }
+
+    for (int t = 0; t < length; t++) {
+      long h = mix(seed ^ (terms[t] * GOLDEN_GAMMA));
+      int bin = (int) (((h >>> 32) * numBins) >>> 32);
+      long value = h & 0xFFFFFFFFL;
+      if (value < mins[bin]) {
+        mins[bin] = value;
+      }
+    }
+
+    signature.clear();
+    signature.setNumBits(numBits);
+    int mask = numBits == 0 ? -1 : (1 << numBits) - 1;
+    for (int i = 0; i < numBins; i++) {
+      long value = mins[i];
+      if (value == EMPTY) {
+        // Probe bins in an order that depends on this bin only, until a non-empty one is found.
+        // Since the document has terms, there is one.
+        long state = mix(seed + (i + 1) * GOLDEN_GAMMA);
+        while (value == EMPTY) {
+          state += GOLDEN_GAMMA;
+          value = mins[(int) (((mix(state) >>> 32) * numBins) >>> 32)];
+        }
+      }
+      signature.add((int) value & mask);
+    }
+  }
+
+  /**
+   * Computes the signature of a document vector; term weights are ignored.
+   *
+   * @see #computeSignature(int[], int, MinhashSignature)
+   */
+  public void computeSignature(HMapIFW docvector, MinhashSignature signature) {
+    int length = docvector.size();
+    if (terms.length < length) {
+      terms = new int[Math.max(length, 2 * terms.length)];
+    }
+
+    int t = 0;
+    for (MapIF.Entry e : docvector.entrySet()) {
+      terms[t++] = e.getKey();
+    }
+    computeSignature(terms, length, signature);
+  }
+
+  private static long mix(long z) {
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+}
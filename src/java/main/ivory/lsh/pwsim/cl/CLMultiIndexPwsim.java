@@ -0,0 +1,436 @@
+package ivory.lsh.pwsim.cl;
+
+import ivory.lsh.data.NBitSignature;
+import ivory.lsh.data.PairOfIntSignature;
+import ivory.lsh.data.Signature;
+import ivory.lsh.driver.PwsimEnvironment;
+
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.net.URI;
+import java.util.Iterator;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.filecache.DistributedCache;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.Counters;
+import org.apache.hadoop.mapred.FileInputFormat;
+import org.apache.hadoop.mapred.FileOutputFormat;
+import org.apache.hadoop.mapred.JobClient;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.MapReduceBase;
+import org.apache.hadoop.mapred.Mapper;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.Partitioner;
+import org.apache.hadoop.mapred.Reducer;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.mapred.RunningJob;
+import org.apache.hadoop.mapred.SequenceFileInputFormat;
+import org.apache.hadoop.mapred.SequenceFileOutputFormat;
+import org.apache.hadoop.mapred.TextOutputFormat;
+import org.apache.hadoop.util.LineReader;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+import edu.umd.cloud9.io.map.HMapIIW;
+import edu.umd.cloud9.io.pair.PairOfInts;
+
+/**
+ * Multi-index hashing for cross-lingual pairwise similarity, an alternative to permuted tables
+ * ({@link ivory.lsh.pwsim.GenerateChunkedPermutedTables}) followed by {@link CLSlidingWindowPwsim}.
+ * Each signature of D bits is split into m disjoint substrings of D/m bits, one per table. If two
+ * signatures are within Hamming distance r, then by the pigeonhole principle their substrings in at
+ * least one table are within distance r' = floor(r/m). Documents are bucketed by substring in each
+ * table, and all pairs within distance r are found, whatever their position in a sorted order,
+ * unlike with a sliding window.
+ * <p>
+ * Signatures are read directly, as <code>(docno, signature)</code>. Documents on the English side
+ * (docno at most 1000000000) go into the bucket of their substring in each table. Documents on the
+ * other side, or in the sample if one is given, go into the buckets of all substrings within
+ * distance r' of theirs, which is only possible for {@link NBitSignature}s; with other signatures,
+ * such as minhash, m must be greater than r, so that r' is 0. Within each bucket, candidate pairs
+ * are verified with the full Hamming distance. A pair is only emitted by the first table in which
+ * it is a candidate, so there are no duplicates to remove. Output is the same as
+ * {@link CLSlidingWindowPwsim}: <code>((English docno, other docno), distance)</code>.
+ * <p>
+ * Mapper keys are {@link PairOfIntSignature}s of a table number and a substring, and values are
+ * {@link PairOfIntSignature}s of a docno and a full signature, of the class in Ivory.PairClass.
+ * The number of emitted records grows with the number of substrings within distance r', so this is
+ * suited to small distances relative to D, e.g., 64-bit simhash or minhash signatures.
+ */
+@SuppressWarnings("deprecation")
+public class CLMultiIndexPwsim extends Configured implements Tool {
+
+  private static final Logger sLogger = Logger.getLogger(CLMultiIndexPwsim.class);
+
+  static enum mapoutput {
+    Buckets, EmittedSubstrings, PROCESSEDPAIRS, EMITTEDPAIRS
+  }
+
+  private static int printUsage() {
+    System.out
+        .println("usage: [input-path(s)] [output-path] [num-tables] [max-distance] ([sample-docnos])\n[num-tables] must divide the number of bits of signatures. Separate multiple input paths with commas.");
+    return -1;
+  }
+
+  public CLMultiIndexPwsim() {
+    super();
+  }
+
+  private static boolean isEnglish(int docno) {
+    return docno <= 1000000000;
+  }
+
+  // First bit of the substring of a table.
+  private static int start(int table, int numBits, int numTables) {
+    return table * (numBits / numTables);
+  }
+
+  // Last bit of the substring of a table.
+  private static int end(int table, int numBits, int numTables) {
+    return (table + 1) * (numBits / numTables) - 1;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Constructor getPairConstructor(JobConf conf) {
+    try {
+      return Class.forName(conf.get("Ivory.PairClass")).getConstructor(int.class, Signature.class);
+    } catch (Exception e) {
+      throw new RuntimeException("config exception: \n" + e.toString());
+    }
+  }
+
+  private static PairOfIntSignature newPair(Constructor pairConstructor, int i, Signature s) {
+    try {
+      return (PairOfIntSignature) pairConstructor.newInstance(i, s);
+    } catch (Exception e) {
+      throw new RuntimeException("Could not create pair: \n" + e.toString());
+    }
+  }
+
+  /**
+   * Maps a signature to the buckets of its substrings: <docno,signature> --> <(table,substring),
+   * (docno,signature)>. The docno of a document to be compared with English documents is encoded
+   * as <code>-(docno + 1)</code>.
+   */
+  public static class MyMapper extends MapReduceBase implements
+      Mapper<IntWritable, Signature, PairOfIntSignature, PairOfIntSignature> {
+    int numTables, radius;
+    HMapIIW samplesMap = null;
+    PairOfIntSignature outKey, outValue;
+    OutputCollector<PairOfIntSignature, PairOfIntSignature> mOutput;
+    long emittedSubstrings;
+
+    public void configure(JobConf conf) {
+      sLogger.setLevel(Level.INFO);
+      numTables = conf.getInt("Ivory.NumOfTables", -1);
+      radius = conf.getInt("Ivory.MaxHammingDistance", -1) / numTables;
+
+      Constructor pairConstructor = getPairConstructor(conf);
+      outKey = newPair(pairConstructor, 0, null);
+      outValue = newPair(pairConstructor, 0, null);
+      samplesMap = readSamples(conf);
+    }
+
+    public void map(IntWritable key, Signature signature,
+        OutputCollector<PairOfIntSignature, PairOfIntSignature> output, Reporter reporter)
+        throws IOException {
+      int docno = key.get();
+      boolean english = isEnglish(docno);
+      boolean query = (!english && samplesMap == null)
+          || (samplesMap != null && samplesMap.containsKey(docno));
+      if (!english && !query) {
+        return;
+      }
+
+      mOutput = output;
+      emittedSubstrings = 0;
+      int numBits = signature.size();
+      for (int table = 0; table < numTables; table++) {
+        Signature substring = signature.getSubSignature(start(table, numBits, numTables),
+            end(table, numBits, numTables));
+        outKey.setInt(table);
+        outValue.setSignature(signature);
+        if (english) {
+          outKey.setSignature(substring);
+          outValue.setInt(docno);
+          collect();
+        }
+        if (query) {
+          outKey.setSignature(substring);
+          outValue.setInt(-(docno + 1));
+          if (radius == 0) {
+            collect();
+          } else {
+            // All substrings within the radius, by flipping up to radius bits.
+            expand((NBitSignature) substring, 0, radius);
+          }
+        }
+      }
+      reporter.incrCounter(mapoutput.EmittedSubstrings, emittedSubstrings);
+    }
+
+    private void expand(NBitSignature substring, int from, int flips) throws IOException {
+      collect();
+      if (flips == 0) {
+        return;
+      }
+      for (int i = from; i < substring.size(); i++) {
+        substring.set(i, !substring.get(i));
+        expand(substring, i + 1, flips - 1);
+        substring.set(i, !substring.get(i));
+      }
+    }
+
+    private void collect() throws IOException {
+      mOutput.collect(outKey, outValue);
+      emittedSubstrings++;
+    }
+  }
+
+  public static class MyPartitioner implements Partitioner<PairOfIntSignature, PairOfIntSignature> {
+    // partition with table number and substring
+    public int getPartition(PairOfIntSignature key, PairOfIntSignature value, int numReducers) {
+      return ((31 * key.getInt() + key.getSignature().hashCode()) & Integer.MAX_VALUE)
+          % numReducers;
+    }
+
+    public void configure(JobConf conf) {
+    }
+  }
+
+  /**
+   * Compares documents to be compared with English documents to the English documents in the same
+   * bucket.
+   */
+  public static class MyReducer extends MapReduceBase implements
+      Reducer<PairOfIntSignature, PairOfIntSignature, PairOfInts, IntWritable> {
+    int numTables, maxDist, radius;
+    PairOfInts outKey = new PairOfInts();
+    IntWritable outValue = new IntWritable();
+
+    // Documents of the current bucket.
+    int[] englishDocNos = new int[1024], queryDocNos = new int[1024];
+    Signature[] englishSignatures = new Signature[1024], querySignatures = new Signature[1024];
+    int numEnglish, numQueries;
+
+    public void configure(JobConf conf) {
+      numTables = conf.getInt("Ivory.NumOfTables", -1);
+      maxDist = conf.getInt("Ivory.MaxHammingDistance", -1);
+      radius = maxDist / numTables;
+    }
+
+    public void reduce(PairOfIntSignature key, Iterator<PairOfIntSignature> values,
+        OutputCollector<PairOfInts, IntWritable> output, Reporter reporter) throws IOException {
+      numEnglish = 0;
+      numQueries = 0;
+      while (values.hasNext()) {
+        // Signatures are read into new objects, but pairs are reused.
+        PairOfIntSignature value = values.next();
+        if (value.getInt() >= 0) {
+          if (numEnglish == englishDocNos.length) {
+            englishDocNos = grow(englishDocNos);
+            englishSignatures = grow(englishSignatures);
+          }
+          englishDocNos[numEnglish] = value.getInt();
+          englishSignatures[numEnglish++] = value.getSignature();
+        } else {
+          if (numQueries == queryDocNos.length) {
+            queryDocNos = grow(queryDocNos);
+            querySignatures = grow(querySignatures);
+          }
+          queryDocNos[numQueries] = -value.getInt() - 1;
+          querySignatures[numQueries++] = value.getSignature();
+        }
+      }
+      reporter.incrCounter(mapoutput.Buckets, 1);
+
+      long processedPairs = 0, emittedPairs = 0;
+      for (int i = 0; i < numQueries; i++) {
+        for (int j = 0; j < numEnglish; j++) {
+          if (queryDocNos[i] == englishDocNos[j]) {
+            continue;
+          }
+          processedPairs++;
+          int hammingDistance = querySignatures[i].hammingDistance(englishSignatures[j], maxDist);
+          if (hammingDistance <= maxDist
+              && isFirstTable(key.getInt(), querySignatures[i], englishSignatures[j])) {
+            emittedPairs++;
+            outValue.set(hammingDistance);
+            outKey.set(englishDocNos[j], queryDocNos[i]); // pair format: english docno first
+            output.collect(outKey, outValue);
+          }
+        }
+      }
+      reporter.incrCounter(mapoutput.PROCESSEDPAIRS, processedPairs);
+      reporter.incrCounter(mapoutput.EMITTEDPAIRS, emittedPairs);
+    }
+
+    // Returns true if no table before the given one has the pair as a candidate.
+    private boolean isFirstTable(int table, Signature s1, Signature s2) {
+      int numBits = s1.size();
+      for (int t = 0; t < table; t++) {
+        int start = start(t, numBits, numTables), end = end(t, numBits, numTables);
+        if (s1.getSubSignature(start, end).hammingDistance(s2.getSubSignature(start, end),
+            radius) <= radius) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private static int[] grow(int[] a) {
+      int[] b = new int[2 * a.length];
+      System.arraycopy(a, 0, b, 0, a.length);
+      return b;
+    }
+
+    private static Signature[] grow(Signature[] a) {
+      Signature[] b = new Signature[2 * a.length];
+      System.arraycopy(a, 0, b, 0, a.length);
+      return b;
+    }
+  }
+
+  private static HMapIIW readSamples(JobConf conf) {
+    Path[] localFiles;
+    try {
+      localFiles = DistributedCache.getLocalCacheFiles(conf);
+    } catch (Exception e) {
+      throw new RuntimeException("Error reading doc vectors!");
+    }
+
+    if (localFiles == null || localFiles.length == 0) {
+      sLogger.info("samples file does not exist");
+      return null;
+    }
+
+    HMapIIW samplesMap = new HMapIIW();
+    try {
+      LineReader reader = new LineReader(FileSystem.get(conf).open(
+          new Path(conf.get("Ivory.SampleFile"))));
+      Text t = new Text();
+      while (reader.readLine(t) != 0) {
+        samplesMap.put(Integer.parseInt(t.toString()), 1);
+      }
+      reader.close();
+    } catch (IOException e) {
+      throw new RuntimeException("Error reading samples file!");
+    }
+    sLogger.info(samplesMap.size() + " sampled");
+    return samplesMap;
+  }
+
+  public static final String[] RequiredParameters = { "Ivory.NumMapTasks", "Ivory.NumReduceTasks",
+      "Ivory.CollectionName", "Ivory.PairClass", "Ivory.NumOfBits" };
+
+  public String[] getRequiredParameters() {
+    return RequiredParameters;
+  }
+
+  public int run(String[] args) throws Exception {
+    if (args.length != 4 && args.length != 5) {
+      return printUsage();
+    }
+
+    JobConf job = new JobConf(getConf(), CLMultiIndexPwsim.class);
+    FileSystem fs = FileSystem.get(job);
+    if (!PwsimEnvironment.cluster) {
+      job.set("mapred.job.tracker", "local");
+      job.set("fs.default.name", "file:///");
+      fs = FileSystem.getLocal(job);
+    }
+    String inputPaths = args[0];
+    String outputPath = args[1];
+    int numTables = Integer.parseInt(args[2]);
+    int maxDist = Integer.parseInt(args[3]);
+    int numBits = job.getInt("Ivory.NumOfBits", -1);
+    int numMappers = job.getInt("Ivory.NumMapTasks", 100);
+    int numReducers = job.getInt("Ivory.NumReduceTasks", 1);
+    int radius = maxDist / numTables;
+
+    if (numTables <= 0 || numBits % numTables != 0) {
+      throw new IllegalArgumentException("Number of tables (" + numTables
+          + ") must divide the number of bits (" + numBits + ")");
+    }
+    if (radius > 0
+        && !NBitSignature.class.isAssignableFrom(Class.forName(job.get("Ivory.SignatureClass")))) {
+      throw new IllegalArgumentException("Number of tables must be greater than max distance ("
+          + maxDist + ") for " + job.get("Ivory.SignatureClass"));
+    }
+
+    if (fs.exists(new Path(outputPath))) {
+      sLogger.info("MultiIndexPwsim output already exists! Quitting...\nPath: " + outputPath);
+      return 0;
+    }
+
+    String samplesFile = "";
+    if (args.length == 5) {
+      samplesFile = args[4];
+      DistributedCache.addCacheFile(new URI(samplesFile), job); // sample docnos in file
+    }
+
+    String collectionName = job.get("Ivory.CollectionName");
+    job.setJobName("MultiIndexPwsim:" + collectionName + "_m=" + numTables + "_maxdst=" + maxDist);
+
+    FileInputFormat.setInputPaths(job, inputPaths);
+    FileOutputFormat.setOutputPath(job, new Path(outputPath));
+
+    FileOutputFormat.setCompressOutput(job, false);
+
+    job.set("mapred.child.java.opts", "-Xmx2048m");
+    job.setInt("mapred.task.timeout", 60000000);
+    job.setInt("Ivory.NumOfTables", numTables);
+    job.setInt("Ivory.MaxHammingDistance", maxDist);
+    job.set("Ivory.SampleFile", samplesFile);
+    job.setNumMapTasks(numMappers);
+    job.setNumReduceTasks(numReducers);
+    job.setInputFormat(SequenceFileInputFormat.class);
+    job.setMapOutputKeyClass(Class.forName(job.get("Ivory.PairClass")));
+    job.setMapOutputValueClass(Class.forName(job.get("Ivory.PairClass")));
+    job.setOutputKeyClass(PairOfInts.class);
+    job.setOutputValueClass(IntWritable.class);
+    job.setMapperClass(MyMapper.class);
+    job.setPartitionerClass(MyPartitioner.class);
+    job.setReducerClass(MyReducer.class);
+    if (samplesFile.equals("")) { // if sample file is provided, output should be text.
+      job.setOutputFormat(SequenceFileOutputFormat.class);
+    } else {
+      job.setOutputFormat(TextOutputFormat.class);
+      sLogger.info("text output");
+    }
+
+    sLogger.info("Running job " + job.getJobName() + "...");
+    sLogger.info("Input path(s): " + inputPaths);
+    sLogger.info("Output path: " + outputPath);
+    sLogger.info("Number of tables: " + numTables);
+    sLogger.info("Threshold: " + maxDist);
+    sLogger.info("Substring radius: " + radius);
+    sLogger.info("Sample file?: " + !samplesFile.equals(""));
+
+    long startTime = System.currentTimeMillis();
+    RunningJob j = JobClient.runJob(job);
+    System.out.println("Job finished in " + (System.currentTimeMillis() - startTime)
+        + " milliseconds");
+    Counters counters = j.getCounters();
+    long processed = (long) counters.findCounter(mapoutput.PROCESSEDPAIRS).getCounter();
+    long emitted = (long) counters.findCounter(mapoutput.EMITTEDPAIRS).getCounter();
+    long buckets = (long) counters.findCounter(mapoutput.Buckets).getCounter();
+    System.out.println("Compared " + processed + " pairs in " + buckets + " buckets, emitted "
+        + emitted);
+
+    return 0;
+  }
+
+  public static void main(String[] args) throws Exception {
+    ToolRunner.run(new Configuration(), new CLMultiIndexPwsim(), args);
+    return;
+  }
+
+}
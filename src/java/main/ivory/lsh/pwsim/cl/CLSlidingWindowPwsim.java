@@ -1,6 +1,7 @@
 package ivory.lsh.pwsim.cl;
 
 import ivory.lsh.data.BitsSignatureTable;
+import ivory.lsh.data.PackedSignatureTable;
 import ivory.lsh.data.Signature;
 import ivory.lsh.driver.PwsimEnvironment;
 
@@ -79,6 +80,9 @@ public class CLSlidingWindowPwsim extends Configured implements Tool {
     PairOfInts outKey = new PairOfInts();
     IntWritable outValue = new IntWritable();
     int nSignatures = -1;
+    PackedSignatureTable packedTable = new PackedSignatureTable();
+    boolean packed;
+    long processedPairs, emittedPairs, prefixSum;
 
     public void configure(JobConf conf) {
       slidingWindowSize = conf.getInt("Ivory.SlidingWindowSize", -1);
@@ -122,57 +126,61 @@ public class CLSlidingWindowPwsim extends Configured implements Tool {
       signatures = signatureTable.getSignatures();
       docNos = signatureTable.getDocNos();
       nSignatures = signatureTable.getNumOfSignatures();
+
+      // Bit signatures are compared in packed form, one 64-bit word at a time.
+      packed = nSignatures > 0 && PackedSignatureTable.isPackable(signatures[0]);
+      if (packed) {
+        packedTable.set(signatureTable);
+      }
+
+      processedPairs = 0;
+      emittedPairs = 0;
+      prefixSum = 0;
       for (int i = 0; i < nSignatures; i++) {
         if ((docNos[i] > 1000000000 && samplesMap == null)
             || (samplesMap != null && samplesMap.containsKey(docNos[i]))) {
           for (int j = i - 1; j > i - slidingWindowSize && j >= 0; j--) {
-            if (docNos[j] > 1000000000) {
-              continue;
-            }
-            int prefix = signatures[i].getLongestPrefix(signatures[j]);
-            reporter.incrCounter(mapoutput.PrefixSum, prefix);
-            reporter.incrCounter(mapoutput.PROCESSEDPAIRS, 1);
-            hammingDistance = signatures[i].hammingDistance(signatures[j], maxDist);
-            sLogger.debug(hammingDistance);
-            if (hammingDistance <= maxDist) {
-              reporter.incrCounter(mapoutput.EMITTEDPAIRS, 1);
-
-              // If filtering results by a sample set (i.e., samplesMap!=null), change output format
-              // outValue.set(docNos[i]);
-              // outKey.set(hammingDistance, docNos[j]); //pair format: english docno first, then
-              // german docno
-              // output.collect(outValue, outKey);
-
-              outValue.set(hammingDistance);
-              outKey.set(docNos[j], docNos[i]); // pair format: english docno first, then german
-                                                // docno
-              output.collect(outKey, outValue);
-            }
+            compare(i, j, output);
           }
           for (int j = i + 1; j < i + slidingWindowSize && j < nSignatures; j++) {
-            if (docNos[j] > 1000000000) {
-              continue;
-            }
-            int prefix = signatures[i].getLongestPrefix(signatures[j]);
-            reporter.incrCounter(mapoutput.PrefixSum, prefix);
-            reporter.incrCounter(mapoutput.PROCESSEDPAIRS, 1);
-            hammingDistance = signatures[i].hammingDistance(signatures[j], maxDist);
-            sLogger.debug(hammingDistance);
-            if (hammingDistance <= maxDist) {
-              reporter.incrCounter(mapoutput.EMITTEDPAIRS, 1);
-
-              // If filtering results by a sample set (i.e., samplesMap!=null), change output format
-              // outValue.set(docNos[i]);
-              // outKey.set(hammingDistance, docNos[j]);
-              // output.collect(outValue, outKey);
-
-              outValue.set(hammingDistance);
-              outKey.set(docNos[j], docNos[i]);
-              output.collect(outKey, outValue);
-            }
+            compare(i, j, output);
           }
         }
       }
+
+      reporter.incrCounter(mapoutput.PrefixSum, prefixSum);
+      reporter.incrCounter(mapoutput.PROCESSEDPAIRS, processedPairs);
+      reporter.incrCounter(mapoutput.EMITTEDPAIRS, emittedPairs);
+    }
+
+    private void compare(int i, int j, OutputCollector<PairOfInts, IntWritable> output)
+        throws IOException {
+      if (docNos[j] > 1000000000) {
+        return;
+      }
+
+      if (packed) {
+        prefixSum += packedTable.getLongestPrefix(i, j);
+        hammingDistance = packedTable.hammingDistance(i, j, maxDist);
+      } else {
+        prefixSum += signatures[i].getLongestPrefix(signatures[j]);
+        hammingDistance = signatures[i].hammingDistance(signatures[j], maxDist);
+      }
+      processedPairs++;
+
+      if (hammingDistance <= maxDist) {
+        emittedPairs++;
+
+        // If filtering results by a sample set (i.e., samplesMap!=null), change output format
+        // outValue.set(docNos[i]);
+        // outKey.set(hammingDistance, docNos[j]); //pair format: english docno first, then
+        // german docno
+        // output.collect(outValue, outKey);
+
+        outValue.set(hammingDistance);
+        outKey.set(docNos[j], docNos[i]); // pair format: english docno first, then german docno
+        output.collect(outKey, outValue);
+      }
     }
 
   }
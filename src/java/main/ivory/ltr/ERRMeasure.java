@@ -16,11 +16,6 @@
 
 package ivory.ltr;
 
-
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-
 /**
  * @author Don Metzler
  *
@@ -29,54 +24,24 @@ public class ERRMeasure extends Measure {
 
 	@Override
 	public double evaluate(ScoreTable table) {
-		String [] qids = table.getQids();
-		float [] grades = table.getGrades();
-		float [] scores = table.getScores();
-
-		float err = 0;
-		int numQueries = 0;
-		
-		String lastQid = null;
-		List<ScoreGradePair> items = new ArrayList<ScoreGradePair>();
-		for(int i = 0; i < qids.length; i++) {
-			String curQid = qids[i];
-			float curGrade = grades[i];
-			float curScore = scores[i];
-			
-			if(lastQid == null || !lastQid.equals(curQid)) {
-				if(lastQid != null) {
-					err += _computeQueryERR(items);
-					numQueries++;
-				}
-				
-				lastQid = curQid;
-				items = new ArrayList<ScoreGradePair>();
-			}
-			items.add(new ScoreGradePair(curScore, curGrade));
-		}
-		err += _computeQueryERR(items);
-		numQueries++;
+		return evaluateQueries(table);
+	}
 
-		if(numQueries == 0) {
-			return 0;
-		}
-		
-		return err / numQueries;
+	@Override
+	public boolean evaluatesQueries() {
+		return true;
 	}
 
-	private double _computeQueryERR(List<ScoreGradePair> items) {
-		// rank documents for this query
-		Collections.sort(items, new ScoreComparator());
-		
-		// compute err for query
+	@Override
+	public double evaluateQuery(float[] grades, int[] ranking, int length, int query) {
 		float err = 0;
 		float p = 1;
-		for(int i = 0; i < items.size(); i++) {
-			double g = (Math.pow(2.0, items.get(i).grade) - 1.0) / 16.0;
+		for(int i = 0; i < length; i++) {
+			double g = (Math.pow(2.0, grades[ranking[i]]) - 1.0) / 16.0;
 			err += g * p / (i + 1.0);
 			p *= (1.0 - g);
 		}
-		
+
 		return err;
 	}
 
@@ -31,6 +31,7 @@ import ivory.smrf.retrieval.BatchQueryRunner;
 import java.io.IOException;
 import java.rmi.NotBoundException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
@@ -78,6 +79,8 @@ public class ExtractFeatures {
 
   private Map<String, Operator> operators = null;
 
+  private String binaryOutput = null;         // binary feature file to write, instead of printing features
+
   public ExtractFeatures(String [] args, FileSystem fs) throws SAXException, IOException, ParserConfigurationException, NotBoundException, Exception {
     loadQueryRunner(args, fs);
     env = runner.getRetrievalEnvironment();
@@ -119,6 +122,14 @@ public class ExtractFeatures {
     runner = new BatchQueryRunner(args, fs);
   }
 
+  /**
+   * Writes features to a binary feature file (see {@link FeatureFileWriter}) rather than printing
+   * them as tab-separated text.
+   */
+  public void setBinaryOutput(String path) {
+    binaryOutput = path;
+  }
+
   private void extract() throws Exception {
     // models specified in parameter files
     Set<String> modelNames = runner.getModels();
@@ -178,12 +189,22 @@ public class ExtractFeatures {
    // add judgment feature name
    featureNames.add(JUDGMENT_FEATURE_NAME);
 
-   // print feature name header
-   System.out.print(QUERY_FEATURE_NAME + "\t" + DOC_FEATURE_NAME);
-   for(String featureName : featureNames) {
-     System.out.print("\t" + featureName);
+   // binary feature files store grades separately from features
+   List<String> binaryFeatureNames = new ArrayList<String>(featureNames);
+   binaryFeatureNames.remove(JUDGMENT_FEATURE_NAME);
+   FeatureFileWriter writer = null;
+
+   if(binaryOutput != null) {
+     writer = new FeatureFileWriter(binaryOutput, binaryFeatureNames);
+   }
+   else {
+     // print feature name header
+     System.out.print(QUERY_FEATURE_NAME + "\t" + DOC_FEATURE_NAME);
+     for(String featureName : featureNames) {
+       System.out.print("\t" + featureName);
+     }
+     System.out.println();
    }
-   System.out.println();
 
    // extract features query-by-query
    for(Entry<String, String> queryEntry : queries.entrySet()) {
@@ -309,6 +330,22 @@ public class ExtractFeatures {
        }
      }
 
+     // write feature values for current query
+     if(writer != null) {
+       float [] values = new float[binaryFeatureNames.size()];
+       for(Entry<String, SortedMap<String, Operator>> featureEntry : featureValues.entrySet()) {
+         Map<String,Operator> docFeatures = featureEntry.getValue();
+         for(int i = 0; i < values.length; i++) {
+           Operator op = docFeatures.get(binaryFeatureNames.get(i));
+           values[i] = (float) (op != null ? op.getFinalScore() : DEFAULT_FEATURE_VALUE);
+         }
+         Operator judgment = docFeatures.get(JUDGMENT_FEATURE_NAME);
+         float grade = (float) (judgment != null ? judgment.getFinalScore() : DEFAULT_FEATURE_VALUE);
+         writer.add(qid, featureEntry.getKey(), grade, values);
+       }
+       continue;
+     }
+
      // print feature values for current query
      for(Entry<String, SortedMap<String, Operator>> featureEntry : featureValues.entrySet()) {
        String docName = featureEntry.getKey();
@@ -325,13 +362,25 @@ public class ExtractFeatures {
        System.out.println();
      }
    }
+
+   if(writer != null) {
+     writer.close();
+   }
   }
 
   public static void main(String[] args) throws SAXException, ParserConfigurationException, NotBoundException, Exception {
     Configuration conf = new Configuration();
     FileSystem fs = FileSystem.getLocal(conf);
 
+    // optional leading "-binary <path>" writes a binary feature file instead of printing features
+    String binaryOutput = null;
+    if(args.length >= 2 && "-binary".equals(args[0])) {
+      binaryOutput = args[1];
+      args = Arrays.copyOfRange(args, 2, args.length);
+    }
+
     ExtractFeatures extractor = new ExtractFeatures(args, fs);
+    extractor.setBinaryOutput(binaryOutput);
     extractor.extract();
   }
 }
@@ -29,4 +29,15 @@ public abstract class Feature implements Serializable {
 	public abstract float eval(float [] fv);
 	public abstract String getName();
 
+	/**
+	 * Evaluates this feature for instances <code>start</code> to <code>end - 1</code>, storing
+	 * the value for instance <code>i</code> in <code>values[i - start]</code>. Subclasses read
+	 * the columns they need directly, rather than one instance at a time.
+	 */
+	public void eval(Instances instances, int start, int end, float [] values) {
+		for(int i = start; i < end; i++) {
+			values[i - start] = eval(instances.getInstance(i));
+		}
+	}
+
 }
@@ -0,0 +1,243 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.ltr;
+
+import ivory.core.exception.ConfigurationException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes instances in the binary feature file format, which {@link Instances} memory-maps. Feature
+ * values are stored by column, so that a feature can be evaluated over all instances by reading
+ * consecutive floats, and query ids are replaced by indexes into a table of distinct query ids.
+ * <p>
+ * The file starts with a magic number, a version and the length of the header that follows. The
+ * header holds the numbers of instances and features, the feature names, the distinct query ids,
+ * and then the query index and grade of each instance, padded to a multiple of four bytes. Then
+ * come the values of each feature for all instances, one column after another, and finally the
+ * document id of each instance. All numbers are big-endian.
+ * <p>
+ * Instances are added row by row, as they are extracted. They are spooled to temporary files next
+ * to the output, which are transposed into columns when the writer is closed, a block of columns
+ * at a time so that memory use is bounded.
+ */
+public class FeatureFileWriter {
+
+	public static final int MAGIC = 0x894C5452;  // "\x89LTR", which can't start a text feature file
+	public static final int VERSION = 1;
+
+	private static final long DEFAULT_BUFFER_SIZE = 256L * 1024 * 1024; // bytes of columns per pass
+
+	private final File file;                     // output file
+	private final List<String> featureNames;     // feature names
+	private final File rowsFile;                 // spooled query index, grade and feature values
+	private final File docidsFile;               // spooled document ids
+	private final DataOutputStream rows;
+	private final DataOutputStream docids;
+	private final Map<String,Integer> queryMap = new HashMap<String,Integer>(); // query id -> query index
+	private final List<String> queryIds = new ArrayList<String>();               // query index -> query id
+	private long bufferSize = DEFAULT_BUFFER_SIZE;
+	private int numRows = 0;
+
+	public FeatureFileWriter(String path, List<String> featureNames) throws IOException {
+		this.file = new File(path);
+		this.featureNames = new ArrayList<String>(featureNames);
+
+		File dir = file.getAbsoluteFile().getParentFile();
+		rowsFile = File.createTempFile(file.getName(), ".rows", dir);
+		docidsFile = File.createTempFile(file.getName(), ".docids", dir);
+		rows = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(rowsFile)));
+		docids = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(docidsFile)));
+	}
+
+	/**
+	 * Sets the number of bytes of feature values that are transposed in each pass over the spooled
+	 * instances.
+	 */
+	public void setBufferSize(long bufferSize) {
+		this.bufferSize = bufferSize;
+	}
+
+	/**
+	 * Adds an instance, with one value for each feature in the order of the feature names.
+	 */
+	public void add(String qid, String docid, float grade, float [] values) throws IOException {
+		if(values.length != featureNames.size()) {
+			throw new IllegalArgumentException("Expected " + featureNames.size() + " feature values, got " + values.length);
+		}
+
+		Integer queryIndex = queryMap.get(qid);
+		if(queryIndex == null) {
+			queryIndex = queryIds.size();
+			queryMap.put(qid, queryIndex);
+			queryIds.add(qid);
+		}
+
+		rows.writeInt(queryIndex);
+		rows.writeFloat(grade);
+		for(float value : values) {
+			rows.writeFloat(value);
+		}
+		docids.writeUTF(docid);
+		numRows++;
+	}
+
+	/**
+	 * Writes the feature file and removes the temporary files.
+	 */
+	public void close() throws IOException {
+		rows.close();
+		docids.close();
+
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+			writeHeader(out);
+			writeColumns(out);
+			copy(docidsFile, out);
+			out.close();
+		}
+		finally {
+			rowsFile.delete();
+			docidsFile.delete();
+		}
+	}
+
+	private void writeHeader(DataOutputStream out) throws IOException {
+		int [] queryIndexes = new int[numRows];
+		float [] grades = new float[numRows];
+		DataInputStream in = openRows();
+		for(int i = 0; i < numRows; i++) {
+			queryIndexes[i] = in.readInt();
+			grades[i] = in.readFloat();
+			skipFully(in, 4 * featureNames.size());
+		}
+		in.close();
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream header = new DataOutputStream(bytes);
+		header.writeInt(numRows);
+		header.writeInt(featureNames.size());
+		for(String name : featureNames) {
+			header.writeUTF(name);
+		}
+		header.writeInt(queryIds.size());
+		for(String qid : queryIds) {
+			header.writeUTF(qid);
+		}
+		for(int i = 0; i < numRows; i++) {
+			header.writeInt(queryIndexes[i]);
+		}
+		for(int i = 0; i < numRows; i++) {
+			header.writeFloat(grades[i]);
+		}
+		while(header.size() % 4 != 0) {
+			header.writeByte(0);
+		}
+		header.close();
+
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(bytes.size());
+		bytes.writeTo(out);
+	}
+
+	private void writeColumns(DataOutputStream out) throws IOException {
+		int numFeats = featureNames.size();
+		int blockSize = (int) Math.max(1, Math.min(numFeats, bufferSize / (4L * Math.max(1, numRows))));
+		float [][] block = new float[blockSize][numRows];
+
+		for(int first = 0; first < numFeats; first += blockSize) {
+			int last = Math.min(numFeats, first + blockSize);
+
+			DataInputStream in = openRows();
+			for(int i = 0; i < numRows; i++) {
+				skipFully(in, 8 + 4 * first);
+				for(int f = first; f < last; f++) {
+					block[f - first][i] = in.readFloat();
+				}
+				skipFully(in, 4 * (numFeats - last));
+			}
+			in.close();
+
+			for(int f = first; f < last; f++) {
+				float [] column = block[f - first];
+				for(int i = 0; i < numRows; i++) {
+					out.writeFloat(column[i]);
+				}
+			}
+		}
+	}
+
+	private DataInputStream openRows() throws IOException {
+		return new DataInputStream(new BufferedInputStream(new FileInputStream(rowsFile), 1 << 16));
+	}
+
+	private static void skipFully(DataInputStream in, int n) throws IOException {
+		while(n > 0) {
+			int skipped = in.skipBytes(n);
+			if(skipped <= 0) {
+				throw new IOException("Unexpected end of spooled instances");
+			}
+			n -= skipped;
+		}
+	}
+
+	private static void copy(File src, DataOutputStream out) throws IOException {
+		BufferedInputStream in = new BufferedInputStream(new FileInputStream(src));
+		byte [] buffer = new byte[1 << 16];
+		int n;
+		while((n = in.read(buffer)) != -1) {
+			out.write(buffer, 0, n);
+		}
+		in.close();
+	}
+
+	/**
+	 * Converts a tab-separated feature file to the binary format.
+	 */
+	public static void main(String[] args) throws IOException, ConfigurationException {
+		if(args.length != 2) {
+			System.out.println("Usage: FeatureFileWriter <text-feature-file> <binary-feature-file>");
+			System.exit(-1);
+		}
+
+		Instances instances = new Instances(args[0]);
+		String [] featureNames = instances.getFeatureNames();
+		String [] qids = instances.getQids();
+		String [] docids = instances.getDocids();
+		float [] grades = instances.getGrades();
+
+		FeatureFileWriter writer = new FeatureFileWriter(args[1], Arrays.asList(featureNames));
+		for(int i = 0; i < instances.getNumInstances(); i++) {
+			writer.add(qids[i], docids[i], grades[i], instances.getInstance(i));
+		}
+		writer.close();
+	}
+}
@@ -90,6 +90,13 @@ public class GreedyLearn {
 		// set up threading
 		ExecutorService threadPool = Executors.newFixedThreadPool(numThreads);
 
+		// measures that evaluate one query at a time are optimized over all features at once
+		Measure measure = (Measure)Class.forName(metricClassName).newInstance();
+		ParallelLineSearch parallelSearch = null;
+		if(measure.evaluatesQueries()) {
+			parallelSearch = new ParallelLineSearch(trainInstances, measure, threadPool, numThreads);
+		}
+
 		Map<Model,ArrayList<ArrayList<Feature>>> featureBatches = new HashMap<Model,ArrayList<ArrayList<Feature>>>();
 		featureBatches.put(initialModel, new ArrayList<ArrayList<Feature>>());
 
@@ -112,6 +119,14 @@ public class GreedyLearn {
 
 			// update models
 			for(Model model : models) {
+				if(parallelSearch != null) {
+					Map<Feature,AlphaMeasurePair> featAlphaMeasureMap = parallelSearch.search(model, featurePool.get(model), scoreTable.get(model));
+					for(Feature f : featAlphaMeasureMap.keySet()) {
+						modelFeaturePairMeasures.put(new ModelFeaturePair(model, f), featAlphaMeasureMap.get(f));
+					}
+					continue;
+				}
+
 				List<Future<Map<Feature,AlphaMeasurePair>>> futures = new ArrayList<Future<Map<Feature,AlphaMeasurePair>>>();
 				for(int i = 0; i < numThreads; i++) {
 					// construct measure
@@ -20,14 +20,27 @@ package ivory.ltr;
 
 import ivory.core.exception.ConfigurationException;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 
 /**
+ * Training or test instances, read from either a tab-separated feature file or a binary feature
+ * file written by {@link FeatureFileWriter}. Feature values are held by column: binary files are
+ * memory-mapped, so their values stay off the heap. Query ids are mapped to query indexes, with one
+ * string per distinct query.
+ *
  * @author metzler
  *
  */
@@ -37,16 +50,100 @@ public class Instances {
 	private static final String DOCID_COLUMN_NAME = "docid";  // document id feature name
 	private static final String GRADE_COLUMN_NAME = "grade";  // relevance grade feature name
 	
-	private String [] queryIds = null;              // query ids
-	private String [] docIds = null;                // document ids
+	private int numInstances = 0;                   // number of instances
+	private int [] queryIndexes = null;             // query index of each instance
+	private String [] queryNames = null;            // query id of each query index
+	private String [] queryIds = null;              // query ids, created on demand
+	private String [] docIds = null;                // document ids, read on demand from binary files
 	private float [] grades = null;                 // relevance grades
 	private String [] featureNames = null;          // feature names
-	private int [] featureCols = null;              // feature column indexes
 	private Map<String,Integer> featureMap = null;  // mapping from feature name to column index
-	private float [][] features = null;             // feature values
-	
+	private FloatBuffer [] columns = null;          // feature values, by column
+
+	private String binaryFile = null;               // binary feature file, if any
+	private long docidsOffset = 0;                  // offset of document ids in the binary feature file
+
 	public Instances(String featFile) throws IOException, ConfigurationException {
-		initialize(featFile);
+		if(isBinary(featFile)) {
+			initializeBinary(featFile);
+		}
+		else {
+			initialize(featFile);
+		}
+	}
+
+	private static boolean isBinary(String featFile) throws IOException {
+		DataInputStream in = new DataInputStream(new FileInputStream(featFile));
+		try {
+			return in.readInt() == FeatureFileWriter.MAGIC;
+		}
+		catch(IOException e) {
+			return false;
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	private void initializeBinary(String featFile) throws IOException, ConfigurationException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(featFile), 1 << 16));
+		long columnsOffset;
+		try {
+			in.readInt();
+			int version = in.readInt();
+			if(version != FeatureFileWriter.VERSION) {
+				throw new ConfigurationException("Unsupported feature file version " + version + " in " + featFile);
+			}
+			int headerLength = in.readInt();
+			columnsOffset = 12L + headerLength;
+
+			numInstances = in.readInt();
+			int numFeats = in.readInt();
+			featureNames = new String[numFeats];
+			featureMap = new HashMap<String,Integer>();
+			for(int i = 0; i < numFeats; i++) {
+				featureNames[i] = in.readUTF();
+				featureMap.put(featureNames[i], i);
+			}
+
+			queryNames = new String[in.readInt()];
+			for(int i = 0; i < queryNames.length; i++) {
+				queryNames[i] = in.readUTF();
+			}
+
+			queryIndexes = new int[numInstances];
+			for(int i = 0; i < numInstances; i++) {
+				queryIndexes[i] = in.readInt();
+			}
+
+			grades = new float[numInstances];
+			for(int i = 0; i < numInstances; i++) {
+				grades[i] = in.readFloat();
+			}
+		}
+		finally {
+			in.close();
+		}
+
+		System.err.println("Number of features: "  + featureNames.length);
+		System.err.println("Number of instances: " + numInstances);
+
+		// map each column separately, since a single mapping is limited to 2GB
+		RandomAccessFile file = new RandomAccessFile(featFile, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			columns = new FloatBuffer[featureNames.length];
+			long columnLength = 4L * numInstances;
+			for(int i = 0; i < columns.length; i++) {
+				columns[i] = channel.map(FileChannel.MapMode.READ_ONLY, columnsOffset + i * columnLength, columnLength).asFloatBuffer();
+			}
+		}
+		finally {
+			file.close();
+		}
+
+		binaryFile = featFile;
+		docidsOffset = columnsOffset + 4L * numInstances * featureNames.length;
 	}
 
 	private void initialize(String featFile) throws IOException, ConfigurationException {
@@ -103,13 +200,16 @@ public class Instances {
 		in.close();
 		
 		// initialize query ids, doc ids, grades, and features
-		queryIds = new String[numRows];
+		numInstances = numRows;
+		queryIndexes = new int[numRows];
 		docIds = new String[numRows];
 		grades = new float[numRows];
 		featureNames = new String[numFeats];
-		featureCols = new int[numFeats];
+		int [] featureCols = new int[numFeats];
 		featureMap = new HashMap<String,Integer>();
-		features = new float[numRows][numFeats];
+		float [][] features = new float[numFeats][numRows];
+		Map<String,Integer> queryMap = new HashMap<String,Integer>();
+		List<String> queries = new ArrayList<String>();
 		
 		// make second pass through feature file
 		in = new BufferedReader(new FileReader(featFile));
@@ -144,13 +244,19 @@ public class Instances {
 				throw new ConfigurationException("Line -- " + line + " has the incorrect number of columns! "+fvals.length+" "+numCols);
 			}
 		
-			queryIds[rowNum] = new String(fvals[qidCol]);
+			Integer queryIndex = queryMap.get(fvals[qidCol]);
+			if(queryIndex == null) {
+				queryIndex = queries.size();
+				queryMap.put(fvals[qidCol], queryIndex);
+				queries.add(fvals[qidCol]);
+			}
+			queryIndexes[rowNum] = queryIndex;
 			docIds[rowNum] = new String(fvals[docidCol]);
 			grades[rowNum] = Float.parseFloat(fvals[gradeCol]);
 			
 			for(int i = 0; i < featureCols.length; i++) {
 				int featureCol = featureCols[i];
-				features[rowNum][i] = Float.parseFloat(fvals[featureCol]);
+				features[i][rowNum] = Float.parseFloat(fvals[featureCol]);
 			}
 
 			rowNum++;
@@ -161,47 +267,111 @@ public class Instances {
 		
 		// close feature file
 		in.close();
+
+		queryNames = new String[queries.size()];
+		for(int i = 0; i < queryNames.length; i++) {
+			queryNames[i] = new String(queries.get(i));
+		}
+
+		columns = new FloatBuffer[numFeats];
+		for(int i = 0; i < numFeats; i++) {
+			columns[i] = FloatBuffer.wrap(features[i]);
+		}
 	}
 
 	public int getNumInstances() {
-		return features.length;
+		return numInstances;
 	}
 
+	public int getNumFeatures() {
+		return columns.length;
+	}
+
+	/**
+	 * Returns the feature values of an instance, copied into a new array. Features should be
+	 * evaluated by column, with {@link Feature#eval(Instances, int, int, float[])}, where possible.
+	 */
 	public float [] getInstance(int i) {
-		return features[i];
+		float [] fv = new float[columns.length];
+		for(int j = 0; j < columns.length; j++) {
+			fv[j] = columns[j].get(i);
+		}
+		return fv;
+	}
+
+	/**
+	 * Returns the values of a feature for all instances. The buffer is shared, so only its absolute
+	 * get methods may be used, or those of a duplicate.
+	 */
+	public FloatBuffer getColumn(int feature) {
+		return columns[feature];
 	}
 
 	public Map<String, Integer> getFeatureMap() {
 		return featureMap;
 	}
 
-	public String[] getQids() {
+	public String[] getFeatureNames() {
+		return featureNames;
+	}
+
+	/**
+	 * Returns the query index of each instance. Instances of the same query have the same index.
+	 */
+	public int[] getQueryIndexes() {
+		return queryIndexes;
+	}
+
+	public synchronized String[] getQids() {
+		if(queryIds == null) {
+			queryIds = new String[numInstances];
+			for(int i = 0; i < numInstances; i++) {
+				queryIds[i] = queryNames[queryIndexes[i]];
+			}
+		}
 		return queryIds;
 	}
 
-	public String[] getDocids() {
+	public synchronized String[] getDocids() {
+		if(docIds == null) {
+			try {
+				docIds = readDocids();
+			}
+			catch(IOException e) {
+				throw new RuntimeException("Unable to read document ids from " + binaryFile, e);
+			}
+		}
 		return docIds;
 	}
 
+	private String[] readDocids() throws IOException {
+		RandomAccessFile file = new RandomAccessFile(binaryFile, "r");
+		try {
+			file.seek(docidsOffset);
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file.getFD()), 1 << 16));
+			String [] ids = new String[numInstances];
+			for(int i = 0; i < numInstances; i++) {
+				ids[i] = in.readUTF();
+			}
+			return ids;
+		}
+		finally {
+			file.close();
+		}
+	}
+
 	public float[] getGrades() {
 		return grades;
 	}
 
 	public boolean featureIsConstant(Feature f) {
-		String lastQid = null;
-		float lastFv = Float.NaN;
-		for(int i = 0; i < queryIds.length; i++) {
-			String qid = queryIds[i];
-			float fv = f.eval(features[i]);
-			if(lastQid == null) {
-				lastQid = qid;
-				lastFv = fv;
-			}
-			if(lastQid.equals(qid) && lastFv != fv) {
+		float [] values = new float[numInstances];
+		f.eval(this, 0, numInstances, values);
+
+		for(int i = 1; i < numInstances; i++) {
+			if(queryIndexes[i] == queryIndexes[i-1] && values[i] != values[i-1]) {
 				return false;
 			}
-			lastQid = qid;
-			lastFv = fv;
 		}
 		
 		return true;
@@ -216,11 +386,16 @@ public class Instances {
 		double aa = 0.0;
 		double bb = 0.0;
 		
-		int n = features.length;
+		int n = numInstances;
+
+		float [] valuesA = new float[n];
+		float [] valuesB = new float[n];
+		featA.eval(this, 0, n, valuesA);
+		featB.eval(this, 0, n, valuesB);
 		
 		for(int i = 0; i < n; i++) {
-			float x = featA.eval(features[i]);
-			float y = featB.eval(features[i]);
+			float x = valuesA[i];
+			float y = valuesB[i];
 
 			a += x;
 			b += y;
@@ -16,6 +16,7 @@
 
 package ivory.ltr;
 
+import java.nio.FloatBuffer;
 
 /**
  * @author Don Metzler
@@ -44,6 +45,15 @@ public class LogFeature extends Feature {
 		return 0;
 	}
 
+	@Override
+	public void eval(Instances instances, int start, int end, float [] values) {
+		FloatBuffer column = instances.getColumn(index);
+		for(int i = start; i < end; i++) {
+			float x = column.get(i);
+			values[i - start] = x > 0 ? (float) Math.log(x) : 0;
+		}
+	}
+
 	/* (non-Javadoc)
 	 * @see edu.isi.rankir.Feature#getName()
 	 */
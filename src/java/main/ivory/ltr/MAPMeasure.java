@@ -16,11 +16,6 @@
 
 package ivory.ltr;
 
-
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-
 /**
  * @author Don Metzler
  *
@@ -29,59 +24,29 @@ public class MAPMeasure extends Measure {
 
 	@Override
 	public double evaluate(ScoreTable table) {
-		String [] qids = table.getQids();
-		float [] grades = table.getGrades();
-		float [] scores = table.getScores();
-
-		float map = 0;
-		int numQueries = 0;
-		
-		String lastQid = null;
-		List<ScoreGradePair> items = new ArrayList<ScoreGradePair>();
-		for(int i = 0; i < qids.length; i++) {
-			String curQid = qids[i];
-			float curGrade = grades[i];
-			float curScore = scores[i];
-			
-			if(lastQid == null || !lastQid.equals(curQid)) {
-				if(lastQid != null) {
-					map += computeQueryAP(items);
-					numQueries++;
-				}
-				
-				lastQid = curQid;
-				items = new ArrayList<ScoreGradePair>();
-			}
-			items.add(new ScoreGradePair(curScore, curGrade));
-		}
-		map += computeQueryAP(items);
-		numQueries++;
+		return evaluateQueries(table);
+	}
 
-		if(numQueries == 0) {
-			return 0;
-		}
-		
-		return map / numQueries;
+	@Override
+	public boolean evaluatesQueries() {
+		return true;
 	}
 
-	private double computeQueryAP(List<ScoreGradePair> items) {
-		// rank documents for this query
-		Collections.sort(items, new ScoreComparator());
-		
+	@Override
+	public double evaluateQuery(float[] grades, int[] ranking, int length, int query) {
 		double ap = 0d;
 		int num_rel_ret = 0;
-		
-		for(int i = 0; i < items.size(); i++) {
-			if(items.get(i).grade != 0) {
+
+		for(int i = 0; i < length; i++) {
+			if(grades[ranking[i]] != 0) {
 				num_rel_ret++;
 				ap += num_rel_ret / (double) (i+1);
 			}
-				
 		}
-		
+
 		if(num_rel_ret == 0)
 			return 0d;
-		
+
 		return ap / (double) num_rel_ret;
 	}
 
@@ -16,7 +16,10 @@
 
 package ivory.ltr;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
+import java.util.List;
 
 /**
  * @author Don Metzler
@@ -26,6 +29,109 @@ public abstract class Measure {
 
 	public abstract double evaluate(ScoreTable table);
 
+	/**
+	 * Returns <code>true</code> if this measure can evaluate the ranking of one query at a time,
+	 * with {@link #evaluateQuery(float[], int[], int, int)}.
+	 */
+	public boolean evaluatesQueries() {
+		return false;
+	}
+
+	/**
+	 * Prepares this measure for evaluating queries one at a time.
+	 *
+	 * @param grades grades of all instances, grouped by query
+	 * @param queryStarts index of the first instance of each query, followed by the number of
+	 *     instances
+	 */
+	public void initialize(float[] grades, int[] queryStarts) {
+	}
+
+	/**
+	 * Evaluates the ranking of one query. Once initialized, this may be called by several threads
+	 * at once.
+	 *
+	 * @param grades grades of all instances
+	 * @param ranking indices of the instances of the query, from highest to lowest score
+	 * @param length number of instances of the query
+	 * @param query index of the query
+	 */
+	public double evaluateQuery(float[] grades, int[] ranking, int length, int query) {
+		throw new UnsupportedOperationException(getClass().getName()
+				+ " can't evaluate one query at a time");
+	}
+
+	/**
+	 * Averages {@link #evaluateQuery(float[], int[], int, int)} over the queries of a table, for
+	 * measures that evaluate queries. Instances of a query must be contiguous. This initializes the
+	 * measure for the table, so it mustn't run while other threads evaluate queries.
+	 */
+	protected double evaluateQueries(ScoreTable table) {
+		String [] qids = table.getQids();
+		float [] grades = table.getGrades();
+		float [] scores = table.getScores();
+		if(qids.length == 0) {
+			return 0;
+		}
+
+		List<Integer> starts = new ArrayList<Integer>();
+		int maxLength = 0;
+		for(int i = 0; i < qids.length; i++) {
+			if(i == 0 || !qids[i].equals(qids[i-1])) {
+				if(!starts.isEmpty()) {
+					maxLength = Math.max(maxLength, i - starts.get(starts.size() - 1));
+				}
+				starts.add(i);
+			}
+		}
+		maxLength = Math.max(maxLength, qids.length - starts.get(starts.size() - 1));
+
+		int numQueries = starts.size();
+		int [] queryStarts = new int[numQueries + 1];
+		for(int q = 0; q < numQueries; q++) {
+			queryStarts[q] = starts.get(q);
+		}
+		queryStarts[numQueries] = qids.length;
+		initialize(grades, queryStarts);
+
+		long [] keys = new long[maxLength];
+		int [] ranking = new int[maxLength];
+		double total = 0.0;
+		for(int q = 0; q < numQueries; q++) {
+			int length = queryStarts[q+1] - queryStarts[q];
+			rank(scores, 0, queryStarts[q], length, keys, ranking);
+			total += evaluateQuery(grades, ranking, length, q);
+		}
+
+		return total / numQueries;
+	}
+
+	/**
+	 * Ranks the instances of a query by decreasing score, breaking ties by instance order.
+	 *
+	 * @param scores scores, where the score of instance i is <code>scores[i - offset]</code>
+	 * @param start first instance of the query
+	 * @param length number of instances of the query
+	 * @param keys buffer of at least <code>length</code> entries
+	 * @param ranking receives the indices of the instances, from highest to lowest score
+	 */
+	static void rank(float[] scores, int offset, int start, int length, long[] keys, int[] ranking) {
+		// the score is in the high bits and the position in the low bits of each key
+		for(int j = 0; j < length; j++) {
+			keys[j] = ((long) ~sortableBits(scores[start + j - offset]) << 32) | j;
+		}
+		Arrays.sort(keys, 0, length);
+		for(int j = 0; j < length; j++) {
+			ranking[j] = start + (int) keys[j];
+		}
+	}
+
+	// maps a float to an int with the same ordering
+	private static int sortableBits(float f) {
+		int bits = Float.floatToIntBits(f + 0.0f);
+		return bits ^ ((bits >> 31) & 0x7fffffff);
+	}
+
 	public class ScoreGradePair {
 		public float score;
 		public float grade;
@@ -16,11 +16,7 @@
 
 package ivory.ltr;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.Arrays;
 
 /**
  * @author Don Metzler
@@ -28,80 +24,45 @@ import java.util.Map;
  */
 public class NDCGMeasure extends Measure {
 
-	private final Map<String, Double> idealGainLookup = new HashMap<String,Double>(); // query id -> ideal gain mapping
+	private double [] idealGains = null; // ideal gains by query index
 
-	public NDCGMeasure() {
-		idealGainLookup.clear();
-	}
-	
 	@Override
 	public double evaluate(ScoreTable table) {
-		String [] qids = table.getQids();
-		float [] grades = table.getGrades();
-		float [] scores = table.getScores();
-
-		float err = 0;
-		int numQueries = 0;
-		
-		String lastQid = null;
-		List<ScoreGradePair> items = new ArrayList<ScoreGradePair>();
-		for(int i = 0; i < qids.length; i++) {
-			String curQid = qids[i];
-			float curGrade = grades[i];
-			float curScore = scores[i];
-			
-			if(lastQid == null || !lastQid.equals(curQid)) {
-				//System.out.println("Computing ERR for: " + lastQid);
-				if(lastQid != null) {
-					err += computeQueryNDCG(curQid, items);
-					numQueries++;
-				}
-				
-				lastQid = curQid;
-				items = new ArrayList<ScoreGradePair>();
-			}
-			items.add(new ScoreGradePair(curScore, curGrade));
-		}
-		err += computeQueryNDCG(qids[qids.length-1], items);
-		numQueries++;
+		return evaluateQueries(table);
+	}
 
-		if(numQueries == 0) {
-			return 0;
-		}
-		
-		return err / numQueries;
+	@Override
+	public boolean evaluatesQueries() {
+		return true;
 	}
 
-	private double computeQueryNDCG(String qid, List<ScoreGradePair> items) {
-		// get ideal gain
-		Double idealGain = idealGainLookup.get(qid);
-		if(idealGain == null) {
-			List<ScoreGradePair> newList = new ArrayList<ScoreGradePair>(items);
-			Collections.sort(newList, new GradeComparator());
-			
+	@Override
+	public void initialize(float[] grades, int[] queryStarts) {
+		idealGains = new double[queryStarts.length - 1];
+		for(int q = 0; q < idealGains.length; q++) {
+			float [] sorted = Arrays.copyOfRange(grades, queryStarts[q], queryStarts[q+1]);
+			Arrays.sort(sorted);
+
 			double idcg = 0.0;
-			for(int i = 0; i < newList.size(); i++) {
-				idcg += (Math.pow(2.0, newList.get(i).grade) - 1.0) / Math.log(i + 2.0);
+			for(int i = 0; i < sorted.length; i++) {
+				idcg += (Math.pow(2.0, sorted[sorted.length - 1 - i]) - 1.0) / Math.log(i + 2.0);
 			}
-			
-			idealGain = idcg;
-			idealGainLookup.put(qid, idealGain);
+			idealGains[q] = idcg;
 		}
+	}
 
-		// rank documents for this query
-		Collections.sort(items, new ScoreComparator());
-		
-		// compute err for query
-		double dcg = 0.0;
-		for(int i = 0; i < items.size(); i++) {
-			dcg += (Math.pow(2.0, items.get(i).grade) - 1.0) / Math.log(i + 2.0);
-		}
-		
-		if(idealGain == 0.0) {
+	@Override
+	public double evaluateQuery(float[] grades, int[] ranking, int length, int query) {
+		if(idealGains[query] == 0.0) {
 			return 0.0;
 		}
-		
-		return dcg / idealGain;
+
+		double dcg = 0.0;
+		for(int i = 0; i < length; i++) {
+			dcg += (Math.pow(2.0, grades[ranking[i]]) - 1.0) / Math.log(i + 2.0);
+		}
+
+		return dcg / idealGains[query];
 	}
 
 }
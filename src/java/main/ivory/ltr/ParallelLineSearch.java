@@ -0,0 +1,268 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.ltr;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Line search over many features at once, with the same steps and outcome as {@link LineSearch}.
+ * Query boundaries are found once, and the measure evaluates each query over primitive arrays (see
+ * {@link Measure#evaluateQuery(float[], int[], int, int)}), so no score tables are created for the
+ * candidate weights. Queries are split into contiguous ranges, which are evaluated in parallel;
+ * each range computes the values of a feature once and then tries all weights of a step on
+ * reusable buffers.
+ */
+public class ParallelLineSearch {
+
+	private static final double SCALE_FACTOR = 0.01;
+	private static final int MAX_STEPS = 5;
+	private static final double MULTIPLIER = Math.pow((1.0 / SCALE_FACTOR), (1.0 / MAX_STEPS));
+
+	private final Instances instances;       // training instances
+	private final Measure measure;           // evaluation metric
+	private final ExecutorService threadPool; // evaluates ranges of queries
+	private final int [] queryStarts;        // first instance of each query, followed by the number of instances
+	private final int [] rangeStarts;        // first query of each range, followed by the number of queries
+	private final int numQueries;
+
+	public ParallelLineSearch(Instances instances, Measure measure, ExecutorService threadPool, int numTasks) {
+		if(!measure.evaluatesQueries()) {
+			throw new IllegalArgumentException(measure.getClass().getName() + " can't evaluate one query at a time");
+		}
+
+		this.instances = instances;
+		this.measure = measure;
+		this.threadPool = threadPool;
+
+		int [] queryIndexes = instances.getQueryIndexes();
+		int numInstances = instances.getNumInstances();
+		List<Integer> starts = new ArrayList<Integer>();
+		for(int i = 0; i < numInstances; i++) {
+			if(i == 0 || queryIndexes[i] != queryIndexes[i-1]) {
+				starts.add(i);
+			}
+		}
+		numQueries = starts.size();
+		queryStarts = new int[numQueries + 1];
+		for(int q = 0; q < numQueries; q++) {
+			queryStarts[q] = starts.get(q);
+		}
+		queryStarts[numQueries] = numInstances;
+
+		// split queries into ranges with about the same number of instances
+		int numRanges = Math.max(1, Math.min(numTasks, numQueries));
+		rangeStarts = new int[numRanges + 1];
+		int q = 0;
+		for(int r = 1; r < numRanges; r++) {
+			long target = (long) numInstances * r / numRanges;
+			while(q < numQueries && queryStarts[q] < target) {
+				q++;
+			}
+			rangeStarts[r] = Math.max(q, rangeStarts[r-1]);
+		}
+		rangeStarts[numRanges] = numQueries;
+
+		measure.initialize(instances.getGrades(), queryStarts);
+	}
+
+	/**
+	 * Finds the best weight of each feature, as {@link LineSearch#lineSearch(Model, Feature, ScoreTable, Measure)} would.
+	 */
+	public Map<Feature,AlphaMeasurePair> search(Model model, List<Feature> features, ScoreTable scores) throws InterruptedException, ExecutionException {
+		Map<Feature,AlphaMeasurePair> results = new HashMap<Feature,AlphaMeasurePair>();
+
+		if(model.getNumFeatures() == 0) {
+			double [][] measures = evaluate(scores, features, new double[] { 1.0 });
+			for(int k = 0; k < features.size(); k++) {
+				Feature feature = features.get(k);
+				System.err.println("Feature: " + feature.getName() + ", Measure: " + measures[k][0]);
+				results.put(feature, new AlphaMeasurePair(1.0, measures[k][0]));
+			}
+			return results;
+		}
+
+		double baseMeasure = evaluate(scores, null, null)[0][0];
+
+		double [] alphas = new double[MAX_STEPS];
+		double alpha = model.getMaxWeight() * SCALE_FACTOR;
+		for(int iter = 0; iter < MAX_STEPS; iter++) {
+			alphas[iter] = alpha;
+			alpha *= MULTIPLIER;
+		}
+
+		// try positive weights for all features
+		double [][] measures = evaluate(scores, features, alphas);
+		List<Feature> remaining = new ArrayList<Feature>();
+		for(int k = 0; k < features.size(); k++) {
+			Feature feature = features.get(k);
+			AlphaMeasurePair bestAlphaMeasure = step(new AlphaMeasurePair(0.0, baseMeasure), alphas, measures[k]);
+			if(bestAlphaMeasure.alpha != 0.0) {
+				System.err.println("Feature: " + feature.getName() + ", Measure: " + bestAlphaMeasure.measure);
+				results.put(feature, bestAlphaMeasure);
+			}
+			else {
+				remaining.add(feature);
+			}
+		}
+
+		// then negative weights, for features that didn't improve with positive ones
+		double [] negativeAlphas = new double[MAX_STEPS];
+		for(int iter = 0; iter < MAX_STEPS; iter++) {
+			negativeAlphas[iter] = -alphas[iter];
+		}
+
+		measures = evaluate(scores, remaining, negativeAlphas);
+		for(int k = 0; k < remaining.size(); k++) {
+			Feature feature = remaining.get(k);
+			AlphaMeasurePair bestAlphaMeasure = step(new AlphaMeasurePair(0.0, baseMeasure), negativeAlphas, measures[k]);
+			System.err.println("Feature: " + feature.getName() + ", Measure: " + bestAlphaMeasure.measure);
+			results.put(feature, bestAlphaMeasure);
+		}
+
+		return results;
+	}
+
+	// replays the steps of LineSearch over precomputed measures
+	private static AlphaMeasurePair step(AlphaMeasurePair bestAlphaMeasure, double [] alphas, double [] measures) {
+		for(int iter = 0; iter < alphas.length; iter++) {
+			double m = measures[iter];
+			if(m < bestAlphaMeasure.alpha) {
+				break;
+			}
+			if(m > bestAlphaMeasure.measure) {
+				bestAlphaMeasure.alpha = alphas[iter];
+				bestAlphaMeasure.measure = m;
+			}
+		}
+		return bestAlphaMeasure;
+	}
+
+	/**
+	 * Evaluates the scores after adding each feature with each weight. If features is
+	 * <code>null</code>, the scores themselves are evaluated.
+	 *
+	 * @return measure for each feature and weight
+	 */
+	private double [][] evaluate(ScoreTable scores, List<Feature> features, double [] alphas) throws InterruptedException, ExecutionException {
+		if(features != null && features.isEmpty()) {
+			return new double[0][];
+		}
+
+		double [][] totals = features == null ? new double[1][1] : new double[features.size()][alphas.length];
+		if(numQueries == 0) {
+			return totals;
+		}
+
+		List<Future<double[][]>> futures = new ArrayList<Future<double[][]>>();
+		for(int r = 0; r + 1 < rangeStarts.length; r++) {
+			futures.add(threadPool.submit(new RangeEvaluator(rangeStarts[r], rangeStarts[r+1], scores.getScores(), features, alphas)));
+		}
+
+		// sum in range order, so that results don't depend on scheduling
+		for(Future<double[][]> future : futures) {
+			double [][] sums = future.get();
+			for(int k = 0; k < totals.length; k++) {
+				for(int a = 0; a < totals[k].length; a++) {
+					totals[k][a] += sums[k][a];
+				}
+			}
+		}
+
+		for(int k = 0; k < totals.length; k++) {
+			for(int a = 0; a < totals[k].length; a++) {
+				totals[k][a] /= numQueries;
+			}
+		}
+		return totals;
+	}
+
+	/**
+	 * Sums the measure over a range of queries, for each feature and weight.
+	 */
+	private class RangeEvaluator implements Callable<double[][]> {
+		private final int firstQuery;
+		private final int lastQuery;
+		private final float [] scores;
+		private final List<Feature> features;
+		private final double [] alphas;
+
+		public RangeEvaluator(int firstQuery, int lastQuery, float [] scores, List<Feature> features, double [] alphas) {
+			this.firstQuery = firstQuery;
+			this.lastQuery = lastQuery;
+			this.scores = scores;
+			this.features = features;
+			this.alphas = alphas;
+		}
+
+		public double[][] call() {
+			int start = queryStarts[firstQuery];
+			int end = queryStarts[lastQuery];
+
+			int maxLength = 0;
+			for(int q = firstQuery; q < lastQuery; q++) {
+				maxLength = Math.max(maxLength, queryStarts[q+1] - queryStarts[q]);
+			}
+
+			// reusable buffers
+			float [] values = new float[end - start];
+			float [] newScores = new float[end - start];
+			long [] keys = new long[maxLength];
+			int [] ranking = new int[maxLength];
+
+			if(features == null) {
+				double [][] sums = new double[1][1];
+				sums[0][0] = sum(scores, 0, keys, ranking);
+				return sums;
+			}
+
+			double [][] sums = new double[features.size()][alphas.length];
+			for(int k = 0; k < features.size(); k++) {
+				Feature feature = features.get(k);
+				feature.eval(instances, start, end, values);
+
+				for(int a = 0; a < alphas.length; a++) {
+					double alpha = alphas[a];
+					for(int i = start; i < end; i++) {
+						newScores[i - start] = (float) (scores[i] + alpha * values[i - start]);
+					}
+					sums[k][a] = sum(newScores, start, keys, ranking);
+				}
+			}
+			return sums;
+		}
+
+		// sums the measure over the range, where the score of instance i is scores[i - offset]
+		private double sum(float [] scores, int offset, long [] keys, int [] ranking) {
+			float [] grades = instances.getGrades();
+			double total = 0.0;
+			for(int q = firstQuery; q < lastQuery; q++) {
+				int start = queryStarts[q];
+				int length = queryStarts[q+1] - start;
+				Measure.rank(scores, offset, start, length, keys, ranking);
+				total += measure.evaluateQuery(grades, ranking, length, q);
+			}
+			return total;
+		}
+	}
+}
@@ -16,6 +16,7 @@
 
 package ivory.ltr;
 
+import java.nio.FloatBuffer;
 
 /**
  * @author Don Metzler
@@ -44,6 +45,15 @@ public class ProductFeature extends Feature {
 		return fv[indexA] * fv[indexB];
 	}
 
+	@Override
+	public void eval(Instances instances, int start, int end, float [] values) {
+		FloatBuffer a = instances.getColumn(indexA);
+		FloatBuffer b = instances.getColumn(indexB);
+		for(int i = start; i < end; i++) {
+			values[i - start] = a.get(i) * b.get(i);
+		}
+	}
+
 	/* (non-Javadoc)
 	 * @see edu.isi.rankir.Feature#getName()
 	 */
@@ -16,6 +16,7 @@
 
 package ivory.ltr;
 
+import java.nio.FloatBuffer;
 
 /**
  * @author Don Metzler
@@ -47,6 +48,16 @@ public class QuotientFeature extends Feature {
 		return 0;
 	}
 
+	@Override
+	public void eval(Instances instances, int start, int end, float [] values) {
+		FloatBuffer a = instances.getColumn(indexA);
+		FloatBuffer b = instances.getColumn(indexB);
+		for(int i = start; i < end; i++) {
+			float y = b.get(i);
+			values[i - start] = y != 0.0 ? a.get(i) / y : 0;
+		}
+	}
+
 	/* (non-Javadoc)
 	 * @see edu.isi.rankir.Feature#getName()
 	 */
@@ -38,8 +38,9 @@ public class ScoreTable {
 
 	public ScoreTable translate(Feature feat, double weight, double scale) {
 		float [] newScores = new float[instances.getNumInstances()];
+		feat.eval(instances, 0, newScores.length, newScores);
 		for(int i = 0; i < scores.length; i++) {
-			newScores[i] = (float) (scale * (scores[i] + weight * feat.eval(instances.getInstance(i))));
+			newScores[i] = (float) (scale * (scores[i] + weight * newScores[i]));
 		}
 		return new ScoreTable(this, newScores);
 	}
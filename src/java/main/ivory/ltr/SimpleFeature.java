@@ -16,6 +16,7 @@
 
 package ivory.ltr;
 
+import java.nio.FloatBuffer;
 
 /**
  * @author Don Metzler
@@ -41,6 +42,13 @@ public class SimpleFeature extends Feature {
 		return fv[index];
 	}
 
+	@Override
+	public void eval(Instances instances, int start, int end, float [] values) {
+		FloatBuffer column = instances.getColumn(index).duplicate();
+		column.position(start);
+		column.get(values, 0, end - start);
+	}
+
 	/* (non-Javadoc)
 	 * @see edu.isi.rankir.Feature#getName()
 	 */
@@ -0,0 +1,530 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.pwsim;
+
+import ivory.core.RetrievalEnvironment;
+import ivory.core.data.index.Posting;
+import ivory.core.data.index.PostingsList;
+import ivory.core.data.index.PostingsReader;
+import ivory.core.data.stat.DocLengthTable;
+import ivory.core.data.stat.DocLengthTable2B;
+import ivory.pwsim.score.ScoringModel;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.filecache.DistributedCache;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.mapred.FileInputFormat;
+import org.apache.hadoop.mapred.FileOutputFormat;
+import org.apache.hadoop.mapred.JobClient;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.MapReduceBase;
+import org.apache.hadoop.mapred.Mapper;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.Reducer;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.mapred.SequenceFileInputFormat;
+import org.apache.hadoop.mapred.SequenceFileOutputFormat;
+import org.apache.log4j.Logger;
+
+import edu.umd.cloud9.io.map.HMapIFW;
+import edu.umd.cloud9.util.PowerTool;
+import edu.umd.cloud9.util.map.MapIF;
+
+/**
+ * <p>
+ * Computes pairwise document similarity as the product of the term-document matrix with its
+ * transpose, as an alternative to {@link PCP}. Takes the same parameters and writes output in the
+ * same format: as in {@link PCP}, rows of the similarity matrix are computed a block of documents
+ * at a time, one job per block, the similarity of two documents is the sum of
+ * {@link ScoringModel} scores over the terms they share, and terms with more than
+ * <code>Ivory.DfCut</code> postings are ignored.
+ * </p>
+ *
+ * <p>
+ * Rather than emitting a map of partial scores for every posting of every term, each mapper
+ * decodes a postings list once into arrays, and adds the scores of all pairs whose first
+ * document is in the current block to an accumulator per row, made of primitive arrays. Rows
+ * are emitted once the accumulators hold <code>Ivory.AccumulatorSize</code> entries, and when
+ * the mapper is done. If only the top <code>Ivory.TopN</code> similar documents are wanted, only
+ * the top <code>Ivory.MapperTopN</code> candidates of each row are emitted (four times
+ * <code>Ivory.TopN</code> by default), selected with a bounded heap. Reducers add up the
+ * candidate lists of each row and keep the top N.
+ * </p>
+ *
+ * <p>
+ * Pruning candidates in mappers makes similarities in top-N lists approximate, since a pair
+ * dropped by one mapper misses that mapper's share of its score: the more candidates mappers
+ * keep, the closer results are to those of {@link PCP}. Without top-N, results are the same.
+ * </p>
+ */
+public class BlockedPCP extends PowerTool {
+  private static final Logger LOG = Logger.getLogger(BlockedPCP.class);
+
+  private static enum Pairs {
+    SCORED, EMITTED
+  }
+
+  static class MyMapper extends MapReduceBase implements
+      Mapper<IntWritable, PostingsList, IntWritable, HMapIFW> {
+    private DocLengthTable docLengthTable;
+    private ScoringModel model;
+    private int dfCut;
+    private int blockStart;
+    private int blockEnd;
+    private int collectionDocCount;
+    private int candidates;
+    private int maxAccumulatorSize;
+
+    // Accumulators of the rows of the block, indexed by docno - blockStart.
+    private RowAccumulator[] rows;
+    private int accumulatorSize = 0;
+    private TopN topN;
+
+    // Postings of the current term.
+    private int[] docnos = new int[1024];
+    private int[] tfs = new int[1024];
+    private int[] lengths = new int[1024];
+    private final Posting posting = new Posting();
+
+    private final IntWritable outKey = new IntWritable();
+    private final HMapIFW outValue = new HMapIFW();
+    private OutputCollector<IntWritable, HMapIFW> output;
+    private Reporter reporter;
+
+    @Override
+    public void configure(JobConf job) {
+      collectionDocCount = job.getInt("Ivory.CollectionDocumentCount", -1);
+
+      try {
+        if (job.get("mapred.job.tracker").equals("local")) {
+          FileSystem fs = FileSystem.getLocal(job);
+          RetrievalEnvironment env = new RetrievalEnvironment(job.get("Ivory.IndexPath"), fs);
+          docLengthTable = new DocLengthTable2B(env.getDoclengthsData(), fs);
+        } else {
+          Path[] localFiles = DistributedCache.getLocalCacheFiles(job);
+          docLengthTable = new DocLengthTable2B(localFiles[0], FileSystem.getLocal(job));
+        }
+      } catch (Exception e) {
+        throw new RuntimeException("Error initializing DocLengthTable!");
+      }
+
+      dfCut = job.getInt("Ivory.DfCut", -1);
+      blockStart = job.getInt("Ivory.BlockStart", -1);
+      blockEnd = job.getInt("Ivory.BlockEnd", -1);
+      if (dfCut <= 0 || blockStart < 0 || blockEnd <= 0) {
+        throw new RuntimeException("Invalid config parameter(s): dfCut=" + dfCut
+            + ", blockStart=" + blockStart + ", blockEnd=" + blockEnd);
+      }
+
+      int n = job.getInt("Ivory.TopN", -1);
+      candidates = n > 0 ? job.getInt("Ivory.MapperTopN", 4 * n) : -1;
+      if (candidates > 0) {
+        topN = new TopN(candidates);
+      }
+      maxAccumulatorSize = job.getInt("Ivory.AccumulatorSize", 10000000);
+      rows = new RowAccumulator[blockEnd - blockStart];
+
+      try {
+        model = (ScoringModel) Class.forName(job.get("Ivory.ScoringModel")).newInstance();
+      } catch (Exception e) {
+        throw new RuntimeException("Mappers failed to initialize!");
+      }
+      model.setDocCount(docLengthTable.getDocCount());
+      model.setAvgDocLength(docLengthTable.getAvgDocLength());
+    }
+
+    public void map(IntWritable key, PostingsList postings,
+        OutputCollector<IntWritable, HMapIFW> output, Reporter reporter) throws IOException {
+      this.output = output;
+      this.reporter = reporter;
+
+      postings.setCollectionDocumentCount(collectionDocCount);
+      PostingsReader reader = postings.getPostingsReader();
+      int df = reader.getNumberOfPostings();
+      if (df > dfCut) {
+        return;
+      }
+      model.setDF(df);
+
+      if (docnos.length < df) {
+        docnos = new int[df];
+        tfs = new int[df];
+        lengths = new int[df];
+      }
+      int n = 0;
+      while (reader.nextPosting(posting)) {
+        docnos[n] = posting.getDocno();
+        tfs[n] = posting.getTf();
+        lengths[n] = docLengthTable.getDocLength(docnos[n]);
+        n++;
+      }
+
+      long pairs = 0;
+      for (int i = 0; i < n; i++) {
+        // As in PCP, this relies on postings being sorted by docno.
+        if (docnos[i] < blockStart) {
+          continue;
+        }
+        if (docnos[i] >= blockEnd) {
+          break;
+        }
+
+        RowAccumulator row = rows[docnos[i] - blockStart];
+        if (row == null) {
+          row = new RowAccumulator();
+          rows[docnos[i] - blockStart] = row;
+        }
+
+        int size = row.size();
+        for (int j = 0; j < n; j++) {
+          if (j != i) {
+            row.add(docnos[j], model.computeScore(tfs[i], tfs[j], lengths[i], lengths[j]));
+          }
+        }
+        accumulatorSize += row.size() - size;
+        pairs += n - 1;
+      }
+      reporter.incrCounter(Pairs.SCORED, pairs);
+
+      if (accumulatorSize >= maxAccumulatorSize) {
+        flush();
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (output != null) {
+        flush();
+      }
+    }
+
+    // Emits the accumulated rows, keeping only the top candidates of each, if necessary.
+    private void flush() throws IOException {
+      long emitted = 0;
+      for (int r = 0; r < rows.length; r++) {
+        RowAccumulator row = rows[r];
+        if (row == null || row.size() == 0) {
+          continue;
+        }
+
+        outValue.clear();
+        if (candidates > 0 && row.size() > candidates) {
+          topN.clear();
+          row.offerTo(topN);
+          topN.copyTo(outValue);
+        } else {
+          row.copyTo(outValue);
+        }
+        emitted += outValue.size();
+
+        outKey.set(blockStart + r);
+        output.collect(outKey, outValue);
+        row.clear();
+      }
+      accumulatorSize = 0;
+      reporter.incrCounter(Pairs.EMITTED, emitted);
+    }
+  }
+
+  static class MyReducer extends MapReduceBase implements
+      Reducer<IntWritable, HMapIFW, IntWritable, HMapIFW> {
+    private final HMapIFW map = new HMapIFW();
+    private final HMapIFW newMap = new HMapIFW();
+    private TopN topN;
+
+    @Override
+    public void configure(JobConf job) {
+      int n = job.getInt("Ivory.TopN", -1);
+      if (n > 0) {
+        topN = new TopN(n);
+      }
+    }
+
+    public void reduce(IntWritable doc, Iterator<HMapIFW> values,
+        OutputCollector<IntWritable, HMapIFW> output, Reporter reporter) throws IOException {
+      map.clear();
+      while (values.hasNext()) {
+        map.plus(values.next());
+      }
+
+      if (topN == null || map.size() <= topN.capacity()) {
+        output.collect(doc, map);
+        return;
+      }
+
+      topN.clear();
+      for (MapIF.Entry e : map.entrySet()) {
+        topN.offer(e.getKey(), e.getValue());
+      }
+      newMap.clear();
+      topN.copyTo(newMap);
+
+      // Note: as in PCP, output isn't sorted.
+      output.collect(doc, newMap);
+    }
+  }
+
+  /**
+   * Sums of scores by docno for one row of the similarity matrix, in an open-addressing hash
+   * table of primitive arrays.
+   */
+  static final class RowAccumulator {
+    private static final int EMPTY = -1;
+
+    private int[] keys = new int[16];
+    private float[] values = new float[16];
+    private int size = 0;
+
+    RowAccumulator() {
+      Arrays.fill(keys, EMPTY);
+    }
+
+    int size() {
+      return size;
+    }
+
+    void add(int docno, float score) {
+      int mask = keys.length - 1;
+      int i = hash(docno) & mask;
+      while (keys[i] != EMPTY) {
+        if (keys[i] == docno) {
+          values[i] += score;
+          return;
+        }
+        i = (i + 1) & mask;
+      }
+
+      keys[i] = docno;
+      values[i] = score;
+      if (++size > keys.length / 2) {
+        rehash();
+      }
+    }
+
+    void clear() {
+      Arrays.fill(keys, EMPTY);
+      size = 0;
+    }
+
+    void offerTo(TopN topN) {
+      for (int i = 0; i < keys.length; i++) {
+        if (keys[i] != EMPTY) {
+          topN.offer(keys[i], values[i]);
+        }
+      }
+    }
+
+    void copyTo(HMapIFW map) {
+      for (int i = 0; i < keys.length; i++) {
+        if (keys[i] != EMPTY) {
+          map.put(keys[i], values[i]);
+        }
+      }
+    }
+
+    private void rehash() {
+      int[] oldKeys = keys;
+      float[] oldValues = values;
+      keys = new int[oldKeys.length * 2];
+      values = new float[oldKeys.length * 2];
+      Arrays.fill(keys, EMPTY);
+
+      int mask = keys.length - 1;
+      for (int j = 0; j < oldKeys.length; j++) {
+        if (oldKeys[j] != EMPTY) {
+          int i = hash(oldKeys[j]) & mask;
+          while (keys[i] != EMPTY) {
+            i = (i + 1) & mask;
+          }
+          keys[i] = oldKeys[j];
+          values[i] = oldValues[j];
+        }
+      }
+    }
+
+    private static int hash(int docno) {
+      int h = docno * 0x9e3779b9;
+      return h ^ (h >>> 16);
+    }
+  }
+
+  /**
+   * Keeps the entries with the highest scores out of those offered, in a min-heap of bounded size.
+   */
+  static final class TopN {
+    private final int[] keys;
+    private final float[] values;
+    private int size = 0;
+
+    TopN(int capacity) {
+      keys = new int[capacity];
+      values = new float[capacity];
+    }
+
+    int capacity() {
+      return keys.length;
+    }
+
+    int size() {
+      return size;
+    }
+
+    void clear() {
+      size = 0;
+    }
+
+    void offer(int key, float value) {
+      if (size < keys.length) {
+        int i = size++;
+        // Sift up.
+        while (i > 0) {
+          int parent = (i - 1) / 2;
+          if (values[parent] <= value) {
+            break;
+          }
+          keys[i] = keys[parent];
+          values[i] = values[parent];
+          i = parent;
+        }
+        keys[i] = key;
+        values[i] = value;
+      } else if (value > values[0]) {
+        // Replace the minimum, and sift down.
+        int i = 0;
+        while (true) {
+          int child = 2 * i + 1;
+          if (child >= size) {
+            break;
+          }
+          if (child + 1 < size && values[child + 1] < values[child]) {
+            child++;
+          }
+          if (values[child] >= value) {
+            break;
+          }
+          keys[i] = keys[child];
+          values[i] = values[child];
+          i = child;
+        }
+        keys[i] = key;
+        values[i] = value;
+      }
+    }
+
+    void copyTo(HMapIFW map) {
+      for (int i = 0; i < size; i++) {
+        map.put(keys[i], values[i]);
+      }
+    }
+  }
+
+  public BlockedPCP(Configuration conf) {
+    super(conf);
+  }
+
+  public static final String[] RequiredParameters = PCP.RequiredParameters;
+
+  public String[] getRequiredParameters() {
+    return RequiredParameters;
+  }
+
+  public int runTool() throws Exception {
+    String indexPath = getConf().get("Ivory.IndexPath");
+    String outputPath = getConf().get("Ivory.OutputPath");
+
+    int mapTasks = getConf().getInt("Ivory.NumMapTasks", 0);
+    int reduceTasks = getConf().getInt("Ivory.NumReduceTasks", 0);
+    int dfCut = getConf().getInt("Ivory.DfCut", -1);
+    int blockSize = getConf().getInt("Ivory.BlockSize", -1);
+    int topN = getConf().getInt("Ivory.TopN", -1);
+
+    FileSystem fs = FileSystem.get(getConf());
+
+    RetrievalEnvironment env = new RetrievalEnvironment(indexPath, fs);
+
+    String collectionName = env.readCollectionName();
+    int numDocs = env.readCollectionDocumentCount();
+    Path docLengthPath = env.getDoclengthsData();
+    String scoringModel = getConf().get("Ivory.ScoringModel");
+
+    LOG.info("Characteristics of the collection:");
+    LOG.info(" - CollectionName: " + collectionName);
+    LOG.info(" - IndexPath: " + indexPath);
+    LOG.info("Characteristics of the job:");
+    LOG.info(" - NumMapTasks: " + mapTasks);
+    LOG.info(" - NumReduceTasks: " + reduceTasks);
+    LOG.info(" - DfCut: " + dfCut);
+    LOG.info(" - BlockSize: " + blockSize);
+    LOG.info(" - ScoringModel: " + scoringModel);
+    LOG.info(" - topN: " + topN);
+    if (topN > 0) {
+      LOG.info(" - MapperTopN: " + getConf().getInt("Ivory.MapperTopN", 4 * topN));
+    }
+    LOG.info(" - AccumulatorSize: " + getConf().getInt("Ivory.AccumulatorSize", 10000000));
+    LOG.info(" - OutputPath: " + outputPath);
+
+    getConf().setInt("Ivory.CollectionDocumentCount", numDocs);
+
+    if (fs.exists(new Path(outputPath))) {
+      LOG.info("BlockedPCP output path already exists!");
+      return 0;
+    }
+
+    // Same blocks as PCP.
+    int numBlocks = numDocs / blockSize + 1;
+
+    for (int i = 0; i < numBlocks; i++) {
+      int start = blockSize * i;
+      int end = i == numBlocks - 1 ? numDocs : blockSize * (i + 1);
+
+      JobConf conf = new JobConf(getConf(), BlockedPCP.class);
+      DistributedCache.addCacheFile(docLengthPath.toUri(), conf);
+
+      LOG.info("block " + i + ": " + start + "-" + end);
+
+      conf.setInt("Ivory.BlockStart", start);
+      conf.setInt("Ivory.BlockEnd", end);
+
+      conf.setJobName("BlockedPCP:" + collectionName + "-dfCut=" + dfCut
+          + (topN > 0 ? "-topN" + topN : "-all") + ":Block #" + i);
+
+      conf.setNumMapTasks(mapTasks);
+      conf.setNumReduceTasks(reduceTasks);
+
+      FileInputFormat.setInputPaths(conf, new Path(env.getPostingsDirectory()));
+      FileOutputFormat.setOutputPath(conf, new Path(outputPath + "/block" + i));
+
+      conf.setInputFormat(SequenceFileInputFormat.class);
+      conf.setOutputKeyClass(IntWritable.class);
+      conf.setOutputValueClass(HMapIFW.class);
+      conf.setOutputFormat(SequenceFileOutputFormat.class);
+
+      conf.setMapperClass(MyMapper.class);
+      conf.setReducerClass(MyReducer.class);
+
+      JobClient.runJob(conf);
+    }
+
+    return 0;
+  }
+}
@@ -71,7 +71,7 @@ public class PCP extends PowerTool {
 		sLogger.setLevel(Level.INFO);
 	}
 
-	private static class MyMapper extends MapReduceBase implements
+	static class MyMapper extends MapReduceBase implements
 			Mapper<IntWritable, PostingsList, IntWritable, HMapIFW> {
 
 		// table that contains length of all document, to be used in computing
@@ -191,7 +191,7 @@ public class PCP extends PowerTool {
 		}
 	}
 
-	private static class MyReducer extends MapReduceBase implements
+	static class MyReducer extends MapReduceBase implements
 			Reducer<IntWritable, HMapIFW, IntWritable, HMapIFW> {
 
 		HMapIFW map = new HMapIFW();
@@ -21,11 +21,13 @@ import org.apache.hadoop.conf.Configured;
 import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
 
+import edu.umd.cloud9.util.PowerTool;
+
 public class RunPCP extends Configured implements Tool {
 
 	private static int printUsage() {
 		System.out
-				.println("usage: [index-root] [num-of-mappers] [num-of-reducers] [dfCut] [BlockSize] [scoringModel] [Top-N]");
+				.println("usage: [index-root] [num-of-mappers] [num-of-reducers] [dfCut] [BlockSize] [scoringModel] [Top-N] [pcp|blocked]");
 		ToolRunner.printGenericCommandUsage(System.out);
 		return -1;
 	}
@@ -60,12 +62,24 @@ public class RunPCP extends Configured implements Tool {
 			fn = scoringModel.substring(i + 1);
 
 		int topN = -1;
-		if (args.length == 7)
+		if (args.length >= 7)
 			topN = Integer.parseInt(args[6]);
 
+		// Use BlockedPCP instead of PCP?
+		boolean blocked = false;
+		if (args.length >= 8) {
+			if (args[7].equals("blocked")) {
+				blocked = true;
+			} else if (!args[7].equals("pcp")) {
+				System.out.println("Unknown engine: " + args[7]);
+				printUsage();
+				return -1;
+			}
+		}
+
 		config.set("Ivory.IndexPath", indexPath);
 		config.set("Ivory.OutputPath", indexPath + "/pcp-dfCut=" + dfCut + "-blk=" + blockSize
-				+ "-" + fn + (topN > 0 ? "-topN=" + topN : ""));
+				+ "-" + fn + (topN > 0 ? "-topN=" + topN : "") + (blocked ? "-blocked" : ""));
 
 		config.set("Ivory.ScoringModel", scoringModel);
 
@@ -74,7 +88,7 @@ public class RunPCP extends Configured implements Tool {
 
 		config.setInt("Ivory.TopN", topN);
 
-		PCP pwsimTask = new PCP(config);
+		PowerTool pwsimTask = blocked ? new BlockedPCP(config) : new PCP(config);
 		pwsimTask.run();
 
 		return 0;
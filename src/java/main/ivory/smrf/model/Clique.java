@@ -192,6 +192,25 @@ public class Clique {
     }
   }
 
+  /**
+   * Moves the block-max bound of this clique to the block of documents that contains
+   * {@code docno}, and returns the last docno of the block.
+   */
+  public int shallowAdvance(int docno) {
+    return combinedWeight > 0.0 ? potential.shallowAdvance(docno) : Integer.MAX_VALUE;
+  }
+
+  /**
+   * Returns the max score of the documents in the current block (see
+   * {@link #shallowAdvance(int)}). Block-level bounds are only used if the weight is positive.
+   */
+  public float getBlockMaxScore() {
+    if (combinedWeight > 0.0) {
+      return combinedWeight * potential.getBlockMaxScore();
+    }
+    return getMaxScore();
+  }
+
   /**
    * Sets the next candidate for evaluation.
    */
@@ -19,7 +19,6 @@ package ivory.smrf.model.expander;
 import ivory.core.RetrievalEnvironment;
 import ivory.core.data.document.IntDocVector;
 import ivory.core.data.index.PostingsList;
-import ivory.core.data.index.PostingsReader;
 import ivory.core.exception.ConfigurationException;
 import ivory.core.exception.RetrievalException;
 import ivory.core.util.XMLTools;
@@ -32,7 +31,6 @@ import ivory.smrf.model.MarkovRandomField;
 import ivory.smrf.model.Parameter;
 import ivory.smrf.model.TermNode;
 import ivory.smrf.model.VocabFrequencyPair;
-import ivory.smrf.model.builder.Expression;
 import ivory.smrf.model.builder.ExpressionGenerator;
 import ivory.smrf.model.builder.TermExpressionGenerator;
 import ivory.smrf.model.importance.ConceptImportanceModel;
@@ -75,6 +73,28 @@ public class UnigramLatentConceptExpander extends MRFExpander {
     this.importanceModels = importanceModels;
   }
 
+  /**
+   * Returns the df and cf of a concept, or {@code null} if the concept isn't in the index. They
+   * come from the term statistics if those are held in memory, and otherwise from the postings
+   * list of the concept, which is read only once for both.
+   */
+  GlobalTermEvidence getTermEvidence(String concept) {
+    if (env.hasTermStatistics()) {
+      int df = env.documentFrequency(concept);
+      if (df == 0) {
+        return null;
+      }
+      termEvidence.set(df, env.collectionFrequency(concept));
+    } else {
+      PostingsList list = env.getPostingsList(concept);
+      if (list == null) {
+        return null;
+      }
+      termEvidence.set(list.getDf(), list.getCf());
+    }
+    return termEvidence;
+  }
+
   @Override
   public MarkovRandomField getExpandedMRF(MarkovRandomField mrf, Accumulator[] results)
       throws ConfigurationException {
@@ -142,18 +162,10 @@ public class UnigramLatentConceptExpander extends MRFExpander {
       // The current concept.
       String concept = vocab[conceptID].getKey();
 
-      // Get df and cf information for the concept.
-      PostingsReader reader = env.getPostingsReader(new Expression(concept));
-      if (reader == null) {
+      // Construct concept evidence, skipping concepts not in the index.
+      if (getTermEvidence(concept) == null) {
         continue;
       }
-      PostingsList list = reader.getPostingsList();
-      int df = list.getDf();
-      long cf = list.getCf();
-      env.clearPostingsReaderCache();
-
-      // Construct concept evidence.
-      termEvidence.set(df, cf);
 
       // Score the concept.
       float score = 0.0f;
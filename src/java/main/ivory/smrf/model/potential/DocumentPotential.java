@@ -17,6 +17,7 @@
 package ivory.smrf.model.potential;
 
 import ivory.core.RetrievalEnvironment;
+import ivory.core.data.stat.DocScoreTable;
 import ivory.core.exception.ConfigurationException;
 import ivory.core.util.XMLTools;
 import ivory.smrf.model.DocumentNode;
@@ -38,6 +39,7 @@ public class DocumentPotential extends PotentialFunction {
   private RetrievalEnvironment env;
   private DocumentNode docNode;
   private String type;
+  private DocScoreTable scores;
 
   @Override
   public void configure(RetrievalEnvironment env, Node domNode) throws ConfigurationException {
@@ -67,11 +69,14 @@ public class DocumentPotential extends PotentialFunction {
         throw new ConfigurationException("TermNodes are not allowed in DocumentPotential!");
       }
     }
+
+    // Look up the table once, rather than for every document scored.
+    scores = env.getDocScoreTable(type);
   }
 
   @Override
   public float computePotential() {
-    return env.getDocScore(type, docNode.getDocno());
+    return scores.getScore(docNode.getDocno());
   }
 
   @Override
@@ -51,6 +51,27 @@ public abstract class PotentialFunction {
 
   public abstract void setNextCandidate(int docno);
 
+  /**
+   * Moves the block-max bound of this potential to the block of documents that contains
+   * {@code docno}, without scoring any documents. By default, there is a single block spanning
+   * the entire collection, bounded by {@link #getMaxScore()}.
+   *
+   * @param docno docno to move to
+   * @return last docno of the block, i.e., the last docno for which
+   *     {@link #getBlockMaxScore()} is a valid bound
+   */
+  public int shallowAdvance(int docno) {
+    return Integer.MAX_VALUE;
+  }
+
+  /**
+   * Returns an upper bound on the potential of the documents in the current block (see
+   * {@link #shallowAdvance(int)}).
+   */
+  public float getBlockMaxScore() {
+    return getMaxScore();
+  }
+
   @SuppressWarnings("unchecked")
   public static PotentialFunction create(RetrievalEnvironment env, String type, Node functionNode)
       throws ConfigurationException {
@@ -17,9 +17,11 @@
 package ivory.smrf.model.potential;
 
 import ivory.core.RetrievalEnvironment;
+import ivory.core.data.index.BlockMaxPostingsReader;
 import ivory.core.data.index.Posting;
 import ivory.core.data.index.PostingsReader;
 import ivory.core.data.index.ProximityPostingsReader;
+import ivory.core.data.stat.DocAttributeTable;
 import ivory.core.exception.ConfigurationException;
 import ivory.core.util.XMLTools;
 import ivory.smrf.model.DocumentNode;
@@ -47,6 +49,9 @@ public class QueryPotential extends PotentialFunction {
   // Default score for potentials with no postings.
   protected static final float DEFAULT_SCORE = 0.0f;
 
+  // Relative slack added to block-max bounds, to absorb floating point rounding.
+  private static final float BOUND_SLACK = 1e-5f;
+
   private ExpressionGenerator expressionGenerator;
 
   protected final List<TermNode> termNodes = Lists.newArrayList();
@@ -61,6 +66,13 @@ public class QueryPotential extends PotentialFunction {
   protected boolean endOfList = true; // Whether or not we're at the end of the postings list.
   protected int lastScoredDocno = 0;
 
+  // Block-max bounds, if the postings support them.
+  private BlockMaxPostingsReader blockMaxReader = null;
+  private boolean quantizedLengths; // Whether scored doclengths are quantized.
+  private float absentMaxScore;  // Bound on the score of documents without postings.
+  private float blockMaxScore;   // Bound on the score of documents in the current block.
+  private int blockLastDocno;    // Last docno of the current block.
+
   public QueryPotential() {}
   // Note, must have zero-arg constructor for creation by factory method in PotentialFunction
 
@@ -121,7 +133,10 @@ public class QueryPotential extends PotentialFunction {
     if (postingsReader == null) {
       termEvidence.set(0, 0L);
     } else if (postingsReader instanceof ProximityPostingsReader) {
-      termEvidence.set(env.getDefaultDf(), env.getDefaultCf());
+      termEvidence.set(env.documentFrequency(expression), env.collectionFrequency(expression));
+    } else if (env.hasTermStatistics()) {
+      String term = expression.getTerms()[0];
+      termEvidence.set(env.documentFrequency(term), env.collectionFrequency(term));
     } else {
       termEvidence.set(postingsReader.getPostingsList().getDf(),
           postingsReader.getPostingsList().getCf());
@@ -130,6 +145,15 @@ public class QueryPotential extends PotentialFunction {
     // Set global term evidence in scoring function.
     scoringFunction.initialize(termEvidence, globalEvidence);
 
+    if (postingsReader instanceof BlockMaxPostingsReader) {
+      blockMaxReader = (BlockMaxPostingsReader) postingsReader;
+      quantizedLengths = env.getDocAttributeTable() != null;
+      absentMaxScore = scoringFunction.getMaxScore(0, 0);
+    } else {
+      blockMaxReader = null;
+    }
+    blockLastDocno = -1;
+
     // Read first posting.
     endOfList = false;
     if (postingsReader == null) {
@@ -149,10 +173,8 @@ public class QueryPotential extends PotentialFunction {
 
     // Advance postings reader. Invariant: curPosting will always point to
     // the next posting that has not yet been scored.
-    while (!endOfList && postingsReader.getDocno() < docNode.getDocno()) {
-      if (!postingsReader.nextPosting(curPosting)) {
-        endOfList = true;
-      }
+    if (!endOfList && postingsReader.getDocno() < docNode.getDocno()) {
+      endOfList = !postingsReader.advance(docNode.getDocno());
     }
 
     // Compute term frequency.
@@ -211,6 +233,7 @@ public class QueryPotential extends PotentialFunction {
   public void reset() {
     endOfList = false;
     lastScoredDocno = -1;
+    blockLastDocno = -1;
   }
 
   @Override
@@ -223,14 +246,48 @@ public class QueryPotential extends PotentialFunction {
     return scoringFunction.getMaxScore();
   }
 
+  @Override
+  public int shallowAdvance(int docno) {
+    if (blockMaxReader == null) {
+      return super.shallowAdvance(docno);
+    }
+
+    if (docno <= blockLastDocno) {
+      return blockLastDocno;
+    }
+
+    // Documents in the block either have a posting, bounded by the block's max tf and min
+    // doclen, or don't contain the term at all.
+    float bound = absentMaxScore;
+    if (blockMaxReader.shallowAdvance(docno)) {
+      blockLastDocno = blockMaxReader.getBlockLastDocno();
+      // Block min doclens are exact, but documents are scored with the lengths read back from
+      // the doc attribute table, which can be a few percent shorter.
+      int minDocLen = blockMaxReader.getBlockMinDocLength();
+      if (quantizedLengths) {
+        minDocLen = DocAttributeTable.quantizeLength(minDocLen);
+      }
+      bound = Math.max(bound, scoringFunction.getMaxScore(blockMaxReader.getBlockMaxTf(),
+          minDocLen));
+    } else {
+      blockLastDocno = Integer.MAX_VALUE;
+    }
+    blockMaxScore = bound + Math.abs(bound) * BOUND_SLACK;
+
+    return blockLastDocno;
+  }
+
+  @Override
+  public float getBlockMaxScore() {
+    return blockMaxReader == null ? super.getBlockMaxScore() : blockMaxScore;
+  }
+
   @Override
   public void setNextCandidate(int docno) {
     // Advance postings reader. Invariant: curPosting will always point to
     // the next posting that has not yet been scored.
-    while (!endOfList && postingsReader.getDocno() < docno) {
-      if (!postingsReader.nextPosting(curPosting)) {
-        endOfList = true;
-      }
+    if (!endOfList && postingsReader.getDocno() < docno) {
+      endOfList = !postingsReader.advance(docno);
     }
   }
 
@@ -88,6 +88,13 @@ public class BM25ScoringFunction extends ScoringFunction {
     return maxScore;
   }
 
+  @Override
+  public float getMaxScore(int maxTf, int minDocLen) {
+    // The score increases with tf and decreases with doclen if idf is positive; otherwise it is
+    // never positive. Documents without the term score zero.
+    return Math.min(maxScore, Math.max(0.0f, getScore(maxTf, minDocLen)));
+  }
+
   /**
    * Sets the k1 parameter.
    *
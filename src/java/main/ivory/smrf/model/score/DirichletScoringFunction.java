@@ -64,4 +64,10 @@ public class DirichletScoringFunction extends ScoringFunction {
     // TODO: make a tighter upper bound for this score
     return 0.0f;
   }
+
+  @Override
+  public float getMaxScore(int maxTf, int minDocLen) {
+    // The score increases with tf and decreases with doclen.
+    return Math.min(0.0f, getScore(maxTf, minDocLen));
+  }
 }
@@ -92,6 +92,20 @@ public abstract class ScoringFunction {
     return Float.POSITIVE_INFINITY;
   }
 
+  /**
+   * Returns an upper bound on the score of a document whose term frequency is at most
+   * {@code maxTf} (including zero) and whose length is at least {@code minDocLen}. Subclasses
+   * whose score is monotonic in term frequency and document length can use this to provide much
+   * tighter bounds than {@link #getMaxScore()}.
+   *
+   * @param maxTf maximum term frequency
+   * @param minDocLen minimum document length
+   * @return upper bound on the score
+   */
+  public float getMaxScore(int maxTf, int minDocLen) {
+    return getMaxScore();
+  }
+
   /**
    * Creates a scoring function.
    */
@@ -17,16 +17,17 @@
 package ivory.smrf.retrieval;
 
 import ivory.core.RetrievalEnvironment;
+import ivory.core.data.index.PostingsCache;
 import ivory.core.exception.ConfigurationException;
 import ivory.core.util.ResultWriter;
 import ivory.core.util.XMLTools;
-import ivory.smrf.model.builder.MRFBuilder;
-import ivory.smrf.model.expander.MRFExpander;
 import ivory.smrf.model.importance.ConceptImportanceModel;
 
 import java.io.IOException;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
@@ -61,6 +62,8 @@ public class BatchQueryRunner {
   protected final Map<String, Map<String, Double>> judgments = Maps.newHashMap();
   protected final Map<String, QueryRunner> queryRunners = Maps.newLinkedHashMap();
   protected final Set<String> stopwords = Sets.newHashSet();
+  protected int numThreads = Runtime.getRuntime().availableProcessors();
+  protected long postingsCacheSize = PostingsCache.DEFAULT_CAPACITY;
 
   public BatchQueryRunner(String[] args, FileSystem fs) throws ConfigurationException {
     init(args, fs);
@@ -109,70 +112,86 @@ public class BatchQueryRunner {
     try {
       env = new RetrievalEnvironment(indexPath, fs);
       env.initialize(true);
+      env.setPostingsCacheSize(postingsCacheSize);
     } catch (IOException e) {
       throw new ConfigurationException("Failed to instantiate RetrievalEnvironment: "
           + e.getMessage());
     }
   }
 
+  /**
+   * Runs all queries against all models. Queries of all models are evaluated concurrently, on
+   * {@link #getNumThreads()} threads, each with its own MRF builders and expanders; results are
+   * then written out model by model, exactly as they would be by a single thread.
+   */
   public void runQueries() {
-    for (String modelID : models.keySet()) {
-      Node modelNode = models.get(modelID);
-      Node expanderNode = expanders.get(modelID);
-
-      // Initialize retrieval environment variables.
-      QueryRunner runner = null;
-      MRFBuilder builder = null;
-      MRFExpander expander = null;
-      try {
-        // Get the MRF builder.
-        builder = MRFBuilder.get(env, modelNode.cloneNode(true));
+    Map<String, String[]> queryTokens = Maps.newLinkedHashMap();
+    for (String queryID : queries.keySet()) {
+      String rawQueryText = queries.get(queryID);
+      LOG.info(String.format("query id: %s, query: \"%s\"", queryID, rawQueryText));
+      queryTokens.put(queryID, env.tokenize(rawQueryText));
+    }
 
-        // Get the MRF expander.
-        expander = null;
-        if (expanderNode != null) {
-          expander = MRFExpander.getExpander(env, expanderNode.cloneNode(true));
-        }
-        if (stopwords != null && stopwords.size() != 0) {
-          expander.setStopwordList(stopwords);
-        }
+    LOG.info("number of threads: " + numThreads);
+    ExecutorService threadPool = Executors.newFixedThreadPool(numThreads);
+    try {
+      for (String modelID : models.keySet()) {
+        Node modelNode = models.get(modelID);
+        Node expanderNode = expanders.get(modelID);
 
         int numHits = XMLTools.getAttributeValue(modelNode, "hits", 1000);
-
         LOG.info("number of hits: " + numHits);
 
-        // Multi-threaded query evaluation still a bit unstable; setting
-        // thread=1 for now.
-        runner = new ThreadedQueryRunner(builder, expander, 1, numHits);
-
+        QueryRunner runner;
+        try {
+          runner = new ThreadedQueryRunner(env, modelNode, expanderNode, stopwords, threadPool,
+              numHits);
+        } catch (ConfigurationException e) {
+          throw new RuntimeException("Error: Unable to initialize model " + modelID + "!", e);
+        }
         queryRunners.put(modelID, runner);
-      } catch (Exception e) {
-        e.printStackTrace();
-      }
-
-      for (String queryID : queries.keySet()) {
-        String rawQueryText = queries.get(queryID);
-        String[] queryTokens = env.tokenize(rawQueryText);
-
-        LOG.info(String.format("query id: %s, query: \"%s\"", queryID, rawQueryText));
 
-        // Execute the query.
-        runner.runQuery(queryID, queryTokens);
+        // Execute the queries.
+        for (Map.Entry<String, String[]> query : queryTokens.entrySet()) {
+          runner.runQuery(query.getKey(), query.getValue());
+        }
       }
 
-      // Where should we output these results?
-      Node model = models.get(modelID);
-      String fileName = XMLTools.getAttributeValue(model, "output", null);
-      boolean compress = XMLTools.getAttributeValue(model, "compress", false);
-
-      try {
-        ResultWriter resultWriter = new ResultWriter(fileName, compress, fs);
-        printResults(modelID, runner, resultWriter);
-        resultWriter.flush();
-      } catch (IOException e) {
-        throw new RuntimeException("Error: Unable to write results!");
+      for (String modelID : models.keySet()) {
+        // Where should we output these results?
+        Node model = models.get(modelID);
+        String fileName = XMLTools.getAttributeValue(model, "output", null);
+        boolean compress = XMLTools.getAttributeValue(model, "compress", false);
+
+        try {
+          ResultWriter resultWriter = new ResultWriter(fileName, compress, fs);
+          printResults(modelID, queryRunners.get(modelID), resultWriter);
+          resultWriter.flush();
+        } catch (IOException e) {
+          throw new RuntimeException("Error: Unable to write results!");
+        }
       }
+    } finally {
+      threadPool.shutdown();
     }
+
+    LOG.info("postings cache: " + env.getPostingsCache());
+  }
+
+  /**
+   * Returns the number of threads queries are evaluated on.
+   */
+  public int getNumThreads() {
+    return numThreads;
+  }
+
+  /**
+   * Sets the number of threads queries are evaluated on. By default, this is the number of
+   * available processors, unless specified with a <code>threads</code> element.
+   */
+  public void setNumThreads(int numThreads) {
+    Preconditions.checkArgument(numThreads > 0);
+    this.numThreads = numThreads;
   }
 
   public Set<String> getModels() {
@@ -260,6 +279,8 @@ public class BatchQueryRunner {
       parseModels(d);
       parseStopwords(d);
       parseIndexLocation(d);
+      parseThreads(d);
+      parsePostingsCache(d);
       parseDocscores(d);
       parseJudgments(d);
     }
@@ -373,6 +394,38 @@ public class BatchQueryRunner {
     }
   }
 
+  private void parseThreads(Document d) throws ConfigurationException {
+    NodeList threadsList = d.getElementsByTagName("threads");
+
+    if (threadsList.getLength() > 0) {
+      try {
+        numThreads = Integer.parseInt(threadsList.item(0).getTextContent().trim());
+      } catch (NumberFormatException e) {
+        throw new ConfigurationException("Invalid number of threads!");
+      }
+      if (numThreads < 1) {
+        throw new ConfigurationException("Invalid number of threads!");
+      }
+    }
+  }
+
+  private void parsePostingsCache(Document d) throws ConfigurationException {
+    NodeList cacheList = d.getElementsByTagName("postingscache");
+
+    if (cacheList.getLength() > 0) {
+      // Size is given in MB.
+      try {
+        postingsCacheSize =
+            Long.parseLong(cacheList.item(0).getTextContent().trim()) * 1024 * 1024;
+      } catch (NumberFormatException e) {
+        throw new ConfigurationException("Invalid postings cache size!");
+      }
+      if (postingsCacheSize < 0) {
+        throw new ConfigurationException("Invalid postings cache size!");
+      }
+    }
+  }
+
   private void parseDocscores(Document d) throws ConfigurationException {
     NodeList docscoresList = d.getElementsByTagName("docscore");
 
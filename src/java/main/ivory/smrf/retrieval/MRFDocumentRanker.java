@@ -59,6 +59,9 @@ public class MRFDocumentRanker {
   // Maximum number of results to return.
   private int numResults;
 
+  // Whether or not to skip blocks of documents using block-max bounds.
+  private boolean blockMaxPruning = true;
+
   public MRFDocumentRanker(MarkovRandomField mrf, int numResults) {
     this(mrf, null, numResults);
   }
@@ -110,6 +113,13 @@ public class MRFDocumentRanker {
     // Offset into document set we're currently at (if applicable).
     int docsetOffset = 0;
 
+    // Block-max bounds only pay off when scanning the postings, not a fixed document set.
+    boolean useBlockMax = blockMaxPruning && docs == null;
+
+    // Sum of the block max scores of all cliques, valid for all docnos up to blockEnd.
+    float blockMaxScore = mrfMaxScore;
+    int blockEnd = -1;
+
     int docno = 0;
     if (docs != null) {
       docno = docsetOffset < docs.length ? docs[docsetOffset++] : Integer.MAX_VALUE;
@@ -118,6 +128,32 @@ public class MRFDocumentRanker {
     }
 
     while (docno < Integer.MAX_VALUE) {
+      if (useBlockMax) {
+        if (docno > blockEnd) {
+          blockEnd = Integer.MAX_VALUE;
+          blockMaxScore = 0.0f;
+          for (Clique c : cliques) {
+            if (c.isDocDependent()) {
+              blockEnd = Math.min(blockEnd, c.shallowAdvance(docno));
+              blockMaxScore += c.getBlockMaxScore();
+            }
+          }
+        }
+
+        // If no document up to the end of the current block can enter the result set, skip
+        // the entire block.
+        if (blockMaxScore <= scoreThreshold) {
+          if (blockEnd == Integer.MAX_VALUE) {
+            break;
+          }
+          for (Clique c : cliques) {
+            c.setNextCandidate(blockEnd + 1);
+          }
+          docno = mrf.getNextCandidate();
+          continue;
+        }
+      }
+
       float score = 0.0f;
 
       for (DocumentNode documentNode : docNodes) {
@@ -125,7 +161,7 @@ public class MRFDocumentRanker {
       }
 
       // Document-at-a-time scoring.
-      float docMaxScore = mrfMaxScore;
+      float docMaxScore = useBlockMax ? blockMaxScore : mrfMaxScore;
       boolean skipped = false;
       for (int i = 0; i < cliques.size(); i++) {
         // Current clique that we're scoring.
@@ -151,7 +187,7 @@ public class MRFDocumentRanker {
         score += c.getWeight() * c.getPotential();
 
         // Update the max score for the rest of the cliques.
-        docMaxScore -= c.getMaxScore();
+        docMaxScore -= useBlockMax ? c.getBlockMaxScore() : c.getMaxScore();
       }
 
       // Keep track of mNumResults best accumulators.
@@ -191,6 +227,14 @@ public class MRFDocumentRanker {
     return mrf;
   }
 
+  /**
+   * Sets whether or not to skip blocks of documents whose block-max bounds show that none of
+   * them can enter the result set. This does not change the ranking, and is on by default.
+   */
+  public void setBlockMaxPruning(boolean blockMaxPruning) {
+    this.blockMaxPruning = blockMaxPruning;
+  }
+
   /**
    * Sets the number of results to return.
    */
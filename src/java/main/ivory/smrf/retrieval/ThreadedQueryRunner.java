@@ -16,6 +16,7 @@
 
 package ivory.smrf.retrieval;
 
+import ivory.core.RetrievalEnvironment;
 import ivory.core.exception.ConfigurationException;
 import ivory.smrf.model.MarkovRandomField;
 import ivory.smrf.model.builder.MRFBuilder;
@@ -23,18 +24,24 @@ import ivory.smrf.model.expander.MRFExpander;
 
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
 import org.apache.log4j.Logger;
+import org.w3c.dom.Node;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Maps;
 
 /**
- * Multi-threaded implementation of class to run queries.
+ * Multi-threaded implementation of class to run queries. Each query builds its own MRF, postings
+ * readers and accumulators, so queries only share the read-only index structures in the
+ * {@link ivory.core.RetrievalEnvironment}. MRFs are either built by a single builder and
+ * expander shared by all threads, which are used by one query at a time, or by a builder and
+ * expander of each thread's own, created from the model specification.
  *
  * @author Don Metzler
  * @author Jimmy Lin
@@ -44,6 +51,8 @@ public class ThreadedQueryRunner implements QueryRunner {
 
   private final MRFBuilder builder;
   private final MRFExpander expander;
+  private final ThreadLocal<MRFBuilder> builders;
+  private final ThreadLocal<MRFExpander> expanders;
   private final ExecutorService threadPool;
   private final Map<String, Future<Accumulator[]>> queryResults = Maps.newLinkedHashMap();
   private final int numHits;
@@ -53,10 +62,76 @@ public class ThreadedQueryRunner implements QueryRunner {
     Preconditions.checkArgument(numHits > 0);
     this.builder = Preconditions.checkNotNull(builder);
     this.expander = expander; // Expander can be null.
+    this.builders = null;
+    this.expanders = null;
     this.threadPool = Executors.newFixedThreadPool(numThreads);
     this.numHits = numHits;
   }
 
+  /**
+   * Creates a runner in which each thread builds and expands MRFs with its own builder and
+   * expander, so that queries don't contend for them.
+   *
+   * @param env retrieval environment
+   * @param modelNode model specification
+   * @param expanderNode expander specification, or {@code null} if there's no expander
+   * @param stopwords stopwords for the expander
+   * @param threadPool threads to run queries on, which may be shared with other runners
+   * @param numHits number of hits to return for each query
+   */
+  public ThreadedQueryRunner(final RetrievalEnvironment env, final Node modelNode,
+      final Node expanderNode, final Set<String> stopwords, ExecutorService threadPool,
+      int numHits) throws ConfigurationException {
+    Preconditions.checkNotNull(env);
+    Preconditions.checkNotNull(modelNode);
+    Preconditions.checkArgument(numHits > 0);
+    this.builder = null;
+    this.expander = null;
+    this.threadPool = Preconditions.checkNotNull(threadPool);
+    this.numHits = numHits;
+
+    this.builders = new ThreadLocal<MRFBuilder>() {
+      @Override
+      protected MRFBuilder initialValue() {
+        try {
+          return MRFBuilder.get(env, cloneNode(modelNode));
+        } catch (ConfigurationException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    };
+    this.expanders = new ThreadLocal<MRFExpander>() {
+      @Override
+      protected MRFExpander initialValue() {
+        if (expanderNode == null) {
+          return null;
+        }
+        try {
+          MRFExpander e = MRFExpander.getExpander(env, cloneNode(expanderNode));
+          if (stopwords != null && stopwords.size() != 0) {
+            e.setStopwordList(stopwords);
+          }
+          return e;
+        } catch (ConfigurationException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    };
+
+    // Check the specifications up front, rather than in the middle of running queries.
+    MRFBuilder.get(env, cloneNode(modelNode));
+    if (expanderNode != null) {
+      MRFExpander.getExpander(env, cloneNode(expanderNode));
+    }
+  }
+
+  // DOM nodes aren't thread-safe, even for reads, so specifications are cloned one at a time.
+  private static Node cloneNode(Node node) {
+    synchronized (node) {
+      return node.cloneNode(true);
+    }
+  }
+
   /**
    * Runs a query asynchronously. Results can be fetched using {@link getResults}.
    */
@@ -64,8 +139,7 @@ public class ThreadedQueryRunner implements QueryRunner {
     Preconditions.checkNotNull(qid);
     Preconditions.checkNotNull(query);
 
-    Future<Accumulator[]> future = threadPool.submit(new ThreadTask(query, builder,
-        expander, qid, numHits));
+    Future<Accumulator[]> future = threadPool.submit(new ThreadTask(query, qid, numHits));
     queryResults.put(qid, future);
   }
 
@@ -75,8 +149,7 @@ public class ThreadedQueryRunner implements QueryRunner {
   public Accumulator[] runQuery(String[] query) {
     Preconditions.checkNotNull(query);
 
-    Future<Accumulator[]> future = threadPool.submit(new ThreadTask(query, builder,
-        expander, "query", numHits));
+    Future<Accumulator[]> future = threadPool.submit(new ThreadTask(query, "query", numHits));
     Accumulator[] results = null;
     try {
       results = future.get();
@@ -126,19 +199,41 @@ public class ThreadedQueryRunner implements QueryRunner {
     return results;
   }
 
+  private MarkovRandomField buildMRF(String[] query) throws ConfigurationException {
+    if (builders != null) {
+      return builders.get().buildMRF(query);
+    }
+
+    // Builders read their XML model specification, and DOM nodes aren't thread-safe, even for
+    // reads.
+    synchronized (builder) {
+      return builder.buildMRF(query);
+    }
+  }
+
+  private MRFExpander getExpander() {
+    return expanders != null ? expanders.get() : expander;
+  }
+
+  private MarkovRandomField expandMRF(MRFExpander expander, MarkovRandomField mrf,
+      Accumulator[] results) throws ConfigurationException {
+    if (expanders != null) {
+      return expander.getExpandedMRF(mrf, results);
+    }
+
+    synchronized (expander) {
+      return expander.getExpandedMRF(mrf, results);
+    }
+  }
+
   // Thread for running a query. No need to expose implementation.
   private class ThreadTask implements Callable<Accumulator[]> {
     private final String[] query;
-    private final MRFBuilder builder;
-    private final MRFExpander expander;
     private final String qid;
     private final int numHits;
 
-    public ThreadTask(String[] query, MRFBuilder builder, MRFExpander expander, String qid,
-        int numHits) {
+    public ThreadTask(String[] query, String qid, int numHits) {
       this.query = query;
-      this.builder = builder;
-      this.expander = expander;
       this.qid = qid;
       this.numHits = numHits;
     }
@@ -151,7 +246,8 @@ public class ThreadedQueryRunner implements QueryRunner {
         startTime = System.currentTimeMillis();
 
         // Build the MRF for this query.
-        MarkovRandomField mrf = builder.buildMRF(query);
+        MarkovRandomField mrf = buildMRF(query);
+        MRFExpander expander = getExpander();
 
         // Retrieve documents using this MRF.
         MRFDocumentRanker ranker = new MRFDocumentRanker(mrf, numHits);
@@ -165,7 +261,7 @@ public class ThreadedQueryRunner implements QueryRunner {
         // Perform pseudo-relevance feedback, if requested.
         if (expander != null) {
           // Get expanded MRF.
-          MarkovRandomField expandedMRF = expander.getExpandedMRF(mrf, results);
+          MarkovRandomField expandedMRF = expandMRF(expander, mrf, results);
 
           // Re-rank documents according to expanded MRF.
           ranker = new MRFDocumentRanker(expandedMRF, numHits);
@@ -0,0 +1,130 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.smrf.retrieval.distributed;
+
+import ivory.smrf.retrieval.Accumulator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Benchmark comparing the size and broker-side decoding cost of the text and
+ * {@link BinaryResults} formats in which retrieval servers return results to the broker.
+ * Results are synthetic, with ClueWeb-style docids.
+ */
+public class BenchmarkResultProtocols {
+  private BenchmarkResultProtocols() {}
+
+  private static byte[] encodeText(Accumulator[] results, String[] docids) throws IOException {
+    // Same as RetrievalServer.QueryBrokerServlet.
+    StringBuffer sb = new StringBuffer();
+    for (int i = 0; i < results.length; i++) {
+      sb.append(results[i].docno + "\t" + results[i].score + "\t" + docids[i] + "\t");
+    }
+    return sb.toString().trim().getBytes("ISO-8859-1");
+  }
+
+  private static byte[] encodeBinary(Accumulator[] results, String[] docids) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    BinaryResults.write(new DataOutputStream(bytes), results, docids);
+    return bytes.toByteArray();
+  }
+
+  // Parses a reply in the text format, a tab-separated list of (docno, score, docid) triples,
+  // as the broker did before the binary format.
+  private static ShardedSearcher.ShardResponse parseText(String text) throws IOException {
+    List<Accumulator> results = Lists.newArrayList();
+    List<String> docids = Lists.newArrayList();
+
+    int len = text.length();
+    int pos = 0;
+    try {
+      while (pos < len) {
+        int t1 = text.indexOf('\t', pos);
+        int t2 = t1 < 0 ? -1 : text.indexOf('\t', t1 + 1);
+        if (t2 < 0) {
+          if (text.substring(pos).trim().length() == 0) {
+            break;
+          }
+          throw new IOException("Malformed response: truncated at offset " + pos);
+        }
+        int t3 = text.indexOf('\t', t2 + 1);
+        if (t3 < 0) {
+          t3 = len;
+        }
+
+        results.add(new Accumulator(Integer.parseInt(text.substring(pos, t1).trim()),
+            Float.parseFloat(text.substring(t1 + 1, t2))));
+        docids.add(text.substring(t2 + 1, t3).trim());
+        pos = t3 + 1;
+      }
+    } catch (NumberFormatException e) {
+      throw new IOException("Malformed response: " + e.getMessage());
+    }
+
+    return new ShardedSearcher.ShardResponse(results.toArray(new Accumulator[results.size()]),
+        docids.toArray(new String[docids.size()]));
+  }
+
+  private static long run(String name, byte[] response, boolean binary, int numTrials)
+      throws IOException {
+    long checksum = 0;
+    long startTime = 0;
+    // The first few trials are for warm-up only.
+    int warmup = numTrials / 10;
+    for (int t = 0; t < warmup + numTrials; t++) {
+      if (t == warmup) {
+        startTime = System.nanoTime();
+      }
+      ShardedSearcher.ShardResponse r = binary
+          ? BinaryResults.read(response)
+          : parseText(new String(response, "ISO-8859-1"));
+      checksum += r.results[r.results.length - 1].docno;
+    }
+    double duration = (System.nanoTime() - startTime) / 1e3 / numTrials;
+
+    System.out.println(String.format("%-30s %8d bytes/query, %8.1f us/query (checksum %d)", name,
+        response.length, duration, checksum));
+    return checksum;
+  }
+
+  public static void main(String[] args) throws IOException {
+    int numHits = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+    int numTrials = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+
+    Random r = new Random(0);
+    Accumulator[] results = new Accumulator[numHits];
+    String[] docids = new String[numHits];
+    float score = -4.0f;
+    for (int i = 0; i < numHits; i++) {
+      score -= r.nextFloat() * 0.01f;
+      results[i] = new Accumulator(r.nextInt(50000000) + 1, score);
+      docids[i] = String.format("clueweb09-en%04d-%02d-%05d", r.nextInt(1500), r.nextInt(100),
+          r.nextInt(50000));
+    }
+
+    System.out.println(numHits + " hits per query:");
+    run("  text", encodeText(results, docids), false, numTrials);
+    run("  binary, with docids", encodeBinary(results, docids), true, numTrials);
+    run("  binary, without docids", encodeBinary(results, null), true, numTrials);
+  }
+}
@@ -0,0 +1,194 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.smrf.retrieval.distributed;
+
+import ivory.smrf.retrieval.Accumulator;
+
+import java.io.DataOutput;
+import java.io.IOException;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>
+ * Binary format in which a {@link RetrievalServer} returns results to the broker, as an
+ * alternative to tab-separated text. A response consists of:
+ * </p>
+ *
+ * <ul>
+ * <li>a version byte;</li>
+ * <li>a flags byte, with bit 0 set if docids are included;</li>
+ * <li>the number of results, as a varint;</li>
+ * <li>for each result, in decreasing order of score: the docno as a varint, the raw bits of the
+ * score as a big-endian float and, if included, the docid: one plus its length in bytes as a
+ * varint, followed by the docid in UTF-8, or a zero varint if the docid is unknown.</li>
+ * </ul>
+ *
+ * <p>
+ * Varints use seven bits per byte, least significant group first, with the high bit set on all
+ * but the last byte. Docids are only included if the broker asks for them, since most queries
+ * only need docnos. Responses are decoded straight from the bytes received, without going
+ * through strings or streams, and truncated or malformed responses are rejected with an
+ * {@link IOException}.
+ * </p>
+ */
+public final class BinaryResults {
+  /**
+   * Version of the format.
+   */
+  public static final byte VERSION = 2;
+
+  private static final int HAS_DOCIDS = 0x1;
+
+  private BinaryResults() {}
+
+  /**
+   * Writes results.
+   *
+   * @param out destination
+   * @param results results, in decreasing order of score
+   * @param docids docid of each result, or {@code null} to leave docids out; unknown docids may be
+   *     {@code null}
+   */
+  public static void write(DataOutput out, Accumulator[] results, String[] docids)
+      throws IOException {
+    Preconditions.checkArgument(docids == null || docids.length == results.length);
+
+    out.writeByte(VERSION);
+    out.writeByte(docids == null ? 0 : HAS_DOCIDS);
+    writeVarint(out, results.length);
+    for (int i = 0; i < results.length; i++) {
+      writeVarint(out, results[i].docno);
+      out.writeFloat(results[i].score);
+      if (docids != null) {
+        if (docids[i] == null) {
+          writeVarint(out, 0);
+        } else {
+          byte[] docid = docids[i].getBytes("UTF-8");
+          writeVarint(out, docid.length + 1);
+          out.write(docid);
+        }
+      }
+    }
+  }
+
+  /**
+   * Reads results written by {@link #write(DataOutput, Accumulator[], String[])}.
+   *
+   * @throws IOException if the response is truncated or malformed
+   */
+  static ShardedSearcher.ShardResponse read(byte[] bytes) throws IOException {
+    Decoder in = new Decoder(bytes);
+    int version = in.readByte();
+    if (version != VERSION) {
+      throw new IOException("Unsupported results format version: " + version);
+    }
+    boolean hasDocids = (in.readByte() & HAS_DOCIDS) != 0;
+
+    int n = in.readVarint();
+    // Each result takes at least five bytes, which bounds the allocation below.
+    if (n > in.remaining() / 5) {
+      throw new IOException("Malformed response: " + n + " results in " + bytes.length + " bytes");
+    }
+
+    Accumulator[] results = new Accumulator[n];
+    String[] docids = hasDocids ? new String[n] : null;
+    for (int i = 0; i < n; i++) {
+      int docno = in.readVarint();
+      results[i] = new Accumulator(docno, in.readFloat());
+      if (hasDocids) {
+        docids[i] = in.readString();
+      }
+    }
+
+    if (in.remaining() != 0) {
+      throw new IOException("Malformed response: " + in.remaining() + " trailing bytes");
+    }
+    return new ShardedSearcher.ShardResponse(results, docids);
+  }
+
+  // Decodes the fields of a response, checking that each lies within the bytes received.
+  private static class Decoder {
+    private final byte[] bytes;
+    private int pos = 0;
+
+    Decoder(byte[] bytes) {
+      this.bytes = bytes;
+    }
+
+    int remaining() {
+      return bytes.length - pos;
+    }
+
+    private void require(int n) throws IOException {
+      if (bytes.length - pos < n) {
+        throw new IOException(String.format(
+            "Malformed response: truncated at offset %d of %d", pos, bytes.length));
+      }
+    }
+
+    int readByte() throws IOException {
+      require(1);
+      return bytes[pos++];
+    }
+
+    int readVarint() throws IOException {
+      int value = 0;
+      for (int shift = 0; shift < 35; shift += 7) {
+        require(1);
+        byte b = bytes[pos++];
+        value |= (b & 0x7f) << shift;
+        if (b >= 0) {
+          if (value < 0) {
+            throw new IOException("Malformed response: negative varint at offset " + pos);
+          }
+          return value;
+        }
+      }
+      throw new IOException("Malformed response: varint too long at offset " + pos);
+    }
+
+    float readFloat() throws IOException {
+      require(4);
+      int bits = ((bytes[pos] & 0xff) << 24) | ((bytes[pos + 1] & 0xff) << 16)
+          | ((bytes[pos + 2] & 0xff) << 8) | (bytes[pos + 3] & 0xff);
+      pos += 4;
+      return Float.intBitsToFloat(bits);
+    }
+
+    // Reads a docid, stored as its length plus one, zero standing for a missing docid.
+    String readString() throws IOException {
+      int len = readVarint();
+      if (len == 0) {
+        return null;
+      }
+      len--;
+      require(len);
+      String s = new String(bytes, pos, len, "UTF-8");
+      pos += len;
+      return s;
+    }
+  }
+
+  private static void writeVarint(DataOutput out, int value) throws IOException {
+    while ((value & ~0x7f) != 0) {
+      out.writeByte((value & 0x7f) | 0x80);
+      value >>>= 7;
+    }
+    out.writeByte(value);
+  }
+}
@@ -17,7 +17,11 @@
 package ivory.smrf.retrieval.distributed;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLConnection;
 
@@ -47,4 +51,61 @@ public class HttpUtils {
 		}
 		return null;
 	}
+
+	/**
+	 * Fetches a URL over a keep-alive connection and returns the raw bytes of the response. The
+	 * response is always read to the end and the stream closed, even on errors, so that the
+	 * underlying connection goes back to the JDK's connection pool and can be reused by later
+	 * requests to the same server.
+	 *
+	 * @param url URL to fetch
+	 * @param timeout connect and read timeout, in milliseconds
+	 * @return body of the response
+	 * @throws IOException if the request fails or the server returns an error
+	 */
+	public static byte[] fetchBytes(URL url, int timeout) throws IOException {
+		return fetch(openConnection(url, timeout));
+	}
+
+	private static HttpURLConnection openConnection(URL url, int timeout) throws IOException {
+		HttpURLConnection con = (HttpURLConnection) url.openConnection();
+		con.setConnectTimeout(timeout);
+		con.setReadTimeout(timeout);
+		con.setRequestProperty("Connection", "keep-alive");
+		return con;
+	}
+
+	private static byte[] fetch(HttpURLConnection con) throws IOException {
+		InputStream in = null;
+		try {
+			in = con.getInputStream();
+			return readFully(in, con.getContentLength());
+		} catch (IOException e) {
+			// Drain the error stream, otherwise the connection can't be reused.
+			InputStream err = con.getErrorStream();
+			if (err != null) {
+				try {
+					readFully(err, -1);
+				} catch (IOException ignored) {
+				} finally {
+					err.close();
+				}
+			}
+			throw e;
+		} finally {
+			if (in != null) {
+				in.close();
+			}
+		}
+	}
+
+	private static byte[] readFully(InputStream in, int length) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(length > 0 ? length : 8192);
+		byte[] buf = new byte[8192];
+		int n;
+		while ((n = in.read(buf)) != -1) {
+			bytes.write(buf, 0, n);
+		}
+		return bytes.toByteArray();
+	}
 }
@@ -17,6 +17,7 @@
 package ivory.smrf.retrieval.distributed;
 
 import ivory.core.RetrievalEnvironment;
+import ivory.core.data.index.PostingsCache;
 import ivory.core.util.XMLTools;
 import ivory.smrf.model.builder.MRFBuilder;
 import ivory.smrf.model.importance.ConceptImportanceModel;
@@ -24,7 +25,10 @@ import ivory.smrf.retrieval.Accumulator;
 import ivory.smrf.retrieval.QueryRunner;
 import ivory.smrf.retrieval.ThreadedQueryRunner;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 
 import javax.servlet.ServletException;
@@ -207,7 +211,19 @@ public class RetrievalServer {
 			// replicate results...
 			//mQueryRunner = new ThreadedQueryRunner(builder, null, 1, 2000);
 			int hits = Integer.parseInt(XMLTools.getAttributeValue(modelNode, "hits", 2000+""));
-			mQueryRunner = new ThreadedQueryRunner(builder, null, 1, hits);
+
+			// Number of queries evaluated concurrently, by default one per core. Queries share the
+			// index, but otherwise have their own state.
+			int threads = XMLTools.getAttributeValue(modelNode, "threads",
+					Runtime.getRuntime().availableProcessors());
+			sLogger.info(" - query threads: " + threads);
+
+			// Size of the cache of frequently-used postings, in MB.
+			int cacheSize = XMLTools.getAttributeValue(modelNode, "postingscache",
+					(int) (PostingsCache.DEFAULT_CAPACITY / (1024 * 1024)));
+			sLogger.info(" - postings cache (MB): " + cacheSize);
+			mEnv.setPostingsCacheSize(cacheSize * 1024L * 1024L);
+			mQueryRunner = new ThreadedQueryRunner(builder, null, threads, hits);
 
 			// load docno/docid mapping
 			try {
@@ -356,6 +372,7 @@ public class RetrievalServer {
 			long endTime = System.currentTimeMillis();
 
 			sLogger.info("query execution time (ms): " + (endTime - startTime));
+			sLogger.info("postings cache: " + mEnv.getPostingsCache());
 
 			StringBuffer sb = new StringBuffer();
 			sb.append("<html><head><title>Server Results</title></head>\n<body>");
@@ -381,6 +398,9 @@ public class RetrievalServer {
 
 		public static final String ACTION = "/BrokerQuery";
 		public static final String QUERY_FIELD = "query";
+		public static final String FORMAT_FIELD = "format";
+		public static final String DOCIDS_FIELD = "docids";
+		public static final String BINARY_FORMAT = "binary";
 
 		private QueryRunner mQueryRunner = null;
 		private RetrievalEnvironment mEnv = null;
@@ -417,6 +437,28 @@ public class RetrievalServer {
 			long endTime = System.currentTimeMillis();
 
 			sLogger.info("query execution time (ms): " + (endTime - startTime));
+			sLogger.info("postings cache: " + mEnv.getPostingsCache());
+
+			if (BINARY_FORMAT.equals(req.getParameter(FORMAT_FIELD))) {
+				String[] docids = null;
+				if (Boolean.parseBoolean(req.getParameter(DOCIDS_FIELD))) {
+					docids = new String[results.length];
+					for (int i = 0; i < results.length; i++) {
+						docids[i] = mDocnoMapping.getDocid(results[i].docno);
+					}
+				}
+
+				// Buffer the response so that it goes out with a content length rather than chunked.
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream(results.length * 6 + 8);
+				BinaryResults.write(new DataOutputStream(bytes), results, docids);
+
+				res.setContentType("application/octet-stream");
+				res.setContentLength(bytes.size());
+				OutputStream out = res.getOutputStream();
+				bytes.writeTo(out);
+				out.close();
+				return;
+			}
 
 			StringBuffer sb = new StringBuffer();
 			for (Accumulator a : results) {
@@ -21,10 +21,9 @@ import ivory.smrf.retrieval.Accumulator;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.net.InetAddress;
-import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
@@ -59,7 +58,8 @@ public class RunRetrievalBroker extends Configured implements Tool {
 
 	private static final Logger sLogger = Logger.getLogger(RunRetrievalBroker.class);
 
-	private static Map<Integer, Integer> docnoToServerMapping = new HashMap<Integer, Integer>();
+	private static Map<Integer, Integer> docnoToServerMapping =
+			new ConcurrentHashMap<Integer, Integer>();
 
 	private static class ServerMapper extends NullMapper {
 
@@ -112,12 +112,17 @@ public class RunRetrievalBroker extends Configured implements Tool {
 				serverAddresses[i] = FSProperty.readString(fs, fname);
 			}
 
+			int timeout = conf.getInt("Ivory.BrokerTimeout", ShardedSearcher.DEFAULT_TIMEOUT);
+			int hedgeDelay = conf.getInt("Ivory.BrokerHedgeDelay", ShardedSearcher.DEFAULT_HEDGE_DELAY);
+			sLogger.info("Timeout: " + timeout + " ms, hedge delay: " + hedgeDelay + " ms");
+			ShardedSearcher searcher = new ShardedSearcher(serverAddresses, timeout, hedgeDelay);
+
 			Server server = new Server(port);
 			Context root = new Context(server, "/", Context.SESSIONS);
 
-			root.addServlet(new ServletHolder(new QueryServlet(serverAddresses,
+			root.addServlet(new ServletHolder(new QueryServlet(searcher,
 					docnoToServerMapping, scoreMergeModel)), QueryServlet.ACTION);
-			root.addServlet(new ServletHolder(new PlainTextQueryServlet(serverAddresses,
+			root.addServlet(new ServletHolder(new PlainTextQueryServlet(searcher,
 					docnoToServerMapping, scoreMergeModel)), PlainTextQueryServlet.ACTION);
 			root.addServlet(new ServletHolder(new BrokerFetchServlet(serverAddresses,
 					docnoToServerMapping)), BrokerFetchServlet.ACTION);
@@ -251,12 +256,15 @@ public class RunRetrievalBroker extends Configured implements Tool {
 		public static final String ACTION = "/search";
 		public static final String QUERY_FIELD = "query";
 
-		private String[] serverAddresses;
+		// Maximum number of merged results to return.
+		public static final int MAX_RESULTS = 10000;
+
+		private ShardedSearcher searcher;
 		private Map<Integer, Integer> docnoToServerMapping = null;
 		private String scoreMergeModel = "";
 
-		public QueryServlet(String[] addresses, Map<Integer, Integer> mapping, String model) {
-			serverAddresses = addresses;
+		public QueryServlet(ShardedSearcher searcher, Map<Integer, Integer> mapping, String model) {
+			this.searcher = searcher;
 			docnoToServerMapping = mapping;
 			scoreMergeModel = model;
 		}
@@ -277,43 +285,20 @@ public class RunRetrievalBroker extends Configured implements Tool {
 				query = req.getParameterValues("query")[0];
 
 			sLogger.info("Raw query: " + query);
-
-			long startTime = System.currentTimeMillis();
-			ServerThread[] servers = new ServerThread[serverAddresses.length];
-			Thread[] threads = new Thread[serverAddresses.length];
-			for (int i = 0; i < serverAddresses.length; i++) {
-				servers[i] = new ServerThread(serverAddresses[i], query);
-				threads[i] = new Thread(servers[i]);
-				threads[i].start();
-			}
-			try {
-				for (Thread thread : threads) {
-					thread.join();
-				}
-				sLogger.info("All servers: done.");
-			} catch (InterruptedException e) {
-				e.printStackTrace();
-			}
-
 			sLogger.info("Score merging model: " + scoreMergeModel);
 
-			Accumulator[] results = new Accumulator[0];
-			for (int i = 0; i < servers.length; i++) {
-				Accumulator[] serverResults = null;
-				if (scoreMergeModel.equals("sort")) {
-					serverResults = servers[i].getResults();
-				} else {
-					serverResults = servers[i].getZNormalizedResults();
-				}
-
-				if (docnoToServerMapping != null) {
-					for (Accumulator a : serverResults)
-						docnoToServerMapping.put(a.docno, i);
-				}
-				results = mergeScores(results, serverResults);
+			long startTime = System.currentTimeMillis();
+			ShardedSearcher.Results results = searcher.search(query == null ? "" : query,
+					MAX_RESULTS, scoreMergeModel.equals("normalize"), needsDocids());
+			sLogger.info("Servers replied: " + results.getNumShardsResponded() + " of "
+					+ searcher.getNumShards());
+
+			if (docnoToServerMapping != null) {
+				for (Accumulator a : results.getResults())
+					docnoToServerMapping.put(a.docno, results.getShard(a.docno));
 			}
 
-			String formattedOutput = getFormattedResults(results, servers);
+			String formattedOutput = getFormattedResults(results);
 			long endTime = System.currentTimeMillis();
 			sLogger.info("query execution time (ms): " + (endTime - startTime));
 
@@ -321,12 +306,20 @@ public class RunRetrievalBroker extends Configured implements Tool {
 			out.close();
 		}
 
-		protected String getFormattedResults(Accumulator[] results, ServerThread[] servers) {
+		/**
+		 * Returns whether or not the output includes docids, which then need to be fetched from the
+		 * servers.
+		 */
+		protected boolean needsDocids() {
+			return false;
+		}
+
+		protected String getFormattedResults(ShardedSearcher.Results results) {
 			StringBuffer sb = new StringBuffer();
 			sb.append("<html><head><title>Threaded Broker Results</title></head>\n<body>");
 
 			sb.append("<ol>");
-			for (Accumulator a : results) {
+			for (Accumulator a : results.getResults()) {
 				sb.append("<li>docno <a href=" + BrokerFetchServlet.formatRequestURL(a.docno) + ">"
 						+ a.docno + "</a> (" + a.score + ")</li>\n");
 			}
@@ -335,224 +328,32 @@ public class RunRetrievalBroker extends Configured implements Tool {
 
 			return sb.toString();
 		}
-
-		private Accumulator[] mergeScores(Accumulator[] iScores, Accumulator[] jScores) {
-			// assuming that scored documents are mutual exclusive
-			Accumulator[] results = new Accumulator[iScores.length + jScores.length];
-			int i = 0, j = 0, k = 0;
-			while (i < iScores.length && j < jScores.length) {
-				if (iScores[i].score > jScores[j].score) {
-					results[k] = iScores[i];
-					i++;
-				} else {
-					results[k] = jScores[j];
-					j++;
-				}
-				k++;
-			}
-			while (i < iScores.length) {
-				results[k] = iScores[i];
-				i++;
-				k++;
-			}
-
-			while (j < jScores.length) {
-				results[k] = jScores[j];
-				j++;
-				k++;
-			}
-
-			return results;
-		}
-
-		protected static class ServerThread implements Runnable {
-
-			String address;
-			String query;
-			String textResults = null;
-			HashMap<Integer, String> docnoMapping = new HashMap<Integer, String>();
-
-			public ServerThread() {
-			}
-
-			public ServerThread(String addr, String q) {
-				address = addr;
-				query = q;
-			}
-
-			public void set(String addr, String q) {
-				address = addr;
-				query = q;
-			}
-
-			public String getOriginalDocid(int docno) {
-				return docnoMapping.get(docno);
-			}
-
-			public String getTextResults() {
-				return textResults;
-			}
-
-			public Accumulator[] getZNormalizedResults() {
-				float sum = 0, sumSq = 0;
-				if (textResults == null)
-					return null;
-				String[] lines = textResults.split("\t");
-				Accumulator[] results = new Accumulator[lines.length / 3];
-				int i = 0;
-				int j = 0;
-				while (i < lines.length) {
-					int docid = -1;
-					try {
-						docid = Integer.parseInt(lines[i]);
-					} catch (NumberFormatException e) {
-						i++;
-						continue;
-					}
-					i++;
-					float score = Float.parseFloat(lines[i]);
-					sum += score;
-					sumSq += score * score;
-					i++;
-					String originalDocID = lines[i];
-					docnoMapping.put(new Integer(docid), originalDocID);
-					i++;
-					results[j] = new Accumulator(docid, score);
-					j++;
-
-				}
-				int n = results.length;
-				float muo = sum / n;
-				float sigma = (float) Math.sqrt((sumSq - n * muo * muo) / (n - 1));
-
-				for (Accumulator a : results) {
-					a.score = (a.score - muo) / sigma;
-				}
-				sLogger.info("returning z-normalized scores.");
-				return results;
-			}
-
-			public Accumulator[] getMaxMinNormalizedResults() {
-				float min = Float.MAX_VALUE, max = Float.MIN_VALUE;
-				if (textResults == null)
-					return null;
-				String[] lines = textResults.split("\t");
-				Accumulator[] results = new Accumulator[lines.length / 3];
-				int i = 0;
-				int j = 0;
-				while (i < lines.length) {
-					int docid = -1;
-					try {
-						docid = Integer.parseInt(lines[i]);
-					} catch (NumberFormatException e) {
-						i++;
-						continue;
-					}
-					i++;
-					float score = Float.parseFloat(lines[i]);
-					if (score > max)
-						max = score;
-					else if (score < min)
-						min = score;
-					i++;
-					String originalDocID = lines[i];
-					docnoMapping.put(new Integer(docid), originalDocID);
-					i++;
-					results[j] = new Accumulator(docid, score);
-					j++;
-
-				}
-				float d = max - min;
-				for (Accumulator a : results) {
-					a.score = (a.score - min) / d;
-				}
-				sLogger.info("returning max/min normalized scores.");
-				return results;
-			}
-
-			public Accumulator[] getResults() {
-				if (textResults == null)
-					return null;
-				String[] lines = textResults.split("\t");
-				Accumulator[] results = new Accumulator[lines.length / 3];
-				int i = 0;
-				int j = 0;
-				while (i < lines.length) {
-					int docid = -1;
-					try {
-						docid = Integer.parseInt(lines[i]);
-					} catch (NumberFormatException e) {
-						i++;
-						continue;
-					}
-					i++;
-					float score = Float.parseFloat(lines[i]);
-					i++;
-					String originalDocID = lines[i];
-					docnoMapping.put(new Integer(docid), originalDocID);
-					i++;
-					results[j] = new Accumulator(docid, score);
-					j++;
-				}
-				sLogger.info("returning original scores.");
-				return results;
-			}
-
-			public void run() {
-				try {
-					String url = "http://" + address + RetrievalServer.QueryBrokerServlet.ACTION
-							+ "?" + RetrievalServer.QueryBrokerServlet.QUERY_FIELD + "="
-							+ query.replaceAll(" ", "+");
-
-					sLogger.info("fetching " + url);
-
-					textResults = HttpUtils.fetchURL(new URL(url));
-					sLogger.info(Thread.currentThread().getName() + "-" + address + ": done.");
-					docnoMapping.clear();
-				} catch (MalformedURLException e) {
-					e.printStackTrace();
-				}
-			}
-
-		}
-
 	}
 
 	public static class PlainTextQueryServlet extends QueryServlet {
 		private static final long serialVersionUID = -5998786589277554554L;
 		public static final String ACTION = "/psearch";
 
-		public PlainTextQueryServlet(String[] addresses, Map<Integer, Integer> mapping, String model) {
-			super(addresses, mapping, model);
+		public PlainTextQueryServlet(ShardedSearcher searcher, Map<Integer, Integer> mapping,
+				String model) {
+			super(searcher, mapping, model);
+		}
+
+		protected boolean needsDocids() {
+			return true;
 		}
 
-		protected String getFormattedResults(Accumulator[] results, ServerThread[] servers) {
+		protected String getFormattedResults(ShardedSearcher.Results results) {
 			StringBuffer sb = new StringBuffer();
-			int k = 0;
-			for (Accumulator a : results) {
-				String origDocID = getOriginalDocID(a.docno, servers);
+			for (Accumulator a : results.getResults()) {
+				String origDocID = results.getDocid(a.docno);
 				if (origDocID == null) {
 					sLogger.info("Docno not found in all servers: " + a.docno + " !!");
 				}
 				sb.append(a.docno + "\t" + a.score + "\t" + origDocID + "\n");
-				k++;
-				//if (k >= 2000)
-				if (k >= 10000)
-					break;
 			}
 			return sb.toString();
 		}
-
-		private String getOriginalDocID(int docno, ServerThread[] servers) {
-			String s = "";
-			for (ServerThread server : servers) {
-				s = server.getOriginalDocid(docno);
-				if (s != null)
-					return s;
-			}
-			return null;
-		}
-
 	}
 
 	public static class HomeServlet extends HttpServlet {
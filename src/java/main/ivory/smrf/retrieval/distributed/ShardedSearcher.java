@@ -0,0 +1,374 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.smrf.retrieval.distributed;
+
+import ivory.smrf.retrieval.Accumulator;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+
+/**
+ * <p>
+ * Runs queries against a set of retrieval servers, each serving one shard of the collection.
+ * Requests go out to all shards at once from a shared thread pool, over keep-alive connections
+ * (see {@link HttpUtils#fetchBytes(URL, int)}), and each shard's results, in the format of
+ * {@link BinaryResults}, are merged into a bounded top-<i>k</i> heap as soon as they arrive.
+ * </p>
+ *
+ * <p>
+ * Only the binary format is spoken: requests ask for <code>format=binary</code>, and replies are
+ * decoded as {@link BinaryResults}. Retrieval servers that only return the older tab-separated
+ * text format cannot be queried, and all their requests fail.
+ * </p>
+ *
+ * <p>
+ * Every query has a deadline: shards that have not replied by then are left out of the results,
+ * so that a single slow or dead shard cannot hold up the whole query. If a shard has not replied
+ * within the hedge delay, or its request fails, a second request is sent to it, and whichever
+ * reply arrives first is used.
+ * </p>
+ *
+ * <p>
+ * Instances are thread-safe, and are meant to be shared by all requests to the broker.
+ * </p>
+ */
+public class ShardedSearcher {
+  private static final Logger LOG = Logger.getLogger(ShardedSearcher.class);
+
+  /**
+   * Default per-query deadline, in milliseconds.
+   */
+  public static final int DEFAULT_TIMEOUT = 10000;
+
+  /**
+   * Default delay before a request to a slow shard is hedged, in milliseconds.
+   */
+  public static final int DEFAULT_HEDGE_DELAY = 1000;
+
+  static {
+    // The JDK keeps at most five idle keep-alive connections per server by default, which is
+    // too few for a busy broker.
+    if (System.getProperty("http.maxConnections") == null) {
+      System.setProperty("http.maxConnections", "64");
+    }
+  }
+
+  private final String[] addresses;
+  private final int timeout;
+  private final int hedgeDelay;
+  private final ExecutorService executor;
+
+  /**
+   * Creates a searcher over the given retrieval servers.
+   *
+   * @param addresses host:port of each retrieval server
+   * @param timeout per-query deadline, in milliseconds
+   * @param hedgeDelay delay before a request to a slow shard is hedged, in milliseconds
+   */
+  public ShardedSearcher(String[] addresses, int timeout, int hedgeDelay) {
+    Preconditions.checkNotNull(addresses);
+    Preconditions.checkArgument(addresses.length > 0);
+    Preconditions.checkArgument(timeout > 0 && hedgeDelay > 0);
+
+    this.addresses = addresses;
+    this.timeout = timeout;
+    this.hedgeDelay = hedgeDelay;
+    this.executor = Executors.newCachedThreadPool(new ThreadFactory() {
+      private final AtomicInteger count = new AtomicInteger();
+
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "shard-fetcher-" + count.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+      }
+    });
+  }
+
+  /**
+   * Returns the number of shards.
+   */
+  public int getNumShards() {
+    return addresses.length;
+  }
+
+  /**
+   * Stops all fetcher threads.
+   */
+  public void close() {
+    executor.shutdownNow();
+  }
+
+  /**
+   * Runs a query against all shards and merges the results.
+   *
+   * @param query raw query text
+   * @param numResults number of results to return
+   * @param normalize whether or not to z-normalize the scores of each shard before merging
+   * @param withDocids whether or not to fetch the docids of the results
+   * @return merged results of the shards that replied before the deadline
+   */
+  public Results search(final String query, int numResults, final boolean normalize,
+      final boolean withDocids) {
+    Preconditions.checkNotNull(query);
+    Preconditions.checkArgument(numResults > 0);
+
+    long startTime = System.nanoTime();
+    long deadline = startTime + TimeUnit.MILLISECONDS.toNanos(timeout);
+    long hedgeTime = startTime + TimeUnit.MILLISECONDS.toNanos(hedgeDelay);
+
+    int numShards = addresses.length;
+    CompletionService<ShardResponse> completionService =
+        new ExecutorCompletionService<ShardResponse>(executor);
+    Map<Future<ShardResponse>, Integer> requests = Maps.newHashMap();
+
+    // Per-shard state: outstanding requests, whether the shard is done (replied or given up on),
+    // and whether a second request has already been sent.
+    int[] pending = new int[numShards];
+    boolean[] done = new boolean[numShards];
+    boolean[] hedged = new boolean[numShards];
+
+    for (int i = 0; i < numShards; i++) {
+      submit(completionService, requests, i, query, normalize, withDocids);
+      pending[i]++;
+    }
+
+    PriorityQueue<Accumulator> top = new PriorityQueue<Accumulator>(numResults + 1);
+    Map<Integer, String> docids = Maps.newHashMap();
+    Map<Integer, Integer> shards = Maps.newHashMap();
+
+    int numDone = 0;
+    int numResponded = 0;
+    boolean hedgesSent = false;
+    while (numDone < numShards) {
+      long now = System.nanoTime();
+      if (now >= deadline) {
+        break;
+      }
+
+      if (!hedgesSent && now >= hedgeTime) {
+        for (int i = 0; i < numShards; i++) {
+          if (!done[i] && !hedged[i]) {
+            LOG.info("Hedging request to slow shard " + addresses[i]);
+            submit(completionService, requests, i, query, normalize, withDocids);
+            pending[i]++;
+            hedged[i] = true;
+          }
+        }
+        hedgesSent = true;
+      }
+
+      Future<ShardResponse> future;
+      try {
+        future = completionService.poll((hedgesSent ? deadline : Math.min(deadline, hedgeTime))
+            - now, TimeUnit.NANOSECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+      if (future == null) {
+        continue;
+      }
+
+      int shard = requests.get(future);
+      pending[shard]--;
+      if (done[shard]) {
+        // Loser of a hedged pair.
+        continue;
+      }
+
+      try {
+        ShardResponse response = future.get();
+        for (int i = 0; i < response.results.length; i++) {
+          Accumulator a = response.results[i];
+          if (top.size() == numResults) {
+            if (a.score < top.peek().score) {
+              // Results from a shard are sorted, so none of the rest can make it either.
+              break;
+            }
+            if (a.compareTo(top.peek()) <= 0) {
+              continue;
+            }
+          }
+          top.add(a);
+          if (response.docids != null) {
+            docids.put(a.docno, response.docids[i]);
+          }
+          shards.put(a.docno, shard);
+          if (top.size() > numResults) {
+            top.poll();
+          }
+        }
+        done[shard] = true;
+        numDone++;
+        numResponded++;
+      } catch (ExecutionException e) {
+        LOG.warn("Request to shard " + addresses[shard] + " failed: " + e.getCause());
+        if (!hedged[shard]) {
+          submit(completionService, requests, shard, query, normalize, withDocids);
+          pending[shard]++;
+          hedged[shard] = true;
+        } else if (pending[shard] == 0) {
+          done[shard] = true;
+          numDone++;
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+    }
+
+    // Abandon outstanding requests.
+    for (Future<ShardResponse> future : requests.keySet()) {
+      future.cancel(true);
+    }
+
+    if (numResponded < numShards) {
+      LOG.warn(String.format("Only %d of %d shards replied in time", numResponded, numShards));
+    }
+
+    Accumulator[] results = new Accumulator[top.size()];
+    for (int i = results.length - 1; i >= 0; i--) {
+      results[i] = top.poll();
+    }
+
+    return new Results(results, docids, shards, numResponded);
+  }
+
+  private void submit(CompletionService<ShardResponse> completionService,
+      Map<Future<ShardResponse>, Integer> requests, final int shard, final String query,
+      final boolean normalize, final boolean withDocids) {
+    Future<ShardResponse> future = completionService.submit(new Callable<ShardResponse>() {
+      public ShardResponse call() throws Exception {
+        ShardResponse response = fetch(shard, query, withDocids);
+        if (normalize) {
+          zNormalize(response.results);
+        }
+        return response;
+      }
+    });
+    requests.put(future, shard);
+  }
+
+  // Fetches the results of a shard. Package-private so that tests can stand in for servers.
+  ShardResponse fetch(int shard, String query, boolean withDocids) throws IOException {
+    URL url = new URL("http://" + addresses[shard] + RetrievalServer.QueryBrokerServlet.ACTION
+        + "?" + RetrievalServer.QueryBrokerServlet.QUERY_FIELD + "="
+        + URLEncoder.encode(query, "UTF-8") + "&" + RetrievalServer.QueryBrokerServlet.FORMAT_FIELD
+        + "=" + RetrievalServer.QueryBrokerServlet.BINARY_FORMAT + "&"
+        + RetrievalServer.QueryBrokerServlet.DOCIDS_FIELD + "=" + withDocids);
+
+    return BinaryResults.read(HttpUtils.fetchBytes(url, timeout));
+  }
+
+  private static void zNormalize(Accumulator[] results) {
+    int n = results.length;
+    if (n == 0) {
+      return;
+    }
+
+    float sum = 0, sumSq = 0;
+    for (Accumulator a : results) {
+      sum += a.score;
+      sumSq += a.score * a.score;
+    }
+    float mu = sum / n;
+    float sigma = n > 1 ? (float) Math.sqrt((sumSq - n * mu * mu) / (n - 1)) : 0.0f;
+    if (!(sigma > 0.0f)) {
+      sigma = 1.0f;
+    }
+
+    for (Accumulator a : results) {
+      a.score = (a.score - mu) / sigma;
+    }
+  }
+
+  // Results returned by a single shard, in decreasing order of score.
+  static class ShardResponse {
+    final Accumulator[] results;
+    final String[] docids; // Null if docids weren't requested.
+
+    ShardResponse(Accumulator[] results, String[] docids) {
+      this.results = results;
+      this.docids = docids;
+    }
+  }
+
+  /**
+   * Merged results of a query.
+   */
+  public static class Results {
+    private final Accumulator[] results;
+    private final Map<Integer, String> docids;
+    private final Map<Integer, Integer> shards;
+    private final int numShardsResponded;
+
+    private Results(Accumulator[] results, Map<Integer, String> docids,
+        Map<Integer, Integer> shards, int numShardsResponded) {
+      this.results = results;
+      this.docids = docids;
+      this.shards = shards;
+      this.numShardsResponded = numShardsResponded;
+    }
+
+    /**
+     * Returns the merged results, in decreasing order of score.
+     */
+    public Accumulator[] getResults() {
+      return results;
+    }
+
+    /**
+     * Returns the docid of a result, or {@code null} if no shard returned the docno.
+     */
+    public String getDocid(int docno) {
+      return docids.get(docno);
+    }
+
+    /**
+     * Returns the index of the shard a result came from, or -1 if no shard returned the docno.
+     */
+    public int getShard(int docno) {
+      Integer shard = shards.get(docno);
+      return shard == null ? -1 : shard;
+    }
+
+    /**
+     * Returns the number of shards that replied before the deadline.
+     */
+    public int getNumShardsResponded() {
+      return numShardsResponded;
+    }
+  }
+}
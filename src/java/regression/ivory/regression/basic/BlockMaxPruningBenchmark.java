@@ -0,0 +1,116 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.regression.basic;
+
+import ivory.core.RetrievalEnvironment;
+import ivory.core.util.XMLTools;
+import ivory.smrf.model.MarkovRandomField;
+import ivory.smrf.model.builder.MRFBuilder;
+import ivory.smrf.retrieval.Accumulator;
+import ivory.smrf.retrieval.BatchQueryRunner;
+import ivory.smrf.retrieval.MRFDocumentRanker;
+
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.w3c.dom.Node;
+
+/**
+ * Runs every model and query of a batch run twice, with and without block-max pruning in
+ * {@link MRFDocumentRanker}, checks that both produce exactly the same rankings, and reports the
+ * query evaluation times. Takes the same arguments as {@link BatchQueryRunner}, e.g.,
+ * <code>data/gov2/run.gov2.basic.xml data/gov2/gov2.title.701-775
+ * data/gov2/gov2.title.776-850</code>.
+ */
+public class BlockMaxPruningBenchmark {
+  private static final int NUM_TRIALS = 3;
+
+  private BlockMaxPruningBenchmark() {}
+
+  private static Accumulator[] rank(MRFBuilder builder, String[] queryTokens, int numHits,
+      boolean pruning) throws Exception {
+    MarkovRandomField mrf = builder.buildMRF(queryTokens);
+    MRFDocumentRanker ranker = new MRFDocumentRanker(mrf, numHits);
+    ranker.setBlockMaxPruning(pruning);
+    return ranker.rank();
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 2) {
+      System.out.println("usage: [run-xml] [query-xml]...");
+      System.exit(-1);
+    }
+
+    FileSystem fs = FileSystem.getLocal(new Configuration());
+    BatchQueryRunner qr = new BatchQueryRunner(args, fs);
+    RetrievalEnvironment env = qr.getRetrievalEnvironment();
+    Map<String, String> queries = qr.getQueries();
+
+    boolean identical = true;
+    for (String modelID : qr.getModels()) {
+      Node modelNode = qr.getModel(modelID);
+      MRFBuilder builder = MRFBuilder.get(env, modelNode.cloneNode(true));
+      int numHits = XMLTools.getAttributeValue(modelNode, "hits", 1000);
+
+      // The first trial is for warm-up only, and is where results are compared.
+      long[] times = new long[2];
+      for (int t = 0; t <= NUM_TRIALS; t++) {
+        for (String queryID : queries.keySet()) {
+          String[] queryTokens = env.tokenize(queries.get(queryID));
+
+          long start = System.nanoTime();
+          Accumulator[] exhaustive = rank(builder, queryTokens, numHits, false);
+          long mid = System.nanoTime();
+          Accumulator[] pruned = rank(builder, queryTokens, numHits, true);
+          long end = System.nanoTime();
+
+          if (t == 0) {
+            if (!sameResults(exhaustive, pruned)) {
+              System.out.println(String.format("%s, query %s: rankings differ!", modelID,
+                  queryID));
+              identical = false;
+            }
+          } else {
+            times[0] += mid - start;
+            times[1] += end - mid;
+          }
+        }
+      }
+
+      System.out.println(String.format("%-20s exhaustive: %8.1f ms, block-max: %8.1f ms, "
+          + "speedup: %.2fx", modelID, times[0] / 1e6 / NUM_TRIALS, times[1] / 1e6 / NUM_TRIALS,
+          (double) times[0] / times[1]));
+    }
+
+    if (!identical) {
+      System.exit(1);
+    }
+  }
+
+  private static boolean sameResults(Accumulator[] a, Accumulator[] b) {
+    if (a.length != b.length) {
+      return false;
+    }
+    for (int i = 0; i < a.length; i++) {
+      if (a[i].docno != b[i].docno || a[i].score != b[i].score) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
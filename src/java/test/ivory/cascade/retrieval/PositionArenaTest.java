@@ -0,0 +1,152 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.cascade.retrieval;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+public class PositionArenaTest {
+
+  private static int[] randomPositions(Random r) {
+    int[] positions = new int[1 + r.nextInt(8)];
+    int pos = r.nextInt(5);
+    for (int i = 0; i < positions.length; i++) {
+      positions[i] = pos;
+      pos += 1 + r.nextInt(6);
+    }
+    return positions;
+  }
+
+  // Straightforward count over the merged positions of both terms.
+  private static int countMatches(int[] positions1, int[] positions2, int window, boolean ordered) {
+    int n = positions1.length + positions2.length;
+    int[] positions = new int[n];
+    int[] ids = new int[n];
+    int a = 0;
+    int b = 0;
+    for (int i = 0; i < n; i++) {
+      if (b == positions2.length || a < positions1.length && positions1[a] <= positions2[b]) {
+        positions[i] = positions1[a++];
+      } else {
+        positions[i] = positions2[b++];
+        ids[i] = 1;
+      }
+    }
+
+    int matches = 0;
+    for (int i = 0; i < n; i++) {
+      for (int j = i + 1; j < n; j++) {
+        if (ids[j] == ids[i]) {
+          if (!ordered && positions[j] - positions[i] + 1 > window) {
+            break;
+          }
+          continue;
+        }
+        if (ordered) {
+          if (ids[j] > ids[i] && positions[j] - positions[i] <= window) {
+            matches++;
+          }
+        } else if (positions[j] - positions[i] + 1 <= window) {
+          matches++;
+        }
+        break;
+      }
+    }
+    return matches;
+  }
+
+  @Test
+  public void testMatches() {
+    Random r = new Random(11);
+    PositionArena arena = new PositionArena();
+    arena.reset(1, 3);
+
+    for (int iter = 0; iter < 2000; iter++) {
+      int[] p1 = randomPositions(r);
+      int[] p2 = randomPositions(r);
+      arena.addPositions(0, p1, p1.length);
+      arena.addPositions(2, p2, p2.length);
+      arena.keepDocument(0);
+
+      assertTrue(arena.contains(0, 0));
+      assertFalse(arena.contains(0, 1));
+      assertEquals(p1.length, arena.getLength(0, 0));
+      assertEquals(0, arena.countMatches(0, 0, 1, 8, true));
+      for (int window = 1; window <= 10; window++) {
+        assertEquals(countMatches(p1, p2, window, true), arena.countMatches(0, 0, 2, window, true));
+        assertEquals(countMatches(p1, p2, window, false), arena.countMatches(0, 0, 2, window, false));
+      }
+    }
+  }
+
+  @Test
+  public void testSlotsSurviveCompaction() {
+    Random r = new Random(5);
+    int numSlots = 50;
+    PositionArena arena = new PositionArena();
+    arena.reset(numSlots, 2);
+    int[][][] expected = new int[numSlots][][];
+
+    for (int iter = 0; iter < 100000; iter++) {
+      int slot = r.nextInt(numSlots);
+      int[] p1 = randomPositions(r);
+      int[] p2 = randomPositions(r);
+      arena.addPositions(0, p1, p1.length);
+      arena.addPositions(1, p2, p2.length);
+      if (r.nextBoolean()) {
+        arena.keepDocument(slot);
+        expected[slot] = new int[][] { p1, p2 };
+      } else if (r.nextInt(10) == 0) {
+        arena.discardDocument();
+        arena.release(slot);
+        expected[slot] = null;
+      } else {
+        arena.discardDocument();
+      }
+    }
+
+    // Space of replaced documents is reclaimed, rather than growing the arena without bound.
+    assertTrue(arena.getSize() < 100000);
+
+    for (int slot = 0; slot < numSlots; slot++) {
+      if (expected[slot] == null) {
+        assertFalse(arena.contains(slot, 0));
+        assertFalse(arena.contains(slot, 1));
+        continue;
+      }
+      int[] p1 = expected[slot][0];
+      int[] p2 = expected[slot][1];
+      assertEquals(p1.length, arena.getLength(slot, 0));
+      assertEquals(p2.length, arena.getLength(slot, 1));
+      for (int window = 1; window <= 10; window++) {
+        assertEquals(countMatches(p1, p2, window, true), arena.countMatches(slot, 0, 1, window, true));
+        assertEquals(countMatches(p1, p2, window, false), arena.countMatches(slot, 0, 1, window, false));
+      }
+    }
+  }
+
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(PositionArenaTest.class);
+  }
+}
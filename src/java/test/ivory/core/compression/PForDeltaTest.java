@@ -0,0 +1,90 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.core.compression;
+
+import java.util.Random;
+
+import junit.framework.JUnit4TestAdapter;
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class PForDeltaTest extends TestCase {
+
+  private static void verifyRoundTrip(int[] values, int n) {
+    int[] compressed = new int[PForDelta.maxCompressedLength(n) + 3];
+    int end = PForDelta.compress(values, 0, n, compressed, 3);
+    assertTrue(end <= compressed.length);
+    assertEquals(n, PForDelta.getBlockLength(compressed, 3));
+    assertEquals(end, PForDelta.skip(compressed, 3));
+
+    int[] decompressed = new int[n + 5];
+    assertEquals(end, PForDelta.decompress(compressed, 3, decompressed, 5));
+    for (int i = 0; i < n; i++) {
+      assertEquals(values[i], decompressed[i + 5]);
+    }
+  }
+
+  @Test
+  public void testSmallValues() {
+    Random r = new Random(1);
+    int[] values = new int[PForDelta.BLOCK_SIZE];
+    for (int b = 0; b < 31; b++) {
+      for (int i = 0; i < values.length; i++) {
+        values[i] = b == 0 ? 0 : r.nextInt(1 << b);
+      }
+      verifyRoundTrip(values, values.length);
+    }
+  }
+
+  @Test
+  public void testExceptions() {
+    Random r = new Random(2);
+    int[] values = new int[PForDelta.BLOCK_SIZE];
+    for (int i = 0; i < values.length; i++) {
+      // Mostly small gaps with the occasional very large one.
+      values[i] = r.nextInt(10) == 0 ? r.nextInt(Integer.MAX_VALUE) : r.nextInt(8);
+    }
+    verifyRoundTrip(values, values.length);
+
+    values[0] = Integer.MAX_VALUE;
+    values[values.length - 1] = Integer.MAX_VALUE;
+    verifyRoundTrip(values, values.length);
+  }
+
+  @Test
+  public void testPartialBlocks() {
+    Random r = new Random(3);
+    int[] values = new int[PForDelta.BLOCK_SIZE];
+    for (int n = 1; n <= PForDelta.BLOCK_SIZE; n++) {
+      for (int i = 0; i < n; i++) {
+        values[i] = r.nextInt(1000);
+      }
+      verifyRoundTrip(values, n);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNegativeValue() {
+    int[] values = { 1, 2, -3 };
+    PForDelta.compress(values, 0, values.length, new int[32], 0);
+  }
+
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(PForDeltaTest.class);
+  }
+}
@@ -0,0 +1,131 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.core.data.dictionary;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+public class MappedFrontCodedDictionaryTest {
+
+  private static MappedFrontCodedDictionary writeAndOpen(List<String> terms, int blockSize)
+      throws IOException {
+    FileSystem fs = FileSystem.getLocal(new Configuration());
+    FSDataOutputStream out = fs.create(new Path("tmp.dat"), true);
+    try {
+      MappedFrontCodedDictionary.write(terms, blockSize, out);
+      out.close();
+
+      assertTrue(MappedFrontCodedDictionary.isDictionaryFile(new Path("tmp.dat"), fs));
+      return new MappedFrontCodedDictionary(new Path("tmp.dat"), fs);
+    } finally {
+      out.close();
+      fs.delete(new Path("tmp.dat"), true);
+    }
+  }
+
+  @Test
+  public void test1() throws IOException {
+    List<String> terms = Lists.newArrayList("a", "aa", "aaa", "aaaa", "aaaaaa", "aaabcb", "aab",
+        "aabb", "aad", "abd", "abde");
+    MappedFrontCodedDictionary m = writeAndOpen(terms, 4);
+
+    assertEquals(terms.size(), m.size());
+    for (int i = 0; i < terms.size(); i++) {
+      assertEquals(i, m.getId(terms.get(i)));
+      assertEquals(terms.get(i), m.getTerm(i));
+    }
+
+    assertEquals(-1, m.getId(""));
+    assertEquals(-1, m.getId("aaaaa"));
+    assertEquals(-1, m.getId("aac"));
+    assertEquals(-1, m.getId("b"));
+    assertNull(m.getTerm(terms.size()));
+
+    Iterator<String> iter = m.iterator();
+    for (String term : terms) {
+      assertTrue(iter.hasNext());
+      assertEquals(term, iter.next());
+    }
+    assertFalse(iter.hasNext());
+  }
+
+  @Test
+  public void testRandom() throws IOException {
+    Random r = new Random(7);
+    // Includes a character outside the basic multilingual plane, as a surrogate pair.
+    char[] alphabet = "abcz\u00e9\u4e2d\ud83d\ude00".toCharArray();
+    Set<String> set = Sets.newHashSet();
+    while (set.size() < 5000) {
+      StringBuilder sb = new StringBuilder();
+      int length = 1 + r.nextInt(10);
+      for (int i = 0; i < length; i++) {
+        sb.append(alphabet[r.nextInt(alphabet.length)]);
+      }
+      set.add(sb.toString());
+    }
+    List<String> sorted = Lists.newArrayList(set);
+    Collections.sort(sorted);
+
+    // Leave out every tenth term, to look up terms between those in the dictionary.
+    List<String> terms = Lists.newArrayList();
+    List<String> absent = Lists.newArrayList();
+    for (int i = 0; i < sorted.size(); i++) {
+      (i % 10 == 0 ? absent : terms).add(sorted.get(i));
+    }
+
+    for (int blockSize : new int[] { 1, 8, 16, 100 }) {
+      MappedFrontCodedDictionary m = writeAndOpen(terms, blockSize);
+      assertEquals(terms.size(), m.size());
+      for (int i = 0; i < terms.size(); i++) {
+        assertEquals(i, m.getId(terms.get(i)));
+        assertEquals(terms.get(i), m.getTerm(i));
+      }
+      for (String term : absent) {
+        assertEquals(-1, m.getId(term));
+      }
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnsorted() throws IOException {
+    writeAndOpen(Lists.newArrayList("b", "a"), 8);
+  }
+
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(MappedFrontCodedDictionaryTest.class);
+  }
+}
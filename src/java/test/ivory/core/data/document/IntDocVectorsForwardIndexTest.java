@@ -0,0 +1,177 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.core.data.document;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import ivory.core.RetrievalEnvironment;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.junit.Test;
+
+public class IntDocVectorsForwardIndexTest {
+  private static final int NUM_DOCS = 300;
+  private static final int NUM_FILES = 3;
+
+  // Writes the doc vectors of documents 1 to NUM_DOCS, spread round robin over several part
+  // files, and their forward index, with positions found as BuildIntDocVectorsForwardIndex does.
+  private static List<SortedMap<Integer, int[]>> createIndex(String indexPath, FileSystem fs,
+      Configuration conf) throws IOException {
+    Random r = new Random(9);
+    List<SortedMap<Integer, int[]>> docs = new ArrayList<SortedMap<Integer, int[]>>();
+    docs.add(null);
+    for (int docno = 1; docno <= NUM_DOCS; docno++) {
+      SortedMap<Integer, int[]> doc = new TreeMap<Integer, int[]>();
+      int length = 1 + r.nextInt(100);
+      for (int p = 1; p <= length; p++) {
+        int termid = 1 + r.nextInt(50);
+        int[] positions = doc.get(termid);
+        positions = positions == null ? new int[1] : Arrays.copyOf(positions, positions.length + 1);
+        positions[positions.length - 1] = p;
+        doc.put(termid, positions);
+      }
+      docs.add(doc);
+    }
+
+    fs.mkdirs(new Path(indexPath));
+    RetrievalEnvironment env = new RetrievalEnvironment(indexPath, fs);
+    IntWritable key = new IntWritable();
+    for (int f = 0; f < NUM_FILES; f++) {
+      SequenceFile.Writer writer = SequenceFile.createWriter(fs, conf,
+          new Path(env.getIntDocVectorsDirectory(), String.format("part-m-%05d", f)),
+          IntWritable.class, LazyIntDocVector.class);
+      for (int docno = f + 1; docno <= NUM_DOCS; docno += NUM_FILES) {
+        key.set(docno);
+        writer.append(key, new LazyIntDocVector(docs.get(docno)));
+      }
+      writer.close();
+    }
+
+    long[] positions = new long[NUM_DOCS];
+    for (int f = 0; f < NUM_FILES; f++) {
+      SequenceFile.Reader reader = new SequenceFile.Reader(fs,
+          new Path(env.getIntDocVectorsDirectory(), String.format("part-m-%05d", f)), conf);
+      LazyIntDocVector value = new LazyIntDocVector();
+      long pos = reader.getPosition();
+      while (reader.next(key, value)) {
+        positions[key.get() - 1] = IntDocVectorsForwardIndex.BigNumber * f + pos;
+        pos = reader.getPosition();
+      }
+      reader.close();
+    }
+
+    FSDataOutputStream out = fs.create(new Path(env.getIntDocVectorsForwardIndex()), true);
+    out.writeInt(0);
+    out.writeInt(NUM_DOCS);
+    for (long pos : positions) {
+      out.writeLong(pos);
+    }
+    out.close();
+
+    return docs;
+  }
+
+  private static void assertDocVector(SortedMap<Integer, int[]> expected, IntDocVector actual)
+      throws IOException {
+    IntDocVector.Reader r = actual.getReader();
+    assertEquals(expected.size(), r.getNumberOfTerms());
+    for (Map.Entry<Integer, int[]> e : expected.entrySet()) {
+      assertTrue(r.hasMoreTerms());
+      assertEquals((int) e.getKey(), r.nextTerm());
+      assertArrayEquals(e.getValue(), r.getPositions());
+    }
+    assertFalse(r.hasMoreTerms());
+  }
+
+  @Test
+  public void testGetDocVectors() throws IOException {
+    Configuration conf = new Configuration();
+    FileSystem fs = FileSystem.getLocal(conf);
+    File tmp = File.createTempFile("index", "");
+    tmp.delete();
+    String indexPath = tmp.getPath();
+
+    try {
+      List<SortedMap<Integer, int[]>> docs = createIndex(indexPath, fs, conf);
+
+      // Docnos from all files, out of order, with runs of records that follow each other in a
+      // file, and repeats.
+      int[] docnos = new int[] { 250, 4, 1, 299, 7, 10, 13, 4, 2, 100, 101, 102, 300, 1, 55, 250,
+          298, 3, 6, 9, 12, 15 };
+
+      IntDocVectorsForwardIndex index = new IntDocVectorsForwardIndex(indexPath, fs);
+      IntDocVector[] dvs = index.getDocVectors(docnos);
+      assertEquals(docnos.length, dvs.length);
+
+      IntDocVectorsForwardIndex singleIndex = new IntDocVectorsForwardIndex(indexPath, fs);
+      singleIndex.setCacheCapacity(0);
+      for (int i = 0; i < docnos.length; i++) {
+        assertDocVector(docs.get(docnos[i]), dvs[i]);
+        assertDocVector(docs.get(docnos[i]), singleIndex.getDocVector(docnos[i]));
+      }
+
+      // Without the doc vectors on disk, only vectors already fetched can be returned, from the
+      // cache.
+      fs.delete(new Path(new RetrievalEnvironment(indexPath, fs).getIntDocVectorsDirectory()),
+          true);
+      int[] reversed = new int[docnos.length];
+      for (int i = 0; i < docnos.length; i++) {
+        reversed[i] = docnos[docnos.length - 1 - i];
+      }
+      IntDocVector[] cached = index.getDocVectors(reversed);
+      for (int i = 0; i < reversed.length; i++) {
+        assertDocVector(docs.get(reversed[i]), cached[i]);
+      }
+      for (int docno : docnos) {
+        assertDocVector(docs.get(docno), index.getDocVector(docno));
+      }
+
+      try {
+        singleIndex.getDocVector(docnos[0]);
+        fail("Expected doc vectors to be read from disk with caching disabled");
+      } catch (IOException e) {
+        // Expected.
+      }
+    } finally {
+      fs.delete(new Path(indexPath), true);
+    }
+  }
+
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(IntDocVectorsForwardIndexTest.class);
+  }
+}
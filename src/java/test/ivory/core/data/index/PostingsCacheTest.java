@@ -0,0 +1,129 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.core.data.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+public class PostingsCacheTest {
+
+  private static PostingsList createPostingsList(int numPostings) throws IOException {
+    PostingsListDocSortedPositional postings = new PostingsListDocSortedPositional();
+    postings.setCollectionDocumentCount(numPostings * 10);
+    postings.setNumberOfPostings(numPostings);
+    for (int i = 1; i <= numPostings; i++) {
+      postings.add(i * 7, (short) 2, new TermPositions(new int[] { 3, i + 5 }, (short) 2));
+    }
+
+    PostingsListDocSortedPositional list =
+        PostingsListDocSortedPositional.create(postings.serialize());
+    list.setCollectionDocumentCount(numPostings * 10);
+    return list;
+  }
+
+  @Test
+  public void testHitsAndMisses() throws IOException {
+    PostingsCache cache = new PostingsCache(1024 * 1024);
+    PostingsList list = createPostingsList(100);
+
+    assertNull(cache.get(1));
+    assertTrue(cache.put(1, list));
+    assertSame(list, cache.get(1));
+    assertSame(list, cache.get(1));
+
+    assertEquals(2, cache.getHits());
+    assertEquals(1, cache.getMisses());
+    assertEquals(1, cache.getCount());
+    assertEquals(2.0 / 3, cache.getHitRate(), 1e-9);
+    assertTrue(cache.getSize() > list.getRawBytes().length);
+
+    // Readers over a cached list are independent of each other.
+    Posting p1 = new Posting();
+    Posting p2 = new Posting();
+    PostingsReader r1 = cache.get(1).getPostingsReader();
+    PostingsReader r2 = cache.get(1).getPostingsReader();
+    assertTrue(r1.nextPosting(p1));
+    assertTrue(r1.nextPosting(p1));
+    assertTrue(r2.nextPosting(p2));
+    assertEquals(14, p1.getDocno());
+    assertEquals(7, p2.getDocno());
+  }
+
+  @Test
+  public void testOversizedList() throws IOException {
+    PostingsCache cache = new PostingsCache(64);
+    assertNull(cache.get(1));
+    assertFalse(cache.put(1, createPostingsList(100)));
+    assertNull(cache.get(1));
+    assertEquals(1, cache.getRejections());
+    assertEquals(0, cache.getSize());
+  }
+
+  @Test
+  public void testFrequentTermsSurvive() throws IOException {
+    PostingsList list = createPostingsList(100);
+    long capacity = 4 * (list.getRawBytes().length + 128);
+    PostingsCache cache = new PostingsCache(capacity);
+
+    for (int i = 0; i < 1000; i++) {
+      // Term 1 appears in every query, along with a term that is never seen again.
+      for (int termid : new int[] { 1, 2 + i }) {
+        if (cache.get(termid) == null) {
+          cache.put(termid, createPostingsList(100));
+        }
+      }
+    }
+
+    assertNotNull(cache.get(1));
+    assertTrue(cache.getHits() >= 999);
+    assertTrue(cache.getRejections() > 0);
+    assertTrue(cache.getSize() <= capacity);
+  }
+
+  @Test
+  public void testSetCapacity() throws IOException {
+    PostingsCache cache = new PostingsCache(1024 * 1024);
+    for (int termid = 1; termid <= 10; termid++) {
+      cache.get(termid);
+      cache.put(termid, createPostingsList(50));
+    }
+    assertEquals(10, cache.getCount());
+
+    cache.setCapacity(cache.getSize() / 2);
+    assertTrue(cache.getCount() < 10);
+    assertTrue(cache.getSize() <= cache.getCapacity());
+    assertTrue(cache.getEvictions() > 0);
+
+    cache.setCapacity(0);
+    assertEquals(0, cache.getCount());
+    assertNull(cache.get(10));
+  }
+
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(PostingsCacheTest.class);
+  }
+}
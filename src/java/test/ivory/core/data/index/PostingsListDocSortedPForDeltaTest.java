@@ -0,0 +1,252 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.core.data.index;
+
+import ivory.core.data.stat.DocLengthTable;
+
+import java.io.IOException;
+import java.util.Random;
+
+import junit.framework.JUnit4TestAdapter;
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class PostingsListDocSortedPForDeltaTest extends TestCase {
+  private static final int NUM_DOCS = 100000;
+
+  @Test
+  public void testPositional() throws IOException {
+    Random r = new Random(42);
+    int n = 1000;
+    int[] docnos = new int[n];
+    TermPositions[] tps = new TermPositions[n];
+
+    PostingsListDocSortedPositional golomb = new PostingsListDocSortedPositional();
+    PostingsListDocSortedPositionalPForDelta pfor = new PostingsListDocSortedPositionalPForDelta();
+    golomb.setCollectionDocumentCount(NUM_DOCS);
+    golomb.setNumberOfPostings(n);
+    pfor.setCollectionDocumentCount(NUM_DOCS);
+    pfor.setNumberOfPostings(n);
+
+    int docno = 0;
+    for (int i = 0; i < n; i++) {
+      docno += r.nextInt(50) + 1;
+      docnos[i] = docno;
+
+      int tf = r.nextInt(5) + 1;
+      int[] pos = new int[tf];
+      int p = 0;
+      for (int j = 0; j < tf; j++) {
+        p += r.nextInt(100) + 1;
+        pos[j] = p;
+      }
+      tps[i] = new TermPositions(pos, (short) tf);
+
+      golomb.add(docno, (short) tf, tps[i]);
+      pfor.add(docno, (short) tf, tps[i]);
+    }
+
+    PostingsListDocSortedPositional golomb2 =
+        PostingsListDocSortedPositional.create(golomb.serialize());
+    PostingsListDocSortedPositionalPForDelta pfor2 =
+        PostingsListDocSortedPositionalPForDelta.create(pfor.serialize());
+    golomb2.setCollectionDocumentCount(NUM_DOCS);
+    pfor2.setCollectionDocumentCount(NUM_DOCS);
+
+    assertEquals(n, pfor2.getNumberOfPostings());
+    assertEquals(golomb2.getDf(), pfor2.getDf());
+    assertEquals(golomb2.getCf(), pfor2.getCf());
+
+    Posting p1 = new Posting();
+    Posting p2 = new Posting();
+    PostingsReader reader1 = golomb2.getPostingsReader();
+    PostingsReader reader2 = pfor2.getPostingsReader();
+    for (int i = 0; i < n; i++) {
+      assertTrue(reader1.nextPosting(p1));
+      assertTrue(reader2.nextPosting(p2));
+      assertEquals(p1.getDocno(), p2.getDocno());
+      assertEquals(p1.getTf(), p2.getTf());
+      assertEquals(p1.getDocno(), reader2.getDocno());
+
+      // Only read positions for some postings, so that others get skipped.
+      if (i % 3 != 0) {
+        int[] pos1 = reader1.getPositions();
+        int[] pos2 = reader2.getPositions();
+        assertEquals(pos1.length, pos2.length);
+        for (int j = 0; j < pos1.length; j++) {
+          assertEquals(pos1[j], pos2[j]);
+        }
+      }
+    }
+    assertFalse(reader2.hasMorePostings());
+    assertFalse(reader2.nextPosting(p2));
+
+    // Advance through the list.
+    reader2.reset();
+    int target = 0;
+    int i = 0;
+    while (true) {
+      target += r.nextInt(2000);
+      while (i < n && docnos[i] < target) {
+        i++;
+      }
+      if (i == n) {
+        assertFalse(reader2.advance(target));
+        break;
+      }
+      assertTrue(reader2.advance(target));
+      assertEquals(docnos[i], reader2.getDocno());
+      assertEquals(tps[i].getTf(), reader2.getTf());
+      int[] pos = reader2.getPositions();
+      for (int j = 0; j < pos.length; j++) {
+        assertEquals(tps[i].getPositions()[j], pos[j]);
+      }
+    }
+  }
+
+  @Test
+  public void testNonPositional() throws IOException {
+    Random r = new Random(13);
+    int n = 777;
+    int[] docnos = new int[n];
+    short[] tfs = new short[n];
+
+    PostingsListDocSortedNonPositionalPForDelta postings =
+        new PostingsListDocSortedNonPositionalPForDelta();
+    postings.setCollectionDocumentCount(NUM_DOCS);
+    postings.setNumberOfPostings(n);
+
+    int docno = 0;
+    for (int i = 0; i < n; i++) {
+      // Include the occasional huge gap, which becomes an exception.
+      docno += r.nextInt(20) == 0 ? r.nextInt(10000) + 1 : r.nextInt(20) + 1;
+      docnos[i] = docno;
+      tfs[i] = (short) (r.nextInt(10) + 1);
+      postings.add(docno, tfs[i]);
+    }
+
+    PostingsListDocSortedNonPositionalPForDelta postings2 =
+        PostingsListDocSortedNonPositionalPForDelta.create(postings.serialize());
+    postings2.setCollectionDocumentCount(NUM_DOCS);
+
+    Posting posting = new Posting();
+    PostingsReader reader = postings2.getPostingsReader();
+    for (int i = 0; i < n; i++) {
+      assertTrue(reader.nextPosting(posting));
+      assertEquals(docnos[i], posting.getDocno());
+      assertEquals(tfs[i], posting.getTf());
+    }
+    assertFalse(reader.nextPosting(posting));
+
+    reader.reset();
+    assertTrue(reader.advance(docnos[500]));
+    assertEquals(docnos[500], reader.getDocno());
+    assertTrue(reader.nextPosting(posting));
+    assertEquals(docnos[501], posting.getDocno());
+    assertTrue(reader.advance(docnos[501]));
+    assertEquals(docnos[501], reader.getDocno());
+    assertTrue(reader.advance(docnos[n - 1]));
+    assertEquals(tfs[n - 1], reader.getTf());
+    assertFalse(reader.advance(docnos[n - 1] + 1));
+  }
+
+  @Test
+  public void testBlockMax() throws IOException {
+    Random r = new Random(7);
+    int n = 1000;
+    int[] docnos = new int[n];
+    short[] tfs = new short[n];
+    final int[] lengths = new int[NUM_DOCS + 1];
+    for (int i = 0; i <= NUM_DOCS; i++) {
+      lengths[i] = r.nextInt(1000) + 1;
+    }
+
+    PostingsListDocSortedNonPositionalPForDelta postings =
+        new PostingsListDocSortedNonPositionalPForDelta();
+    postings.setCollectionDocumentCount(NUM_DOCS);
+    postings.setNumberOfPostings(n);
+    postings.setDocLengthTable(new DocLengthTable() {
+      public int getDocLength(int docno) {
+        return lengths[docno];
+      }
+
+      public int getDocnoOffset() {
+        return 0;
+      }
+
+      public float getAvgDocLength() {
+        return 500.0f;
+      }
+
+      public int getDocCount() {
+        return NUM_DOCS;
+      }
+    });
+
+    int docno = 0;
+    for (int i = 0; i < n; i++) {
+      docno += r.nextInt(50) + 1;
+      docnos[i] = docno;
+      tfs[i] = (short) (r.nextInt(100) + 1);
+      postings.add(docno, tfs[i]);
+    }
+
+    PostingsListDocSortedNonPositionalPForDelta postings2 =
+        PostingsListDocSortedNonPositionalPForDelta.create(postings.serialize());
+    postings2.setCollectionDocumentCount(NUM_DOCS);
+
+    BlockMaxPostingsReader reader = (BlockMaxPostingsReader) postings2.getPostingsReader();
+    int[] targets = { 1, docnos[0], docnos[127], docnos[128], docnos[500] + 1, docnos[300],
+        docnos[n - 1] };
+    for (int target : targets) {
+      assertTrue(reader.shallowAdvance(target));
+
+      // The block is the one holding the first posting at or after the target.
+      int first = 0;
+      while (docnos[first] < target) {
+        first++;
+      }
+      int block = first / 128;
+      int last = Math.min(n, (block + 1) * 128) - 1;
+      assertEquals(docnos[last], reader.getBlockLastDocno());
+
+      short maxTf = 0;
+      int minDocLen = Integer.MAX_VALUE;
+      for (int i = block * 128; i <= last; i++) {
+        maxTf = (short) Math.max(maxTf, tfs[i]);
+        minDocLen = Math.min(minDocLen, lengths[docnos[i]]);
+      }
+      assertEquals(maxTf, reader.getBlockMaxTf());
+      assertEquals(minDocLen, reader.getBlockMinDocLength());
+    }
+    assertFalse(reader.shallowAdvance(docnos[n - 1] + 1));
+
+    // Moving the block pointer doesn't affect the postings.
+    Posting posting = new Posting();
+    reader.reset();
+    assertTrue(reader.shallowAdvance(docnos[700]));
+    assertTrue(reader.nextPosting(posting));
+    assertEquals(docnos[0], posting.getDocno());
+    assertTrue(reader.advance(docnos[900]));
+    assertEquals(tfs[900], reader.getTf());
+  }
+
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(PostingsListDocSortedPForDeltaTest.class);
+  }
+}
@@ -0,0 +1,233 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.core.data.index;
+
+import java.io.IOException;
+import java.util.Random;
+
+import junit.framework.JUnit4TestAdapter;
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class PostingsListDocSortedWithSkipsTest extends TestCase {
+  private static final int NUM_DOCS = 100000;
+
+  // Generates random increasing docnos, tfs, and positions.
+  private static int[] randomDocnos(Random r, int n) {
+    int[] docnos = new int[n];
+    int docno = 0;
+    for (int i = 0; i < n; i++) {
+      docno += r.nextInt(20) + 1;
+      docnos[i] = docno;
+    }
+    return docnos;
+  }
+
+  private static TermPositions randomPositions(Random r) {
+    int tf = r.nextInt(4) + 1;
+    int[] pos = new int[tf];
+    int p = 0;
+    for (int i = 0; i < tf; i++) {
+      p += r.nextInt(10) + 1;
+      pos[i] = p;
+    }
+    return new TermPositions(pos, (short) tf);
+  }
+
+  @Test
+  public void testPositionalMatchesOriginal() throws IOException {
+    Random r = new Random(42);
+    int n = 1000;
+    int[] docnos = randomDocnos(r, n);
+    TermPositions[] tps = new TermPositions[n];
+
+    PostingsListDocSortedPositional postings = new PostingsListDocSortedPositional();
+    PostingsListDocSortedPositionalWithSkips skipped =
+        new PostingsListDocSortedPositionalWithSkips();
+    postings.setCollectionDocumentCount(NUM_DOCS);
+    postings.setNumberOfPostings(n);
+    skipped.setCollectionDocumentCount(NUM_DOCS);
+    skipped.setNumberOfPostings(n);
+
+    for (int i = 0; i < n; i++) {
+      tps[i] = randomPositions(r);
+      postings.add(docnos[i], tps[i].getTf(), tps[i]);
+      skipped.add(docnos[i], tps[i].getTf(), tps[i]);
+    }
+
+    PostingsListDocSortedPositional postings2 =
+        PostingsListDocSortedPositional.create(postings.serialize());
+    PostingsListDocSortedPositionalWithSkips skipped2 =
+        PostingsListDocSortedPositionalWithSkips.create(skipped.serialize());
+    postings2.setCollectionDocumentCount(NUM_DOCS);
+    skipped2.setCollectionDocumentCount(NUM_DOCS);
+
+    assertEquals((n - 1) / SkipPointers.DEFAULT_INTERVAL, skipped2.getSkipPointers().size());
+    assertEquals(postings2.getCf(), skipped2.getCf());
+    assertEquals(postings2.getDf(), skipped2.getDf());
+
+    // Sequential decoding should be identical to the original format.
+    Posting p1 = new Posting();
+    Posting p2 = new Posting();
+    PostingsReader reader1 = postings2.getPostingsReader();
+    PostingsReader reader2 = skipped2.getPostingsReader();
+    for (int i = 0; i < n; i++) {
+      assertTrue(reader1.nextPosting(p1));
+      assertTrue(reader2.nextPosting(p2));
+      assertEquals(p1.getDocno(), p2.getDocno());
+      assertEquals(p1.getTf(), p2.getTf());
+
+      int[] pos1 = reader1.getPositions();
+      int[] pos2 = reader2.getPositions();
+      assertEquals(pos1.length, pos2.length);
+      for (int j = 0; j < pos1.length; j++) {
+        assertEquals(pos1[j], pos2[j]);
+      }
+    }
+    assertFalse(reader2.nextPosting(p2));
+  }
+
+  @Test
+  public void testPositionalAdvance() throws IOException {
+    Random r = new Random(7);
+    int n = 2000;
+    int[] docnos = randomDocnos(r, n);
+    TermPositions[] tps = new TermPositions[n];
+
+    PostingsListDocSortedPositionalWithSkips postings =
+        new PostingsListDocSortedPositionalWithSkips();
+    postings.setCollectionDocumentCount(NUM_DOCS);
+    postings.setNumberOfPostings(n);
+    for (int i = 0; i < n; i++) {
+      tps[i] = randomPositions(r);
+      postings.add(docnos[i], tps[i].getTf(), tps[i]);
+    }
+
+    PostingsListDocSortedPositionalWithSkips postings2 =
+        PostingsListDocSortedPositionalWithSkips.create(postings.serialize());
+    postings2.setCollectionDocumentCount(NUM_DOCS);
+    PostingsReader reader = postings2.getPostingsReader();
+
+    // Advance by random strides, checking that we land on the first docno >= target.
+    int i = 0;
+    int target = 1;
+    while (true) {
+      target += r.nextInt(1000);
+      while (i < n && docnos[i] < target) {
+        i++;
+      }
+
+      boolean found = reader.advance(target);
+      if (i == n) {
+        assertFalse(found);
+        break;
+      }
+
+      assertTrue(found);
+      assertEquals(docnos[i], reader.getDocno());
+      assertEquals(tps[i].getTf(), reader.getTf());
+
+      int[] pos = reader.getPositions();
+      assertEquals(tps[i].getTf(), pos.length);
+      for (int j = 0; j < pos.length; j++) {
+        assertEquals(tps[i].getPositions()[j], pos[j]);
+      }
+
+      // Advancing to the current docno (or before) should not move the reader.
+      assertTrue(reader.advance(target));
+      assertEquals(docnos[i], reader.getDocno());
+    }
+  }
+
+  @Test
+  public void testNonPositionalAdvance() throws IOException {
+    Random r = new Random(13);
+    int n = 5000;
+    int[] docnos = randomDocnos(r, n);
+    short[] tfs = new short[n];
+
+    PostingsListDocSortedNonPositionalWithSkips postings =
+        new PostingsListDocSortedNonPositionalWithSkips();
+    postings.setCollectionDocumentCount(NUM_DOCS);
+    postings.setNumberOfPostings(n);
+    for (int i = 0; i < n; i++) {
+      tfs[i] = (short) (r.nextInt(10) + 1);
+      postings.add(docnos[i], tfs[i], null);
+    }
+
+    PostingsListDocSortedNonPositionalWithSkips postings2 =
+        PostingsListDocSortedNonPositionalWithSkips.create(postings.serialize());
+    postings2.setCollectionDocumentCount(NUM_DOCS);
+    PostingsReader reader = postings2.getPostingsReader();
+
+    // Interleave advances and sequential reads.
+    Posting posting = new Posting();
+    int i = 0;
+    while (i < n) {
+      if (r.nextBoolean()) {
+        int target = reader.getDocno() + r.nextInt(3000);
+        while (i < n && docnos[i] < target) {
+          i++;
+        }
+        if (i == n) {
+          assertFalse(reader.advance(target));
+          break;
+        }
+        assertTrue(reader.advance(target));
+      } else {
+        if (reader.getDocno() >= docnos[i]) {
+          i++;
+        }
+        if (i == n) {
+          assertFalse(reader.nextPosting(posting));
+          break;
+        }
+        assertTrue(reader.nextPosting(posting));
+      }
+      assertEquals(docnos[i], reader.getDocno());
+      assertEquals(tfs[i], reader.getTf());
+    }
+  }
+
+  @Test
+  public void testAdvanceWithoutSkips() throws IOException {
+    PostingsListDocSortedPositional postings = new PostingsListDocSortedPositional();
+    postings.setCollectionDocumentCount(100);
+    postings.setNumberOfPostings(3);
+
+    postings.add(13, (short) 1, new TermPositions(new int[] { 4 }, (short) 1));
+    postings.add(27, (short) 2, new TermPositions(new int[] { 2, 9 }, (short) 2));
+    postings.add(61, (short) 1, new TermPositions(new int[] { 3 }, (short) 1));
+
+    PostingsListDocSortedPositional postings2 =
+        PostingsListDocSortedPositional.create(postings.serialize());
+    postings2.setCollectionDocumentCount(100);
+    PostingsReader reader = postings2.getPostingsReader();
+
+    assertTrue(reader.advance(20));
+    assertEquals(27, reader.getDocno());
+    assertEquals(9, reader.getPositions()[1]);
+    assertTrue(reader.advance(61));
+    assertEquals(61, reader.getDocno());
+    assertFalse(reader.advance(62));
+  }
+
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(PostingsListDocSortedWithSkipsTest.class);
+  }
+}
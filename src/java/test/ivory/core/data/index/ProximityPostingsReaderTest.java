@@ -0,0 +1,69 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.core.data.index;
+
+import static org.junit.Assert.assertEquals;
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+public class ProximityPostingsReaderTest {
+
+  @Test
+  public void testOrderedWindow() {
+    ProximityPostingsReader od1 = new ProximityPostingsReaderOrderedWindow(2, 1);
+    assertEquals(2, od1.countMatches(new int[][] { { 1, 5, 9 }, { 2, 7, 10 } }));
+    assertEquals(1, od1.countMatches(new int[][] { { 1, 2 }, { 3 } }));
+    assertEquals(0, od1.countMatches(new int[][] { { 2 }, { 1 } }));
+
+    ProximityPostingsReader od2 = new ProximityPostingsReaderOrderedWindow(2, 2);
+    assertEquals(3, od2.countMatches(new int[][] { { 1, 5, 9 }, { 2, 7, 10 } }));
+  }
+
+  @Test
+  public void testUnorderedWindow() {
+    ProximityPostingsReader uw8 = new ProximityPostingsReaderUnorderedWindow(2, 8);
+    assertEquals(1, uw8.countMatches(new int[][] { { 1, 20 }, { 5, 30 } }));
+    assertEquals(1, uw8.countMatches(new int[][] { { 5, 30 }, { 1, 20 } }));
+    assertEquals(2, uw8.countMatches(new int[][] { { 8 }, { 1, 15 } }));
+
+    ProximityPostingsReader uw3 = new ProximityPostingsReaderUnorderedWindow(3, 3);
+    assertEquals(1, uw3.countMatches(new int[][] { { 3 }, { 1 }, { 2, 10 } }));
+  }
+
+  @Test
+  public void testBuffersReused() {
+    ProximityPostingsReader od1 = new ProximityPostingsReaderOrderedWindow(2, 1);
+
+    // Enough positions to outgrow the initial buffers.
+    int[] a = new int[5000];
+    int[] b = new int[5000];
+    for (int i = 0; i < 5000; i++) {
+      a[i] = 2 * i + 1;
+      b[i] = 2 * i + 2;
+    }
+    assertEquals(5000, od1.countMatches(new int[][] { a, b }));
+
+    // Leftovers from the previous, longer stream must not affect the result.
+    assertEquals(2, od1.countMatches(new int[][] { { 1, 5, 9 }, { 2, 7, 10 } }));
+    assertEquals(5000, od1.countMatches(new int[][] { a, b }));
+  }
+
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(ProximityPostingsReaderTest.class);
+  }
+}
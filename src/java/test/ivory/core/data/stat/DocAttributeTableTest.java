@@ -0,0 +1,118 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.core.data.stat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Random;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.Test;
+
+public class DocAttributeTableTest {
+
+  @Test
+  public void testLengthCodes() {
+    int previous = -1;
+    for (int length = 0; length < DocAttributeTable.MAX_QUANTIZED_LENGTH; length++) {
+      int code = DocAttributeTable.encodeLength(length);
+      assertTrue(code >= previous && code < 255);
+      previous = code;
+
+      int decoded = DocAttributeTable.decodeLength(code);
+      assertEquals(decoded, DocAttributeTable.quantizeLength(length));
+      if (length < DocAttributeTable.EXACT_LENGTHS) {
+        assertEquals(length, decoded);
+      } else {
+        assertTrue(Math.abs(decoded - length) <= 0.03 * length);
+      }
+    }
+    assertEquals(255, DocAttributeTable.encodeLength(DocAttributeTable.MAX_QUANTIZED_LENGTH));
+    assertEquals(255, DocAttributeTable.encodeLength(Integer.MAX_VALUE));
+    assertEquals(DocAttributeTable.MAX_QUANTIZED_LENGTH,
+        DocAttributeTable.quantizeLength(DocAttributeTable.MAX_QUANTIZED_LENGTH));
+  }
+
+  @Test
+  public void testTable() throws IOException {
+    Random r = new Random(1);
+    int numDocs = 10000;
+    int docnoOffset = 5;
+    int[] lengths = new int[numDocs];
+    float[] spam = new float[numDocs];
+    float[] pagerank = new float[numDocs];
+    long lengthSum = 0;
+    for (int i = 0; i < numDocs; i++) {
+      lengths[i] = r.nextInt(20) == 0 ? 50000 + r.nextInt(100000) : r.nextInt(2000);
+      lengthSum += lengths[i];
+      spam[i] = r.nextInt(100);
+      pagerank[i] = (float) -Math.log(r.nextDouble());
+    }
+
+    FileSystem fs = FileSystem.getLocal(new Configuration());
+    FSDataOutputStream out = fs.create(new Path("tmp.dat"), true);
+    DocAttributeTable table;
+    try {
+      DocAttributeTable.write(out, docnoOffset, lengths, new String[] { "spam", "pagerank" },
+          new float[][] { spam, pagerank });
+      out.close();
+      table = new DocAttributeTable(new Path("tmp.dat"), fs);
+    } finally {
+      out.close();
+      fs.delete(new Path("tmp.dat"), true);
+    }
+
+    assertEquals(numDocs, table.getDocCount());
+    assertEquals(docnoOffset, table.getDocnoOffset());
+    assertEquals(lengthSum * 1.0f / numDocs, table.getAvgDocLength(), 1e-3);
+    assertEquals(1, table.getPriorIndex("pagerank"));
+    assertEquals(-1, table.getPriorIndex("url"));
+    assertNull(table.getDocScoreTable("url"));
+
+    DocScoreTable spamScores = table.getDocScoreTable("spam");
+    DocScoreTable pagerankScores = table.getDocScoreTable("pagerank");
+    float maxPagerank = 0.0f;
+    for (float value : pagerank) {
+      maxPagerank = Math.max(maxPagerank, value);
+    }
+
+    for (int i = 0; i < numDocs; i++) {
+      int docno = docnoOffset + i + 1;
+      if (lengths[i] < DocAttributeTable.EXACT_LENGTHS
+          || lengths[i] >= DocAttributeTable.MAX_QUANTIZED_LENGTH) {
+        assertEquals(lengths[i], table.getDocLength(docno));
+      } else {
+        assertTrue(Math.abs(table.getDocLength(docno) - lengths[i]) <= 0.03 * lengths[i]);
+      }
+      // Priors with few distinct values are exact, others within half a quantization step.
+      assertEquals(spam[i], spamScores.getScore(docno), 0.0f);
+      assertEquals(pagerank[i], pagerankScores.getScore(docno), maxPagerank / 255 / 2 + 1e-5);
+    }
+  }
+
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(DocAttributeTableTest.class);
+  }
+}
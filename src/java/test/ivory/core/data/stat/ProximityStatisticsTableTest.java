@@ -0,0 +1,101 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.core.data.stat;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.Test;
+
+public class ProximityStatisticsTableTest {
+
+  @Test
+  public void testTable() throws IOException {
+    // Windows od1 and uw8, over term ids up to 50, in increasing order of key.
+    long[] keys = new long[] {
+        ProximityStatisticsTable.getKey(0, true, 1, 2),
+        ProximityStatisticsTable.getKey(0, true, 2, 1),
+        ProximityStatisticsTable.getKey(0, true, 7, 50),
+        ProximityStatisticsTable.getKey(1, false, 3, 1),
+        ProximityStatisticsTable.getKey(1, false, 2, 9) };
+    int[] dfs = new int[] { 120, 15, 10, 300, 42 };
+    long[] cfs = new long[] { 150L, 16L, 10L, 5000000000L, 60L };
+
+    FileSystem fs = FileSystem.getLocal(new Configuration());
+    Path path = new Path("tmp-proximity.dat");
+    FSDataOutputStream out = fs.create(path, true);
+    ProximityStatisticsTable table;
+    try {
+      ProximityStatisticsTable.writeHeader(out, new boolean[] { true, false }, new int[] { 1, 8 },
+          50, 10, keys.length);
+      for (int i = 0; i < keys.length; i++) {
+        ProximityStatisticsTable.writeEntry(out, keys[i], dfs[i], cfs[i]);
+      }
+      out.close();
+      table = new ProximityStatisticsTable(path, fs);
+    } finally {
+      fs.delete(path, true);
+    }
+
+    assertEquals(keys.length, table.size());
+    assertEquals(50, table.getMaxTermId());
+    assertEquals(10, table.getMinDf());
+
+    // Ordered windows depend on the order of the terms.
+    assertEquals(120, table.getDf(true, 1, 1, 2));
+    assertEquals(150L, table.getCf(true, 1, 1, 2));
+    assertEquals(15, table.getDf(true, 1, 2, 1));
+    assertEquals(16L, table.getCf(true, 1, 2, 1));
+    assertEquals(10, table.getDf(true, 1, 7, 50));
+    assertEquals(10L, table.getCf(true, 1, 7, 50));
+
+    // Unordered windows don't.
+    assertEquals(300, table.getDf(false, 8, 1, 3));
+    assertEquals(300, table.getDf(false, 8, 3, 1));
+    assertEquals(5000000000L, table.getCf(false, 8, 3, 1));
+    assertEquals(42, table.getDf(false, 8, 9, 2));
+    assertEquals(60L, table.getCf(false, 8, 2, 9));
+
+    // Covered pairs that aren't in the table were too rare.
+    assertEquals(9, table.getDf(true, 1, 1, 3));
+    assertEquals(9L, table.getCf(true, 1, 1, 3));
+    assertEquals(9, table.getDf(true, 1, 50, 7));
+    assertEquals(9, table.getDf(false, 8, 1, 2));
+    assertEquals(9L, table.getCf(false, 8, 50, 49));
+
+    // Other windows and pairs aren't covered.
+    assertEquals(-1, table.getDf(true, 2, 1, 2));
+    assertEquals(-1L, table.getCf(true, 2, 1, 2));
+    assertEquals(-1, table.getDf(false, 1, 1, 2));
+    assertEquals(-1, table.getDf(true, 1, 1, 51));
+    assertEquals(-1L, table.getCf(false, 8, 51, 1));
+    assertEquals(-1, table.getDf(true, 1, 0, 2));
+    assertEquals(-1, table.getDf(true, 1, -1, 2));
+    assertEquals(-1, table.getDf(true, 1, 2, 2));
+  }
+
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(ProximityStatisticsTableTest.class);
+  }
+}
@@ -0,0 +1,186 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.core.index;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import ivory.app.GenericIndexBuilder;
+import ivory.core.RetrievalEnvironment;
+import ivory.core.data.index.IntPostingsForwardIndex;
+import ivory.core.data.index.Posting;
+import ivory.core.data.index.PostingsList;
+import ivory.core.data.index.PostingsReader;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.util.ToolRunner;
+import org.junit.Test;
+
+import edu.umd.cloud9.collection.trec.TrecDocnoMapping;
+import edu.umd.cloud9.collection.trec.TrecDocumentInputFormat;
+
+public class BuildIPInvertedIndexDocSortedTest {
+  private static final int NUM_FILES = 3;
+  private static final int DOCS_PER_FILE = 20;
+  private static final String[] WORDS = { "north", "south", "east", "west", "wind", "rain",
+      "snow", "cloud", "valley", "hill", "lake", "field", "farm", "barn", "fence", "gate" };
+  // Words that only occur in one of the files.
+  private static final String[][] FILE_WORDS = { { "copper", "zinc" }, { "maple", "birch" },
+      { "salmon", "trout" } };
+
+  // Writes a TREC collection in several files, so that it is indexed by several mappers. Docnos
+  // follow the sorted docids, which aren't padded (TOY-0-10 comes before TOY-0-2) and are written
+  // in shuffled order, so that mappers don't see documents in docno order.
+  private static void writeCollection(File dir) throws IOException {
+    Random r = new Random(13);
+    for (int f = 0; f < NUM_FILES; f++) {
+      List<Integer> ids = new ArrayList<Integer>();
+      for (int d = 0; d < DOCS_PER_FILE; d++) {
+        ids.add(d);
+      }
+      Collections.shuffle(ids, r);
+
+      PrintWriter out = new PrintWriter(new FileWriter(new File(dir, "part" + f + ".trec")));
+      try {
+        for (int d : ids) {
+          out.println("<DOC>");
+          out.println(String.format("<DOCNO> TOY-%d-%d </DOCNO>", f, d));
+          out.println("<TEXT>");
+          int length = 5 + r.nextInt(40);
+          for (int i = 0; i < length; i++) {
+            out.print(WORDS[(int) (WORDS.length * Math.pow(r.nextDouble(), 2))] + " ");
+            if (r.nextInt(5) == 0) {
+              out.print(FILE_WORDS[f][r.nextInt(FILE_WORDS[f].length)] + " ");
+            }
+          }
+          out.println();
+          out.println("</TEXT>");
+          out.println("</DOC>");
+        }
+      } finally {
+        out.close();
+      }
+    }
+  }
+
+  @Test
+  public void testBufferedPostingsSameAsUnbuffered() throws Exception {
+    Configuration conf = new Configuration();
+    conf.set("mapred.job.tracker", "local");
+    conf.set("fs.default.name", "file:///");
+    FileSystem fs = FileSystem.getLocal(conf);
+
+    File tmp = File.createTempFile("toy", "");
+    tmp.delete();
+    tmp.mkdirs();
+    try {
+      File collection = new File(tmp, "collection");
+      collection.mkdirs();
+      writeCollection(collection);
+      String expectedPath = new File(tmp, "index-unbuffered").getPath();
+      String actualPath = new File(tmp, "index-buffered").getPath();
+
+      String[] args = new String[] {
+          "-collection", collection.getPath(), "-collectionName", "toy",
+          "-docnoMapping", TrecDocnoMapping.class.getCanonicalName(),
+          "-inputFormat", TrecDocumentInputFormat.class.getCanonicalName() };
+      assertEquals(0, ToolRunner.run(new Configuration(conf), new GenericIndexBuilder(),
+          concat(args, "-index", expectedPath)));
+      // Each mapper emits one chunk per term, and terms found by more than one mapper have their
+      // chunks merged.
+      assertEquals(0, ToolRunner.run(new Configuration(conf), new GenericIndexBuilder(),
+          concat(args, "-index", actualPath, "-postingsBuffer", "1")));
+
+      RetrievalEnvironment env = new RetrievalEnvironment(expectedPath, fs);
+      int numDocs = env.readCollectionDocumentCount();
+      int numTerms = env.readCollectionTermCount();
+      assertEquals(NUM_FILES * DOCS_PER_FILE, numDocs);
+      assertEquals(numTerms, new RetrievalEnvironment(actualPath, fs).readCollectionTermCount());
+
+      IntPostingsForwardIndex expectedIndex = new IntPostingsForwardIndex(expectedPath, fs);
+      IntPostingsForwardIndex actualIndex = new IntPostingsForwardIndex(actualPath, fs);
+      Posting expectedPosting = new Posting();
+      Posting actualPosting = new Posting();
+      int numMerged = 0;
+      for (int termid = 1; termid <= numTerms; termid++) {
+        assertTrue(expectedIndex.hasPostings(termid));
+        assertTrue(actualIndex.hasPostings(termid));
+        PostingsList expectedList = expectedIndex.getPostingsList(termid);
+        PostingsList actualList = actualIndex.getPostingsList(termid);
+        expectedList.setCollectionDocumentCount(numDocs);
+        actualList.setCollectionDocumentCount(numDocs);
+        assertEquals(expectedList.getDf(), actualList.getDf());
+        assertEquals(expectedList.getCf(), actualList.getCf());
+
+        PostingsReader expectedReader = expectedList.getPostingsReader();
+        PostingsReader actualReader = actualList.getPostingsReader();
+        assertEquals(expectedReader.getNumberOfPostings(), actualReader.getNumberOfPostings());
+        int firstDocno = -1;
+        int lastDocno = -1;
+        while (expectedReader.nextPosting(expectedPosting)) {
+          assertTrue(actualReader.nextPosting(actualPosting));
+          assertEquals(expectedPosting.getDocno(), actualPosting.getDocno());
+          assertEquals(expectedPosting.getTf(), actualPosting.getTf());
+          assertArrayEquals(expectedReader.getPositions(), actualReader.getPositions());
+          if (firstDocno == -1) {
+            firstDocno = expectedPosting.getDocno();
+          }
+          lastDocno = expectedPosting.getDocno();
+        }
+        assertFalse(actualReader.nextPosting(actualPosting));
+
+        // Docnos follow the files, so a list spanning more than a file's worth of docnos comes
+        // from chunks of several mappers.
+        if (lastDocno - firstDocno >= DOCS_PER_FILE) {
+          numMerged++;
+        }
+      }
+      assertTrue(numMerged > 0);
+      assertTrue(numMerged < numTerms);
+
+      expectedIndex.close();
+      actualIndex.close();
+    } finally {
+      fs.delete(new Path(tmp.getPath()), true);
+    }
+  }
+
+  private static String[] concat(String[] args, String... more) {
+    String[] all = new String[args.length + more.length];
+    System.arraycopy(args, 0, all, 0, args.length);
+    System.arraycopy(more, 0, all, args.length, more.length);
+    return all;
+  }
+
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(BuildIPInvertedIndexDocSortedTest.class);
+  }
+}
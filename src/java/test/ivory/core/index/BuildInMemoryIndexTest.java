@@ -0,0 +1,247 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.core.index;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import ivory.app.GenericIndexBuilder;
+import ivory.app.LocalIndexBuilder;
+import ivory.core.RetrievalEnvironment;
+import ivory.core.data.dictionary.DefaultFrequencySortedDictionary;
+import ivory.core.data.document.IntDocVector;
+import ivory.core.data.document.IntDocVectorsForwardIndex;
+import ivory.core.data.document.TermDocVector;
+import ivory.core.data.document.TermDocVectorsForwardIndex;
+import ivory.core.data.index.IntPostingsForwardIndex;
+import ivory.core.data.index.Posting;
+import ivory.core.data.index.PostingsList;
+import ivory.core.data.index.PostingsReader;
+import ivory.core.data.stat.CfTableArray;
+import ivory.core.data.stat.DfTableArray;
+import ivory.core.data.stat.DocLengthTable4B;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Random;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.util.ToolRunner;
+import org.junit.Test;
+
+import edu.umd.cloud9.collection.trec.TrecDocnoMapping;
+import edu.umd.cloud9.collection.trec.TrecDocumentInputFormat;
+
+public class BuildInMemoryIndexTest {
+  private static final int NUM_DOCS = 50;
+  private static final String[] WORDS = { "river", "bank", "money", "water", "stone", "bridge",
+      "market", "trade", "harbor", "ship", "cargo", "storm", "island", "coast", "light", "tower",
+      "merchant", "silver", "grain", "mill", "forest", "timber", "road", "wagon", "horse" };
+
+  // Writes a TREC collection of short documents, in which words occur at skewed rates.
+  private static void writeCollection(File file) throws IOException {
+    Random r = new Random(14);
+    PrintWriter out = new PrintWriter(new FileWriter(file));
+    try {
+      for (int d = 0; d < NUM_DOCS; d++) {
+        out.println("<DOC>");
+        out.println(String.format("<DOCNO> TOY-%04d </DOCNO>", d));
+        out.println("<TEXT>");
+        int length = 5 + r.nextInt(60);
+        for (int i = 0; i < length; i++) {
+          out.print(WORDS[(int) (WORDS.length * Math.pow(r.nextDouble(), 2))] + " ");
+          if (r.nextInt(10) == 0) {
+            // Words that are too rare to make the dictionary.
+            out.print("rare" + r.nextInt(1000) + " ");
+          }
+        }
+        out.println();
+        out.println("</TEXT>");
+        out.println("</DOC>");
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  @Test
+  public void testSameIndexAsHadoopPipeline() throws Exception {
+    Configuration conf = new Configuration();
+    conf.set("mapred.job.tracker", "local");
+    conf.set("fs.default.name", "file:///");
+    FileSystem fs = FileSystem.getLocal(conf);
+
+    File tmp = File.createTempFile("toy", "");
+    tmp.delete();
+    tmp.mkdirs();
+    try {
+      File collection = new File(tmp, "toy.trec");
+      writeCollection(collection);
+      String expectedPath = new File(tmp, "index-hadoop").getPath();
+      String actualPath = new File(tmp, "index-local").getPath();
+
+      String[] args = new String[] {
+          "-collection", collection.getPath(), "-collectionName", "toy",
+          "-docnoMapping", TrecDocnoMapping.class.getCanonicalName(),
+          "-inputFormat", TrecDocumentInputFormat.class.getCanonicalName() };
+      assertEquals(0, ToolRunner.run(new Configuration(conf), new GenericIndexBuilder(),
+          concat(args, "-index", expectedPath)));
+      // A postings buffer of zero flushes after every document, so that postings lists are merged
+      // from many runs, over a different number of partitions.
+      assertEquals(0, ToolRunner.run(new Configuration(conf), new LocalIndexBuilder(),
+          concat(args, "-index", actualPath, "-threads", "2", "-indexPartitions", "3",
+              "-postingsBuffer", "0")));
+
+      RetrievalEnvironment expected = new RetrievalEnvironment(expectedPath, fs);
+      RetrievalEnvironment actual = new RetrievalEnvironment(actualPath, fs);
+      compareStatistics(expected, actual, fs);
+      compareDocVectors(expectedPath, actualPath, fs);
+      comparePostings(expectedPath, actualPath, fs, expected.readCollectionTermCount());
+
+      // Runs don't outlive the build.
+      for (String name : new File(actualPath).list()) {
+        assertFalse(name, name.startsWith("tmp"));
+      }
+    } finally {
+      fs.delete(new Path(tmp.getPath()), true);
+    }
+  }
+
+  private static void compareStatistics(RetrievalEnvironment expected,
+      RetrievalEnvironment actual, FileSystem fs) throws IOException {
+    int numDocs = expected.readCollectionDocumentCount();
+    int numTerms = expected.readCollectionTermCount();
+    assertEquals(NUM_DOCS, numDocs);
+    assertTrue(numTerms > 0);
+    assertEquals(numDocs, actual.readCollectionDocumentCount());
+    assertEquals(numTerms, actual.readCollectionTermCount());
+    assertEquals(expected.readCollectionLength(), actual.readCollectionLength());
+    assertEquals(expected.readCollectionAverageDocumentLength(),
+        actual.readCollectionAverageDocumentLength(), 1e-6f);
+    assertEquals(expected.readDocnoOffset(), actual.readDocnoOffset());
+
+    DocLengthTable4B expectedLengths = new DocLengthTable4B(expected.getDoclengthsData(), fs);
+    DocLengthTable4B actualLengths = new DocLengthTable4B(actual.getDoclengthsData(), fs);
+    assertEquals(expectedLengths.getDocCount(), actualLengths.getDocCount());
+    for (int docno = 1; docno <= numDocs; docno++) {
+      assertEquals(expectedLengths.getDocLength(docno), actualLengths.getDocLength(docno));
+    }
+
+    DefaultFrequencySortedDictionary expectedDictionary = new DefaultFrequencySortedDictionary(
+        new Path(expected.getIndexTermsData()), new Path(expected.getIndexTermIdsData()),
+        new Path(expected.getIndexTermIdMappingData()), fs);
+    DefaultFrequencySortedDictionary actualDictionary = new DefaultFrequencySortedDictionary(
+        new Path(actual.getIndexTermsData()), new Path(actual.getIndexTermIdsData()),
+        new Path(actual.getIndexTermIdMappingData()), fs);
+    DfTableArray expectedDfs = new DfTableArray(new Path(expected.getDfByIntData()), fs);
+    DfTableArray actualDfs = new DfTableArray(new Path(actual.getDfByIntData()), fs);
+    CfTableArray expectedCfs = new CfTableArray(new Path(expected.getCfByIntData()), fs);
+    CfTableArray actualCfs = new CfTableArray(new Path(actual.getCfByIntData()), fs);
+    assertEquals(numTerms, expectedDictionary.size());
+    assertEquals(numTerms, actualDictionary.size());
+    for (int termid = 1; termid <= numTerms; termid++) {
+      String term = expectedDictionary.getTerm(termid);
+      assertEquals(term, actualDictionary.getTerm(termid));
+      assertEquals(termid, actualDictionary.getId(term));
+      assertEquals(expectedDfs.getDf(termid), actualDfs.getDf(termid));
+      assertEquals(expectedCfs.getCf(termid), actualCfs.getCf(termid));
+    }
+  }
+
+  private static void compareDocVectors(String expectedPath, String actualPath, FileSystem fs)
+      throws IOException {
+    IntDocVectorsForwardIndex expectedInt = new IntDocVectorsForwardIndex(expectedPath, fs);
+    IntDocVectorsForwardIndex actualInt = new IntDocVectorsForwardIndex(actualPath, fs);
+    TermDocVectorsForwardIndex expectedTerm = new TermDocVectorsForwardIndex(expectedPath, fs);
+    TermDocVectorsForwardIndex actualTerm = new TermDocVectorsForwardIndex(actualPath, fs);
+
+    for (int docno = 1; docno <= NUM_DOCS; docno++) {
+      IntDocVector.Reader expectedInts = expectedInt.getDocVector(docno).getReader();
+      IntDocVector.Reader actualInts = actualInt.getDocVector(docno).getReader();
+      assertEquals(expectedInts.getNumberOfTerms(), actualInts.getNumberOfTerms());
+      while (expectedInts.hasMoreTerms()) {
+        assertTrue(actualInts.hasMoreTerms());
+        assertEquals(expectedInts.nextTerm(), actualInts.nextTerm());
+        assertEquals(expectedInts.getTf(), actualInts.getTf());
+        assertArrayEquals(expectedInts.getPositions(), actualInts.getPositions());
+      }
+      assertFalse(actualInts.hasMoreTerms());
+
+      TermDocVector.Reader expectedTerms = expectedTerm.getDocVector(docno).getReader();
+      TermDocVector.Reader actualTerms = actualTerm.getDocVector(docno).getReader();
+      assertEquals(expectedTerms.getNumberOfTerms(), actualTerms.getNumberOfTerms());
+      while (expectedTerms.hasMoreTerms()) {
+        assertTrue(actualTerms.hasMoreTerms());
+        assertEquals(expectedTerms.nextTerm(), actualTerms.nextTerm());
+        assertEquals(expectedTerms.getTf(), actualTerms.getTf());
+        assertArrayEquals(expectedTerms.getPositions(), actualTerms.getPositions());
+      }
+      assertFalse(actualTerms.hasMoreTerms());
+    }
+  }
+
+  private static void comparePostings(String expectedPath, String actualPath, FileSystem fs,
+      int numTerms) throws IOException {
+    IntPostingsForwardIndex expectedIndex = new IntPostingsForwardIndex(expectedPath, fs);
+    IntPostingsForwardIndex actualIndex = new IntPostingsForwardIndex(actualPath, fs);
+    Posting expectedPosting = new Posting();
+    Posting actualPosting = new Posting();
+
+    for (int termid = 1; termid <= numTerms; termid++) {
+      assertTrue(expectedIndex.hasPostings(termid));
+      assertTrue(actualIndex.hasPostings(termid));
+      PostingsList expectedList = expectedIndex.getPostingsList(termid);
+      PostingsList actualList = actualIndex.getPostingsList(termid);
+      expectedList.setCollectionDocumentCount(NUM_DOCS);
+      actualList.setCollectionDocumentCount(NUM_DOCS);
+      assertEquals(expectedList.getDf(), actualList.getDf());
+      assertEquals(expectedList.getCf(), actualList.getCf());
+
+      PostingsReader expectedReader = expectedList.getPostingsReader();
+      PostingsReader actualReader = actualList.getPostingsReader();
+      assertEquals(expectedReader.getNumberOfPostings(), actualReader.getNumberOfPostings());
+      while (expectedReader.nextPosting(expectedPosting)) {
+        assertTrue(actualReader.nextPosting(actualPosting));
+        assertEquals(expectedPosting.getDocno(), actualPosting.getDocno());
+        assertEquals(expectedPosting.getTf(), actualPosting.getTf());
+        assertArrayEquals(expectedReader.getPositions(), actualReader.getPositions());
+      }
+      assertFalse(actualReader.nextPosting(actualPosting));
+    }
+
+    expectedIndex.close();
+    actualIndex.close();
+  }
+
+  private static String[] concat(String[] args, String... more) {
+    String[] all = new String[args.length + more.length];
+    System.arraycopy(args, 0, all, 0, args.length);
+    System.arraycopy(more, 0, all, args.length, more.length);
+    return all;
+  }
+
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(BuildInMemoryIndexTest.class);
+  }
+}
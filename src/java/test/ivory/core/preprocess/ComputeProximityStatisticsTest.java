@@ -0,0 +1,171 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.core.preprocess;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import ivory.core.data.document.IntDocVector;
+import ivory.core.data.document.LazyIntDocVector;
+import ivory.core.data.index.ProximityPostingsReader;
+import ivory.core.data.index.ProximityPostingsReaderOrderedWindow;
+import ivory.core.data.stat.ProximityStatisticsTable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import com.google.common.primitives.Ints;
+
+public class ComputeProximityStatisticsTest {
+  private static final int NUM_TERMS = 12;
+  private static final int MAX_TERMID = 8;
+
+  @Test
+  public void testParseWindows() {
+    ProximityPostingsReader[] windows = ComputeProximityStatistics.parseWindows("od1, uw8");
+    assertEquals(2, windows.length);
+    assertTrue(windows[0] instanceof ProximityPostingsReaderOrderedWindow);
+    assertEquals(1, windows[0].getWindowSize());
+    assertTrue(!(windows[1] instanceof ProximityPostingsReaderOrderedWindow));
+    assertEquals(8, windows[1].getWindowSize());
+  }
+
+  @Test
+  public void testCount() throws IOException {
+    ComputeProximityStatistics.WindowCounter counter = new ComputeProximityStatistics.WindowCounter(
+        ComputeProximityStatistics.parseWindows("od1,uw8"), MAX_TERMID);
+
+    // 1 2 3 1 2, with 9 above the cutoff between the last two terms.
+    SortedMap<Integer, int[]> doc = new TreeMap<Integer, int[]>();
+    doc.put(1, new int[] { 1, 4 });
+    doc.put(2, new int[] { 2, 6 });
+    doc.put(3, new int[] { 3 });
+    doc.put(9, new int[] { 5 });
+    counter.count(createDocVector(doc));
+    Map<Long, Integer> counts = getCounts(counter);
+
+    assertEquals(1, (int) counts.get(ProximityStatisticsTable.getKey(0, true, 1, 2)));
+    assertEquals(1, (int) counts.get(ProximityStatisticsTable.getKey(0, true, 2, 3)));
+    assertEquals(1, (int) counts.get(ProximityStatisticsTable.getKey(0, true, 3, 1)));
+    assertTrue(!counts.containsKey(ProximityStatisticsTable.getKey(0, true, 2, 1)));
+    assertTrue(!counts.containsKey(ProximityStatisticsTable.getKey(0, true, 1, 3)));
+    assertTrue(counts.containsKey(ProximityStatisticsTable.getKey(1, false, 1, 2)));
+    assertTrue(counts.containsKey(ProximityStatisticsTable.getKey(1, false, 1, 3)));
+    assertTrue(counts.containsKey(ProximityStatisticsTable.getKey(1, false, 2, 3)));
+    for (long key : counts.keySet()) {
+      // No pairs with terms above the cutoff.
+      assertTrue(((key >>> 24) & ProximityStatisticsTable.MAX_TERMID) <= MAX_TERMID);
+      assertTrue((key & ProximityStatisticsTable.MAX_TERMID) <= MAX_TERMID);
+    }
+  }
+
+  @Test
+  public void testSameCountsAsAllPairs() throws IOException {
+    Random r = new Random(10);
+    String[] specs = new String[] { "od1,uw8", "od2,od5,uw4,uw20" };
+    for (String spec : specs) {
+      ProximityPostingsReader[] windows = ComputeProximityStatistics.parseWindows(spec);
+      ComputeProximityStatistics.WindowCounter counter =
+          new ComputeProximityStatistics.WindowCounter(windows, MAX_TERMID);
+
+      for (int d = 0; d < 200; d++) {
+        // Documents of random terms, some of them long enough to outgrow the counter's buffers.
+        int length = d % 50 == 0 ? 6000 : 1 + r.nextInt(60);
+        SortedMap<Integer, int[]> doc = createDoc(r, length);
+        counter.count(createDocVector(doc));
+        assertEquals(countAllPairs(windows, doc), getCounts(counter));
+      }
+    }
+  }
+
+  // Counts the matches of all windows of all pairs of distinct terms up to the cutoff.
+  private static Map<Long, Integer> countAllPairs(ProximityPostingsReader[] windows,
+      SortedMap<Integer, int[]> doc) {
+    Map<Long, Integer> counts = new HashMap<Long, Integer>();
+    for (int termid1 : doc.keySet()) {
+      for (int termid2 : doc.keySet()) {
+        if (termid1 == termid2 || termid1 > MAX_TERMID || termid2 > MAX_TERMID) {
+          continue;
+        }
+        for (int w = 0; w < windows.length; w++) {
+          boolean ordered = windows[w] instanceof ProximityPostingsReaderOrderedWindow;
+          if (!ordered && termid1 > termid2) {
+            continue;
+          }
+          int tf = windows[w].countMatches(new int[][] { doc.get(termid1), doc.get(termid2) });
+          if (tf > 0) {
+            counts.put(ProximityStatisticsTable.getKey(w, ordered, termid1, termid2), tf);
+          }
+        }
+      }
+    }
+    return counts;
+  }
+
+  private static Map<Long, Integer> getCounts(ComputeProximityStatistics.WindowCounter counter) {
+    Map<Long, Integer> counts = new HashMap<Long, Integer>();
+    for (int i = 0; i < counter.size(); i++) {
+      assertTrue(!counts.containsKey(counter.getKey(i)));
+      counts.put(counter.getKey(i), counter.getTf(i));
+    }
+    return counts;
+  }
+
+  // Creates a document of random terms at positions 1 to length.
+  private static SortedMap<Integer, int[]> createDoc(Random r, int length) {
+    Map<Integer, List<Integer>> positions = new HashMap<Integer, List<Integer>>();
+    for (int p = 1; p <= length; p++) {
+      int termid = 1 + r.nextInt(NUM_TERMS);
+      if (!positions.containsKey(termid)) {
+        positions.put(termid, new ArrayList<Integer>());
+      }
+      positions.get(termid).add(p);
+    }
+
+    SortedMap<Integer, int[]> doc = new TreeMap<Integer, int[]>();
+    for (Map.Entry<Integer, List<Integer>> e : positions.entrySet()) {
+      doc.put(e.getKey(), Ints.toArray(e.getValue()));
+    }
+    return doc;
+  }
+
+  // Encodes and decodes a document, as the mapper reads it.
+  private static IntDocVector createDocVector(SortedMap<Integer, int[]> doc) throws IOException {
+    ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
+    new LazyIntDocVector(doc).write(new DataOutputStream(bytesOut));
+    IntDocVector v = new LazyIntDocVector();
+    v.readFields(new DataInputStream(new ByteArrayInputStream(bytesOut.toByteArray())));
+    return v;
+  }
+
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(ComputeProximityStatisticsTest.class);
+  }
+}
@@ -0,0 +1,72 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.core.tokenize;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+public class StemCacheTest {
+
+  @Test
+  public void testGetPut() {
+    StemCache cache = new StemCache(1024);
+    assertEquals(1024, cache.capacity());
+
+    assertNull(cache.get("running"));
+    cache.put("running", "run");
+    assertEquals("run", cache.get("running"));
+    cache.put("running", "running");
+    assertEquals("run", cache.get("running"));
+  }
+
+  @Test
+  public void testEviction() {
+    StemCache cache = new StemCache(64);
+    for (int i = 0; i < 10000; i++) {
+      cache.put("word" + i, "stem" + i);
+    }
+
+    int found = 0;
+    for (int i = 0; i < 10000; i++) {
+      String stem = cache.get("word" + i);
+      if (stem != null) {
+        assertEquals("stem" + i, stem);
+        found++;
+      }
+    }
+    assertTrue(found > 0 && found <= cache.capacity());
+  }
+
+  @Test
+  public void testReferencedEntriesSurvive() {
+    StemCache cache = new StemCache(64);
+    cache.put("hot", "hot");
+    for (int i = 0; i < 10000; i++) {
+      cache.get("hot");
+      cache.put("word" + i, "stem" + i);
+    }
+    assertEquals("hot", cache.get("hot"));
+  }
+
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(StemCacheTest.class);
+  }
+}
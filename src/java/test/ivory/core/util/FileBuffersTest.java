@@ -0,0 +1,97 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.core.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.apache.hadoop.io.WritableUtils;
+import org.junit.Test;
+
+public class FileBuffersTest {
+
+  @Test
+  public void testVLongs() throws IOException {
+    Random r = new Random(3);
+    long[] values = new long[10000];
+    for (int i = 0; i < values.length; i++) {
+      // Cover every encoded length, both signs, and the single-byte range.
+      values[i] = r.nextLong() >> r.nextInt(64);
+    }
+    values[0] = Long.MIN_VALUE;
+    values[1] = Long.MAX_VALUE;
+    values[2] = -112;
+    values[3] = -113;
+    values[4] = 127;
+    values[5] = 128;
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    for (long value : values) {
+      WritableUtils.writeVLong(out, value);
+      WritableUtils.writeVInt(out, (int) value);
+    }
+    out.close();
+
+    ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+    for (long value : values) {
+      assertEquals(value, FileBuffers.readVLong(buffer));
+      assertEquals((int) value, FileBuffers.readVInt(buffer));
+    }
+    assertFalse(buffer.hasRemaining());
+  }
+
+  @Test
+  public void testArrays() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(3);
+    for (int i = 0; i < 3; i++) {
+      out.writeInt(-i * 1000000);
+    }
+    for (int i = 0; i < 2; i++) {
+      out.writeLong(i * 10000000000L + 1);
+    }
+    out.close();
+
+    ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+    int[] ints = new int[buffer.getInt()];
+    FileBuffers.readInts(buffer, ints);
+    long[] longs = new long[2];
+    FileBuffers.readLongs(buffer, longs);
+
+    for (int i = 0; i < 3; i++) {
+      assertEquals(-i * 1000000, ints[i]);
+    }
+    for (int i = 0; i < 2; i++) {
+      assertEquals(i * 10000000000L + 1, longs[i]);
+    }
+    assertFalse(buffer.hasRemaining());
+  }
+
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(FileBuffersTest.class);
+  }
+}
@@ -0,0 +1,141 @@
+package ivory.lsh;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import ivory.lsh.data.NBitSignature;
+import ivory.lsh.data.PairOfIntNBitSignature;
+import ivory.lsh.data.PairOfIntSignature;
+import ivory.lsh.pwsim.cl.CLMultiIndexPwsim;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.Reporter;
+import org.junit.Test;
+
+import edu.umd.cloud9.io.pair.PairOfInts;
+
+public class CLMultiIndexPwsimTest {
+  private static final int D = 64, NUM_ENGLISH = 300, NUM_FOREIGN = 150;
+
+  // Serializes and deserializes a pair, as happens between mappers and reducers.
+  private static PairOfIntSignature copy(PairOfIntSignature pair) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    pair.write(new DataOutputStream(bytes));
+    PairOfIntSignature copy = new PairOfIntNBitSignature();
+    copy.readFields(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    return copy;
+  }
+
+  // Runs the mapper and reducer in memory and checks the output against all pairs within maxDist.
+  private void verify(int numTables, int maxDist) throws IOException {
+    Random r = new Random(numTables * 100 + maxDist);
+    int[] docnos = new int[NUM_ENGLISH + NUM_FOREIGN];
+    NBitSignature[] signatures = new NBitSignature[docnos.length];
+    for (int i = 0; i < docnos.length; i++) {
+      signatures[i] = new NBitSignature(D);
+      if (i < NUM_ENGLISH) {
+        docnos[i] = i + 1;
+        for (int k = 0; k < D; k++) {
+          signatures[i].set(k, r.nextBoolean());
+        }
+      } else {
+        // Close to some English document.
+        docnos[i] = 1000000001 + i;
+        NBitSignature english = signatures[r.nextInt(NUM_ENGLISH)];
+        for (int k = 0; k < D; k++) {
+          signatures[i].set(k, english.get(k));
+        }
+        for (int flips = r.nextInt(2 * maxDist + 2); flips > 0; flips--) {
+          int k = r.nextInt(D);
+          signatures[i].set(k, !signatures[i].get(k));
+        }
+      }
+    }
+
+    JobConf conf = new JobConf();
+    conf.set("Ivory.PairClass", PairOfIntNBitSignature.class.getName());
+    conf.setInt("Ivory.NumOfTables", numTables);
+    conf.setInt("Ivory.MaxHammingDistance", maxDist);
+
+    final TreeMap<PairOfIntSignature, List<PairOfIntSignature>> buckets =
+        new TreeMap<PairOfIntSignature, List<PairOfIntSignature>>(
+            new Comparator<PairOfIntSignature>() {
+              public int compare(PairOfIntSignature p1, PairOfIntSignature p2) {
+                return p1.compareTo(p2);
+              }
+            });
+    CLMultiIndexPwsim.MyMapper mapper = new CLMultiIndexPwsim.MyMapper();
+    mapper.configure(conf);
+    OutputCollector<PairOfIntSignature, PairOfIntSignature> mapOutput =
+        new OutputCollector<PairOfIntSignature, PairOfIntSignature>() {
+          public void collect(PairOfIntSignature key, PairOfIntSignature value)
+              throws IOException {
+            PairOfIntSignature bucket = copy(key);
+            if (!buckets.containsKey(bucket)) {
+              buckets.put(bucket, new ArrayList<PairOfIntSignature>());
+            }
+            buckets.get(bucket).add(copy(value));
+          }
+        };
+    for (int i = 0; i < docnos.length; i++) {
+      mapper.map(new IntWritable(docnos[i]), signatures[i], mapOutput, Reporter.NULL);
+    }
+
+    final Map<String, Integer> pairs = new HashMap<String, Integer>();
+    CLMultiIndexPwsim.MyReducer reducer = new CLMultiIndexPwsim.MyReducer();
+    reducer.configure(conf);
+    OutputCollector<PairOfInts, IntWritable> reduceOutput =
+        new OutputCollector<PairOfInts, IntWritable>() {
+          public void collect(PairOfInts key, IntWritable value) {
+            // Each pair is emitted once.
+            assertNull(pairs.put(key.getLeftElement() + "," + key.getRightElement(), value.get()));
+          }
+        };
+    for (Map.Entry<PairOfIntSignature, List<PairOfIntSignature>> e : buckets.entrySet()) {
+      reducer.reduce(e.getKey(), e.getValue().iterator(), reduceOutput, Reporter.NULL);
+    }
+
+    int numPairs = 0;
+    for (int i = NUM_ENGLISH; i < docnos.length; i++) {
+      for (int j = 0; j < NUM_ENGLISH; j++) {
+        int distance = signatures[i].hammingDistance(signatures[j]);
+        if (distance <= maxDist) {
+          numPairs++;
+          assertEquals(new Integer(distance), pairs.get(docnos[j] + "," + docnos[i]));
+        }
+      }
+    }
+    assertEquals(numPairs, pairs.size());
+  }
+
+  @Test
+  public void testExactSubstrings() throws IOException {
+    verify(8, 7);
+  }
+
+  @Test
+  public void testSubstringsWithinRadius() throws IOException {
+    verify(4, 7);
+    verify(2, 3);
+  }
+
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(CLMultiIndexPwsimTest.class);
+  }
+}
@@ -0,0 +1,82 @@
+package ivory.lsh;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import ivory.lsh.data.NBitSignature;
+import ivory.lsh.projection.HashedRandomProjections;
+
+import java.util.Random;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+public class HashedRandomProjectionsTest {
+  private static final int NUM_BITS = 2048;
+  private static final int VOCAB_SIZE = 10000;
+
+  @Test
+  public void testSameSeedSameSignature() {
+    int[] terms = { 3, 17, 256, 1000, 9999 };
+    float[] weights = { 0.5f, 0.1f, 0.3f, 0.8f, 0.2f };
+
+    for (int sparsity : new int[] { 1, HashedRandomProjections.DEFAULT_SPARSITY }) {
+      NBitSignature s1 = new NBitSignature(NUM_BITS);
+      NBitSignature s2 = new NBitSignature(NUM_BITS);
+      NBitSignature s3 = new NBitSignature(NUM_BITS);
+      new HashedRandomProjections(NUM_BITS, 42, sparsity).computeSignature(terms, weights,
+          terms.length, null, s1);
+      new HashedRandomProjections(NUM_BITS, 42, sparsity).computeSignature(terms, weights,
+          terms.length, null, s2);
+      new HashedRandomProjections(NUM_BITS, 43, sparsity).computeSignature(terms, weights,
+          terms.length, null, s3);
+
+      assertEquals(s1, s2);
+      assertTrue(s1.hammingDistance(s3) > 0);
+    }
+  }
+
+  @Test
+  public void testCosineEstimates() {
+    Random r = new Random(1);
+    for (int sparsity : new int[] { 1, HashedRandomProjections.DEFAULT_SPARSITY }) {
+      HashedRandomProjections projections =
+          new HashedRandomProjections(NUM_BITS, HashedRandomProjections.DEFAULT_SEED, sparsity);
+
+      // Pairs of documents of 100 terms sharing from none to all of their terms.
+      for (int shared = 0; shared <= 100; shared += 20) {
+        int[] terms1 = new int[100];
+        int[] terms2 = new int[100];
+        float[] weights1 = new float[100];
+        float[] weights2 = new float[100];
+        for (int i = 0; i < 100; i++) {
+          terms1[i] = 2 * i;
+          terms2[i] = i < shared ? 2 * i : VOCAB_SIZE + 2 * i + 1;
+          weights1[i] = r.nextFloat();
+          weights2[i] = i < shared ? weights1[i] * (0.5f + r.nextFloat()) : r.nextFloat();
+        }
+
+        double dot = 0, norm1 = 0, norm2 = 0;
+        for (int i = 0; i < 100; i++) {
+          dot += i < shared ? weights1[i] * weights2[i] : 0;
+          norm1 += weights1[i] * weights1[i];
+          norm2 += weights2[i] * weights2[i];
+        }
+        double cosine = dot / Math.sqrt(norm1 * norm2);
+
+        NBitSignature s1 = new NBitSignature(NUM_BITS);
+        NBitSignature s2 = new NBitSignature(NUM_BITS);
+        projections.computeSignature(terms1, weights1, 100, null, s1);
+        projections.computeSignature(terms2, weights2, 100, null, s2);
+
+        // The angle between documents is estimated by the fraction of bits that differ.
+        double estimate = Math.cos(Math.PI * s1.hammingDistance(s2) / NUM_BITS);
+        assertEquals("sparsity=" + sparsity + ", shared=" + shared, cosine, estimate, 0.1);
+      }
+    }
+  }
+
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(HashedRandomProjectionsTest.class);
+  }
+}
@@ -4,6 +4,10 @@ import static org.junit.Assert.assertTrue;
 import ivory.lsh.data.MinhashSignature;
 import ivory.lsh.data.PermutationByBit;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.util.List;
 
@@ -88,6 +92,34 @@ public class MinhashSignatureTest {
     System.out.println(read2.toString());
   }
 
+  @Test
+  public void testReadWriteBBit() throws IOException {
+    for (int numBits = 1; numBits < 32; numBits++) {
+      MinhashSignature s = new MinhashSignature(D);
+      s.setNumBits(numBits);
+      for (int i = 0; i < D; i++) {
+        s.add((int) (Math.random() * Integer.MAX_VALUE) & ((1 << numBits) - 1));
+      }
+
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      s.write(new DataOutputStream(bytes));
+      assertTrue(bytes.size() == 8 + (D * numBits + 7) / 8);
+
+      MinhashSignature read = new MinhashSignature();
+      read.readFields(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+      assertTrue(read.getNumBits() == numBits);
+      assertTrue(read.toString().equals(s.toString()));
+
+      // Signatures in full ints can still be read into the same object.
+      MinhashSignature full = getRandomSignature();
+      bytes = new ByteArrayOutputStream();
+      full.write(new DataOutputStream(bytes));
+      read.readFields(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+      assertTrue(read.getNumBits() == 0);
+      assertTrue(read.toString().equals(full.toString()));
+    }
+  }
+
   public void testSignatureSizeOnDisk() throws IOException {
     FileSystem fs;
     SequenceFile.Writer w;
@@ -0,0 +1,95 @@
+package ivory.lsh;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import ivory.lsh.data.MinhashSignature;
+import ivory.lsh.projection.OnePermutationMinhash;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+public class OnePermutationMinhashTest {
+
+  @Test
+  public void testDensification() {
+    int numBins = 64;
+    OnePermutationMinhash minhash = new OnePermutationMinhash(numBins,
+        OnePermutationMinhash.DEFAULT_SEED);
+
+    // The signature of a single term holds its value in every bin.
+    int[] terms = { 5, 123, 4567 };
+    Set<Integer> values = new HashSet<Integer>();
+    for (int term : terms) {
+      MinhashSignature signature = new MinhashSignature(numBins);
+      minhash.computeSignature(new int[] { term }, 1, signature);
+      assertEquals(numBins, signature.size());
+      for (int i = 0; i < numBins; i++) {
+        assertEquals(signature.get(0), signature.get(i));
+      }
+      values.add(signature.get(0));
+    }
+
+    // With fewer terms than bins, empty bins are filled with values of the terms, from more than
+    // one of them.
+    MinhashSignature signature = new MinhashSignature(numBins);
+    minhash.computeSignature(terms, terms.length, signature);
+    assertEquals(numBins, signature.size());
+    Set<Integer> seen = new HashSet<Integer>();
+    for (int i = 0; i < numBins; i++) {
+      assertTrue(values.contains(signature.get(i)));
+      seen.add(signature.get(i));
+    }
+    assertTrue(seen.size() > 1);
+  }
+
+  @Test
+  public void testJaccardEstimates() {
+    Random r = new Random(1);
+    int numBins = 1024;
+
+    for (int numBits : new int[] { 0, 4 }) {
+      OnePermutationMinhash minhash = new OnePermutationMinhash(numBins,
+          OnePermutationMinhash.DEFAULT_SEED, numBits);
+      // Fraction of b-bit values that agree by chance.
+      double collisions = numBits == 0 ? 0 : 1.0 / (1 << numBits);
+
+      // Pairs of documents with 20 terms (fewer than bins) and 2000 terms (more than bins).
+      for (int numTerms : new int[] { 20, 2000 }) {
+        for (int shared = 0; shared <= numTerms; shared += numTerms / 4) {
+          int[] terms1 = new int[numTerms];
+          int[] terms2 = new int[numTerms];
+          int base = r.nextInt(1000000);
+          for (int i = 0; i < numTerms; i++) {
+            terms1[i] = base + i;
+            terms2[i] = i < shared ? base + i : base + numTerms + i;
+          }
+          double jaccard = (double) shared / (2 * numTerms - shared);
+
+          MinhashSignature s1 = new MinhashSignature(numBins);
+          MinhashSignature s2 = new MinhashSignature(numBins);
+          minhash.computeSignature(terms1, numTerms, s1);
+          minhash.computeSignature(terms2, numTerms, s2);
+
+          int matches = 0;
+          for (int i = 0; i < numBins; i++) {
+            if (s1.get(i) == s2.get(i)) {
+              matches++;
+            }
+          }
+          double expected = jaccard + (1 - jaccard) * collisions;
+          assertEquals("numBits=" + numBits + ", numTerms=" + numTerms + ", shared=" + shared,
+              expected, (double) matches / numBins, 0.1);
+        }
+      }
+    }
+  }
+
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(OnePermutationMinhashTest.class);
+  }
+}
@@ -0,0 +1,94 @@
+package ivory.lsh;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import ivory.lsh.data.BitsSignatureTable;
+import ivory.lsh.data.NBitSignature;
+import ivory.lsh.data.PackedSignatureTable;
+import ivory.lsh.data.Signature;
+
+import java.util.Random;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+public class PackedSignatureTableTest {
+
+  private static BitsSignatureTable getRandomTable(Random r, int numSignatures, int numBits) {
+    Signature[] signatures = new Signature[numSignatures];
+    int[] docnos = new int[numSignatures];
+    for (int i = 0; i < numSignatures; i++) {
+      NBitSignature s = new NBitSignature(numBits);
+      for (int j = 0; j < numBits; j++) {
+        s.set(j, r.nextBoolean());
+      }
+      // Make some signatures share long prefixes.
+      if (i > 0 && r.nextBoolean()) {
+        NBitSignature prev = (NBitSignature) signatures[i - 1];
+        int prefix = r.nextInt(numBits + 1);
+        for (int j = 0; j < prefix; j++) {
+          s.set(j, prev.get(j));
+        }
+      }
+      signatures[i] = s;
+      docnos[i] = i + 1;
+    }
+
+    BitsSignatureTable table = new BitsSignatureTable();
+    table.set(signatures, docnos, numSignatures);
+    return table;
+  }
+
+  @Test
+  public void testSameAsSignatures() {
+    Random r = new Random(17);
+    PackedSignatureTable packed = new PackedSignatureTable();
+
+    for (int numBits : new int[] { 20, 64, 100, 1000 }) {
+      BitsSignatureTable table = getRandomTable(r, 50, numBits);
+      packed.set(table);
+      assertEquals(50, packed.getNumOfSignatures());
+      assertEquals(numBits, packed.getNumOfBits());
+
+      Signature[] signatures = table.getSignatures();
+      for (int i = 0; i < 50; i++) {
+        for (int j = 0; j < 50; j++) {
+          assertEquals(signatures[i].getLongestPrefix(signatures[j]),
+              packed.getLongestPrefix(i, j));
+          assertEquals(signatures[i].hammingDistance(signatures[j]),
+              packed.hammingDistance(i, j, numBits));
+
+          int threshold = numBits / 4;
+          int d = signatures[i].hammingDistance(signatures[j], threshold);
+          int dp = packed.hammingDistance(i, j, threshold);
+          assertEquals(d <= threshold, dp <= threshold);
+          if (d <= threshold) {
+            assertEquals(d, dp);
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testReuse() {
+    Random r = new Random(3);
+    PackedSignatureTable packed = new PackedSignatureTable();
+    packed.set(getRandomTable(r, 100, 1000));
+
+    BitsSignatureTable table = getRandomTable(r, 10, 64);
+    packed.set(table);
+    Signature[] signatures = table.getSignatures();
+    assertEquals(10, packed.getNumOfSignatures());
+    for (int i = 0; i < 10; i++) {
+      assertEquals(0, packed.hammingDistance(i, i, 64));
+      assertEquals(64, packed.getLongestPrefix(i, i));
+      assertTrue(packed.hammingDistance(0, i, 64) == signatures[0].hammingDistance(signatures[i]));
+    }
+  }
+
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(PackedSignatureTableTest.class);
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.ltr;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+public class FeatureFileWriterTest {
+	private static final int NUM_INSTANCES = 200;
+	private static final int NUM_FEATURES = 7;
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		// a buffer of 3 columns makes the writer transpose the features in several passes, the last
+		// of them partial
+		for(long bufferSize : new long[] { 4L * NUM_INSTANCES * 3, 1L << 20 }) {
+			roundTrip(bufferSize);
+		}
+	}
+
+	private static void roundTrip(long bufferSize) throws Exception {
+		Random r = new Random(7);
+		List<String> featureNames = new ArrayList<String>();
+		for(int f = 0; f < NUM_FEATURES; f++) {
+			featureNames.add("f" + f);
+		}
+
+		String [] qids = new String[NUM_INSTANCES];
+		String [] docids = new String[NUM_INSTANCES];
+		float [] grades = new float[NUM_INSTANCES];
+		float [][] values = new float[NUM_INSTANCES][NUM_FEATURES];
+
+		File file = File.createTempFile("features", ".bin");
+		try {
+			FeatureFileWriter writer = new FeatureFileWriter(file.getPath(), featureNames);
+			writer.setBufferSize(bufferSize);
+			for(int i = 0; i < NUM_INSTANCES; i++) {
+				// queries come back after others, and ids aren't restricted to ascii
+				qids[i] = "q" + r.nextInt(13);
+				docids[i] = "doc-\u00e9-" + i;
+				grades[i] = r.nextInt(5);
+				for(int f = 0; f < NUM_FEATURES; f++) {
+					values[i][f] = (float) r.nextGaussian();
+				}
+				writer.add(qids[i], docids[i], grades[i], values[i]);
+			}
+			writer.close();
+
+			Instances instances = new Instances(file.getPath());
+			assertEquals(NUM_INSTANCES, instances.getNumInstances());
+			assertEquals(NUM_FEATURES, instances.getNumFeatures());
+			assertArrayEquals(featureNames.toArray(), instances.getFeatureNames());
+			for(int f = 0; f < NUM_FEATURES; f++) {
+				assertEquals(f, instances.getFeatureMap().get("f" + f).intValue());
+			}
+			assertArrayEquals(qids, instances.getQids());
+			assertArrayEquals(docids, instances.getDocids());
+			assertArrayEquals(grades, instances.getGrades(), 0.0f);
+
+			int [] queryIndexes = instances.getQueryIndexes();
+			for(int i = 0; i < NUM_INSTANCES; i++) {
+				assertArrayEquals(values[i], instances.getInstance(i), 0.0f);
+				for(int f = 0; f < NUM_FEATURES; f++) {
+					assertEquals(values[i][f], instances.getColumn(f).get(i), 0.0f);
+				}
+				for(int j = 0; j < NUM_INSTANCES; j++) {
+					assertEquals(qids[i].equals(qids[j]), queryIndexes[i] == queryIndexes[j]);
+				}
+			}
+		}
+		finally {
+			file.delete();
+		}
+	}
+
+	public static junit.framework.Test suite() {
+		return new JUnit4TestAdapter(FeatureFileWriterTest.class);
+	}
+}
@@ -0,0 +1,118 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.ltr;
+
+import static org.junit.Assert.assertEquals;
+import ivory.core.exception.ConfigurationException;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+public class LineSearchTest {
+	private static final int NUM_QUERIES = 7;
+	private static final int NUM_FEATURES = 4;
+
+	// Writes a feature file of queries with varying numbers of instances, whose first feature
+	// takes few distinct values, so that scores tie.
+	private static Instances createInstances() throws IOException, ConfigurationException {
+		Random r = new Random(5);
+		File file = File.createTempFile("features", ".txt");
+		PrintWriter out = new PrintWriter(new FileWriter(file));
+		try {
+			out.print("qid\tdocid\tgrade");
+			for(int f = 0; f < NUM_FEATURES; f++) {
+				out.print("\tf" + f);
+			}
+			out.println();
+
+			for(int q = 0; q < NUM_QUERIES; q++) {
+				int numDocs = 3 + r.nextInt(10);
+				for(int d = 0; d < numDocs; d++) {
+					out.print(q + "\tdoc" + q + "-" + d + "\t" + r.nextInt(4));
+					out.print("\t" + r.nextInt(3));
+					for(int f = 1; f < NUM_FEATURES; f++) {
+						out.print("\t" + r.nextFloat());
+					}
+					out.println();
+				}
+			}
+			out.close();
+			return new Instances(file.getPath());
+		}
+		finally {
+			out.close();
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testSameSteps() throws Exception {
+		Instances instances = createInstances();
+		List<Feature> features = new ArrayList<Feature>();
+		for(int f = 0; f < NUM_FEATURES; f++) {
+			features.add(new SimpleFeature(f, "f" + f));
+		}
+
+		ExecutorService threadPool = Executors.newFixedThreadPool(2);
+		try {
+			for(Class<? extends Measure> measureClass : new Class[] { MAPMeasure.class, ERRMeasure.class, NDCGMeasure.class }) {
+				ParallelLineSearch parallelSearch = new ParallelLineSearch(instances, measureClass.newInstance(), threadPool, 3);
+
+				// first step, from an empty model
+				Model model = new Model();
+				ScoreTable scores = new ScoreTable(instances);
+				compare(measureClass, parallelSearch, model, features, scores);
+
+				// second step, after adding a feature
+				model.addFeature(features.get(1), 1.0);
+				scores = scores.translate(features.get(1), 1.0, 1.0 / 2.0);
+				compare(measureClass, parallelSearch, model, features, scores);
+			}
+		}
+		finally {
+			threadPool.shutdown();
+		}
+	}
+
+	private static void compare(Class<? extends Measure> measureClass, ParallelLineSearch parallelSearch, Model model,
+			List<Feature> features, ScoreTable scores) throws Exception {
+		Map<Feature,AlphaMeasurePair> results = parallelSearch.search(model, features, scores);
+		for(Feature feature : features) {
+			AlphaMeasurePair expected = LineSearch.lineSearch(model, feature, scores, measureClass.newInstance());
+			AlphaMeasurePair actual = results.get(feature);
+			String message = measureClass.getSimpleName() + ", " + feature.getName();
+			assertEquals(message, expected.alpha, actual.alpha, 0.0);
+			assertEquals(message, expected.measure, actual.measure, 1e-9);
+		}
+	}
+
+	public static junit.framework.Test suite() {
+		return new JUnit4TestAdapter(LineSearchTest.class);
+	}
+}
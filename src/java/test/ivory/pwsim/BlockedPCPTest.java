@@ -0,0 +1,288 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.pwsim;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import ivory.core.data.index.PostingsList;
+import ivory.core.data.index.PostingsListDocSortedNonPositional;
+import ivory.pwsim.score.Bm25;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.Mapper;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.Reducer;
+import org.apache.hadoop.mapred.Reporter;
+import org.junit.Test;
+
+import edu.umd.cloud9.io.map.HMapIFW;
+import edu.umd.cloud9.util.map.MapIF;
+
+public class BlockedPCPTest {
+  private static final int NUM_DOCS = 60;
+  private static final int NUM_TERMS = 40;
+  private static final int DF_CUT = 15;
+  private static final int BLOCK_SIZE = 16;
+
+  @Test
+  public void testRowAccumulator() {
+    Random r = new Random(1);
+    BlockedPCP.RowAccumulator row = new BlockedPCP.RowAccumulator();
+
+    // Enough distinct docnos to grow the table several times.
+    for (int pass = 0; pass < 2; pass++) {
+      Map<Integer, Float> expected = new HashMap<Integer, Float>();
+      for (int i = 0; i < 3000; i++) {
+        int docno = r.nextInt(1000) + 1;
+        float score = r.nextFloat();
+        Float sum = expected.get(docno);
+        expected.put(docno, sum == null ? score : sum + score);
+        row.add(docno, score);
+      }
+      assertEquals(expected.size(), row.size());
+
+      HMapIFW map = new HMapIFW();
+      row.copyTo(map);
+      assertEquals(expected.size(), map.size());
+      for (Map.Entry<Integer, Float> e : expected.entrySet()) {
+        assertTrue(map.containsKey(e.getKey()));
+        assertEquals(e.getValue(), map.get(e.getKey()), 0.0f);
+      }
+
+      // Offering all entries to a large enough heap keeps them all.
+      BlockedPCP.TopN topN = new BlockedPCP.TopN(expected.size());
+      row.offerTo(topN);
+      assertEquals(expected.size(), topN.size());
+
+      // Cleared accumulators start over.
+      row.clear();
+      assertEquals(0, row.size());
+      map.clear();
+      row.copyTo(map);
+      assertEquals(0, map.size());
+    }
+  }
+
+  @Test
+  public void testTopN() {
+    Random r = new Random(2);
+    BlockedPCP.TopN topN = new BlockedPCP.TopN(10);
+    assertEquals(10, topN.capacity());
+
+    for (int numOffered : new int[] { 3, 10, 11, 1000 }) {
+      topN.clear();
+      float[] values = new float[numOffered];
+      for (int i = 0; i < numOffered; i++) {
+        // Few distinct values, so that some tie.
+        values[i] = r.nextInt(numOffered / 2 + 1);
+        topN.offer(i, values[i]);
+      }
+      assertEquals(Math.min(10, numOffered), topN.size());
+
+      HMapIFW map = new HMapIFW();
+      topN.copyTo(map);
+      assertEquals(topN.size(), map.size());
+
+      // The values kept are the largest ones, each with its own key.
+      float[] sorted = values.clone();
+      Arrays.sort(sorted);
+      float[] kept = new float[map.size()];
+      int i = 0;
+      for (MapIF.Entry e : map.entrySet()) {
+        assertEquals(values[e.getKey()], e.getValue(), 0.0f);
+        kept[i++] = e.getValue();
+      }
+      Arrays.sort(kept);
+      for (i = 0; i < kept.length; i++) {
+        assertEquals(sorted[numOffered - kept.length + i], kept[i], 0.0f);
+      }
+    }
+  }
+
+  @Test
+  public void testSameResultsAsPCP() throws IOException {
+    Random r = new Random(3);
+    File indexPath = createIndex(r);
+    try {
+      List<PostingsList> postings = createPostings(r);
+
+      for (int topN : new int[] { -1, 5 }) {
+        JobConf conf = new JobConf();
+        conf.set("mapred.job.tracker", "local");
+        conf.set("Ivory.IndexPath", indexPath.getPath());
+        conf.set("Ivory.ScoringModel", Bm25.class.getName());
+        conf.setInt("Ivory.CollectionDocumentCount", NUM_DOCS);
+        conf.setInt("Ivory.DfCut", DF_CUT);
+        conf.setInt("Ivory.TopN", topN);
+        // Candidate lists aren't pruned, and rows are emitted after every few terms.
+        conf.setInt("Ivory.MapperTopN", NUM_DOCS);
+        conf.setInt("Ivory.AccumulatorSize", 20);
+
+        Map<Integer, HMapIFW> expected = run(conf, postings, false);
+        Map<Integer, HMapIFW> actual = run(conf, postings, true);
+
+        // PCP also emits empty rows, for documents that only have terms of their own.
+        for (Map.Entry<Integer, HMapIFW> e : expected.entrySet()) {
+          if (e.getValue().size() == 0) {
+            assertTrue(!actual.containsKey(e.getKey()));
+          } else {
+            assertTrue(actual.containsKey(e.getKey()));
+            assertSameRow(e.getValue(), actual.get(e.getKey()));
+          }
+        }
+        for (Map.Entry<Integer, HMapIFW> e : actual.entrySet()) {
+          assertTrue(expected.containsKey(e.getKey()));
+          if (topN > 0) {
+            assertTrue(e.getValue().size() <= topN);
+          }
+        }
+      }
+    } finally {
+      new File(indexPath, "doclengths.dat").delete();
+      indexPath.delete();
+    }
+  }
+
+  private static void assertSameRow(HMapIFW expected, HMapIFW actual) {
+    assertEquals(expected.size(), actual.size());
+    for (MapIF.Entry e : expected.entrySet()) {
+      assertTrue(actual.containsKey(e.getKey()));
+      assertEquals(e.getValue(), actual.get(e.getKey()), 1e-4f);
+    }
+  }
+
+  // Writes the lengths of documents 1 to NUM_DOCS, in the format of DocLengthTable2B.
+  private static File createIndex(Random r) throws IOException {
+    File indexPath = File.createTempFile("index", "");
+    indexPath.delete();
+    indexPath.mkdir();
+
+    DataOutputStream out = new DataOutputStream(new FileOutputStream(new File(indexPath,
+        "doclengths.dat")));
+    out.writeInt(0);
+    out.writeInt(NUM_DOCS);
+    for (int docno = 1; docno <= NUM_DOCS; docno++) {
+      out.writeInt(20 + r.nextInt(200));
+    }
+    out.close();
+    return indexPath;
+  }
+
+  // Creates postings of terms with dfs from one to above the df cut.
+  private static List<PostingsList> createPostings(Random r) throws IOException {
+    List<PostingsList> postings = new ArrayList<PostingsList>();
+    for (int t = 0; t < NUM_TERMS; t++) {
+      int df = 1 + r.nextInt(DF_CUT + 5);
+      List<Integer> docnos = new ArrayList<Integer>();
+      for (int docno = 1; docno <= NUM_DOCS; docno++) {
+        docnos.add(docno);
+      }
+      Collections.shuffle(docnos, r);
+      int[] selected = new int[df];
+      for (int i = 0; i < df; i++) {
+        selected[i] = docnos.get(i);
+      }
+      Arrays.sort(selected);
+
+      PostingsListDocSortedNonPositional list = new PostingsListDocSortedNonPositional();
+      list.setCollectionDocumentCount(NUM_DOCS);
+      list.setNumberOfPostings(df);
+      for (int docno : selected) {
+        list.add(docno, (short) (1 + r.nextInt(5)));
+      }
+      PostingsListDocSortedNonPositional copy =
+          PostingsListDocSortedNonPositional.create(list.serialize());
+      copy.setCollectionDocumentCount(NUM_DOCS);
+      postings.add(copy);
+    }
+    return postings;
+  }
+
+  // Runs the jobs of all blocks in memory, with either PCP or BlockedPCP, and returns the rows.
+  private static Map<Integer, HMapIFW> run(JobConf conf, List<PostingsList> postings,
+      boolean blocked) throws IOException {
+    final Map<Integer, HMapIFW> rows = new TreeMap<Integer, HMapIFW>();
+    OutputCollector<IntWritable, HMapIFW> reduceOutput =
+        new OutputCollector<IntWritable, HMapIFW>() {
+          public void collect(IntWritable key, HMapIFW value) {
+            rows.put(key.get(), copy(value));
+          }
+        };
+
+    for (int start = 0; start <= NUM_DOCS; start += BLOCK_SIZE) {
+      conf.setInt("Ivory.BlockStart", start);
+      conf.setInt("Ivory.BlockEnd", Math.min(start + BLOCK_SIZE, NUM_DOCS + 1));
+
+      final Map<Integer, List<HMapIFW>> mapOutput = new TreeMap<Integer, List<HMapIFW>>();
+      OutputCollector<IntWritable, HMapIFW> collector =
+          new OutputCollector<IntWritable, HMapIFW>() {
+            public void collect(IntWritable key, HMapIFW value) {
+              if (!mapOutput.containsKey(key.get())) {
+                mapOutput.put(key.get(), new ArrayList<HMapIFW>());
+              }
+              mapOutput.get(key.get()).add(copy(value));
+            }
+          };
+
+      Mapper<IntWritable, PostingsList, IntWritable, HMapIFW> mapper =
+          blocked ? new BlockedPCP.MyMapper() : new PCP.MyMapper();
+      mapper.configure(conf);
+      for (int t = 0; t < postings.size(); t++) {
+        mapper.map(new IntWritable(t), postings.get(t), collector, Reporter.NULL);
+      }
+      mapper.close();
+
+      Reducer<IntWritable, HMapIFW, IntWritable, HMapIFW> reducer =
+          blocked ? new BlockedPCP.MyReducer() : new PCP.MyReducer();
+      reducer.configure(conf);
+      for (Map.Entry<Integer, List<HMapIFW>> e : mapOutput.entrySet()) {
+        reducer.reduce(new IntWritable(e.getKey()), e.getValue().iterator(), reduceOutput,
+            Reporter.NULL);
+      }
+    }
+    return rows;
+  }
+
+  // Copies a map, as happens when it is serialized between mappers and reducers.
+  private static HMapIFW copy(HMapIFW map) {
+    HMapIFW copy = new HMapIFW();
+    for (MapIF.Entry e : map.entrySet()) {
+      copy.put(e.getKey(), e.getValue());
+    }
+    return copy;
+  }
+
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(BlockedPCPTest.class);
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.smrf.model.expander;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import ivory.core.RetrievalEnvironment;
+import ivory.core.data.index.PostingsList;
+import ivory.core.data.index.PostingsListDocSortedNonPositional;
+import ivory.smrf.model.GlobalTermEvidence;
+import ivory.smrf.model.Parameter;
+import ivory.smrf.model.importance.ConceptImportanceModel;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.junit.Test;
+import org.w3c.dom.Node;
+
+public class UnigramLatentConceptExpanderTest {
+  private static final int NUM_DOCS = 100;
+
+  // Holds the statistics of a single term, "river", with or without term statistics in memory,
+  // and counts the lookups made.
+  private static class FakeEnvironment extends RetrievalEnvironment {
+    private final boolean hasTermStatistics;
+    int numDfLookups = 0;
+    int numCfLookups = 0;
+    int numPostingsReads = 0;
+
+    FakeEnvironment(String indexPath, boolean hasTermStatistics) throws IOException {
+      super(indexPath, FileSystem.getLocal(new Configuration()));
+      this.hasTermStatistics = hasTermStatistics;
+    }
+
+    @Override
+    public boolean hasTermStatistics() {
+      return hasTermStatistics;
+    }
+
+    @Override
+    public int documentFrequency(String term) {
+      numDfLookups++;
+      return hasTermStatistics && term.equals("river") ? 3 : 0;
+    }
+
+    @Override
+    public long collectionFrequency(String term) {
+      numCfLookups++;
+      return hasTermStatistics && term.equals("river") ? 7 : 0;
+    }
+
+    @Override
+    public PostingsList getPostingsList(String term) {
+      numPostingsReads++;
+      if (!term.equals("river")) {
+        return null;
+      }
+      try {
+        PostingsListDocSortedNonPositional list = new PostingsListDocSortedNonPositional();
+        list.setCollectionDocumentCount(NUM_DOCS);
+        list.setNumberOfPostings(3);
+        list.add(5, (short) 1);
+        list.add(20, (short) 4);
+        list.add(60, (short) 2);
+        PostingsListDocSortedNonPositional copy =
+            PostingsListDocSortedNonPositional.create(list.serialize());
+        copy.setCollectionDocumentCount(NUM_DOCS);
+        return copy;
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
+
+  private static UnigramLatentConceptExpander createExpander(RetrievalEnvironment env) {
+    return new UnigramLatentConceptExpander(env, 10, 10, 1.0f, new ArrayList<Parameter>(),
+        new ArrayList<Node>(), new ArrayList<ConceptImportanceModel>());
+  }
+
+  @Test
+  public void testTermEvidence() throws IOException {
+    File tmp = File.createTempFile("index", "");
+    try {
+      // From the tables, without reading postings.
+      FakeEnvironment env = new FakeEnvironment(tmp.getPath(), true);
+      UnigramLatentConceptExpander expander = createExpander(env);
+      GlobalTermEvidence evidence = expander.getTermEvidence("river");
+      assertEquals(3, evidence.getDf());
+      assertEquals(7L, evidence.getCf());
+      assertNull(expander.getTermEvidence("lake"));
+      assertEquals(2, env.numDfLookups);
+      assertEquals(1, env.numCfLookups);
+      assertEquals(0, env.numPostingsReads);
+
+      // From the postings list, read once per concept.
+      env = new FakeEnvironment(tmp.getPath(), false);
+      expander = createExpander(env);
+      evidence = expander.getTermEvidence("river");
+      assertEquals(3, evidence.getDf());
+      assertEquals(7L, evidence.getCf());
+      assertNull(expander.getTermEvidence("lake"));
+      assertEquals(0, env.numDfLookups);
+      assertEquals(0, env.numCfLookups);
+      assertEquals(2, env.numPostingsReads);
+    } finally {
+      tmp.delete();
+    }
+  }
+
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(UnigramLatentConceptExpanderTest.class);
+  }
+}
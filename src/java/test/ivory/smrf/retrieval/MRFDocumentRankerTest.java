@@ -0,0 +1,288 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.smrf.retrieval;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import ivory.core.RetrievalEnvironment;
+import ivory.core.data.index.PostingsListDocSortedNonPositionalPForDelta;
+import ivory.core.data.index.PostingsReader;
+import ivory.core.data.stat.DocAttributeTable;
+import ivory.core.data.stat.DocLengthTable;
+import ivory.smrf.model.Clique;
+import ivory.smrf.model.DocumentNode;
+import ivory.smrf.model.GlobalEvidence;
+import ivory.smrf.model.GlobalTermEvidence;
+import ivory.smrf.model.GraphNode;
+import ivory.smrf.model.MarkovRandomField;
+import ivory.smrf.model.Parameter;
+import ivory.smrf.model.TermNode;
+import ivory.smrf.model.builder.Expression;
+import ivory.smrf.model.builder.TermExpressionGenerator;
+import ivory.smrf.model.potential.QueryPotential;
+import ivory.smrf.model.score.BM25ScoringFunction;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+public class MRFDocumentRankerTest {
+  private static final int BLOCK_SIZE = 128;
+  private static final int NUM_DOCS = 800 * BLOCK_SIZE;
+  private static final String[] TERMS = { "a", "b", "c" };
+
+  // Environment serving postings built in memory, scored with the lengths of a doc attribute
+  // table.
+  private static class TestEnvironment extends RetrievalEnvironment {
+    private final Map<String, PostingsListDocSortedNonPositionalPForDelta> postings;
+
+    public TestEnvironment(FileSystem fs, DocAttributeTable table, int numDocs,
+        long collectionSize, Map<String, PostingsListDocSortedNonPositionalPForDelta> postings)
+        throws IOException {
+      super(".", fs);
+      this.docAttributes = table;
+      this.doclengths = table;
+      this.numDocs = numDocs;
+      this.collectionSize = collectionSize;
+      this.postings = postings;
+    }
+
+    @Override
+    public PostingsReader getPostingsReader(Expression exp) {
+      return postings.get(exp.getTerms()[0]).getPostingsReader();
+    }
+  }
+
+  @Test
+  public void testBlockMaxBoundsWithQuantizedLengths() throws IOException {
+    // Every fourth document contains "a" once, and all documents are 1000 tokens long, except for
+    // documents A and B, which also contain "a", and a filler document that keeps the average
+    // length at 1000.
+    int numDocs = 32 * BLOCK_SIZE;
+    int docnoA = 1;
+    int docnoB = 4 * 4 * BLOCK_SIZE + 1;
+    int filler = 2;
+
+    // Scores only differ from the potential's by idf, which is positive.
+    BM25ScoringFunction f = new BM25ScoringFunction();
+    GlobalTermEvidence termEvidence = new GlobalTermEvidence();
+    termEvidence.set(numDocs / 4, numDocs / 4);
+    f.initialize(termEvidence, new GlobalEvidence(numDocs, 1000L * numDocs, 1));
+
+    // Find B, whose length reads back shorter than it is, and A, which scores above the bound
+    // computed from B's exact length, but below B.
+    int tfA = 0, lengthA = 0, tfB = 0, lengthB = 0;
+    search: for (tfB = 1; tfB <= 4; tfB++) {
+      for (lengthB = DocAttributeTable.EXACT_LENGTHS; lengthB < 1000; lengthB++) {
+        if (DocAttributeTable.quantizeLength(lengthB) == lengthB) {
+          continue;
+        }
+        float bound = f.getMaxScore(tfB, lengthB);
+        float scoreB = f.getScore(tfB, DocAttributeTable.quantizeLength(lengthB));
+        for (tfA = 1; tfA <= 10; tfA++) {
+          for (lengthA = DocAttributeTable.EXACT_LENGTHS; lengthA < 1000; lengthA++) {
+            float scoreA = f.getScore(tfA, DocAttributeTable.quantizeLength(lengthA));
+            if (scoreA > bound * 1.001f && scoreA < scoreB) {
+              break search;
+            }
+          }
+        }
+      }
+    }
+    assertTrue(tfB <= 4);
+
+    final int[] lengths = new int[numDocs + 1];
+    for (int docno = 1; docno <= numDocs; docno++) {
+      lengths[docno] = 1000;
+    }
+    lengths[docnoA] = lengthA;
+    lengths[docnoB] = lengthB;
+    lengths[filler] = 3000 - lengthA - lengthB;
+
+    PostingsListDocSortedNonPositionalPForDelta list =
+        new PostingsListDocSortedNonPositionalPForDelta();
+    list.setCollectionDocumentCount(numDocs);
+    list.setDocLengthTable(new DocLengthTable() {
+      public int getDocLength(int docno) {
+        return lengths[docno];
+      }
+
+      public int getDocnoOffset() {
+        return 0;
+      }
+
+      public float getAvgDocLength() {
+        return 1000.0f;
+      }
+
+      public int getDocCount() {
+        return lengths.length - 1;
+      }
+    });
+    list.setNumberOfPostings(numDocs / 4);
+    for (int docno = 1; docno <= numDocs; docno += 4) {
+      list.add(docno, (short) (docno == docnoA ? tfA : docno == docnoB ? tfB : 1));
+    }
+
+    Map<String, PostingsListDocSortedNonPositionalPForDelta> postings = Maps.newHashMap();
+    postings.put("a", PostingsListDocSortedNonPositionalPForDelta.create(list.serialize()));
+    postings.get("a").setCollectionDocumentCount(numDocs);
+
+    RetrievalEnvironment env = new TestEnvironment(FileSystem.getLocal(new Configuration()),
+        writeTable(lengths), numDocs, 1000L * numDocs, postings);
+
+    // A sets the threshold before B's block is reached, which must not be skipped.
+    Accumulator[] exhaustive = rank(env, new String[] { "a" }, 1, false);
+    Accumulator[] pruned = rank(env, new String[] { "a" }, 1, true);
+    assertEquals(docnoB, exhaustive[0].docno);
+    assertEquals(docnoB, pruned[0].docno);
+    assertEquals(exhaustive[0].score, pruned[0].score, 1e-6f);
+  }
+
+  @Test
+  public void testBlockMaxPruningWithDocAttributes() throws IOException {
+    Random r = new Random(3);
+
+    // "a" occurs in every fourth document. Each block of its postings holds one short document
+    // with a high tf, whose exact length is the min doclen of the block, among long documents with
+    // a tf of one. Short lengths are in the range where quantization matters.
+    final int[] lengths = new int[NUM_DOCS + 1];
+    final short[] tfs = new short[NUM_DOCS + 1];
+    long collectionSize = 0;
+    for (int docno = 1; docno <= NUM_DOCS; docno++) {
+      lengths[docno] = 2000 + r.nextInt(2000);
+      tfs[docno] = (short) (docno % 4 == 1 ? 1 : 0);
+    }
+    for (int block = 0; block < NUM_DOCS / 4 / BLOCK_SIZE; block++) {
+      int strong = 4 * (block * BLOCK_SIZE + r.nextInt(BLOCK_SIZE)) + 1;
+      lengths[strong] = DocAttributeTable.EXACT_LENGTHS + r.nextInt(400);
+      tfs[strong] = (short) (r.nextInt(8) + 1);
+    }
+    for (int docno = 1; docno <= NUM_DOCS; docno++) {
+      collectionSize += lengths[docno];
+    }
+
+    DocLengthTable exactLengths = new DocLengthTable() {
+      public int getDocLength(int docno) {
+        return lengths[docno];
+      }
+
+      public int getDocnoOffset() {
+        return 0;
+      }
+
+      public float getAvgDocLength() {
+        return 0.0f;
+      }
+
+      public int getDocCount() {
+        return NUM_DOCS;
+      }
+    };
+
+    Map<String, PostingsListDocSortedNonPositionalPForDelta> postings = Maps.newHashMap();
+    for (int t = 0; t < TERMS.length; t++) {
+      PostingsListDocSortedNonPositionalPForDelta list =
+          new PostingsListDocSortedNonPositionalPForDelta();
+      list.setCollectionDocumentCount(NUM_DOCS);
+      list.setDocLengthTable(exactLengths);
+
+      List<Integer> docnos = Lists.newArrayList();
+      for (int docno = 1; docno <= NUM_DOCS; docno++) {
+        if (t == 0 ? tfs[docno] > 0 : r.nextInt(4 * t) == 0) {
+          docnos.add(docno);
+        }
+      }
+      list.setNumberOfPostings(docnos.size());
+      for (int docno : docnos) {
+        list.add(docno, t == 0 ? tfs[docno] : (short) (r.nextInt(4) + 1));
+      }
+
+      PostingsListDocSortedNonPositionalPForDelta list2 =
+          PostingsListDocSortedNonPositionalPForDelta.create(list.serialize());
+      list2.setCollectionDocumentCount(NUM_DOCS);
+      postings.put(TERMS[t], list2);
+    }
+
+    RetrievalEnvironment env = new TestEnvironment(FileSystem.getLocal(new Configuration()),
+        writeTable(lengths), NUM_DOCS, collectionSize, postings);
+    String[][] queries = { { "a" }, { "b" }, { "c" }, { "a", "b" }, { "a", "c" }, { "b", "c" },
+        { "a", "b", "c" } };
+    for (String[] query : queries) {
+      for (int numResults : new int[] { 1, 10, 100 }) {
+        Accumulator[] pruned = rank(env, query, numResults, true);
+        Accumulator[] exhaustive = rank(env, query, numResults, false);
+
+        assertTrue(exhaustive.length > 0);
+        assertEquals(exhaustive.length, pruned.length);
+        for (int i = 0; i < exhaustive.length; i++) {
+          assertEquals(exhaustive[i].docno, pruned[i].docno);
+          assertEquals(exhaustive[i].score, pruned[i].score, 1e-6f);
+        }
+      }
+    }
+  }
+
+  // Writes and loads a doc attribute table holding the lengths of docnos 1, 2, etc.
+  private static DocAttributeTable writeTable(int[] lengths) throws IOException {
+    int[] lengthsArray = new int[lengths.length - 1];
+    System.arraycopy(lengths, 1, lengthsArray, 0, lengthsArray.length);
+    FileSystem fs = FileSystem.getLocal(new Configuration());
+    FSDataOutputStream out = fs.create(new Path("tmp.dat"), true);
+    try {
+      DocAttributeTable.write(out, 0, lengthsArray, new String[0], new float[0][]);
+      out.close();
+      return new DocAttributeTable(new Path("tmp.dat"), fs);
+    } finally {
+      out.close();
+      fs.delete(new Path("tmp.dat"), true);
+    }
+  }
+
+  private static Accumulator[] rank(RetrievalEnvironment env, String[] query, int numResults,
+      boolean blockMaxPruning) {
+    MarkovRandomField mrf = new MarkovRandomField(query, env);
+    DocumentNode docNode = new DocumentNode();
+    for (String term : query) {
+      List<GraphNode> nodes = Lists.newArrayList();
+      nodes.add(docNode);
+      nodes.add(new TermNode(term));
+      mrf.addClique(new Clique(nodes, new QueryPotential(env, new TermExpressionGenerator(),
+          new BM25ScoringFunction()), new Parameter(Parameter.TERM_ID, 1.0f)));
+    }
+
+    MRFDocumentRanker ranker = new MRFDocumentRanker(mrf, numResults);
+    ranker.setBlockMaxPruning(blockMaxPruning);
+    return ranker.rank();
+  }
+
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(MRFDocumentRankerTest.class);
+  }
+}
@@ -0,0 +1,150 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.smrf.retrieval.distributed;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+import ivory.smrf.retrieval.Accumulator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+public class BinaryResultsTest {
+
+  // Results with docnos and scores of all magnitudes, including ties.
+  private static Accumulator[] createResults(Random r, int n) {
+    Accumulator[] results = new Accumulator[n];
+    float score = 10.0f;
+    for (int i = 0; i < n; i++) {
+      if (r.nextInt(5) != 0) {
+        score -= r.nextFloat() * (i % 2 == 0 ? 0.001f : 100.0f);
+      }
+      int docno = i % 3 == 0 ? 1 + r.nextInt(100) : r.nextInt(Integer.MAX_VALUE);
+      results[i] = new Accumulator(docno, score);
+    }
+    return results;
+  }
+
+  private static byte[] write(Accumulator[] results, String[] docids) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    BinaryResults.write(new DataOutputStream(bytes), results, docids);
+    return bytes.toByteArray();
+  }
+
+  private static void assertSameResults(Accumulator[] expected, Accumulator[] actual) {
+    assertEquals(expected.length, actual.length);
+    for (int i = 0; i < expected.length; i++) {
+      assertEquals(expected[i].docno, actual[i].docno);
+      assertEquals(Float.floatToIntBits(expected[i].score), Float.floatToIntBits(actual[i].score));
+    }
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    Random r = new Random(6);
+    for (int n : new int[] { 1, 2, 127, 128, 1000 }) {
+      Accumulator[] results = createResults(r, n);
+      ShardedSearcher.ShardResponse response = BinaryResults.read(write(results, null));
+      assertSameResults(results, response.results);
+      assertNull(response.docids);
+    }
+  }
+
+  @Test
+  public void testRoundTripWithDocids() throws IOException {
+    Random r = new Random(7);
+    for (int n : new int[] { 1, 2, 127, 128, 1000 }) {
+      Accumulator[] results = createResults(r, n);
+      String[] docids = new String[n];
+      for (int i = 0; i < n; i++) {
+        // Docids of all lengths, some of them outside of ascii, empty or unknown.
+        switch (i % 5) {
+        case 0: docids[i] = "clueweb09-en0000-00-" + i; break;
+        case 1: docids[i] = "\u00e9t\u00e9-" + i + "-\u4e2d"; break;
+        case 2: docids[i] = ""; break;
+        case 3: docids[i] = null; break;
+        default:
+          char[] c = new char[200];
+          Arrays.fill(c, (char) ('a' + i % 26));
+          docids[i] = new String(c);
+        }
+      }
+
+      ShardedSearcher.ShardResponse response = BinaryResults.read(write(results, docids));
+      assertSameResults(results, response.results);
+      assertArrayEquals(docids, response.docids);
+    }
+  }
+
+  @Test
+  public void testEmpty() throws IOException {
+    ShardedSearcher.ShardResponse response = BinaryResults.read(write(new Accumulator[0], null));
+    assertEquals(0, response.results.length);
+    assertNull(response.docids);
+
+    response = BinaryResults.read(write(new Accumulator[0], new String[0]));
+    assertEquals(0, response.results.length);
+    assertEquals(0, response.docids.length);
+  }
+
+  @Test
+  public void testMalformed() throws IOException {
+    Accumulator[] results = createResults(new Random(8), 50);
+    String[] docids = new String[results.length];
+    for (int i = 0; i < docids.length; i++) {
+      docids[i] = "doc-" + i;
+    }
+
+    // Every truncation of a response is rejected.
+    for (byte[] bytes : new byte[][] { write(results, null), write(results, docids) }) {
+      for (int len = 0; len < bytes.length; len++) {
+        assertMalformed(Arrays.copyOf(bytes, len));
+      }
+      assertMalformed(Arrays.copyOf(bytes, bytes.length + 1));
+    }
+
+    // Unknown versions, overlong varints and counts larger than the response.
+    byte[] bytes = write(results, null);
+    bytes[0] = BinaryResults.VERSION + 1;
+    assertMalformed(bytes);
+    assertMalformed(new byte[] { BinaryResults.VERSION, 0, -1, -1, -1, -1, -1, 1 });
+    assertMalformed(new byte[] { BinaryResults.VERSION, 0, -1, -1, -1, -1, 15 });
+    assertMalformed(new byte[] { BinaryResults.VERSION, 0, -1, -1, -1, -1, 7 });
+  }
+
+  private static void assertMalformed(byte[] bytes) {
+    try {
+      BinaryResults.read(bytes);
+      fail("Expected an IOException for a response of " + bytes.length + " bytes");
+    } catch (IOException e) {
+      // Expected.
+    }
+  }
+
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(BinaryResultsTest.class);
+  }
+}
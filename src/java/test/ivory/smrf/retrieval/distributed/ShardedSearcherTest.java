@@ -0,0 +1,240 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.smrf.retrieval.distributed;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import ivory.smrf.retrieval.Accumulator;
+import ivory.smrf.retrieval.distributed.ShardedSearcher.ShardResponse;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+public class ShardedSearcherTest {
+  private static final int NUM_SHARDS = 3;
+
+  // Stands in for retrieval servers. The n-th request to a shard waits for delays[shard][n]
+  // milliseconds before returning the shard's results, or fails if the delay is negative;
+  // requests past the end of delays[shard] behave like the last one.
+  private static class FakeSearcher extends ShardedSearcher {
+    private final ShardResponse[] responses;
+    private final long[][] delays;
+    private final AtomicInteger[] numRequests;
+
+    FakeSearcher(ShardResponse[] responses, long[][] delays, int timeout, int hedgeDelay) {
+      super(createAddresses(responses.length), timeout, hedgeDelay);
+      this.responses = responses;
+      this.delays = delays;
+      this.numRequests = new AtomicInteger[responses.length];
+      for (int i = 0; i < responses.length; i++) {
+        numRequests[i] = new AtomicInteger();
+      }
+    }
+
+    private static String[] createAddresses(int numShards) {
+      String[] addresses = new String[numShards];
+      for (int i = 0; i < numShards; i++) {
+        addresses[i] = "shard" + i + ":9999";
+      }
+      return addresses;
+    }
+
+    @Override
+    ShardResponse fetch(int shard, String query, boolean withDocids) throws IOException {
+      int n = numRequests[shard].getAndIncrement();
+      long delay = delays[shard][Math.min(n, delays[shard].length - 1)];
+      if (delay < 0) {
+        throw new IOException("Shard " + shard + " is down");
+      }
+      if (delay > 0) {
+        try {
+          Thread.sleep(delay);
+        } catch (InterruptedException e) {
+          throw new IOException("Request to shard " + shard + " abandoned");
+        }
+      }
+
+      // A fresh copy each time, as if decoded from a reply.
+      ShardResponse response = responses[shard];
+      Accumulator[] results = new Accumulator[response.results.length];
+      for (int i = 0; i < results.length; i++) {
+        results[i] = new Accumulator(response.results[i].docno, response.results[i].score);
+      }
+      return new ShardResponse(results, withDocids ? response.docids.clone() : null);
+    }
+
+    int getNumRequests(int shard) {
+      return numRequests[shard].get();
+    }
+  }
+
+  // Results of each shard, in decreasing order of score, with docnos partitioned among shards
+  // and some scores tied across shards. The first shard has no results.
+  private static ShardResponse[] createResponses(Random r) {
+    ShardResponse[] responses = new ShardResponse[NUM_SHARDS];
+    for (int s = 0; s < NUM_SHARDS; s++) {
+      int n = s == 0 ? 0 : 20 + r.nextInt(20);
+      List<Accumulator> results = new ArrayList<Accumulator>();
+      for (int i = 0; i < n; i++) {
+        results.add(new Accumulator(NUM_SHARDS * i + s + 1, r.nextInt(30) / 2.0f));
+      }
+      Collections.sort(results, Collections.reverseOrder());
+
+      String[] docids = new String[n];
+      for (int i = 0; i < n; i++) {
+        docids[i] = "doc-" + results.get(i).docno;
+      }
+      responses[s] = new ShardResponse(results.toArray(new Accumulator[n]), docids);
+    }
+    return responses;
+  }
+
+  // Returns the top results of the given shards, in decreasing order of score.
+  private static List<Accumulator> merge(ShardResponse[] responses, int numResults,
+      int... shards) {
+    List<Accumulator> all = new ArrayList<Accumulator>();
+    for (int s : shards) {
+      Collections.addAll(all, responses[s].results);
+    }
+    Collections.sort(all, Collections.reverseOrder());
+    return all.subList(0, Math.min(numResults, all.size()));
+  }
+
+  private static void assertResults(List<Accumulator> expected, ShardedSearcher.Results actual,
+      boolean withDocids) {
+    assertEquals(expected.size(), actual.getResults().length);
+    for (int i = 0; i < expected.size(); i++) {
+      Accumulator a = actual.getResults()[i];
+      assertEquals(expected.get(i).docno, a.docno);
+      assertEquals(expected.get(i).score, a.score, 0.0f);
+      assertEquals((a.docno - 1) % NUM_SHARDS, actual.getShard(a.docno));
+      if (withDocids) {
+        assertEquals("doc-" + a.docno, actual.getDocid(a.docno));
+      } else {
+        assertNull(actual.getDocid(a.docno));
+      }
+    }
+  }
+
+  @Test
+  public void testMerge() {
+    ShardResponse[] responses = createResponses(new Random(11));
+    long[][] delays = new long[][] { { 20 }, { 0 }, { 10 } };
+    FakeSearcher searcher = new FakeSearcher(responses, delays, 5000, 2000);
+    try {
+      for (int numResults : new int[] { 1, 10, 25, 1000 }) {
+        for (boolean withDocids : new boolean[] { false, true }) {
+          ShardedSearcher.Results results = searcher.search("q", numResults, false, withDocids);
+          assertEquals(NUM_SHARDS, results.getNumShardsResponded());
+          assertResults(merge(responses, numResults, 0, 1, 2), results, withDocids);
+        }
+      }
+
+      // Nothing needed hedging.
+      for (int s = 0; s < NUM_SHARDS; s++) {
+        assertEquals(8, searcher.getNumRequests(s));
+      }
+      assertEquals(-1, searcher.search("q", 10, false, false).getShard(0));
+    } finally {
+      searcher.close();
+    }
+  }
+
+  @Test
+  public void testNormalize() {
+    ShardResponse[] responses = createResponses(new Random(12));
+    FakeSearcher searcher =
+        new FakeSearcher(responses, new long[][] { { 0 }, { 0 }, { 0 } }, 5000, 2000);
+    try {
+      Accumulator[] results = searcher.search("q", 1000, true, false).getResults();
+      assertEquals(responses[1].results.length + responses[2].results.length, results.length);
+      for (int i = 1; i < results.length; i++) {
+        assertTrue(results[i - 1].compareTo(results[i]) > 0);
+      }
+    } finally {
+      searcher.close();
+    }
+  }
+
+  @Test
+  public void testHedgedRequests() {
+    ShardResponse[] responses = createResponses(new Random(13));
+    // Shard 0 is slow the first time, and shard 1 fails the first time.
+    long[][] delays = new long[][] { { 4000, 0 }, { -1, 0 }, { 0 } };
+    FakeSearcher searcher = new FakeSearcher(responses, delays, 10000, 100);
+    try {
+      long startTime = System.currentTimeMillis();
+      ShardedSearcher.Results results = searcher.search("q", 10, false, true);
+      assertTrue(System.currentTimeMillis() - startTime < 4000);
+
+      assertEquals(NUM_SHARDS, results.getNumShardsResponded());
+      assertResults(merge(responses, 10, 0, 1, 2), results, true);
+      assertEquals(2, searcher.getNumRequests(0));
+      assertEquals(2, searcher.getNumRequests(1));
+      assertEquals(1, searcher.getNumRequests(2));
+    } finally {
+      searcher.close();
+    }
+  }
+
+  @Test
+  public void testLateAndDeadShards() {
+    ShardResponse[] responses = createResponses(new Random(14));
+    // Shard 0 always fails, and shard 1 never replies in time.
+    long[][] delays = new long[][] { { -1 }, { 5000 }, { 0 } };
+    FakeSearcher searcher = new FakeSearcher(responses, delays, 300, 100);
+    try {
+      long startTime = System.currentTimeMillis();
+      ShardedSearcher.Results results = searcher.search("q", 10, false, false);
+      long duration = System.currentTimeMillis() - startTime;
+      assertTrue(duration >= 300 && duration < 3000);
+
+      assertEquals(1, results.getNumShardsResponded());
+      assertResults(merge(responses, 10, 2), results, false);
+      assertEquals(2, searcher.getNumRequests(0));
+      assertEquals(2, searcher.getNumRequests(1));
+    } finally {
+      searcher.close();
+    }
+
+    // Once only dead shards remain, the query doesn't wait for the deadline.
+    delays = new long[][] { { -1 }, { 0 }, { -1 } };
+    searcher = new FakeSearcher(responses, delays, 5000, 2000);
+    try {
+      long startTime = System.currentTimeMillis();
+      ShardedSearcher.Results results = searcher.search("q", 10, false, false);
+      assertTrue(System.currentTimeMillis() - startTime < 2000);
+      assertEquals(1, results.getNumShardsResponded());
+      assertResults(merge(responses, 10, 1), results, false);
+    } finally {
+      searcher.close();
+    }
+  }
+
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(ShardedSearcherTest.class);
+  }
+}